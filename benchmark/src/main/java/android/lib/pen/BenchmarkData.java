@@ -0,0 +1,46 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates the strokes the benchmarks work on, the same ones on every run so that runs can be compared.
+ */
+final class BenchmarkData {
+    static final int PAGE_WIDTH  = 1440;
+    static final int PAGE_HEIGHT = 2560;
+
+    private static final long SEED = 0x5eed;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Generates handwriting-like strokes with a {@link WorkloadGenerator}.
+     * @param count the number of strokes.
+     * @param points the average number of points of a stroke.
+     */
+    static ArrayList<Stroke> strokes(final int count, final int points) {
+        final WorkloadProfile   profile   = new WorkloadProfile(1, count, count, Math.max(1, points / 2), points * 3 / 2, WorkloadProfile.PRESSURE_TAPERED, 0);
+        final WorkloadGenerator generator = new WorkloadGenerator(BenchmarkData.SEED, profile, BenchmarkData.PAGE_WIDTH, BenchmarkData.PAGE_HEIGHT);
+
+        return generator.nextPage();
+    }
+
+    /**
+     * Generates random points on a page, to query at.
+     * @param count the number of points.
+     * @return the x and y of every point, interleaved.
+     */
+    static float[] points(final int count) {
+        final Random  random = new Random(BenchmarkData.SEED);
+        final float[] points = new float[count * 2];
+
+        for (int i = 0; i < count; i++) {
+            points[i * 2]     = random.nextFloat() * BenchmarkData.PAGE_WIDTH;
+            points[i * 2 + 1] = random.nextFloat() * BenchmarkData.PAGE_HEIGHT;
+        }
+
+        return points;
+    }
+}
@@ -0,0 +1,25 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks with the JMH command line, with the GC profiler unless another profiler is specified,
+ * so that the allocation rate is reported next to the throughput.
+ * <p>Use <code>-rf csv -rff result.csv</code> to keep the results, and {@link CompareResults} to compare them to the results of a baseline.</p>
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final ArrayList<String> arguments = new ArrayList<String>(Arrays.asList(args));
+
+        if (!arguments.contains("-prof") && !arguments.contains("-h") && !arguments.contains("-l")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            arguments.add(0, "-prof"); //$NON-NLS-1$
+            arguments.add(1, "gc"); //$NON-NLS-1$
+        }
+
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+}
@@ -0,0 +1,174 @@
+package android.lib.pen;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the results of two benchmark runs saved with <code>-rf csv</code>, e.g. of a baseline and of a change.
+ * <p>Prints the change of the score of every benchmark, and of its allocation per operation reported by the GC profiler,
+ * and exits with status <code>1</code> if any of them regresses by more than the threshold.</p>
+ * <p>Usage: <code>CompareResults baseline.csv current.csv [threshold percent, default 5]</code></p>
+ */
+public final class CompareResults {
+    private static final double DEFAULT_THRESHOLD = 5;
+
+    /**
+     * The allocation per operation below which a change is noise, in bytes.
+     */
+    private static final double MIN_BYTES = 1;
+
+    private static final String PACKAGE         = CompareResults.class.getPackage().getName() + '.';
+    private static final String ALLOCATION_RATE = ":gc.alloc.rate.norm"; //$NON-NLS-1$
+
+    private CompareResults() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <current.csv> [threshold percent]"); //$NON-NLS-1$
+            System.exit(2);
+        }
+
+        final Map<String, Result> baseline  = CompareResults.read(args[0]);
+        final Map<String, Result> current   = CompareResults.read(args[1]);
+        final double              threshold = args.length > 2 ? Double.parseDouble(args[2]) : CompareResults.DEFAULT_THRESHOLD;
+
+        int regressions = 0;
+
+        for (final Map.Entry<String, Result> entry : current.entrySet()) {
+            final Result before = baseline.get(entry.getKey());
+            final Result after  = entry.getValue();
+
+            if (before == null) {
+                System.out.println(String.format("%-72s %14s    %14.3f %-8s (new)", entry.getKey(), "", Double.valueOf(after.score), after.unit)); //$NON-NLS-1$ //$NON-NLS-2$
+
+                continue;
+            }
+
+            final double  change;
+            final boolean regressed;
+
+            if (before.score == 0) {
+                // Allocating where nothing was allocated is a regression, however little is allocated
+                change    = 0;
+                regressed = after.score >= CompareResults.MIN_BYTES;
+            } else {
+                // Positive when better, whether a higher or a lower score is better
+                change    = (after.isHigherBetter() ? after.score - before.score : before.score - after.score) / before.score * 100;
+                regressed = change < -threshold && (after.isHigherBetter() || after.score >= CompareResults.MIN_BYTES);
+            }
+
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.println(String.format("%-72s %14.3f -> %14.3f %-8s %+7.1f%%%s", entry.getKey(), Double.valueOf(before.score), Double.valueOf(after.score), after.unit, Double.valueOf(change), regressed ? "  REGRESSED" : "")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) beyond " + threshold + "%"); //$NON-NLS-1$ //$NON-NLS-2$
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the results of a benchmark run.
+     * @return the results, keyed by the benchmark name and its parameters.
+     */
+    static Map<String, Result> read(final String path) throws IOException {
+        final Map<String, Result> results = new LinkedHashMap<String, Result>();
+        final BufferedReader      reader  = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8")); //$NON-NLS-1$
+
+        try {
+            final ArrayList<String> header = CompareResults.split(reader.readLine());
+            final int               name   = header.indexOf("Benchmark"); //$NON-NLS-1$
+            final int               score  = header.indexOf("Score"); //$NON-NLS-1$
+            final int               unit   = header.indexOf("Unit"); //$NON-NLS-1$
+
+            if (name < 0 || score < 0 || unit < 0) {
+                throw new IOException("Not a JMH CSV result file: " + path); //$NON-NLS-1$
+            }
+
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final ArrayList<String> fields = CompareResults.split(line);
+
+                // Only the scores and the allocation per operation are compared; the other metrics of the GC profiler depend on them
+                if (fields.size() == header.size() && (fields.get(name).indexOf(':') < 0 || fields.get(name).endsWith(CompareResults.ALLOCATION_RATE))) {
+                    final StringBuilder key = new StringBuilder(fields.get(name).replace(CompareResults.PACKAGE, "")); //$NON-NLS-1$
+
+                    // The parameters are the columns after the unit, such as "Param: strokeCount"
+                    for (int i = unit + 1; i < fields.size(); i++) {
+                        if (fields.get(i).length() > 0) {
+                            key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(fields.get(i)); //$NON-NLS-1$ //$NON-NLS-2$
+                        }
+                    }
+
+                    results.put(key.toString(), new Result(Double.parseDouble(fields.get(score)), fields.get(unit)));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return results;
+    }
+
+    /**
+     * Splits a CSV line, whose fields may be quoted.
+     */
+    private static ArrayList<String> split(final String line) {
+        final ArrayList<String> fields = new ArrayList<String>();
+
+        if (line == null) {
+            return fields;
+        }
+
+        final StringBuilder field  = new StringBuilder();
+        boolean             quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    static final class Result {
+        final double score;
+        final String unit;
+
+        Result(final double score, final String unit) {
+            this.score = score;
+            this.unit  = unit;
+        }
+
+        /**
+         * Determines if a higher score is better, which is the case of throughputs such as <code>ops/s</code>,
+         * but not of times per operation or of bytes allocated per operation.
+         */
+        boolean isHigherBetter() {
+            return this.unit.startsWith("ops/"); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package android.lib.pen;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computes the sizes of the downsampled background images and of the low-resolution layers of the pages, for images from
+ * small screenshots to large camera photos, and for zoom ratios from a thumbnail to a page at full size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownsamplingBenchmark {
+    private static final int COUNT = 1024;
+
+    private static final int   MIN_IMAGE_SIZE = 320;
+    private static final int   MAX_IMAGE_SIZE = 8000;
+    private static final float MIN_ZOOM_RATIO = 0.05f;
+
+    private int[]   imageSizes;
+    private float[] zoomRatios;
+    private int     next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0x5eed);
+
+        this.imageSizes = new int[DownsamplingBenchmark.COUNT * 2];
+        this.zoomRatios = new float[DownsamplingBenchmark.COUNT];
+
+        for (int i = 0; i < this.imageSizes.length; i++) {
+            this.imageSizes[i] = DownsamplingBenchmark.MIN_IMAGE_SIZE + random.nextInt(DownsamplingBenchmark.MAX_IMAGE_SIZE - DownsamplingBenchmark.MIN_IMAGE_SIZE);
+        }
+
+        for (int i = 0; i < this.zoomRatios.length; i++) {
+            this.zoomRatios[i] = DownsamplingBenchmark.MIN_ZOOM_RATIO + random.nextFloat() * (1 - DownsamplingBenchmark.MIN_ZOOM_RATIO);
+        }
+    }
+
+    /**
+     * Computes the sample size to decode a background image for the canvas with, as done for every background image set.
+     */
+    @Benchmark
+    public int sampleSize() {
+        final int i = this.next;
+
+        this.next = (i + 1) % DownsamplingBenchmark.COUNT;
+
+        return Downsampling.sampleSize(this.imageSizes[i * 2], this.imageSizes[i * 2 + 1], BenchmarkData.PAGE_WIDTH / 4, BenchmarkData.PAGE_HEIGHT / 4);
+    }
+
+    /**
+     * Computes the ratio of the low-resolution layer to draw at a zoom ratio, as done for every frame of a zoom.
+     */
+    @Benchmark
+    public float layerRatio() {
+        final int i = this.next;
+
+        this.next = (i + 1) % DownsamplingBenchmark.COUNT;
+
+        return Downsampling.ceilPowerOfTwo(this.zoomRatios[i]);
+    }
+}
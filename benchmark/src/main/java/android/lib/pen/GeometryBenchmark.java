@@ -0,0 +1,70 @@
+package android.lib.pen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the small computations done for every point or every operation, without any bitmap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private static final int POINT_COUNT = 1024;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private float[] points;
+    private int     next;
+
+    @Setup
+    public void setUp() {
+        this.points = BenchmarkData.points(GeometryBenchmark.POINT_COUNT);
+
+        for (int i = 0; i < 100000; i++) {
+            this.histogram.record(i * 997L);
+        }
+    }
+
+    /**
+     * Computes the distance of a point to a segment, as done for every point of a stroke being simplified or hit-tested.
+     */
+    @Benchmark
+    public float distanceSquared() {
+        final float[] p = this.points;
+        final int     i = this.next;
+
+        this.next = (i + 2) % (p.length - 4);
+
+        return StrokeSimplifier.distanceSquared(p[i], p[i + 1], p[i + 2], p[i + 3], p[i + 4], p[i + 5]);
+    }
+
+    /**
+     * Records a duration, as done for every instrumented operation.
+     */
+    @Benchmark
+    public long recordLatency() {
+        this.next = (this.next + 1) % GeometryBenchmark.POINT_COUNT;
+        this.histogram.record(this.next * 1031L);
+
+        return this.histogram.getCount();
+    }
+
+    @Benchmark
+    public long percentile() {
+        return this.histogram.getPercentile(99);
+    }
+}
@@ -0,0 +1,75 @@
+package android.lib.pen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Edits, undoes and writes a document kept in memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryDocumentBackendBenchmark {
+    private static final int PAGE_COUNT = 10;
+
+    private MemoryDocumentBackend backend;
+    private List<Stroke>          strokes;
+    private int                   page;
+
+    @Setup
+    public void setUp() {
+        this.backend = new MemoryDocumentBackend(BenchmarkData.PAGE_WIDTH, BenchmarkData.PAGE_HEIGHT);
+        this.strokes = BenchmarkData.strokes(20, 100);
+
+        for (int i = 0; i < MemoryDocumentBackendBenchmark.PAGE_COUNT; i++) {
+            this.backend.appendPage(0xffffffff);
+            this.backend.addStrokes(i, BenchmarkData.strokes(100, 100));
+        }
+    }
+
+    /**
+     * Adds strokes as one history step, and undoes it so that the document does not grow.
+     */
+    @Benchmark
+    public int addAndUndo() {
+        this.page = (this.page + 1) % MemoryDocumentBackendBenchmark.PAGE_COUNT;
+
+        this.backend.addStrokes(this.page, this.strokes);
+        this.backend.undo(this.page);
+
+        return this.page;
+    }
+
+    @Benchmark
+    public List<Stroke> getStrokes() {
+        this.page = (this.page + 1) % MemoryDocumentBackendBenchmark.PAGE_COUNT;
+
+        return this.backend.getStrokes(this.page);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        this.backend.write(new DataOutputStream(bytes));
+
+        return bytes.size();
+    }
+}
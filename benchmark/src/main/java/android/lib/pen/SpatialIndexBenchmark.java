@@ -0,0 +1,128 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries and updates the spatial index of a page, as when the eraser, the selection or a tap looks for the objects under it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+    /**
+     * The cell size used by {@link PenService}.
+     */
+    private static final float CELL_SIZE   = 128;
+    private static final int   QUERY_COUNT = 1024;
+
+    @Param({ "1000", "10000" })
+    public int objectCount;
+
+    private final IntArray result = new IntArray(256);
+
+    private SpatialIndex index;
+    private float[]      bounds;
+    private float[]      points;
+    private int          next;
+
+    @Setup
+    public void setUp() {
+        final ArrayList<Stroke> strokes = BenchmarkData.strokes(this.objectCount, 40);
+
+        this.index  = new SpatialIndex(SpatialIndexBenchmark.CELL_SIZE);
+        this.bounds = new float[strokes.size() * 4];
+        this.points = BenchmarkData.points(SpatialIndexBenchmark.QUERY_COUNT);
+
+        for (int i = 0; i < strokes.size(); i++) {
+            final Stroke stroke = strokes.get(i);
+
+            float left   = Float.MAX_VALUE;
+            float top    = Float.MAX_VALUE;
+            float right  = -Float.MAX_VALUE;
+            float bottom = -Float.MAX_VALUE;
+
+            for (int j = 0; j < stroke.getPointCount(); j++) {
+                left   = Math.min(left, stroke.xs[j]);
+                top    = Math.min(top, stroke.ys[j]);
+                right  = Math.max(right, stroke.xs[j]);
+                bottom = Math.max(bottom, stroke.ys[j]);
+            }
+
+            this.bounds[i * 4]     = left;
+            this.bounds[i * 4 + 1] = top;
+            this.bounds[i * 4 + 2] = right;
+            this.bounds[i * 4 + 3] = bottom;
+
+            this.index.put(i, left, top, right, bottom);
+        }
+    }
+
+    /**
+     * Finds the objects in a square of 64 pixels, the size of an eraser.
+     */
+    @Benchmark
+    public int queryRect() {
+        final int i = this.nextPoint();
+
+        this.result.clear();
+        this.index.query(this.points[i], this.points[i + 1], this.points[i] + 64, this.points[i + 1] + 64, this.result);
+
+        return this.result.size();
+    }
+
+    /**
+     * Finds the objects within the touch tolerance of a point.
+     */
+    @Benchmark
+    public int queryPoint() {
+        final int i = this.nextPoint();
+
+        this.result.clear();
+        this.index.query(this.points[i], this.points[i + 1], 24, this.result);
+
+        return this.result.size();
+    }
+
+    @Benchmark
+    public int nearest() {
+        final int i = this.nextPoint();
+
+        return this.index.nearest(this.points[i], this.points[i + 1], 256);
+    }
+
+    /**
+     * Moves an object, as when a selection is dragged.
+     */
+    @Benchmark
+    public int move() {
+        final int id = this.nextPoint() / 2 % this.objectCount;
+        final int i  = id * 4;
+
+        this.index.remove(id);
+        this.index.put(id, this.bounds[i], this.bounds[i + 1], this.bounds[i + 2], this.bounds[i + 3]);
+
+        return this.index.size();
+    }
+
+    private int nextPoint() {
+        this.next = (this.next + 2) % this.points.length;
+
+        return this.next;
+    }
+}
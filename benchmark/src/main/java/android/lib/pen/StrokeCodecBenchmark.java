@@ -0,0 +1,50 @@
+package android.lib.pen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes the strokes of a page, as when a page is saved, loaded or copied.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeCodecBenchmark {
+    @Param({ "10", "200" })
+    public int strokeCount;
+
+    private ArrayList<Stroke> strokes;
+    private byte[]            bytes;
+
+    @Setup
+    public void setUp() {
+        this.strokes = BenchmarkData.strokes(this.strokeCount, 100);
+        this.bytes   = StrokeCodec.encode(this.strokes);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return StrokeCodec.encode(this.strokes);
+    }
+
+    @Benchmark
+    public ArrayList<Stroke> decode() throws IOException {
+        return StrokeCodec.decode(this.bytes);
+    }
+}
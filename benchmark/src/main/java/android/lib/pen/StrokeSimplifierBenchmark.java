@@ -0,0 +1,68 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Simplifies the strokes of a page. The small tolerance is the one of a page at full size; the large ones are the ones of
+ * the downsampled layers and thumbnails of a page, where a pixel covers many page pixels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeSimplifierBenchmark {
+    @Param({ "0.5", "2", "8" })
+    public float tolerance;
+
+    private final IntArray result = new IntArray(256);
+
+    private float[][] xs;
+    private float[][] ys;
+
+    @Setup
+    public void setUp() {
+        final ArrayList<Stroke> strokes = BenchmarkData.strokes(200, 100);
+
+        this.xs = new float[strokes.size()][];
+        this.ys = new float[strokes.size()][];
+
+        for (int i = 0; i < strokes.size(); i++) {
+            this.xs[i] = strokes.get(i).xs;
+            this.ys[i] = strokes.get(i).ys;
+        }
+    }
+
+    /**
+     * Simplifies 200 strokes.
+     * @return the total number of points kept.
+     */
+    @Benchmark
+    public int simplify() {
+        int count = 0;
+
+        for (int i = 0; i < this.xs.length; i++) {
+            this.result.clear();
+
+            StrokeSimplifier.simplify(this.xs[i], this.ys[i], this.xs[i].length, this.tolerance, this.result);
+
+            count += this.result.size();
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,47 @@
+package android.lib.pen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generates strokes of 100 points. An operation is a point, so the score is the number of points generated per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkloadGeneratorBenchmark {
+    private static final int POINT_COUNT = 100;
+
+    @Param({ "0", "2", "3" })
+    public int pressureCurve;
+
+    private WorkloadGenerator generator;
+
+    @Setup
+    public void setUp() {
+        final WorkloadProfile profile = new WorkloadProfile(1, 1, 1, WorkloadGeneratorBenchmark.POINT_COUNT, WorkloadGeneratorBenchmark.POINT_COUNT, this.pressureCurve, 0);
+
+        this.generator = new WorkloadGenerator(1, profile, BenchmarkData.PAGE_WIDTH, BenchmarkData.PAGE_HEIGHT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WorkloadGeneratorBenchmark.POINT_COUNT)
+    public Stroke nextStroke() {
+        return this.generator.nextStroke();
+    }
+}
@@ -0,0 +1,96 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CheckpointListTest {
+    @Test
+    public void findsCheckpointAtOrBefore() {
+        final CheckpointList checkpoints = CheckpointListTest.listOf(32, 64, 96);
+
+        Assert.assertEquals(-1, checkpoints.indexBefore(31));
+        Assert.assertEquals(0, checkpoints.versionBefore(31));
+        Assert.assertEquals(0, checkpoints.indexBefore(32));
+        Assert.assertEquals(32, checkpoints.versionBefore(63));
+        Assert.assertEquals(2, checkpoints.indexBefore(1000));
+        Assert.assertEquals(96, checkpoints.versionBefore(1000));
+    }
+
+    @Test
+    public void addKeepsAscendingOrder() {
+        final CheckpointList checkpoints = new CheckpointList();
+
+        // Rebuilding an older version saves checkpoints before the ones saved when idle
+        checkpoints.add(64, "64"); //$NON-NLS-1$
+        checkpoints.add(32, "32"); //$NON-NLS-1$
+        checkpoints.add(96, null);
+
+        Assert.assertArrayEquals(new int[] { 32, 64, 96 }, CheckpointListTest.versionsOf(checkpoints));
+        Assert.assertEquals("32", checkpoints.getFile(0)); //$NON-NLS-1$
+        Assert.assertNull(checkpoints.getFile(2));
+    }
+
+    @Test
+    public void truncateRemovesLaterCheckpoints() {
+        final CheckpointList    checkpoints = CheckpointListTest.listOf(32, 64, 96);
+        final ArrayList<String> removed     = new ArrayList<String>();
+
+        checkpoints.truncate(64, removed);
+
+        Assert.assertArrayEquals(new int[] { 32, 64 }, CheckpointListTest.versionsOf(checkpoints));
+        Assert.assertEquals(Arrays.asList("96"), removed); //$NON-NLS-1$
+
+        checkpoints.truncate(0, removed);
+
+        Assert.assertEquals(0, checkpoints.size());
+        Assert.assertEquals(Arrays.asList("96", "64", "32"), removed); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    @Test
+    public void compactRemovesMergedVersionsAndRenumbersLaterOnes() {
+        final CheckpointList    checkpoints = CheckpointListTest.listOf(4, 5, 6, 8, 9, 12);
+        final ArrayList<String> removed     = new ArrayList<String>();
+
+        // Deltas 4 to 7, that is versions 5 to 8, are merged into version 5: version 4 stays, 5 to 7 are gone, 8 becomes 5, 9 becomes 6
+        checkpoints.compact(4, 8, removed);
+
+        Assert.assertArrayEquals(new int[] { 4, 5, 6, 9 }, CheckpointListTest.versionsOf(checkpoints));
+        Assert.assertEquals("8", checkpoints.getFile(1)); //$NON-NLS-1$
+        Assert.assertEquals(Arrays.asList("6", "5"), removed); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Test
+    public void compactDoesNotReportEmptyPages() {
+        final CheckpointList    checkpoints = new CheckpointList();
+        final ArrayList<String> removed     = new ArrayList<String>();
+
+        checkpoints.add(2, null);
+        checkpoints.compact(0, 4, removed);
+
+        Assert.assertEquals(0, checkpoints.size());
+        Assert.assertTrue(removed.isEmpty());
+    }
+
+    private static CheckpointList listOf(final int... versions) {
+        final CheckpointList checkpoints = new CheckpointList();
+
+        for (final int version : versions) {
+            checkpoints.add(version, Integer.toString(version));
+        }
+
+        return checkpoints;
+    }
+
+    private static int[] versionsOf(final CheckpointList checkpoints) {
+        final int[] versions = new int[checkpoints.size()];
+
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = checkpoints.getVersion(i);
+        }
+
+        return versions;
+    }
+}
@@ -0,0 +1,38 @@
+package android.lib.pen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DownsamplingTest {
+    @Test
+    public void sampleSizeKeepsImageAtLeastAsLarge() {
+        Assert.assertEquals(1, Downsampling.sampleSize(1000, 1000, 1000, 1000));
+        Assert.assertEquals(1, Downsampling.sampleSize(1999, 1999, 1000, 1000));
+        Assert.assertEquals(2, Downsampling.sampleSize(2000, 2000, 1000, 1000));
+        Assert.assertEquals(4, Downsampling.sampleSize(4000, 3000, 1000, 700));
+        Assert.assertEquals(1, Downsampling.sampleSize(500, 500, 1000, 1000));
+    }
+
+    @Test
+    public void sampleSizeFitsBothSides() {
+        // The height limits the sample size of a wide image
+        Assert.assertEquals(2, Downsampling.sampleSize(8000, 1000, 1000, 500));
+
+        // Fits the width only without a height
+        Assert.assertEquals(8, Downsampling.sampleSize(8000, 1000, 1000, 0));
+    }
+
+    @Test
+    public void sampleSizeWithoutWidth() {
+        Assert.assertEquals(1, Downsampling.sampleSize(8000, 8000, 0, 0));
+    }
+
+    @Test
+    public void ceilPowerOfTwo() {
+        Assert.assertEquals(1, Downsampling.ceilPowerOfTwo(1), 0);
+        Assert.assertEquals(0.5f, Downsampling.ceilPowerOfTwo(0.5f), 0);
+        Assert.assertEquals(0.5f, Downsampling.ceilPowerOfTwo(0.3f), 0);
+        Assert.assertEquals(0.25f, Downsampling.ceilPowerOfTwo(0.2f), 0);
+        Assert.assertEquals(0.125f, Downsampling.ceilPowerOfTwo(0.1f), 0);
+    }
+}
@@ -0,0 +1,165 @@
+package android.lib.pen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistoryTimelineTest {
+    private static final String A = "a"; //$NON-NLS-1$
+    private static final String B = "b"; //$NON-NLS-1$
+
+    @Test
+    public void undoAndRedoWalkCommitsInOrder() {
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A);
+
+        Assert.assertFalse(timeline.canRedo());
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A);
+        Assert.assertFalse(timeline.canUndo());
+        Assert.assertEquals(HistoryTimelineTest.A, timeline.peekRedo());
+
+        timeline.redo();
+
+        Assert.assertEquals(HistoryTimelineTest.B, timeline.peekRedo());
+    }
+
+    @Test
+    public void commitDiscardsRedo() {
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.B);
+
+        timeline.undo();
+        timeline.onCommit(HistoryTimelineTest.A);
+
+        Assert.assertFalse(timeline.canRedo());
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.A);
+    }
+
+    @Test
+    public void removePageMovesCursorBackByItsUndoableCommits() {
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A, HistoryTimelineTest.B);
+
+        timeline.undo();
+        timeline.removePage(HistoryTimelineTest.A);
+
+        // B, | B
+        Assert.assertEquals(HistoryTimelineTest.B, timeline.peekUndo());
+        Assert.assertEquals(HistoryTimelineTest.B, timeline.peekRedo());
+
+        timeline.undo();
+
+        Assert.assertFalse(timeline.canUndo());
+
+        timeline.redo();
+        timeline.redo();
+
+        Assert.assertFalse(timeline.canRedo());
+    }
+
+    @Test
+    public void removePageRestartsItsPositions() {
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.A, HistoryTimelineTest.B);
+
+        timeline.removePage(HistoryTimelineTest.A);
+        timeline.onCommit(HistoryTimelineTest.A);
+
+        // A new page with the same ID starts from position 1, so compacting its first two versions must find both commits
+        timeline.onCommit(HistoryTimelineTest.A);
+        timeline.onCompacted(HistoryTimelineTest.A, 1, 2, 1);
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.B);
+    }
+
+    @Test
+    public void removeUnknownPageIsIgnored() {
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A);
+
+        timeline.removePage(HistoryTimelineTest.B);
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A);
+    }
+
+    @Test
+    public void compactionMergesCommitsOfThePage() {
+        // A1 B1 A2 A3 B2 A4 A5
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A, HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A, HistoryTimelineTest.A);
+
+        // Versions 2 to 4 of A are merged into version 2, so A is at version 3 afterwards: A1 B1 B2 A2 A3
+        timeline.onCompacted(HistoryTimelineTest.A, 2, 3, 3);
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.B, HistoryTimelineTest.A);
+
+        // The positions were shifted down, so a new commit after redoing everything lands right after them
+        for (int i = 0; i < 5; i++) {
+            timeline.redo();
+        }
+
+        // A1 B1 B2 A2 A3 A4, then versions 3 and 4 of A are merged into version 3: A1 B1 B2 A2 A3
+        timeline.onCommit(HistoryTimelineTest.A);
+        timeline.onCompacted(HistoryTimelineTest.A, 3, 2, 3);
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.B, HistoryTimelineTest.A);
+    }
+
+    @Test
+    public void compactionBeforeCursorMovesCursor() {
+        // A1 B1 A2 | B2 A3
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A);
+
+        timeline.undo();
+        timeline.undo();
+
+        // Versions 1 and 2 of A are merged into version 1, which is the current one: B1 A1 | B2 A2
+        timeline.onCompacted(HistoryTimelineTest.A, 1, 2, 1);
+
+        Assert.assertEquals(HistoryTimelineTest.A, timeline.peekUndo());
+        Assert.assertEquals(HistoryTimelineTest.B, timeline.peekRedo());
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.B);
+    }
+
+    @Test
+    public void compactionOfOneVersionChangesNothing() {
+        final HistoryTimeline timeline = HistoryTimelineTest.commit(HistoryTimelineTest.A, HistoryTimelineTest.B);
+
+        timeline.onCompacted(HistoryTimelineTest.A, 1, 1, 1);
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.B, HistoryTimelineTest.A);
+    }
+
+    @Test
+    public void compactionOfLogOlderThanTimeline() {
+        final HistoryTimeline timeline = new HistoryTimeline();
+
+        // The log of A already had 10 versions when the timeline started: its versions 11 to 13 are positions 1 to 3
+        timeline.onCommit(HistoryTimelineTest.A);
+        timeline.onCommit(HistoryTimelineTest.B);
+        timeline.onCommit(HistoryTimelineTest.A);
+        timeline.onCommit(HistoryTimelineTest.A);
+
+        timeline.onCompacted(HistoryTimelineTest.A, 12, 2, 12);
+
+        HistoryTimelineTest.assertUndos(timeline, HistoryTimelineTest.A, HistoryTimelineTest.B, HistoryTimelineTest.A);
+    }
+
+    private static HistoryTimeline commit(final String... pageIds) {
+        final HistoryTimeline timeline = new HistoryTimeline();
+
+        for (final String pageId : pageIds) {
+            timeline.onCommit(pageId);
+        }
+
+        return timeline;
+    }
+
+    /**
+     * Undoes every commit, checking the page of each.
+     */
+    private static void assertUndos(final HistoryTimeline timeline, final String... pageIds) {
+        for (final String pageId : pageIds) {
+            Assert.assertTrue(timeline.canUndo());
+            Assert.assertEquals(pageId, timeline.peekUndo());
+
+            timeline.undo();
+        }
+
+        Assert.assertFalse(timeline.canUndo());
+    }
+}
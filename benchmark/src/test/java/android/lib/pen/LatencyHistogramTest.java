@@ -0,0 +1,95 @@
+package android.lib.pen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    /**
+     * The largest error of a reported percentile, relative to the real value.
+     */
+    private static final double MAX_ERROR = 0.125;
+
+    @Test
+    public void emptyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getMean());
+        Assert.assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(0, histogram.getPercentile(0));
+        Assert.assertEquals(3, histogram.getPercentile(50));
+        Assert.assertEquals(7, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMin());
+        Assert.assertEquals(100000000, histogram.getMax());
+        Assert.assertEquals(50000500, histogram.getMean());
+
+        final double[] percentiles = new double[] { 1, 10, 50, 90, 99, 99.9, 100 };
+
+        for (final double percentile : percentiles) {
+            final double expected = Math.ceil(100000 * percentile / 100) * 1000;
+            final long   actual   = histogram.getPercentile(percentile);
+
+            Assert.assertEquals("p" + percentile, expected, actual, expected * LatencyHistogramTest.MAX_ERROR); //$NON-NLS-1$
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinMinAndMax() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(1000);
+        histogram.record(1001);
+
+        Assert.assertTrue(histogram.getPercentile(0) >= 1000);
+        Assert.assertTrue(histogram.getPercentile(100) <= 1001);
+    }
+
+    @Test
+    public void negativeValuesAreZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(100);
+
+        final LatencyHistogram copy = histogram.copy();
+
+        histogram.record(200);
+        histogram.clear();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(1, copy.getCount());
+        Assert.assertEquals(100, copy.getMax());
+    }
+}
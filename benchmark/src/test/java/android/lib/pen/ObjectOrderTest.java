@@ -0,0 +1,190 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the operations recorded by {@link ObjectOrder}, replayed in order as {@link HistoryStore} does, rebuild the z-order of a page.
+ */
+public class ObjectOrderTest {
+    @Test
+    public void opEncoding() {
+        Assert.assertTrue(ObjectOrder.isInsert(ObjectOrder.insertOf(5)));
+        Assert.assertFalse(ObjectOrder.isInsert(ObjectOrder.removeOf(5)));
+        Assert.assertEquals(5, ObjectOrder.indexOfOp(ObjectOrder.insertOf(5)));
+        Assert.assertEquals(0, ObjectOrder.indexOfOp(ObjectOrder.removeOf(0)));
+        Assert.assertEquals(1 << 29, ObjectOrder.indexOfOp(ObjectOrder.insertOf(1 << 29)));
+    }
+
+    @Test
+    public void insertionsAreRecordedInIndexOrder() {
+        final ObjectOrder order = ObjectOrderTest.orderOf(10, 20);
+        final IntArray    ops   = new IntArray();
+
+        // The page is now 30 10 40 20, reported in another order
+        final int[] recorded = order.insert(new int[] { 40, 30 }, new int[] { 2, 0 }, ops);
+
+        Assert.assertArrayEquals(new int[] { 1, 0 }, recorded);
+        Assert.assertArrayEquals(new int[] { ObjectOrder.insertOf(0), ObjectOrder.insertOf(2) }, ops.toArray());
+        Assert.assertEquals(0, order.indexOf(30));
+        Assert.assertEquals(2, order.indexOf(40));
+    }
+
+    @Test
+    public void removalsAreRecordedFromTheTop() {
+        final ObjectOrder order = ObjectOrderTest.orderOf(10, 20, 30, 40);
+        final IntArray    ops   = new IntArray();
+
+        Assert.assertEquals(2, order.remove(new int[] { 20, 40, 99 }, ops));
+        Assert.assertArrayEquals(new int[] { ObjectOrder.removeOf(3), ObjectOrder.removeOf(1) }, ops.toArray());
+        Assert.assertEquals(2, order.size());
+        Assert.assertEquals(1, order.indexOf(30));
+    }
+
+    @Test
+    public void unknownIndicesAreTrackedButNotRecorded() {
+        final ObjectOrder order = ObjectOrderTest.orderOf(10);
+        final IntArray    ops   = new IntArray();
+
+        Assert.assertEquals(0, order.insert(new int[] { 20 }, new int[] { -1 }, ops).length);
+        Assert.assertEquals(0, ops.size());
+        Assert.assertEquals(0, order.indexOf(20));
+    }
+
+    @Test
+    public void nothingIsRecordedWithoutOps() {
+        final ObjectOrder order = ObjectOrderTest.orderOf(10);
+
+        Assert.assertEquals(0, order.insert(new int[] { 20 }, new int[] { 1 }, null).length);
+        Assert.assertEquals(1, order.remove(new int[] { 10 }, null));
+        Assert.assertEquals(0, order.indexOf(20));
+    }
+
+    @Test
+    public void replayRebuildsEveryVersion() {
+        final Random                        random   = new Random(3);
+        final List<Integer>                 page     = new ArrayList<Integer>();
+        final ObjectOrder                   order    = new ObjectOrder();
+        final ArrayList<List<Integer>>      versions = new ArrayList<List<Integer>>();
+        final ArrayList<int[]>              deltas   = new ArrayList<int[]>();
+        final ArrayList<ArrayList<Integer>> inserted = new ArrayList<ArrayList<Integer>>();
+
+        int next = 1;
+
+        versions.add(new ArrayList<Integer>(page));
+
+        for (int version = 0; version < 500; version++) {
+            final IntArray           ops     = new IntArray();
+            final ArrayList<Integer> objects = new ArrayList<Integer>();
+            final int                action  = page.isEmpty() ? 0 : random.nextInt(3);
+
+            if (action == 0) {
+                // Inserts a batch at random places, as a paste or an undo of a removal does
+                final int   count   = 1 + random.nextInt(4);
+                final int[] handles = new int[count];
+
+                for (int i = 0; i < count; i++) {
+                    handles[i] = next++;
+
+                    page.add(random.nextInt(page.size() + 1), Integer.valueOf(handles[i]));
+                }
+
+                final int[] indices = new int[count];
+
+                for (int i = 0; i < count; i++) {
+                    indices[i] = page.indexOf(Integer.valueOf(handles[i]));
+                }
+
+                for (final int i : order.insert(handles, indices, ops)) {
+                    objects.add(Integer.valueOf(handles[i]));
+                }
+            } else if (action == 1) {
+                // Removes a random subset, as the eraser does
+                final ArrayList<Integer> removed = new ArrayList<Integer>(page);
+
+                Collections.shuffle(removed, random);
+
+                final int   count   = 1 + random.nextInt(Math.min(4, removed.size()));
+                final int[] handles = new int[count];
+
+                for (int i = 0; i < count; i++) {
+                    handles[i] = removed.get(i).intValue();
+
+                    page.remove(removed.get(i));
+                }
+
+                Assert.assertEquals(count, order.remove(handles, ops));
+            } else {
+                // Changes an object in place, recorded as PageHistory.onObjectChanged does
+                final int index = order.indexOf(page.get(random.nextInt(page.size())).intValue());
+
+                ops.add(ObjectOrder.removeOf(index));
+                ops.add(ObjectOrder.insertOf(index));
+                objects.add(page.get(index));
+            }
+
+            deltas.add(ops.toArray());
+            inserted.add(objects);
+            versions.add(new ArrayList<Integer>(page));
+
+            Assert.assertEquals(page.size(), order.size());
+        }
+
+        // Replays every delta from the base version, as HistoryStore.restore does
+        final List<Integer> replayed = new ArrayList<Integer>();
+
+        for (int i = 0; i < deltas.size(); i++) {
+            ObjectOrderTest.apply(replayed, deltas.get(i), inserted.get(i));
+
+            Assert.assertEquals("version " + (i + 1), versions.get(i + 1), replayed); //$NON-NLS-1$
+        }
+
+        // Merges runs of deltas as HistoryStore.compact does, and replays the merged deltas from a checkpoint
+        final List<Integer> merged  = new ArrayList<Integer>(versions.get(100));
+        final IntArray      ops     = new IntArray();
+        final List<Integer> objects = new ArrayList<Integer>();
+
+        for (int i = 100; i < 150; i++) {
+            for (final int op : deltas.get(i)) {
+                ops.add(op);
+            }
+
+            objects.addAll(inserted.get(i));
+        }
+
+        ObjectOrderTest.apply(merged, ops.toArray(), objects);
+
+        Assert.assertEquals(versions.get(150), merged);
+    }
+
+    private static ObjectOrder orderOf(final int... handles) {
+        final ObjectOrder order = new ObjectOrder();
+
+        for (final int handle : handles) {
+            order.add(handle);
+        }
+
+        return order;
+    }
+
+    private static void apply(final List<Integer> page, final int[] ops, final List<Integer> objects) {
+        int next = 0;
+
+        for (final int op : ops) {
+            final int index = ObjectOrder.indexOfOp(op);
+
+            if (ObjectOrder.isInsert(op)) {
+                page.add(index, objects.get(next++));
+            } else {
+                page.remove(index);
+            }
+        }
+
+        Assert.assertEquals(objects.size(), next);
+    }
+}
@@ -0,0 +1,129 @@
+package android.lib.pen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpatialIndexTest {
+    private static final float CELL_SIZE = 100;
+
+    @Test
+    public void queryFindsIntersectingObjectsOnce() {
+        final SpatialIndex index = new SpatialIndex(SpatialIndexTest.CELL_SIZE);
+
+        index.put(1, 10, 10, 20, 20);
+        index.put(2, 50, 50, 450, 60);
+        index.put(3, 500, 500, 510, 510);
+
+        Assert.assertArrayEquals(new int[] { 1, 2 }, SpatialIndexTest.query(index, 0, 0, 60, 60));
+        Assert.assertArrayEquals(new int[] { 2 }, SpatialIndexTest.query(index, 300, 55, 301, 56));
+        Assert.assertArrayEquals(new int[0], SpatialIndexTest.query(index, 200, 200, 400, 400));
+    }
+
+    @Test
+    public void pointQueryUsesTolerance() {
+        final SpatialIndex index  = new SpatialIndex(SpatialIndexTest.CELL_SIZE);
+        final IntArray     result = new IntArray();
+
+        index.put(1, 10, 10, 20, 20);
+
+        index.query(25, 25, 4, result);
+        Assert.assertEquals(0, result.size());
+
+        index.query(25, 25, 5, result);
+        Assert.assertArrayEquals(new int[] { 1 }, result.toArray());
+    }
+
+    @Test
+    public void putMovesAndRemoveForgets() {
+        final SpatialIndex index = new SpatialIndex(SpatialIndexTest.CELL_SIZE);
+
+        index.put(1, 10, 10, 20, 20);
+        index.put(1, 810, 810, 820, 820);
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertArrayEquals(new int[0], SpatialIndexTest.query(index, 0, 0, 50, 50));
+        Assert.assertArrayEquals(new int[] { 1 }, SpatialIndexTest.query(index, 800, 800, 850, 850));
+
+        index.remove(1);
+
+        Assert.assertEquals(0, index.size());
+        Assert.assertArrayEquals(new int[0], SpatialIndexTest.query(index, 800, 800, 850, 850));
+        Assert.assertEquals(SpatialIndex.NONE, index.nearest(815, 815, 1000));
+    }
+
+    @Test
+    public void largeObjectsAreFound() {
+        final SpatialIndex index = new SpatialIndex(SpatialIndexTest.CELL_SIZE);
+
+        // Overlaps far more cells than an object is stored in
+        index.put(1, 0, 0, 2000, 2000);
+        index.put(2, 1500, 1500, 1510, 1510);
+
+        Assert.assertArrayEquals(new int[] { 1, 2 }, SpatialIndexTest.query(index, 1490, 1490, 1520, 1520));
+        Assert.assertArrayEquals(new int[] { 1 }, SpatialIndexTest.query(index, 10, 10, 20, 20));
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        final SpatialIndex index  = new SpatialIndex(SpatialIndexTest.CELL_SIZE);
+        final Random       random = new Random(7);
+        final float[]      boxes  = new float[200 * 4];
+
+        for (int i = 0; i < boxes.length; i += 4) {
+            boxes[i]     = random.nextFloat() * 1400;
+            boxes[i + 1] = random.nextFloat() * 2500;
+            boxes[i + 2] = boxes[i] + random.nextFloat() * 40;
+            boxes[i + 3] = boxes[i + 1] + random.nextFloat() * 40;
+
+            index.put(i / 4, boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+        }
+
+        for (int n = 0; n < 500; n++) {
+            final float x = random.nextFloat() * 1440;
+            final float y = random.nextFloat() * 2560;
+
+            float best = Float.MAX_VALUE;
+
+            for (int i = 0; i < boxes.length; i += 4) {
+                best = Math.min(best, SpatialIndexTest.distanceSquared(boxes, i, x, y));
+            }
+
+            final int nearest = index.nearest(x, y, 10000);
+
+            Assert.assertNotEquals(SpatialIndex.NONE, nearest);
+            Assert.assertEquals(best, SpatialIndexTest.distanceSquared(boxes, nearest * 4, x, y), 0);
+        }
+    }
+
+    @Test
+    public void nearestHonoursMaxDistance() {
+        final SpatialIndex index = new SpatialIndex(SpatialIndexTest.CELL_SIZE);
+
+        index.put(1, 500, 500, 510, 510);
+
+        Assert.assertEquals(SpatialIndex.NONE, index.nearest(0, 0, 100));
+        Assert.assertEquals(1, index.nearest(0, 0, 800));
+    }
+
+    private static int[] query(final SpatialIndex index, final float left, final float top, final float right, final float bottom) {
+        final IntArray result = new IntArray();
+
+        index.query(left, top, right, bottom, result);
+
+        final int[] ids = result.toArray();
+
+        Arrays.sort(ids);
+
+        return ids;
+    }
+
+    private static float distanceSquared(final float[] boxes, final int i, final float x, final float y) {
+        final float dx = x < boxes[i] ? boxes[i] - x : x > boxes[i + 2] ? x - boxes[i + 2] : 0;
+        final float dy = y < boxes[i + 1] ? boxes[i + 1] - y : y > boxes[i + 3] ? y - boxes[i + 3] : 0;
+
+        return dx * dx + dy * dy;
+    }
+}
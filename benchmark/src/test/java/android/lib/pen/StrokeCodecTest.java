@@ -0,0 +1,79 @@
+package android.lib.pen;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StrokeCodecTest {
+    @Test
+    public void roundTripKeepsEveryValue() throws IOException {
+        final ArrayList<Stroke> strokes = new ArrayList<Stroke>();
+
+        strokes.add(new Stroke(0xff1a237e, 4.5f, new float[] { 0, 10.25f, -3 }, new float[] { 1, Float.MAX_VALUE, 0.001f }, new float[] { 0.1f, 0.5f, 1 }));
+        strokes.add(new Stroke(0x80000000, 12, new float[] { 7 }, new float[] { 8 }, null));
+        strokes.add(new Stroke(0, 1, new float[0], new float[0], null));
+
+        final byte[] bytes = StrokeCodec.encode(strokes);
+
+        Assert.assertEquals(StrokeCodec.getEncodedSize(strokes), bytes.length);
+        StrokeCodecTest.assertStrokes(strokes, StrokeCodec.decode(bytes));
+    }
+
+    @Test
+    public void roundTripOfGeneratedPage() throws IOException {
+        final WorkloadGenerator generator = new WorkloadGenerator(42, WorkloadProfile.SKETCHES, 1440, 2560);
+        final ArrayList<Stroke> strokes   = generator.nextPage();
+
+        StrokeCodecTest.assertStrokes(strokes, StrokeCodec.decode(StrokeCodec.encode(strokes)));
+    }
+
+    @Test
+    public void emptyList() throws IOException {
+        Assert.assertTrue(StrokeCodec.decode(StrokeCodec.encode(new ArrayList<Stroke>())).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedVersion() throws IOException {
+        final byte[] bytes = StrokeCodec.encode(new ArrayList<Stroke>());
+
+        bytes[0] = StrokeCodec.VERSION + 1;
+
+        StrokeCodec.decode(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedInput() throws IOException {
+        final ArrayList<Stroke> strokes = new ArrayList<Stroke>();
+
+        strokes.add(new Stroke(0, 1, new float[] { 1, 2 }, new float[] { 3, 4 }, null));
+
+        final byte[] bytes = StrokeCodec.encode(strokes);
+
+        StrokeCodec.read(new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 1)));
+    }
+
+    private static void assertStrokes(final List<Stroke> expected, final List<Stroke> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            final Stroke e = expected.get(i);
+            final Stroke a = actual.get(i);
+
+            Assert.assertEquals(e.getColor(), a.getColor());
+            Assert.assertEquals(e.getSize(), a.getSize(), 0);
+            Assert.assertEquals(e.getPointCount(), a.getPointCount());
+            Assert.assertEquals(e.hasPressures(), a.hasPressures());
+
+            for (int j = 0; j < e.getPointCount(); j++) {
+                Assert.assertEquals(e.getX(j), a.getX(j), 0);
+                Assert.assertEquals(e.getY(j), a.getY(j), 0);
+                Assert.assertEquals(e.getPressure(j), a.getPressure(j), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkloadGeneratorTest {
+    private static final int WIDTH  = 1440;
+    private static final int HEIGHT = 2560;
+
+    @Test
+    public void sameSeedGeneratesSameStrokes() {
+        final WorkloadGenerator first  = new WorkloadGenerator(1234, WorkloadProfile.NOTES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+        final WorkloadGenerator second = new WorkloadGenerator(1234, WorkloadProfile.NOTES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertArrayEquals(StrokeCodec.encode(first.nextPage()), StrokeCodec.encode(second.nextPage()));
+        }
+
+        Assert.assertEquals(first.getPointCount(), second.getPointCount());
+    }
+
+    @Test
+    public void closeSeedsGenerateDifferentStrokes() {
+        final WorkloadGenerator first  = new WorkloadGenerator(1, WorkloadProfile.NOTES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+        final WorkloadGenerator second = new WorkloadGenerator(2, WorkloadProfile.NOTES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+
+        Assert.assertFalse(Arrays.equals(StrokeCodec.encode(first.nextPage()), StrokeCodec.encode(second.nextPage())));
+    }
+
+    @Test
+    public void zeroSeedGeneratesStrokes() {
+        final WorkloadGenerator generator = new WorkloadGenerator(0, WorkloadProfile.NOTES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+
+        Assert.assertFalse(generator.nextPage().isEmpty());
+    }
+
+    @Test
+    public void strokesFollowProfile() {
+        final WorkloadProfile   profile   = new WorkloadProfile(1, 20, 30, 5, 50, WorkloadProfile.PRESSURE_NONE, 0);
+        final WorkloadGenerator generator = new WorkloadGenerator(99, profile, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+        final ArrayList<Stroke> strokes   = generator.nextPage();
+
+        Assert.assertTrue(strokes.size() >= 20 && strokes.size() <= 30);
+
+        long points = 0;
+
+        for (final Stroke stroke : strokes) {
+            Assert.assertTrue(stroke.getPointCount() >= 5 && stroke.getPointCount() <= 50);
+            Assert.assertFalse(stroke.hasPressures());
+
+            for (int i = 0; i < stroke.getPointCount(); i++) {
+                Assert.assertTrue(stroke.getX(i) >= 0 && stroke.getX(i) <= WorkloadGeneratorTest.WIDTH);
+                Assert.assertTrue(stroke.getY(i) >= 0 && stroke.getY(i) <= WorkloadGeneratorTest.HEIGHT);
+            }
+
+            points += stroke.getPointCount();
+        }
+
+        Assert.assertEquals(points, generator.getPointCount());
+    }
+
+    @Test
+    public void sameSeedGeneratesSameDocument() {
+        final MemoryDocumentBackend first  = new MemoryDocumentBackend(WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+        final MemoryDocumentBackend second = new MemoryDocumentBackend(WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT);
+
+        final int[] firstImages  = new WorkloadGenerator(5, WorkloadProfile.SKETCHES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT).generate(first);
+        final int[] secondImages = new WorkloadGenerator(5, WorkloadProfile.SKETCHES, WorkloadGeneratorTest.WIDTH, WorkloadGeneratorTest.HEIGHT).generate(second);
+
+        Assert.assertArrayEquals(firstImages, secondImages);
+        Assert.assertEquals(WorkloadProfile.SKETCHES.getPageCount(), first.getPageCount());
+        Assert.assertEquals(first.getPageCount(), second.getPageCount());
+
+        for (int i = 0; i < first.getPageCount(); i++) {
+            Assert.assertArrayEquals(StrokeCodec.encode(first.getStrokes(i)), StrokeCodec.encode(second.getStrokes(i)));
+            Assert.assertTrue(first.canUndo(i));
+        }
+    }
+}
@@ -14,6 +14,8 @@ final class Constants {
 
     public static final String EXTRA_SPD_PATH = "SPD_PATH"; //$NON-NLS-1$
 
+    public static final String HISTORY_DIRECTORY = "history"; //$NON-NLS-1$
+
     public static final int CANVAS_BACKGROUND_COLOR = Color.WHITE;
     public static final int DEFAULT_PEN_COLOR       = Color.BLUE;
     public static final int DEFAULT_PEN_SIZE        = 24;
@@ -26,6 +28,12 @@ final class Constants {
     public static final float THUMBNAIL_SCALE   = 0.2f;
     public static final int   THUMBNAIL_QUALITY = 80;
 
+    public static final long THUMBNAIL_UPDATE_INTERVAL = 200;
+    public static final long METRICS_EXPORT_INTERVAL   = 60 * 1000;
+
+    public static final long HISTORY_PAGE_BYTES     = 4 * 1024 * 1024;
+    public static final long HISTORY_DOCUMENT_BYTES = 16 * 1024 * 1024;
+
     private Constants() {
     }
 }
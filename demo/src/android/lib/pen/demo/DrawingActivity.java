@@ -8,6 +8,13 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.ProgressDialog;
 import android.content.DialogInterface;
+import android.lib.pen.CompactionPolicy;
+import android.lib.pen.HistoryPolicy;
+import android.lib.pen.InitTimings;
+import android.lib.pen.LogcatMetricsExporter;
+import android.lib.pen.OnReadyListener;
+import android.lib.pen.PenEvent;
+import android.lib.pen.PenEventListener;
 import android.lib.pen.PenService;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -23,7 +30,7 @@ import com.samsung.android.sdk.pen.document.SpenInvalidPasswordException;
 import com.samsung.android.sdk.pen.document.SpenUnsupportedTypeException;
 import com.samsung.android.sdk.pen.document.SpenUnsupportedVersionException;
 
-public final class DrawingActivity extends Activity implements Runnable, OnPageUpdatedListener, OnReplayCompletedListener {
+public final class DrawingActivity extends Activity implements Runnable, OnReadyListener, PenEventListener {
     private DrawingService service;
 
     private ImageView imageView;
@@ -98,45 +105,35 @@ public final class DrawingActivity extends Activity implements Runnable, OnPageU
     }
 
     @Override
-    public void onPageUpdated() {
-        // Updates thumbnail whenever the page is changed
-        this.updateThumbnail();
-    }
-
-    @Override
-    public void onReplayCompleted() {
-        if (this.service != null) {
+    public void onEvent(final PenEvent event) {
+        if (event.getType() == PenEvent.TYPE_REPLAY_COMPLETED) {
             // Makes sure the replay is stopped
             this.service.stopReplay();
 
             // (Optional) Records strokes for replay later. Mostly for eye-candy.
             this.service.startRecord();
+        } else {
+            // Updates thumbnail whenever the page is changed
+            this.updateThumbnail();
         }
     }
 
     @Override
     public void run() {
-        if (this.spdPath == null) {
-            // Creates a new drawing and prepares it for editing
-            if (this.prepareEditNewDrawing()) {
-                // (Optional) Records strokes for replay later. Mostly for eye-candy.
-                this.service.startRecord();
-            }
-        } else {
-            // Loads an existing drawing and prepares it for editing
-            if (this.prepareEditOldDrawing()) {
-                // (Optional) Replay strokes. Mostly for eye-candy.
-                this.service.startReplay();
-            }
-        }
+        final DisplayMetrics metrics = new DisplayMetrics();
+        this.getWindowManager().getDefaultDisplay().getMetrics(metrics);
+
+        // Initializes the Pen package, and loads the .spd file if any, on a worker thread. The canvas is ready when onReady() is called.
+        this.service.initAsync(metrics.widthPixels, metrics.heightPixels, Constants.CANVAS_BACKGROUND_COLOR, null, PenService.MODE_FIT, Constants.DEFAULT_PEN_COLOR, Constants.DEFAULT_PEN_SIZE, Constants.DEFAULT_ERASER_SIZE, this.spdPath, this);
     }
 
-    /**
-     * Initializes PenService for a blank drawing.
-     * @return <code>true</code> if PenService is initialized successfully; otherwise, <code>false</code>.
-     */
-    private boolean prepareEditNewDrawing() {
-        if (this.initCanvas()) {
+    @Override
+    public void onReady(final InitTimings timings) {
+        Log.i(this.getClass().getName(), "PenService initialized: " + timings); //$NON-NLS-1$
+
+        this.initCanvas();
+
+        if (this.spdPath == null) {
             // Creates a new page for the drawing.
             // Here we use a white background. You may use an image background instead.
             // If an image background is used, the color background will be ignored because transparent image background is not supported.
@@ -145,74 +142,72 @@ public final class DrawingActivity extends Activity implements Runnable, OnPageU
             // Updates the thumbnail after the page is changed.
             this.updateThumbnail();
 
-            return true;
-        }
+            // (Optional) Records strokes for replay later. Mostly for eye-candy.
+            this.service.startRecord();
+        } else {
+            // Updates the thumbnail after the page is changed.
+            this.updateThumbnail();
 
-        return false;
+            // (Optional) Replay strokes. Mostly for eye-candy.
+            this.service.startReplay();
+        }
     }
 
-    /**
-     * Initializes PenService for an existing drawing.
-     * @return <code>true</code> if PenService is initialized successfully; otherwise, <code>false</code>.
-     */
-    private boolean prepareEditOldDrawing() {
-        if (this.initCanvas()) {
-            try {
-                // Loads an existing .spd file and make it editable.
-                this.service.load(this.spdPath, true);
-
-                // Updates the thumbnail after the page is changed.
-                this.updateThumbnail();
-
-                return true;
-            } catch (final SpenInvalidPasswordException e) { // If the .spd file is password-protected, we must use this.service.load(this.spdPath, password, true) instead.
-                Toast.makeText(this, R.string.message_spd_locked, Toast.LENGTH_SHORT).show();
+    @Override
+    public void onFailed(final Exception e) {
+        if (e instanceof SpenInvalidPasswordException) { // If the .spd file is password-protected, we must use this.service.load(this.spdPath, password, true) instead.
+            Toast.makeText(this, R.string.message_spd_locked, Toast.LENGTH_SHORT).show();
 
-                this.finish();
-            } catch (final SpenUnsupportedTypeException e) { // The .spd file is not supported for whatever reason
-                Toast.makeText(this, R.string.message_spd_unsupported, Toast.LENGTH_SHORT).show();
+            this.finish();
+        } else if (e instanceof SpenUnsupportedTypeException) { // The .spd file is not supported for whatever reason
+            Toast.makeText(this, R.string.message_spd_unsupported, Toast.LENGTH_SHORT).show();
 
-                this.finish();
-            } catch (final SpenUnsupportedVersionException e) {
-                Toast.makeText(this, R.string.message_spen_library_update_required, Toast.LENGTH_SHORT).show();
+            this.finish();
+        } else if (e instanceof SpenUnsupportedVersionException) {
+            Toast.makeText(this, R.string.message_spen_library_update_required, Toast.LENGTH_SHORT).show();
 
-                this.finish();
-            } catch (final IOException e) {
-                Toast.makeText(this, R.string.message_spd_not_found, Toast.LENGTH_SHORT).show();
+            this.finish();
+        } else if (e instanceof IOException) {
+            Toast.makeText(this, R.string.message_spd_not_found, Toast.LENGTH_SHORT).show();
 
-                this.finish();
-            }
+            this.finish();
         }
 
-        return false;
+        // Otherwise, the Pen package is not supported, and PenService has already told the user
     }
 
     /**
-     * Initializes the canvas and sets its dimensions the same as the screen size.
-     * @return <code>true</code> if the PenService is initialized successfully; otherwise, <code>false</code>.
+     * Sets up the canvas after PenService is initialized.
      */
-    private boolean initCanvas() {
+    private void initCanvas() {
         final DisplayMetrics metrics = new DisplayMetrics();
         this.getWindowManager().getDefaultDisplay().getMetrics(metrics);
 
-        if (this.service.init(metrics.widthPixels, metrics.heightPixels, Constants.CANVAS_BACKGROUND_COLOR, null, PenService.MODE_FIT, Constants.DEFAULT_PEN_COLOR, Constants.DEFAULT_PEN_SIZE, Constants.DEFAULT_ERASER_SIZE)) {
-            // (Optional) If the canvas is larger than the screen, we can enable "smart scrolling". It will automatically scroll with the specified speed when the pen is near the specified edge pixels.
-            this.service.setScrollEnabled(false, (int)(Math.max(metrics.widthPixels, metrics.heightPixels) * Constants.CANVAS_SCROLL_EDGE), PenService.SPEED_NORMAL);
+        // (Optional) If the canvas is larger than the screen, we can enable "smart scrolling". It will automatically scroll with the specified speed when the pen is near the specified edge pixels.
+        this.service.setScrollEnabled(false, (int)(Math.max(metrics.widthPixels, metrics.heightPixels) * Constants.CANVAS_SCROLL_EDGE), PenService.SPEED_NORMAL);
 
-            // (Optional) Enables zooming for double-tap (by finger or pen)
-            this.service.setZoomEnabled(true, Constants.CANVAS_ZOOM_SCALE);
+        // (Optional) Enables zooming for double-tap (by finger or pen)
+        this.service.setZoomEnabled(true, Constants.CANVAS_ZOOM_SCALE);
 
-            this.service.setButtonVisibility(PenService.BUTTON_ZOOM, View.GONE);
+        this.service.setButtonVisibility(PenService.BUTTON_ZOOM, View.GONE);
 
-            // Attaches OnPageUpdatedListener after everything is initialized
-            this.service.setOnPageUpdatedListener(this);
+        // (Optional) Keeps only the most recent undo history in memory. Older history is spilled to the cache directory and reloaded when needed.
+        this.service.setHistoryPolicy(new HistoryPolicy(Constants.HISTORY_PAGE_BYTES, Constants.HISTORY_DOCUMENT_BYTES, new File(this.getCacheDir(), Constants.HISTORY_DIRECTORY)));
 
-            this.updateThumbnail();
+        // Undo and redo walk through the edits of all pages, not just the current one
+        this.service.setDocumentHistoryEnabled(true);
 
-            return true;
-        }
+        // Quick series of strokes or eraser passes are undone at once, and old history is kept coarser
+        this.service.setCompactionPolicy(new CompactionPolicy());
 
-        return false;
+        // (Optional) Logs how long loads, saves, thumbnails, undo and redo take, e.g. to find out why saving is slow on some devices
+        this.service.setMetricsEnabled(true);
+        this.service.getMetrics().addExporter(new LogcatMetricsExporter());
+        this.service.getMetrics().setExportInterval(Constants.METRICS_EXPORT_INTERVAL);
+
+        // Listens to the page changes after everything is initialized. The thumbnail is updated at most once per interval, however fast the user draws.
+        this.service.getEventBus().subscribe(this, PenEvent.TYPE_COMMIT | PenEvent.TYPE_UNDO | PenEvent.TYPE_REDO | PenEvent.TYPE_HISTORY_RESTORED, null, Constants.THUMBNAIL_UPDATE_INTERVAL);
+        this.service.getEventBus().subscribe(this, PenEvent.TYPE_REPLAY_COMPLETED);
     }
 
     /**
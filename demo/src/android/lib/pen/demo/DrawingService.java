@@ -5,59 +5,17 @@ import android.lib.pen.PenService;
 import android.view.MotionEvent;
 import android.view.View;
 
-import com.samsung.android.sdk.pen.document.SpenPageDoc;
-
 final class DrawingService extends PenService {
-    private View.OnTouchListener      onTouchListener;
-    private OnPageUpdatedListener     onPageUpdatedListener;
-    private OnReplayCompletedListener onReplayCompletedListener;
+    private View.OnTouchListener onTouchListener;
 
     public DrawingService(final Activity activity, final View rootLayout) {
         super(activity, rootLayout);
     }
 
-    @Override
-    public void onCommit(final SpenPageDoc doc) {
-        super.onCommit(doc);
-
-        // The page is changed, so update the thumbnail (if any).
-        if (this.onPageUpdatedListener != null) {
-            this.onPageUpdatedListener.onPageUpdated();
-        }
-    }
-
-    @Override
-    public void undo() {
-        super.undo();
-
-        // The page is changed, so update the thumbnail (if any).
-        if (this.onPageUpdatedListener != null) {
-            this.onPageUpdatedListener.onPageUpdated();
-        }
-    }
-
-    @Override
-    public void redo() {
-        super.redo();
-
-        // The page is changed, so update the thumbnail (if any).
-        if (this.onPageUpdatedListener != null) {
-            this.onPageUpdatedListener.onPageUpdated();
-        }
-    }
-
     public void setOnTouchListener(final View.OnTouchListener listener) {
         this.onTouchListener = listener;
     }
 
-    public void setOnPageUpdatedListener(final OnPageUpdatedListener listener) {
-        this.onPageUpdatedListener = listener;
-    }
-
-    public void setOnReplayCompletedListener(final OnReplayCompletedListener listener) {
-        this.onReplayCompletedListener = listener;
-    }
-
     @Override
     public boolean onTouch(final View view, final MotionEvent event) {
         if (this.onTouchListener == null) {
@@ -66,11 +24,4 @@ final class DrawingService extends PenService {
 
         return this.onTouchListener.onTouch(view, event);
     }
-
-    @Override
-    public void onCompleted() {
-        if (this.onReplayCompletedListener != null) {
-            this.onReplayCompletedListener.onReplayCompleted();
-        }
-    }
 }
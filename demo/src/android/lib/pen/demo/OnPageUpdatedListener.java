@@ -1,8 +0,0 @@
-package android.lib.pen.demo;
-
-/**
- * Useful for updating the thumbnail when a Pen page is changed.
- */
-interface OnPageUpdatedListener {
-    void onPageUpdated();
-}
@@ -1,5 +0,0 @@
-package android.lib.pen.demo;
-
-interface OnReplayCompletedListener {
-    void onReplayCompleted();
-}
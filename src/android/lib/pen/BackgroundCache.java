@@ -0,0 +1,153 @@
+package android.lib.pen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Keeps downsampled copies of background images, shared by all pages and documents of the process.
+ * <p>Each distinct image is decoded once at a size just large enough for the canvas, and saved to the cache directory.
+ * Pages then use the small copy instead of the original image, which may be many times larger than the canvas.</p>
+ */
+final class BackgroundCache {
+    private static final String DIRECTORY    = "pen_backgrounds"; //$NON-NLS-1$
+    private static final String MIME_PNG     = "image/png"; //$NON-NLS-1$
+    private static final int    MAX_ENTRIES  = 64;
+    private static final int    JPEG_QUALITY = 90;
+
+    private static BackgroundCache instance;
+
+    private final File                     directory;
+    private final LruCache<String, String> files = new LruCache<String, String>(BackgroundCache.MAX_ENTRIES);
+
+    private BackgroundCache(final File directory) {
+        this.directory = directory;
+    }
+
+    static synchronized BackgroundCache getInstance(final Context context) {
+        if (BackgroundCache.instance == null) {
+            BackgroundCache.instance = new BackgroundCache(new File(context.getApplicationContext().getCacheDir(), BackgroundCache.DIRECTORY));
+        }
+
+        return BackgroundCache.instance;
+    }
+
+    /**
+     * Gets a copy of an image that is downsampled to fit the specified size.
+     * @param path the absolute path of the image.
+     * @param width the width of the canvas.
+     * @param height the height of the canvas, or <code>0</code> to fit the width only.
+     * @return the absolute path of the downsampled copy, or <code>path</code> if the image is already small enough or cannot be decoded.
+     */
+    synchronized String get(final String path, final int width, final int height) {
+        final File   source = new File(path);
+        final String key    = path + '|' + source.lastModified() + '|' + source.length() + '|' + width + 'x' + height;
+        final String file   = this.files.get(key);
+
+        if (file != null) {
+            return file;
+        }
+
+        final String result = this.decode(source, BackgroundCache.hash(key), width, height);
+
+        this.files.put(key, result);
+
+        return result;
+    }
+
+    private String decode(final File source, final String name, final int width, final int height) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+
+        options.inJustDecodeBounds = true;
+
+        BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return source.getAbsolutePath();
+        }
+
+        final int sampleSize = Downsampling.sampleSize(options.outWidth, options.outHeight, width, height);
+
+        if (sampleSize == 1) {
+            return source.getAbsolutePath();
+        }
+
+        final boolean png    = BackgroundCache.MIME_PNG.equals(options.outMimeType);
+        final File    target = new File(this.directory, name + (png ? ".png" : ".jpg")); //$NON-NLS-1$ //$NON-NLS-2$
+
+        // A copy made by a previous process can be reused
+        if (target.isFile()) {
+            return target.getAbsolutePath();
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize       = sampleSize;
+
+        final Bitmap bitmap = BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+
+        if (bitmap == null) {
+            return source.getAbsolutePath();
+        }
+
+        OutputStream outputStream = null;
+
+        try {
+            if (!this.directory.mkdirs() && !this.directory.isDirectory()) {
+                throw new IOException("Cannot create cache directory " + this.directory); //$NON-NLS-1$
+            }
+
+            final File temp = new File(this.directory, name + ".tmp"); //$NON-NLS-1$
+
+            outputStream = new FileOutputStream(temp);
+
+            bitmap.compress(png ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, BackgroundCache.JPEG_QUALITY, outputStream);
+
+            outputStream.close();
+            outputStream = null;
+
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot create " + target); //$NON-NLS-1$
+            }
+
+            return target.getAbsolutePath();
+        } catch (final IOException e) {
+            Log.w(this.getClass().getName(), e.getMessage(), e);
+
+            return source.getAbsolutePath();
+        } finally {
+            bitmap.recycle();
+
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (final IOException e) {
+                    Log.w(this.getClass().getName(), e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static String hash(final String key) {
+        try {
+            final byte[]        digest  = MessageDigest.getInstance("MD5").digest(key.getBytes()); //$NON-NLS-1$
+            final StringBuilder builder = new StringBuilder();
+
+            for (final byte b : digest) {
+                builder.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The checkpoints of the history log of a page: the versions saved as a full copy of the page, and the files they are saved to,
+ * in ascending order of version.
+ * <p>A file is <code>null</code> if the page was empty at that version. This class does not depend on Android.</p>
+ */
+final class CheckpointList {
+    private final ArrayList<String> files    = new ArrayList<String>();
+    private final IntArray          versions = new IntArray();
+
+    int size() {
+        return this.versions.size();
+    }
+
+    int getVersion(final int index) {
+        return this.versions.get(index);
+    }
+
+    String getFile(final int index) {
+        return this.files.get(index);
+    }
+
+    /**
+     * Finds the last checkpoint at or before a version.
+     * @return the index of the checkpoint, or <code>-1</code> if there is none.
+     */
+    int indexBefore(final int version) {
+        int index = this.versions.size() - 1;
+
+        while (index >= 0 && this.versions.get(index) > version) {
+            index--;
+        }
+
+        return index;
+    }
+
+    /**
+     * Gets the version of the last checkpoint at or before a version.
+     * @return the version of the checkpoint, or <code>0</code>, the base version, if there is none.
+     */
+    int versionBefore(final int version) {
+        final int index = this.indexBefore(version);
+
+        return index < 0 ? 0 : this.versions.get(index);
+    }
+
+    /**
+     * Adds a checkpoint, keeping the checkpoints in ascending order of version.
+     */
+    void add(final int version, final String file) {
+        final int index = this.indexBefore(version) + 1;
+
+        this.files.add(index, file);
+        this.versions.add(index, version);
+    }
+
+    /**
+     * Removes the checkpoints after a version, e.g. when a new commit discards the versions that could be redone.
+     * @param removedFiles the list to add the files of the removed checkpoints to, to delete them.
+     */
+    void truncate(final int version, final List<String> removedFiles) {
+        for (int i = this.versions.size(); --i >= 0 && this.versions.get(i) > version;) {
+            this.remove(i, removedFiles);
+        }
+    }
+
+    /**
+     * Updates the checkpoints after the versions from <code>first + 1</code> to <code>end</code> are merged into version <code>first + 1</code>.
+     * <p>The checkpoints of the intermediate versions are removed, as those versions no longer exist, and the later versions are renumbered.</p>
+     * @param removedFiles the list to add the files of the removed checkpoints to, to delete them.
+     */
+    void compact(final int first, final int end, final List<String> removedFiles) {
+        final int removed = end - first - 1;
+
+        for (int i = this.versions.size(); --i >= 0;) {
+            final int version = this.versions.get(i);
+
+            if (version >= end) {
+                this.versions.set(i, version - removed);
+            } else if (version > first) {
+                this.remove(i, removedFiles);
+            }
+        }
+    }
+
+    private void remove(final int index, final List<String> removedFiles) {
+        final String file = this.files.remove(index);
+
+        this.versions.removeAt(index);
+
+        if (file != null) {
+            removedFiles.add(file);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package android.lib.pen;
+
+/**
+ * Reduces the number of history entries of long drawing sessions.
+ * <p>Consecutive actions made with the same tool on the same page within the merge window become a single history entry,
+ * so that a quick series of strokes or eraser passes is undone at once. If a {@link HistoryPolicy} is also set, older history entries
+ * beyond the most recent precise ones are merged into coarser entries in the history log.</p>
+ * @see PenService#setCompactionPolicy(CompactionPolicy)
+ */
+public final class CompactionPolicy {
+    /**
+     * The default merge window, in milliseconds.
+     */
+    public static final long DEFAULT_MERGE_WINDOW = 1000;
+
+    /**
+     * The default number of most recent history entries that are never merged into coarser ones.
+     */
+    public static final int DEFAULT_PRECISE_COUNT = 64;
+
+    /**
+     * The default number of older history entries merged into a coarser one.
+     */
+    public static final int DEFAULT_COARSE_SIZE = 8;
+
+    private final long mergeWindow;
+    private final int  preciseCount;
+    private final int  coarseSize;
+
+    /**
+     * Creates a new compaction policy with the default settings.
+     */
+    public CompactionPolicy() {
+        this(CompactionPolicy.DEFAULT_MERGE_WINDOW, CompactionPolicy.DEFAULT_PRECISE_COUNT, CompactionPolicy.DEFAULT_COARSE_SIZE);
+    }
+
+    /**
+     * Creates a new compaction policy.
+     * @param mergeWindow the maximum time, in milliseconds, between the end of an action and the start of the next one for both to be merged,
+     * or <code>0</code> to not merge actions.
+     * @param preciseCount the number of most recent history entries of a page that are never merged into coarser ones.
+     * @param coarseSize the number of older history entries merged into a coarser one, or <code>1</code> to not merge older history entries.
+     */
+    public CompactionPolicy(final long mergeWindow, final int preciseCount, final int coarseSize) {
+        if (mergeWindow < 0 || preciseCount < 0 || coarseSize < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.mergeWindow  = mergeWindow;
+        this.preciseCount = preciseCount;
+        this.coarseSize   = coarseSize;
+    }
+
+    /**
+     * Gets the maximum time between the end of an action and the start of the next one for both to be merged.
+     * @return the maximum time, in milliseconds, or <code>0</code> if actions are not merged.
+     */
+    public long getMergeWindow() {
+        return this.mergeWindow;
+    }
+
+    /**
+     * Gets the number of most recent history entries of a page that are never merged into coarser ones.
+     * @return the number of most recent history entries of a page that are never merged into coarser ones.
+     */
+    public int getPreciseCount() {
+        return this.preciseCount;
+    }
+
+    /**
+     * Gets the number of older history entries merged into a coarser one.
+     * @return the number of older history entries merged into a coarser one, or <code>1</code> if older history entries are not merged.
+     */
+    public int getCoarseSize() {
+        return this.coarseSize;
+    }
+}
@@ -0,0 +1,125 @@
+package android.lib.pen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The pages, strokes and history of a document, independent of where they are kept.
+ * <p>{@link SpenDocumentBackend} keeps them in a {@link com.samsung.android.sdk.pen.document.SpenNoteDoc Pen document}, and needs the Pen package.
+ * {@link MemoryDocumentBackend} keeps them in memory and runs on any Java VM, e.g. in a batch tool or a benchmark on a server.</p>
+ * <p>Every change to the strokes of a page is a step in the history of that page, that can be undone and redone.
+ * Pages are identified by their index, which changes when pages are removed or moved, or by their ID, which does not.</p>
+ * <p>{@link PenService} appends, removes and moves pages, imports strokes and saves its document through a {@link SpenDocumentBackend}, so that
+ * the same document logic runs in the service and, with a {@link MemoryDocumentBackend}, without the Pen package, e.g. in a batch tool.
+ * Its canvas, history log and caches still work on the page objects of the Pen package.</p>
+ * <p>This interface does not depend on Android.</p>
+ * @see PenService#getDocumentBackend()
+ */
+public interface DocumentBackend extends Closeable {
+    /**
+     * Gets the width of the pages.
+     * @return the width of the pages, in pixels.
+     */
+    int getWidth();
+
+    /**
+     * Gets the height of the pages.
+     * @return the height of the pages, in pixels.
+     */
+    int getHeight();
+
+    int getPageCount();
+
+    /**
+     * Gets the ID of a page.
+     * @param page the page index.
+     * @return the ID of the page.
+     */
+    String getPageId(int page);
+
+    /**
+     * Gets the index of a page.
+     * @param pageId the ID of the page.
+     * @return the page index, or <code>-1</code> if there is no such page.
+     */
+    int getPageIndex(String pageId);
+
+    /**
+     * Gets the background color of a page.
+     * @param page the page index.
+     * @return the ARGB background color of the page.
+     */
+    int getBackgroundColor(int page);
+
+    /**
+     * Appends a blank page, with an empty history.
+     * @param backgroundColor the ARGB background color of the page.
+     * @return the index of the new page.
+     */
+    int appendPage(int backgroundColor);
+
+    /**
+     * Removes a page, together with its history.
+     * @param page the page index.
+     */
+    void removePage(int page);
+
+    /**
+     * Moves a page to another index.
+     * @param page the page index.
+     * @param step the number of indices to move the page by, forward if positive, or backward if negative.
+     */
+    void movePage(int page, int step);
+
+    /**
+     * Gets the strokes of a page, from the bottom one to the top one.
+     * @param page the page index.
+     * @return a copy of the list of the strokes of the page.
+     */
+    List<Stroke> getStrokes(int page);
+
+    /**
+     * Adds strokes on top of a page, as one history step.
+     * @param page the page index.
+     * @param strokes the strokes to add, in page coordinates.
+     */
+    void addStrokes(int page, List<Stroke> strokes);
+
+    /**
+     * Removes strokes of a page, as one history step.
+     * @param page the page index.
+     * @param start the index of the first stroke to remove, as in {@link #getStrokes(int)}.
+     * @param count the number of strokes to remove.
+     */
+    void removeStrokes(int page, int start, int count);
+
+    boolean canUndo(int page);
+
+    boolean canRedo(int page);
+
+    /**
+     * Undoes the last history step of a page, if any.
+     * @param page the page index.
+     */
+    void undo(int page);
+
+    /**
+     * Redoes the last undone history step of a page, if any.
+     * @param page the page index.
+     */
+    void redo(int page);
+
+    /**
+     * Determines if the document is changed since it is created, loaded or saved.
+     * @return <code>true</code> if the document is changed; otherwise, <code>false</code>.
+     */
+    boolean isChanged();
+
+    /**
+     * Saves the document, without its history.
+     * @param path the path of the file to save to.
+     * @throws IOException if the file cannot be written.
+     */
+    void save(String path) throws IOException;
+}
@@ -0,0 +1,36 @@
+package android.lib.pen;
+
+/**
+ * The arithmetic of the downsampled copies of the background images, and of the low-resolution layers of the pages.
+ * <p>This class does not depend on Android, so that it can be tested and benchmarked on any Java VM.</p>
+ */
+final class Downsampling {
+    private static final double LOG_2 = Math.log(2);
+
+    private Downsampling() {
+    }
+
+    /**
+     * Computes the largest power-of-two sample size that keeps an image at least as large as the specified size.
+     * @param height the height to fit, or <code>0</code> to fit the width only.
+     * @return the sample size, e.g. to decode the image with, or <code>1</code> if the image should not be downsampled.
+     */
+    static int sampleSize(final int imageWidth, final int imageHeight, final int width, final int height) {
+        int sampleSize = 1;
+
+        if (width > 0) {
+            while (imageWidth / (sampleSize * 2) >= width && (height <= 0 || imageHeight / (sampleSize * 2) >= height)) {
+                sampleSize *= 2;
+            }
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * Rounds a positive ratio up to the nearest power of two, e.g. <code>0.3</code> to <code>0.5</code>.
+     */
+    static float ceilPowerOfTwo(final float ratio) {
+        return (float)Math.pow(2, Math.ceil(Math.log(ratio) / Downsampling.LOG_2));
+    }
+}
@@ -0,0 +1,75 @@
+package android.lib.pen;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import android.util.Log;
+
+/**
+ * Appends the {@link PenMetrics metrics} of a {@link PenService} to a file, one JSON object per line, e.g. to upload it with a bug report.
+ * <p>Each line has the time of the export in milliseconds since the epoch and, for each recorded operation, its count, failures, bytes,
+ * and its p50, p95, p99 and maximum durations in nanoseconds.</p>
+ */
+public final class FileMetricsExporter implements MetricsExporter {
+    private final File file;
+    private final long maxBytes;
+
+    /**
+     * Creates an exporter that appends to a file.
+     * @param file the file to append to.
+     * @param maxBytes the size beyond which the file is started over, so that it does not grow forever.
+     */
+    public FileMetricsExporter(final File file, final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.file     = file;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void export(final PenMetrics.Snapshot snapshot) {
+        final boolean append = this.file.length() < this.maxBytes;
+
+        Writer writer = null;
+
+        try {
+            writer = new FileWriter(this.file, append);
+            writer.write(FileMetricsExporter.toJson(snapshot));
+            writer.write('\n');
+        } catch (final IOException e) {
+            Log.w(this.getClass().getName(), e.getMessage(), e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    Log.w(this.getClass().getName(), e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    static String toJson(final PenMetrics.Snapshot snapshot) {
+        final StringBuilder builder = new StringBuilder("{\"time\":").append(snapshot.getTime()); //$NON-NLS-1$
+
+        for (int i = 0; i < PenMetrics.Snapshot.getOperationCount(); i++) {
+            if (snapshot.getCount(i) > 0) {
+                builder.append(",\"").append(PenMetrics.Snapshot.getName(i)).append("\":{") //$NON-NLS-1$ //$NON-NLS-2$
+                .append("\"count\":").append(snapshot.getCount(i)) //$NON-NLS-1$
+                .append(",\"failures\":").append(snapshot.getFailureCount(i)) //$NON-NLS-1$
+                .append(",\"bytes\":").append(snapshot.getBytes(i)) //$NON-NLS-1$
+                .append(",\"p50\":").append(snapshot.getPercentile(i, 50)) //$NON-NLS-1$
+                .append(",\"p95\":").append(snapshot.getPercentile(i, 95)) //$NON-NLS-1$
+                .append(",\"p99\":").append(snapshot.getPercentile(i, 99)) //$NON-NLS-1$
+                .append(",\"max\":").append(snapshot.getMax(i)) //$NON-NLS-1$
+                .append('}');
+            }
+        }
+
+        return builder.append('}').toString();
+    }
+}
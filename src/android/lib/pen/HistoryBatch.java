@@ -0,0 +1,33 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+
+/**
+ * Collects the changes of several undo or redo steps of a {@link SpenPageDoc page}, so that the canvas can be refreshed once for all of them.
+ */
+final class HistoryBatch {
+    private final ArrayList<SpenPageDoc.HistoryUpdateInfo> infos = new ArrayList<SpenPageDoc.HistoryUpdateInfo>();
+
+    /**
+     * The number of steps undone or redone.
+     */
+    int steps;
+
+    /**
+     * <code>true</code> if the page was rebuilt from the history log, in which case the whole canvas must be refreshed.
+     */
+    boolean restored;
+
+    void add(final SpenPageDoc.HistoryUpdateInfo[] infos) {
+        if (infos != null) {
+            Collections.addAll(this.infos, infos);
+        }
+    }
+
+    SpenPageDoc.HistoryUpdateInfo[] toArray() {
+        return this.infos.toArray(new SpenPageDoc.HistoryUpdateInfo[this.infos.size()]);
+    }
+}
@@ -0,0 +1,88 @@
+package android.lib.pen;
+
+import java.io.File;
+
+/**
+ * Limits how much memory the undo history of a {@link com.samsung.android.sdk.pen.document.SpenNoteDoc document} may use.
+ * <p>The most recent history entries are kept in memory for fast undo. Older entries are dropped from memory
+ * but remain available from a spill directory on disk, and are reloaded transparently when the user undoes that far back.</p>
+ * @see PenService#setHistoryPolicy(HistoryPolicy)
+ */
+public final class HistoryPolicy {
+    /**
+     * No limit.
+     */
+    public static final long UNLIMITED = 0;
+
+    /**
+     * The default number of versions between two checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+
+    private final long maxPageBytes;
+    private final long maxDocumentBytes;
+    private final File spillDirectory;
+    private final int  checkpointInterval;
+
+    /**
+     * Creates a new history policy with the {@link #DEFAULT_CHECKPOINT_INTERVAL default checkpoint interval}.
+     * @param maxPageBytes the approximate number of bytes the in-memory history of a page may use, or {@link #UNLIMITED}.
+     * @param maxDocumentBytes the approximate number of bytes the in-memory history of all pages of a document may use, or {@link #UNLIMITED}.
+     * @param spillDirectory the directory to spill history entries to. It will be created if it does not exist.
+     */
+    public HistoryPolicy(final long maxPageBytes, final long maxDocumentBytes, final File spillDirectory) {
+        this(maxPageBytes, maxDocumentBytes, spillDirectory, HistoryPolicy.DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Creates a new history policy.
+     * @param maxPageBytes the approximate number of bytes the in-memory history of a page may use, or {@link #UNLIMITED}.
+     * @param maxDocumentBytes the approximate number of bytes the in-memory history of all pages of a document may use, or {@link #UNLIMITED}.
+     * @param spillDirectory the directory to spill history entries to. It will be created if it does not exist.
+     * @param checkpointInterval the number of versions between two checkpoints. A smaller interval makes restoring a version faster but uses more disk space.
+     */
+    public HistoryPolicy(final long maxPageBytes, final long maxDocumentBytes, final File spillDirectory, final int checkpointInterval) {
+        if (maxPageBytes < 0 || maxDocumentBytes < 0 || spillDirectory == null || checkpointInterval < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.maxPageBytes       = maxPageBytes;
+        this.maxDocumentBytes   = maxDocumentBytes;
+        this.spillDirectory     = spillDirectory;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Gets the approximate number of bytes the in-memory history of a page may use.
+     * @return the approximate number of bytes the in-memory history of a page may use, or {@link #UNLIMITED}.
+     */
+    public long getMaxPageBytes() {
+        return this.maxPageBytes;
+    }
+
+    /**
+     * Gets the approximate number of bytes the in-memory history of all pages of a document may use.
+     * @return the approximate number of bytes the in-memory history of all pages of a document may use, or {@link #UNLIMITED}.
+     */
+    public long getMaxDocumentBytes() {
+        return this.maxDocumentBytes;
+    }
+
+    /**
+     * Gets the directory to spill history entries to.
+     * @return the directory to spill history entries to.
+     */
+    public File getSpillDirectory() {
+        return this.spillDirectory;
+    }
+
+    /**
+     * Gets the number of versions between two checkpoints.
+     * <p>A checkpoint is a full copy of a page, saved when the main thread is idle, so that any version of the page can be restored
+     * from the nearest checkpoint plus about this number of history entries.</p>
+     * @return the number of versions between two checkpoints.
+     */
+    public int getCheckpointInterval() {
+        return this.checkpointInterval;
+    }
+}
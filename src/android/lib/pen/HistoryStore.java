@@ -0,0 +1,671 @@
+package android.lib.pen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+
+import com.samsung.android.sdk.pen.document.SpenNoteDoc;
+import com.samsung.android.sdk.pen.document.SpenObjectBase;
+import com.samsung.android.sdk.pen.document.SpenObjectContainer;
+import com.samsung.android.sdk.pen.document.SpenObjectImage;
+import com.samsung.android.sdk.pen.document.SpenObjectStroke;
+import com.samsung.android.sdk.pen.document.SpenObjectTextBox;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+
+/**
+ * Enforces a {@link HistoryPolicy} on the pages of a {@link SpenNoteDoc document}.
+ * <p>Every history commit is logged as a {@link PageHistory.Delta}. The Pen package keeps the most recent commits in memory, and its undo limit
+ * is lowered whenever the in-memory history exceeds the budget of the policy. A delta keeps in-memory copies of the objects it inserts,
+ * so that committing costs no disk I/O, and the copies are spilled to the spill directory when the main thread is idle. The copies not spilled yet
+ * count towards the budget too, and are spilled right away if dropping commits from the memory of the Pen package is not enough.
+ * Undoing beyond what the Pen package keeps in memory rebuilds the page from the log.</p>
+ * <p>The state of a page when its log starts is saved once. A full copy of the page is then saved as a checkpoint when the main thread is idle,
+ * once the page is {@link HistoryPolicy#getCheckpointInterval() checkpoint interval} versions past its last checkpoint, and while a version is rebuilt,
+ * every checkpoint interval versions replayed. Rebuilding any version costs one checkpoint restore plus about that number of deltas.</p>
+ * <p>With a {@link CompactionPolicy}, the oldest deltas that the Pen package no longer keeps in memory are {@link #compact(SpenPageDoc, CompactionPolicy) merged}
+ * into coarser ones, which renumbers the later versions.</p>
+ * <p>The listeners of a page must be detached while it is {@link #restore(SpenPageDoc, int) restored}, because restoring modifies the page.</p>
+ */
+final class HistoryStore implements MessageQueue.IdleHandler {
+    private final HistoryPolicy policy;
+    private final SpenNoteDoc   noteDoc;
+    private final File          directory;
+
+    private final Map<String, PageHistory> pages = new HashMap<String, PageHistory>();
+
+    private long    sequence;
+    private int     directoryCount;
+    private boolean scheduled;
+
+    HistoryStore(final HistoryPolicy policy, final SpenNoteDoc noteDoc) {
+        this.policy    = policy;
+        this.noteDoc   = noteDoc;
+        this.directory = new File(policy.getSpillDirectory(), UUID.randomUUID().toString());
+    }
+
+    /**
+     * Starts logging the history of a page, if not started yet.
+     */
+    void attach(final SpenPageDoc page) {
+        if (!this.pages.containsKey(page.getId())) {
+            final File directory = new File(this.directory, Integer.toString(this.directoryCount++));
+
+            if (!directory.mkdirs() && !directory.isDirectory()) {
+                Log.w(this.getClass().getName(), "Cannot create spill directory " + directory); //$NON-NLS-1$
+            }
+
+            final PageHistory               history = new PageHistory(directory);
+            final ArrayList<SpenObjectBase> objects = page.getObjectList();
+
+            history.baseFile = this.backup(history, objects);
+            history.resetHandles(objects);
+
+            this.pages.put(page.getId(), history);
+        }
+    }
+
+    /**
+     * Stops logging the history of a page, e.g. when it is removed, and deletes its log.
+     */
+    void detach(final String pageId) {
+        final PageHistory history = this.pages.remove(pageId);
+
+        if (history != null) {
+            HistoryStore.delete(history.directory);
+        }
+    }
+
+    void onObjectAdded(final SpenPageDoc page, final ArrayList<SpenObjectBase> objects, final int type) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history != null) {
+            history.onObjectAdded(page, objects, type == SpenPageDoc.ObjectListener.TYPE_SET);
+        }
+    }
+
+    void onObjectRemoved(final SpenPageDoc page, final ArrayList<SpenObjectBase> objects, final int type) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history != null) {
+            history.onObjectRemoved(objects, type == SpenPageDoc.ObjectListener.TYPE_SET);
+        }
+    }
+
+    void onObjectChanged(final SpenPageDoc page, final SpenObjectBase object, final int type) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history != null) {
+            history.onObjectChanged(object, type == SpenPageDoc.ObjectListener.TYPE_SET);
+        }
+    }
+
+    /**
+     * Logs the pending changes of a page as a new version, and trims the in-memory history if it is over budget.
+     * <p>A version is logged even if there is no pending change, so that the versions always match the history of the Pen package.
+     * The inserted objects are copied in memory, and spilled when the main thread is idle, unless the budget is exceeded.</p>
+     */
+    void onCommit(final SpenPageDoc page) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history != null) {
+            // A new commit discards the versions that could be redone
+            this.truncate(history);
+
+            final ArrayList<SpenObjectBase> objects = history.getPendingObjects();
+            final ArrayList<SpenObjectBase> copies  = HistoryStore.copyOf(objects);
+
+            // An object that cannot be copied is saved right away, before the page changes it
+            final PageHistory.Delta delta = history.takePendingChanges(copies == null ? this.backup(history, objects) : null, copies, this.sequence++);
+
+            history.deltas.add(delta);
+            history.position++;
+            history.memoryBytes += delta.bytes;
+
+            this.spill(history, delta);
+            this.trim();
+
+            if (history.position - history.checkpoints.versionBefore(history.position) >= this.policy.getCheckpointInterval()) {
+                history.checkpointDue = true;
+
+                this.schedule();
+            }
+        }
+    }
+
+    /**
+     * Called after the Pen package undoes a commit of a page from memory.
+     */
+    void onUndo(final SpenPageDoc page) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history != null && history.position > 0) {
+            history.position--;
+            history.floor = Math.min(history.floor, history.position);
+        }
+    }
+
+    /**
+     * Called after the Pen package redoes a commit of a page from memory.
+     */
+    void onRedo(final SpenPageDoc page) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history != null && history.position < history.deltas.size()) {
+            history.position++;
+        }
+    }
+
+    /**
+     * Gets the current version of a page.
+     * @return the current version of the page, or <code>-1</code> if the page is not logged.
+     */
+    int getPosition(final SpenPageDoc page) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        return history == null ? -1 : history.position;
+    }
+
+    /**
+     * Gets the number of versions of a page, excluding version <code>0</code>.
+     * @return the number of versions of the page, or <code>0</code> if the page is not logged.
+     */
+    int getVersionCount(final SpenPageDoc page) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        return history == null ? 0 : history.deltas.size();
+    }
+
+    boolean canUndo(final SpenPageDoc page) {
+        return this.getPosition(page) > 0;
+    }
+
+    boolean canRedo(final SpenPageDoc page) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        return history != null && history.position < history.deltas.size();
+    }
+
+    /**
+     * Rebuilds a page at the specified version from the log.
+     * <p>The page is rebuilt from the nearest checkpoint at or before the version, or rolled forward from the current version if that is closer.
+     * The in-memory history of the Pen package is cleared, so that any further undo or redo of the page comes from the log,
+     * until new commits are made.</p>
+     */
+    void restore(final SpenPageDoc page, final int version) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history == null || version < 0 || version > history.deltas.size()) {
+            throw new IllegalArgumentException();
+        }
+
+        if (version != history.position) {
+            // Finds the nearest checkpoint at or before the version
+            final int checkpoint = history.checkpoints.indexBefore(version);
+
+            int from = checkpoint < 0 ? 0 : history.checkpoints.getVersion(checkpoint);
+
+            if (history.position < version && history.position >= from) {
+                from = history.position;
+            } else {
+                final String file = checkpoint < 0 ? history.baseFile : history.checkpoints.getFile(checkpoint);
+
+                page.removeAllObject();
+
+                if (file != null) {
+                    for (final SpenObjectBase object : this.noteDoc.restoreObjectList(file)) {
+                        page.appendObject(object);
+                    }
+                }
+            }
+
+            for (int i = from; i < version; i++) {
+                this.apply(page, history.deltas.get(i));
+
+                // Saves a checkpoint while the page is at hand, so that rebuilding a later version again replays less
+                if (i + 1 - history.checkpoints.versionBefore(i + 1) >= this.policy.getCheckpointInterval()) {
+                    history.checkpoints.add(i + 1, this.backup(history, page.getObjectList()));
+                }
+            }
+        }
+
+        page.clearHistory();
+
+        history.clearPendingChanges();
+        history.resetHandles(page.getObjectList());
+
+        history.position    = version;
+        history.floor       = version;
+        history.memoryBytes = 0;
+    }
+
+    /**
+     * Merges the oldest precise deltas of a page into a coarser one, if the {@link CompactionPolicy} allows.
+     * <p>Only deltas that the Pen package no longer keeps in memory, and that are older than the precise ones, are merged.
+     * The merged versions become a single version, and the later versions are renumbered.</p>
+     * @return the version of the merged delta, or <code>-1</code> if nothing is merged.
+     */
+    int compact(final SpenPageDoc page, final CompactionPolicy compaction) {
+        final PageHistory history = this.pages.get(page.getId());
+
+        if (history == null || compaction.getCoarseSize() < 2) {
+            return -1;
+        }
+
+        final int first = history.coarseCount;
+        final int end   = first + compaction.getCoarseSize();
+
+        if (end > history.floor || end > history.position - compaction.getPreciseCount()) {
+            return -1;
+        }
+
+        final List<PageHistory.Delta>   run     = history.deltas.subList(first, end);
+        final IntArray                  ops     = new IntArray();
+        final ArrayList<SpenObjectBase> objects = new ArrayList<SpenObjectBase>();
+
+        long bytes = 0;
+
+        for (final PageHistory.Delta delta : run) {
+            for (final int op : delta.ops) {
+                ops.add(op);
+            }
+
+            if (delta.objects != null) {
+                // The copies belong to the log, so they can move to the merged delta
+                objects.addAll(delta.objects);
+
+                HistoryStore.unspill(history, delta);
+            } else if (delta.file != null) {
+                objects.addAll(this.noteDoc.restoreObjectList(delta.file));
+
+                new File(delta.file).delete();
+            }
+
+            bytes += delta.bytes;
+        }
+
+        final PageHistory.Delta merged  = new PageHistory.Delta(ops.toArray(), null, objects.isEmpty() ? null : objects, bytes, run.get(0).sequence);
+        final int               removed = run.size() - 1;
+
+        run.clear();
+
+        history.deltas.add(first, merged);
+
+        this.spill(history, merged);
+        history.position -= removed;
+        history.floor    -= removed;
+        history.coarseCount++;
+
+        // The intermediate versions no longer exist, so neither do their checkpoints
+        final ArrayList<String> removedFiles = new ArrayList<String>();
+
+        history.checkpoints.compact(first, end, removedFiles);
+
+        HistoryStore.delete(removedFiles);
+
+        return first + 1;
+    }
+
+    /**
+     * Keeps only the most recent commit of every page in the memory of the Pen package, e.g. when the system is low on memory.
+     * <p>The older commits can still be undone from the log. The copies not spilled yet are spilled to disk right away rather than when the main thread is idle.</p>
+     * @return the estimated number of bytes of the commits dropped from memory.
+     */
+    long trimMemory() {
+        long bytes = 0;
+
+        for (final PageHistory history : this.pages.values()) {
+            while (history.position - history.floor > 1) {
+                bytes += this.drop(history);
+            }
+        }
+
+        this.updateUndoLimits(true);
+
+        while (this.spillNext()) {
+            // Spills everything
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Deletes the log.
+     */
+    void close() {
+        this.pages.clear();
+
+        if (this.scheduled) {
+            this.scheduled = false;
+
+            Looper.myQueue().removeIdleHandler(this);
+        }
+
+        HistoryStore.delete(this.directory);
+    }
+
+    /**
+     * Spills the objects of the next queued delta, or else saves the next checkpoint due.
+     * @return <code>true</code> to do the remaining work when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    @Override
+    public boolean queueIdle() {
+        if (!this.spillNext()) {
+            this.checkpointNext();
+        }
+
+        for (final PageHistory history : this.pages.values()) {
+            if (!history.spills.isEmpty() || history.checkpointDue) {
+                return true;
+            }
+        }
+
+        this.scheduled = false;
+
+        return false;
+    }
+
+    private void schedule() {
+        if (!this.scheduled) {
+            this.scheduled = true;
+
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Queues a delta to be spilled to disk when the main thread is idle, unless it is already spilled.
+     */
+    private void spill(final PageHistory history, final PageHistory.Delta delta) {
+        if (delta.objects != null && !history.spills.contains(delta)) {
+            history.spills.add(delta);
+            history.copyBytes += delta.copyBytes;
+
+            this.schedule();
+        }
+    }
+
+    /**
+     * Spills the objects of the oldest queued delta of a page to disk, and releases their copies.
+     * @return <code>true</code> if a delta is spilled; otherwise, <code>false</code> if none is queued.
+     */
+    private boolean spillNext() {
+        for (final PageHistory history : this.pages.values()) {
+            if (!history.spills.isEmpty()) {
+                this.spillFirst(history);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Saves a checkpoint of the next page that is due one, at its current version.
+     * <p>A page with changes not committed yet, or whose objects are unloaded, is skipped: its next commit makes it due again.</p>
+     */
+    private void checkpointNext() {
+        for (final Map.Entry<String, PageHistory> entry : this.pages.entrySet()) {
+            final PageHistory history = entry.getValue();
+
+            if (history.checkpointDue) {
+                history.checkpointDue = false;
+
+                final int index = this.noteDoc.getPageIndexById(entry.getKey());
+
+                if (index >= 0 && !history.hasPendingChanges() && history.position - history.checkpoints.versionBefore(history.position) >= this.policy.getCheckpointInterval()) {
+                    final SpenPageDoc page = this.noteDoc.getPage(index);
+
+                    if (page.isObjectLoaded()) {
+                        history.checkpoints.add(history.position, this.backup(history, page.getObjectList()));
+                    }
+                }
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Spills the objects of the oldest queued delta of a page to disk right away, and releases their copies.
+     * @return the estimated number of bytes of the released copies.
+     */
+    private long spillFirst(final PageHistory history) {
+        final PageHistory.Delta delta = history.spills.get(0);
+        final long              bytes = delta.copyBytes;
+
+        HistoryStore.unspill(history, delta);
+
+        delta.file    = this.backup(history, delta.objects);
+        delta.objects = null;
+
+        return bytes;
+    }
+
+    /**
+     * Removes a delta from the spill queue of a page, e.g. when it is spilled or discarded.
+     */
+    private static void unspill(final PageHistory history, final PageHistory.Delta delta) {
+        if (history.spills.remove(delta)) {
+            history.copyBytes -= delta.copyBytes;
+            delta.copyBytes    = 0;
+        }
+    }
+
+    private void apply(final SpenPageDoc page, final PageHistory.Delta delta) {
+        // Copies the copies, because the page takes ownership of the objects inserted into it
+        final ArrayList<SpenObjectBase> objects = delta.objects != null ? HistoryStore.copyOf(delta.objects) : delta.file == null ? null : this.noteDoc.restoreObjectList(delta.file);
+
+        int next = 0;
+
+        for (final int op : delta.ops) {
+            final int index = ObjectOrder.indexOfOp(op);
+
+            if (ObjectOrder.isInsert(op)) {
+                page.insertObject(objects.get(next++), index);
+            } else {
+                page.removeObject(page.getObject(index));
+            }
+        }
+    }
+
+    /**
+     * Saves the objects of a page to a new file.
+     * @return the file, or <code>null</code> if there is no object.
+     */
+    private String backup(final PageHistory history, final ArrayList<SpenObjectBase> objects) {
+        if (objects == null || objects.isEmpty()) {
+            return null;
+        }
+
+        final String file = history.newFile();
+
+        this.noteDoc.backupObjectList(objects, file);
+
+        return file;
+    }
+
+    private void truncate(final PageHistory history) {
+        final ArrayList<String> removedFiles = new ArrayList<String>();
+
+        history.checkpoints.truncate(history.position, removedFiles);
+
+        HistoryStore.delete(removedFiles);
+
+        for (int i = history.deltas.size(); --i >= history.position;) {
+            final PageHistory.Delta delta = history.deltas.remove(i);
+
+            if (i >= history.floor) {
+                history.memoryBytes -= delta.bytes;
+            }
+
+            HistoryStore.unspill(history, delta);
+
+            if (delta.file != null) {
+                new File(delta.file).delete();
+            }
+        }
+    }
+
+    /**
+     * Lowers the undo limits of the pages until their in-memory history, including the copies not spilled yet, fits the budget of the policy.
+     * <p>The most recent commit of every page always stays in memory. If that is still over budget, the oldest copies are spilled right away.</p>
+     */
+    private void trim() {
+        final long maxPageBytes     = this.policy.getMaxPageBytes();
+        final long maxDocumentBytes = this.policy.getMaxDocumentBytes();
+
+        long totalBytes = 0;
+
+        for (final PageHistory history : this.pages.values()) {
+            if (maxPageBytes != HistoryPolicy.UNLIMITED) {
+                while (history.memoryBytes + history.copyBytes > maxPageBytes) {
+                    if (history.position - history.floor > 1) {
+                        this.drop(history);
+                    } else if (!history.spills.isEmpty()) {
+                        this.spillFirst(history);
+                    } else {
+                        break;
+                    }
+                }
+            }
+
+            totalBytes += history.memoryBytes + history.copyBytes;
+        }
+
+        if (maxDocumentBytes != HistoryPolicy.UNLIMITED) {
+            while (totalBytes > maxDocumentBytes) {
+                PageHistory oldest = null;
+
+                // Drops the oldest in-memory commit of the whole document first
+                for (final PageHistory history : this.pages.values()) {
+                    if (history.position - history.floor > 1 && (oldest == null || history.deltas.get(history.floor).sequence < oldest.deltas.get(oldest.floor).sequence)) {
+                        oldest = history;
+                    }
+                }
+
+                if (oldest != null) {
+                    totalBytes -= this.drop(oldest);
+                } else {
+                    // Then spills the oldest copies of the whole document
+                    for (final PageHistory history : this.pages.values()) {
+                        if (!history.spills.isEmpty() && (oldest == null || history.spills.get(0).sequence < oldest.spills.get(0).sequence)) {
+                            oldest = history;
+                        }
+                    }
+
+                    if (oldest == null) {
+                        break;
+                    }
+
+                    totalBytes -= this.spillFirst(oldest);
+                }
+            }
+        }
+
+        this.updateUndoLimits(maxPageBytes != HistoryPolicy.UNLIMITED || maxDocumentBytes != HistoryPolicy.UNLIMITED);
+    }
+
+    /**
+     * Sets the undo limits of the pages to their in-memory history.
+     * @param limited <code>true</code> to limit every page; otherwise, only the pages already limited, e.g. by {@link #trimMemory()}.
+     */
+    private void updateUndoLimits(final boolean limited) {
+        for (final Map.Entry<String, PageHistory> entry : this.pages.entrySet()) {
+            final PageHistory history = entry.getValue();
+
+            // Leaves room for the next commit, which is trimmed when it is logged
+            final int undoLimit = history.position - history.floor + 1;
+
+            if ((limited || history.undoLimit > 0) && undoLimit != history.undoLimit) {
+                final int index = this.noteDoc.getPageIndexById(entry.getKey());
+
+                if (index >= 0) {
+                    history.undoLimit = undoLimit;
+
+                    this.noteDoc.getPage(index).setUndoLimit(undoLimit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest in-memory commit of a page from the memory of the Pen package.
+     * @return the estimated number of bytes of the commit.
+     */
+    private long drop(final PageHistory history) {
+        final PageHistory.Delta delta = history.deltas.get(history.floor);
+
+        history.memoryBytes -= delta.bytes;
+        history.floor++;
+
+        return delta.bytes;
+    }
+
+    /**
+     * Copies objects that the page may change later.
+     * @return the copies, or <code>null</code> if there is no object or an object is of a type that cannot be copied.
+     */
+    private static ArrayList<SpenObjectBase> copyOf(final ArrayList<SpenObjectBase> objects) {
+        if (objects == null || objects.isEmpty()) {
+            return null;
+        }
+
+        final ArrayList<SpenObjectBase> copies = new ArrayList<SpenObjectBase>(objects.size());
+
+        for (final SpenObjectBase object : objects) {
+            final SpenObjectBase copy;
+
+            switch (object.getType()) {
+                case SpenObjectBase.TYPE_STROKE:
+                    copy = new SpenObjectStroke();
+                    break;
+
+                case SpenObjectBase.TYPE_IMAGE:
+                    copy = new SpenObjectImage();
+                    break;
+
+                case SpenObjectBase.TYPE_TEXT_BOX:
+                    copy = new SpenObjectTextBox();
+                    break;
+
+                case SpenObjectBase.TYPE_CONTAINER:
+                    copy = new SpenObjectContainer();
+                    break;
+
+                default:
+                    return null;
+            }
+
+            copy.copy(object);
+            copies.add(copy);
+        }
+
+        return copies;
+    }
+
+    private static void delete(final List<String> files) {
+        for (final String file : files) {
+            new File(file).delete();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+            for (final File child : children) {
+                HistoryStore.delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,190 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the order of history commits across all pages of a document, so that undo and redo can walk through them chronologically.
+ * <p>Only a compact index is kept: for every commit, the page it was made on and the history position of that page after the commit.
+ * The history data itself stays with the pages.</p>
+ */
+final class HistoryTimeline {
+    private final ArrayList<String>    pageIds   = new ArrayList<String>();
+    private final Map<String, Integer> pageKeys  = new HashMap<String, Integer>();
+    private final IntArray             pages     = new IntArray();
+    private final IntArray             positions = new IntArray();
+    private final IntArray             counters  = new IntArray();
+
+    /**
+     * The commits before the cursor can be undone, and the commits from the cursor onwards can be redone.
+     */
+    private int cursor;
+
+    /**
+     * Records a new commit on a page, discarding the commits that could be redone.
+     */
+    void onCommit(final String pageId) {
+        this.pages.truncate(this.cursor);
+        this.positions.truncate(this.cursor);
+
+        final int key      = this.keyOf(pageId);
+        final int position = this.counters.get(key) + 1;
+
+        this.counters.set(key, position);
+        this.pages.add(key);
+        this.positions.add(position);
+
+        this.cursor++;
+    }
+
+    boolean canUndo() {
+        return this.cursor > 0;
+    }
+
+    boolean canRedo() {
+        return this.cursor < this.pages.size();
+    }
+
+    /**
+     * Gets the page of the commit to undo next.
+     * @return the ID of the page, or <code>null</code> if there is nothing to undo.
+     */
+    String peekUndo() {
+        return this.cursor > 0 ? this.pageIds.get(this.pages.get(this.cursor - 1)) : null;
+    }
+
+    /**
+     * Gets the page of the commit to redo next.
+     * @return the ID of the page, or <code>null</code> if there is nothing to redo.
+     */
+    String peekRedo() {
+        return this.cursor < this.pages.size() ? this.pageIds.get(this.pages.get(this.cursor)) : null;
+    }
+
+    /**
+     * Moves the cursor one commit backward.
+     */
+    void undo() {
+        if (this.cursor > 0) {
+            this.cursor--;
+
+            final int key = this.pages.get(this.cursor);
+
+            this.counters.set(key, this.positions.get(this.cursor) - 1);
+        }
+    }
+
+    /**
+     * Moves the cursor one commit forward.
+     */
+    void redo() {
+        if (this.cursor < this.pages.size()) {
+            final int key = this.pages.get(this.cursor);
+
+            this.counters.set(key, this.positions.get(this.cursor));
+
+            this.cursor++;
+        }
+    }
+
+    /**
+     * Forgets all commits of a page, e.g. when the page is removed.
+     */
+    void removePage(final String pageId) {
+        final Integer key = this.pageKeys.get(pageId);
+
+        if (key != null) {
+            int count  = 0;
+            int cursor = this.cursor;
+
+            for (int i = 0; i < this.pages.size(); i++) {
+                if (this.pages.get(i) == key.intValue()) {
+                    if (i < this.cursor) {
+                        cursor--;
+                    }
+                } else {
+                    this.pages.set(count, this.pages.get(i));
+                    this.positions.set(count, this.positions.get(i));
+
+                    count++;
+                }
+            }
+
+            this.pages.truncate(count);
+            this.positions.truncate(count);
+            this.counters.set(key.intValue(), 0);
+
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Merges the commits of a page whose versions have been merged into a coarser one by {@link HistoryStore#compact(SpenPageDoc, CompactionPolicy)}.
+     * @param version the version of the merged commit, which replaces the versions from <code>version</code> to <code>version + count - 1</code>.
+     * @param count the number of versions merged.
+     * @param position the current version of the page after merging.
+     */
+    void onCompacted(final String pageId, final int version, final int count, final int position) {
+        final Integer key = this.pageKeys.get(pageId);
+
+        if (key != null && count > 1) {
+            final int removed = count - 1;
+
+            // The positions count from when this timeline started recording the page, the versions count from when its log started
+            final int low  = version - (position + removed - this.counters.get(key.intValue()));
+            final int high = low + removed;
+
+            int size   = 0;
+            int cursor = this.cursor;
+
+            for (int i = 0; i < this.pages.size(); i++) {
+                final int p = this.positions.get(i);
+
+                if (this.pages.get(i) == key.intValue() && p >= low && p < high) {
+                    if (i < this.cursor) {
+                        cursor--;
+                    }
+                } else {
+                    this.pages.set(size, this.pages.get(i));
+                    this.positions.set(size, this.pages.get(i) == key.intValue() && p >= high ? p - removed : p);
+
+                    size++;
+                }
+            }
+
+            this.pages.truncate(size);
+            this.positions.truncate(size);
+            this.counters.set(key.intValue(), this.counters.get(key.intValue()) - removed);
+
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Forgets all commits.
+     */
+    void clear() {
+        this.pageIds.clear();
+        this.pageKeys.clear();
+        this.pages.clear();
+        this.positions.clear();
+        this.counters.clear();
+
+        this.cursor = 0;
+    }
+
+    private int keyOf(final String pageId) {
+        final Integer key = this.pageKeys.get(pageId);
+
+        if (key != null) {
+            return key.intValue();
+        }
+
+        this.pageIds.add(pageId);
+        this.counters.add(0);
+        this.pageKeys.put(pageId, Integer.valueOf(this.pageIds.size() - 1));
+
+        return this.pageIds.size() - 1;
+    }
+}
@@ -0,0 +1,81 @@
+package android.lib.pen;
+
+/**
+ * The time taken by each phase of an {@link PenService#initAsync(int, int, int, String, int, int, int, int, String, OnReadyListener) asynchronous initialization}.
+ * <p>All timings are in nanoseconds. A phase that did not run takes <code>0</code>.</p>
+ */
+public final class InitTimings {
+    /**
+     * The initialization of the Pen package, on a worker thread.
+     */
+    public static final int PHASE_SDK = 0;
+
+    /**
+     * The creation of a new {@link com.samsung.android.sdk.pen.document.SpenNoteDoc document}, on a worker thread.
+     */
+    public static final int PHASE_DOCUMENT = 1;
+
+    /**
+     * The loading of an existing SPD file, on a worker thread.
+     */
+    public static final int PHASE_LOAD = 2;
+
+    /**
+     * The decoding of the background image, on a worker thread.
+     */
+    public static final int PHASE_BACKGROUND = 3;
+
+    /**
+     * The creation of the {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView canvas} and the setting views, on the UI thread.
+     */
+    public static final int PHASE_VIEWS = 4;
+
+    private static final int PHASE_COUNT = 5;
+
+    private static final String[] PHASE_NAMES = new String[] { "sdk", "document", "load", "background", "views" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long[] times = new long[InitTimings.PHASE_COUNT];
+
+    InitTimings() {
+    }
+
+    /**
+     * Gets the time taken by a phase.
+     * @param phase either {@link #PHASE_SDK}, {@link #PHASE_DOCUMENT}, {@link #PHASE_LOAD}, {@link #PHASE_BACKGROUND} or {@link #PHASE_VIEWS}.
+     * @return the time taken, in nanoseconds.
+     */
+    public long getTime(final int phase) {
+        return this.times[phase];
+    }
+
+    /**
+     * Gets the time taken by all phases.
+     * @return the time taken, in nanoseconds.
+     */
+    public long getTotalTime() {
+        long total = 0;
+
+        for (final long time : this.times) {
+            total += time;
+        }
+
+        return total;
+    }
+
+    void setTime(final int phase, final long time) {
+        this.times[phase] = time;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < InitTimings.PHASE_COUNT; i++) {
+            builder.append(InitTimings.PHASE_NAMES[i]).append('=').append(this.times[i] / InitTimings.NANOS_PER_MILLI).append("ms "); //$NON-NLS-1$
+        }
+
+        return builder.append("total=").append(this.getTotalTime() / InitTimings.NANOS_PER_MILLI).append("ms").toString(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
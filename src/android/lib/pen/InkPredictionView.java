@@ -0,0 +1,87 @@
+package android.lib.pen;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.view.View;
+
+/**
+ * A transparent overlay that draws the predicted tail of a stroke on top of the {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView canvas}.
+ * <p>The tail is replaced whenever real samples arrive, and cleared when the stroke ends.</p>
+ */
+final class InkPredictionView extends View {
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path  path  = new Path();
+
+    private final float[] points = new float[2 * InkPredictor.MAX_PREDICTED_POINTS];
+
+    private boolean hasTail;
+
+    InkPredictionView(final Context context) {
+        super(context);
+
+        this.paint.setStyle(Paint.Style.STROKE);
+        this.paint.setStrokeCap(Paint.Cap.ROUND);
+        this.paint.setStrokeJoin(Paint.Join.ROUND);
+
+        this.setClickable(false);
+        this.setFocusable(false);
+        this.setWillNotDraw(false);
+    }
+
+    /**
+     * Sets the color and width of the predicted tail.
+     * @param color the pen color.
+     * @param width the pen width in pixels, already scaled by the current zoom ratio.
+     */
+    void setInk(final int color, final float width) {
+        this.paint.setColor(color);
+        this.paint.setStrokeWidth(width);
+    }
+
+    /**
+     * Shows a predicted tail starting from the last real point of the stroke.
+     * @param x the x coordinate of the last real point.
+     * @param y the y coordinate of the last real point.
+     * @param predictor the predictor to get the predicted points from.
+     */
+    void showTail(final float x, final float y, final InkPredictor predictor) {
+        final int count = predictor.predict(this.points);
+
+        this.path.rewind();
+
+        if (count > 0) {
+            this.path.moveTo(x, y);
+
+            for (int i = 0; i < count; i++) {
+                this.path.lineTo(this.points[2 * i], this.points[2 * i + 1]);
+            }
+        }
+
+        if (count > 0 || this.hasTail) {
+            this.hasTail = count > 0;
+
+            this.invalidate();
+        }
+    }
+
+    /**
+     * Removes the predicted tail, if any.
+     */
+    void clearTail() {
+        if (this.hasTail) {
+            this.hasTail = false;
+            this.path.rewind();
+
+            this.invalidate();
+        }
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        if (this.hasTail) {
+            canvas.drawPath(this.path, this.paint);
+        }
+    }
+}
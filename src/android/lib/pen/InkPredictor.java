@@ -0,0 +1,296 @@
+package android.lib.pen;
+
+/**
+ * Predicts where a stroke is heading from the most recent touch samples.
+ * <p>The velocity and acceleration are estimated from the last few samples and the stroke is extrapolated
+ * for a short period of time, so that a predicted tail can be drawn ahead of the real stroke.</p>
+ * <p>Every prediction is checked against the first real sample at or after the time it predicts, and the distance between the two is
+ * accumulated as the prediction error. The ink lag, the distance between the tip of the ink drawn for an event and where the pen is at
+ * the next event, is accumulated too, whether predictions are drawn or not, so that both can be compared.</p>
+ * <p>This class is not thread-safe and allocates nothing after construction.</p>
+ */
+final class InkPredictor {
+    /**
+     * The maximum number of predicted points that {@link #predict(float[])} generates.
+     */
+    static final int MAX_PREDICTED_POINTS = 4;
+
+    private static final int SAMPLE_COUNT = 4;
+
+    /**
+     * The maximum number of predictions waiting for a real sample. Predictions beyond it are not checked.
+     */
+    private static final int PENDING_COUNT = 16;
+
+    /**
+     * Samples closer than this (in milliseconds) are merged to avoid dividing by tiny time deltas.
+     */
+    private static final long MIN_SAMPLE_INTERVAL = 2;
+
+    /**
+     * Limits how far a prediction may go, in pixels, so that a sudden change of direction does not draw a long wrong tail.
+     */
+    private static final float MAX_PREDICTED_DISTANCE = 64f;
+
+    private final float[] xs = new float[InkPredictor.SAMPLE_COUNT];
+    private final float[] ys = new float[InkPredictor.SAMPLE_COUNT];
+    private final long[]  ts = new long[InkPredictor.SAMPLE_COUNT];
+
+    private final long horizon;
+
+    private int size;
+    private int head;
+
+    // The predictions waiting for a real sample, oldest first
+    private final long[]  predictedTimes = new long[InkPredictor.PENDING_COUNT];
+    private final float[] predictedXs    = new float[InkPredictor.PENDING_COUNT];
+    private final float[] predictedYs    = new float[InkPredictor.PENDING_COUNT];
+
+    private int pendingHead;
+    private int pendingSize;
+
+    private boolean hasTip;
+    private float   tipX;
+    private float   tipY;
+
+    private long  samples;
+    private long  misses;
+    private float totalError;
+    private float maxError;
+
+    private long  lagCount;
+    private float totalLag;
+    private float maxLag;
+
+    /**
+     * Creates a new predictor.
+     * @param horizon how far ahead to predict, in milliseconds.
+     */
+    InkPredictor(final long horizon) {
+        this.horizon = horizon;
+    }
+
+    /**
+     * Gets how far ahead this predictor predicts, in milliseconds.
+     * @return how far ahead this predictor predicts, in milliseconds.
+     */
+    long getHorizon() {
+        return this.horizon;
+    }
+
+    /**
+     * Forgets all samples of the current stroke, e.g. when it ends.
+     * <p>The predictions that no real sample has reached are counted as missed.</p>
+     */
+    void reset() {
+        this.misses += this.pendingSize;
+
+        this.size        = 0;
+        this.head        = 0;
+        this.pendingSize = 0;
+        this.hasTip      = false;
+    }
+
+    /**
+     * Measures the ink lag of an event: the distance between where the pen is and the tip of the ink drawn for the previous event,
+     * which is the last {@link #predict(float[]) predicted} point if any, or the last real point.
+     * <p>Call it before {@link #add(float, float, long) adding} the samples of the event.</p>
+     * @param x the x coordinate of the pen in pixels.
+     * @param y the y coordinate of the pen in pixels.
+     */
+    void measureLag(final float x, final float y) {
+        if (this.hasTip) {
+            final float dx  = x - this.tipX;
+            final float dy  = y - this.tipY;
+            final float lag = (float)Math.sqrt(dx * dx + dy * dy);
+
+            this.lagCount++;
+            this.totalLag += lag;
+
+            if (lag > this.maxLag) {
+                this.maxLag = lag;
+            }
+        }
+
+        this.hasTip = true;
+        this.tipX   = x;
+        this.tipY   = y;
+    }
+
+    /**
+     * Adds a real sample of the current stroke.
+     * <p>The predictions made for a time at or before <code>time</code> are checked against this sample, and their errors are accumulated.</p>
+     * @param x the x coordinate in pixels.
+     * @param y the y coordinate in pixels.
+     * @param time the time of the sample in milliseconds.
+     */
+    void add(final float x, final float y, final long time) {
+        while (this.pendingSize > 0 && this.predictedTimes[this.pendingHead] <= time) {
+            final float dx    = x - this.predictedXs[this.pendingHead];
+            final float dy    = y - this.predictedYs[this.pendingHead];
+            final float error = (float)Math.sqrt(dx * dx + dy * dy);
+
+            this.samples++;
+            this.totalError += error;
+
+            if (error > this.maxError) {
+                this.maxError = error;
+            }
+
+            this.pendingHead = (this.pendingHead + 1) % InkPredictor.PENDING_COUNT;
+            this.pendingSize--;
+        }
+
+        if (this.size > 0) {
+            final int last = (this.head + InkPredictor.SAMPLE_COUNT - 1) % InkPredictor.SAMPLE_COUNT;
+
+            if (time - this.ts[last] < InkPredictor.MIN_SAMPLE_INTERVAL) {
+                this.xs[last] = x;
+                this.ys[last] = y;
+
+                return;
+            }
+        }
+
+        this.xs[this.head] = x;
+        this.ys[this.head] = y;
+        this.ts[this.head] = time;
+
+        this.head = (this.head + 1) % InkPredictor.SAMPLE_COUNT;
+
+        if (this.size < InkPredictor.SAMPLE_COUNT) {
+            this.size++;
+        }
+    }
+
+    /**
+     * Predicts the next points of the current stroke.
+     * @param points receives the predicted points as <code>x0, y0, x1, y1, ...</code>.
+     * It must have at least <code>2 * {@link #MAX_PREDICTED_POINTS}</code> elements.
+     * @return the number of predicted points, which may be zero if there are not enough samples.
+     */
+    int predict(final float[] points) {
+        if (this.size < 3) {
+            return 0;
+        }
+
+        final int   i2  = (this.head + InkPredictor.SAMPLE_COUNT - 1) % InkPredictor.SAMPLE_COUNT;
+        final int   i1  = (this.head + InkPredictor.SAMPLE_COUNT - 2) % InkPredictor.SAMPLE_COUNT;
+        final int   i0  = (this.head + InkPredictor.SAMPLE_COUNT - 3) % InkPredictor.SAMPLE_COUNT;
+        final float dt1 = this.ts[i2] - this.ts[i1];
+        final float dt0 = this.ts[i1] - this.ts[i0];
+
+        // Velocities in pixels per millisecond
+        final float vx = (this.xs[i2] - this.xs[i1]) / dt1;
+        final float vy = (this.ys[i2] - this.ys[i1]) / dt1;
+
+        // Acceleration is damped by half because it is noisy and overshoots easily
+        final float ax = (vx - (this.xs[i1] - this.xs[i0]) / dt0) / ((dt0 + dt1) * 0.5f) * 0.5f;
+        final float ay = (vy - (this.ys[i1] - this.ys[i0]) / dt0) / ((dt0 + dt1) * 0.5f) * 0.5f;
+
+        final float step = (float)this.horizon / InkPredictor.MAX_PREDICTED_POINTS;
+
+        int count = 0;
+
+        for (int i = 1; i <= InkPredictor.MAX_PREDICTED_POINTS; i++) {
+            final float t  = step * i;
+            final float dx = vx * t + 0.5f * ax * t * t;
+            final float dy = vy * t + 0.5f * ay * t * t;
+
+            if (dx * dx + dy * dy > InkPredictor.MAX_PREDICTED_DISTANCE * InkPredictor.MAX_PREDICTED_DISTANCE) {
+                break;
+            }
+
+            points[2 * count]     = this.xs[i2] + dx;
+            points[2 * count + 1] = this.ys[i2] + dy;
+
+            count++;
+        }
+
+        if (count > 0) {
+            if (this.pendingSize < InkPredictor.PENDING_COUNT) {
+                final int index = (this.pendingHead + this.pendingSize) % InkPredictor.PENDING_COUNT;
+
+                this.predictedTimes[index] = this.ts[i2] + (long)(step * count);
+                this.predictedXs[index]    = points[2 * count - 2];
+                this.predictedYs[index]    = points[2 * count - 1];
+
+                this.pendingSize++;
+            }
+
+            this.tipX = points[2 * count - 2];
+            this.tipY = points[2 * count - 1];
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of predictions that were verified against a real sample.
+     * @return the number of predictions that were verified against a real sample.
+     */
+    long getVerifiedCount() {
+        return this.samples;
+    }
+
+    /**
+     * Gets the number of predictions that no real sample reached, because the stroke ended first.
+     * @return the number of predictions that no real sample reached.
+     */
+    long getMissedCount() {
+        return this.misses;
+    }
+
+    /**
+     * Gets the average distance, in pixels, between a predicted point and the first real sample at or after its time.
+     * @return the average prediction error in pixels.
+     */
+    float getAverageError() {
+        return this.samples == 0 ? 0f : this.totalError / this.samples;
+    }
+
+    /**
+     * Gets the largest distance, in pixels, between a predicted point and the first real sample at or after its time.
+     * @return the largest prediction error in pixels.
+     */
+    float getMaxError() {
+        return this.maxError;
+    }
+
+    /**
+     * Gets the number of events whose {@link #measureLag(float, float) ink lag} was measured.
+     * @return the number of events whose ink lag was measured.
+     */
+    long getLagCount() {
+        return this.lagCount;
+    }
+
+    /**
+     * Gets the average distance, in pixels, between the pen and the tip of the ink drawn for the previous event.
+     * @return the average ink lag in pixels.
+     */
+    float getAverageLag() {
+        return this.lagCount == 0 ? 0f : this.totalLag / this.lagCount;
+    }
+
+    /**
+     * Gets the largest distance, in pixels, between the pen and the tip of the ink drawn for the previous event.
+     * @return the largest ink lag in pixels.
+     */
+    float getMaxLag() {
+        return this.maxLag;
+    }
+
+    /**
+     * Clears the prediction error and ink lag statistics.
+     */
+    void clearStatistics() {
+        this.samples    = 0;
+        this.misses     = 0;
+        this.totalError = 0f;
+        this.maxError   = 0f;
+        this.lagCount   = 0;
+        this.totalLag   = 0f;
+        this.maxLag     = 0f;
+    }
+}
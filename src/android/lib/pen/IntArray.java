@@ -0,0 +1,113 @@
+package android.lib.pen;
+
+/**
+ * A growable array of primitive <code>int</code> values, to avoid boxing in hot paths.
+ */
+final class IntArray {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] values;
+    private int   size;
+
+    IntArray() {
+        this(IntArray.DEFAULT_CAPACITY);
+    }
+
+    IntArray(final int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int get(final int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return this.values[index];
+    }
+
+    void set(final int index, final int value) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.values[index] = value;
+    }
+
+    void add(final int value) {
+        this.ensureCapacity(this.size + 1);
+
+        this.values[this.size++] = value;
+    }
+
+    void add(final int index, final int value) {
+        if (index > this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.ensureCapacity(this.size + 1);
+
+        System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+
+        this.values[index] = value;
+        this.size++;
+    }
+
+    int removeAt(final int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        final int value = this.values[index];
+
+        System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+
+        this.size--;
+
+        return value;
+    }
+
+    /**
+     * Removes the last values so that only the first <code>size</code> values remain.
+     */
+    void truncate(final int size) {
+        if (size < this.size) {
+            this.size = Math.max(0, size);
+        }
+    }
+
+    int indexOf(final int value) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.values[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    void clear() {
+        this.size = 0;
+    }
+
+    int[] toArray() {
+        final int[] array = new int[this.size];
+
+        System.arraycopy(this.values, 0, array, 0, this.size);
+
+        return array;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > this.values.length) {
+            final int[] values = new int[Math.max(capacity, this.values.length * 2)];
+
+            System.arraycopy(this.values, 0, values, 0, this.size);
+
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package android.lib.pen;
+
+/**
+ * A fixed-size histogram of non-negative values, such as durations in nanoseconds.
+ * <p>Values are counted in log-linear buckets: every power of two is split into 8 buckets,
+ * so any reported percentile is within 12.5% of the real value. Recording a value costs a few
+ * arithmetic operations and never allocates.</p>
+ * <p>This class is not thread-safe. Record values from one thread and use {@link #copy()} to read them from another.</p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS     = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT    = (Long.SIZE - LatencyHistogram.SUB_BUCKET_BITS) * LatencyHistogram.SUB_BUCKETS;
+
+    private final long[] counts;
+
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new long[LatencyHistogram.BUCKET_COUNT];
+    }
+
+    private LatencyHistogram(final LatencyHistogram histogram) {
+        this.counts = histogram.counts.clone();
+        this.count  = histogram.count;
+        this.total  = histogram.total;
+        this.min    = histogram.min;
+        this.max    = histogram.max;
+    }
+
+    /**
+     * Records a value.
+     * @param value the value to record. Negative values are recorded as zero.
+     */
+    public void record(final long value) {
+        final long v = value < 0 ? 0 : value;
+
+        this.counts[LatencyHistogram.indexOf(v)]++;
+        this.count++;
+        this.total += v;
+
+        if (v < this.min) {
+            this.min = v;
+        }
+
+        if (v > this.max) {
+            this.max = v;
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the sum of all recorded values.
+     * @return the sum of all recorded values.
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Gets the smallest recorded value.
+     * @return the smallest recorded value, or zero if nothing is recorded.
+     */
+    public long getMin() {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     * @return the largest recorded value, or zero if nothing is recorded.
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Gets the average of all recorded values.
+     * @return the average of all recorded values, or zero if nothing is recorded.
+     */
+    public long getMean() {
+        return this.count == 0 ? 0 : this.total / this.count;
+    }
+
+    /**
+     * Gets the value at the specified percentile.
+     * @param percentile the percentile ranging from 0 to 100, e.g. <code>99</code> for p99.
+     * @return the approximate value at the specified percentile, or zero if nothing is recorded.
+     */
+    public long getPercentile(final double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long)Math.ceil(this.count * Math.min(100d, Math.max(0d, percentile)) / 100d));
+
+        long cumulative = 0;
+
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            cumulative += this.counts[i];
+
+            if (cumulative >= rank) {
+                final long lower = LatencyHistogram.lowerBoundOf(i);
+                final long upper = LatencyHistogram.lowerBoundOf(i + 1) - 1;
+
+                return Math.max(this.min, Math.min(this.max, lower + (upper - lower) / 2));
+            }
+        }
+
+        return this.max;
+    }
+
+    /**
+     * Creates a copy of this histogram.
+     * @return a copy of this histogram.
+     */
+    public LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void clear() {
+        for (int i = LatencyHistogram.BUCKET_COUNT; --i >= 0;) {
+            this.counts[i] = 0;
+        }
+
+        this.count = 0;
+        this.total = 0;
+        this.min   = Long.MAX_VALUE;
+        this.max   = 0;
+    }
+
+    private static int indexOf(final long value) {
+        if (value < LatencyHistogram.SUB_BUCKETS) {
+            return (int)value;
+        }
+
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - LatencyHistogram.SUB_BUCKET_BITS;
+
+        return (shift + 1 << LatencyHistogram.SUB_BUCKET_BITS) + (int)(value >>> shift) - LatencyHistogram.SUB_BUCKETS;
+    }
+
+    private static long lowerBoundOf(final int index) {
+        if (index < LatencyHistogram.SUB_BUCKETS) {
+            return index;
+        }
+
+        if (index >= LatencyHistogram.BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+
+        final int shift = (index >> LatencyHistogram.SUB_BUCKET_BITS) - 1;
+
+        return (long)((index & LatencyHistogram.SUB_BUCKETS - 1) + LatencyHistogram.SUB_BUCKETS) << shift;
+    }
+}
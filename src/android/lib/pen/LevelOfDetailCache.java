@@ -0,0 +1,222 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.LruCache;
+
+import com.samsung.android.sdk.pen.document.SpenObjectBase;
+import com.samsung.android.sdk.pen.document.SpenObjectStroke;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+import com.samsung.android.sdk.pen.engine.SpenCapturePage;
+
+/**
+ * Renders whole pages into low-resolution layers for zoom ratios below <code>1</code>, so that a zoomed-out page can be shown
+ * from a single bitmap instead of rendering every object of the page.
+ * <p>The zoom ratio is rounded up to a power of two, down to {@link #MIN_RATIO}, so a layer is never drawn at more than twice its rendered size.
+ * Strokes are drawn {@link StrokeSimplifier simplified} to within half a pixel of the layer, so a layer of a page with many long strokes
+ * is rendered from a fraction of their points. Pages with a background image or objects other than strokes are rendered by the Pen package instead.</p>
+ * <p>Layers are rendered one at a time when the main thread is idle, and kept within a memory budget, least recently used first out.</p>
+ */
+final class LevelOfDetailCache implements MessageQueue.IdleHandler {
+    /**
+     * The smallest ratio of the size of a layer to the size of its page.
+     */
+    static final float MIN_RATIO = 1 / 16f;
+
+    private static final float MAX_RATIO = 1 / 2f;
+    private static final float TOLERANCE = 0.5f;
+
+    private static final class Layer {
+        final String      key;
+        final SpenPageDoc pageDoc;
+        final float       ratio;
+
+        Layer(final String key, final SpenPageDoc pageDoc, final float ratio) {
+            this.key     = key;
+            this.pageDoc = pageDoc;
+            this.ratio   = ratio;
+        }
+    }
+
+    private final Context                  context;
+    private final LruCache<String, Bitmap> layers;
+    private final ArrayList<Layer>         pending = new ArrayList<Layer>();
+
+    private SpenCapturePage capturePage;
+    private boolean         scheduled;
+
+    /**
+     * Creates a new level-of-detail cache.
+     * @param maxBytes the maximum number of bytes of the rendered layers.
+     */
+    LevelOfDetailCache(final Context context, final int maxBytes) {
+        this.context = context;
+        this.layers  = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(final String key, final Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Gets the ratio of the size of the layer to draw at a zoom ratio to the size of its page.
+     * @return the ratio of the layer, or <code>0</code> if the page should be drawn at full detail at the zoom ratio.
+     */
+    static float ratioOf(final float zoomRatio) {
+        if (zoomRatio > LevelOfDetailCache.MAX_RATIO) {
+            return 0;
+        }
+
+        return Math.max(LevelOfDetailCache.MIN_RATIO, Downsampling.ceilPowerOfTwo(zoomRatio));
+    }
+
+    /**
+     * Gets the layer of a page to draw at a zoom ratio.
+     * @return the layer, or <code>null</code> if it is not rendered or the page should be drawn at full detail.
+     */
+    Bitmap get(final String pageId, final float zoomRatio) {
+        final float ratio = LevelOfDetailCache.ratioOf(zoomRatio);
+
+        return ratio == 0 ? null : this.layers.get(LevelOfDetailCache.keyOf(pageId, ratio));
+    }
+
+    /**
+     * Renders the layer of a page to draw at a zoom ratio, if not rendered yet.
+     */
+    void request(final SpenPageDoc pageDoc, final float zoomRatio) {
+        final float ratio = LevelOfDetailCache.ratioOf(zoomRatio);
+
+        if (ratio > 0) {
+            final String key = LevelOfDetailCache.keyOf(pageDoc.getId(), ratio);
+
+            if (this.layers.get(key) == null) {
+                for (final Layer layer : this.pending) {
+                    if (layer.key.equals(key)) {
+                        return;
+                    }
+                }
+
+                this.pending.add(new Layer(key, pageDoc, ratio));
+
+                if (!this.scheduled) {
+                    this.scheduled = true;
+
+                    Looper.myQueue().addIdleHandler(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the layers of a page, e.g. after the page is changed.
+     */
+    void invalidate(final String pageId) {
+        final String prefix = pageId + '/';
+
+        for (final String key : this.layers.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                this.layers.remove(key);
+            }
+        }
+
+        for (int i = this.pending.size(); --i >= 0;) {
+            if (this.pending.get(i).key.startsWith(prefix)) {
+                this.pending.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Discards all rendered layers and pending requests, e.g. when the system is low on memory.
+     * @return the number of bytes of the bitmaps discarded.
+     */
+    int clear() {
+        final int bytes = this.layers.size();
+
+        this.pending.clear();
+        this.layers.evictAll();
+
+        return bytes;
+    }
+
+    void close() {
+        this.clear();
+
+        if (this.scheduled) {
+            this.scheduled = false;
+
+            Looper.myQueue().removeIdleHandler(this);
+        }
+
+        if (this.capturePage != null) {
+            this.capturePage.close();
+            this.capturePage = null;
+        }
+    }
+
+    /**
+     * Renders the next pending layer.
+     * @return <code>true</code> to render the remaining layers when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    @Override
+    public boolean queueIdle() {
+        if (!this.pending.isEmpty()) {
+            final Layer  layer  = this.pending.remove(0);
+            final Bitmap bitmap = this.render(layer.pageDoc, layer.ratio);
+
+            if (bitmap != null) {
+                this.layers.put(layer.key, bitmap);
+            }
+        }
+
+        this.scheduled = !this.pending.isEmpty();
+
+        return this.scheduled;
+    }
+
+    private Bitmap render(final SpenPageDoc pageDoc, final float ratio) {
+        final ArrayList<SpenObjectBase> objects = pageDoc.getObjectList();
+
+        boolean strokesOnly = pageDoc.getBackgroundImagePath() == null;
+
+        if (strokesOnly && objects != null) {
+            for (final SpenObjectBase object : objects) {
+                if (!(object instanceof SpenObjectStroke)) {
+                    strokesOnly = false;
+
+                    break;
+                }
+            }
+        }
+
+        if (!strokesOnly) {
+            if (this.capturePage == null) {
+                this.capturePage = new SpenCapturePage(this.context);
+            }
+
+            this.capturePage.setPageDoc(pageDoc);
+
+            return this.capturePage.capturePage(ratio);
+        }
+
+        final Bitmap bitmap = Bitmap.createBitmap(Math.max(1, (int)Math.ceil(pageDoc.getWidth() * ratio)), Math.max(1, (int)Math.ceil(pageDoc.getHeight() * ratio)), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+
+        canvas.drawColor(pageDoc.getBackgroundColor());
+        canvas.scale(ratio, ratio);
+
+        PageRenderer.draw(canvas, PageRenderer.getStrokes(pageDoc), ratio, LevelOfDetailCache.TOLERANCE / ratio);
+
+        return bitmap;
+    }
+
+    private static String keyOf(final String pageId, final float ratio) {
+        return pageId + '/' + ratio;
+    }
+}
@@ -0,0 +1,26 @@
+package android.lib.pen;
+
+import android.util.Log;
+
+/**
+ * Logs the {@link PenMetrics metrics} of a {@link PenService}, one line per export.
+ */
+public final class LogcatMetricsExporter implements MetricsExporter {
+    private final String tag;
+
+    /**
+     * Creates an exporter that logs with the tag of {@link PenMetrics}.
+     */
+    public LogcatMetricsExporter() {
+        this(PenMetrics.class.getName());
+    }
+
+    public LogcatMetricsExporter(final String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public void export(final PenMetrics.Snapshot snapshot) {
+        Log.i(this.tag, snapshot.toString());
+    }
+}
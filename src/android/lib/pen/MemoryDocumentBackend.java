@@ -0,0 +1,331 @@
+package android.lib.pen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A {@link DocumentBackend} that keeps its document in memory, and saves it to files of its own format.
+ * <p>A file starts with a magic number, the format version, the size of the pages and the number of pages. Each page is its ID,
+ * its background color and its strokes, {@link StrokeCodec encoded}.</p>
+ * <p>This class does not depend on Android, and is not thread-safe.</p>
+ */
+public final class MemoryDocumentBackend implements DocumentBackend {
+    /**
+     * The format version written by this backend.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x50454e44;
+
+    private final int             width;
+    private final int             height;
+    private final ArrayList<Page> pages = new ArrayList<Page>();
+
+    private boolean changed;
+
+    /**
+     * Creates a new document without any page.
+     * @param width the width of the pages, in pixels.
+     * @param height the height of the pages, in pixels.
+     */
+    public MemoryDocumentBackend(final int width, final int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.width  = width;
+        this.height = height;
+    }
+
+    /**
+     * Loads a document {@link #save(String) saved} by this backend.
+     * @param path the path of the file to load.
+     * @return the loaded document.
+     * @throws IOException if the file cannot be read, or is not saved by a supported version.
+     */
+    public static MemoryDocumentBackend load(final String path) throws IOException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(path));
+
+        try {
+            return MemoryDocumentBackend.read(new DataInputStream(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a document {@link #write(DataOutput) written} by this backend.
+     * @param in the input to read from.
+     * @return the document read.
+     * @throws IOException if the input cannot be read, or is not written by a supported version.
+     */
+    public static MemoryDocumentBackend read(final DataInput in) throws IOException {
+        if (in.readInt() != MemoryDocumentBackend.MAGIC) {
+            throw new IOException("Not a document"); //$NON-NLS-1$
+        }
+
+        final int version = in.readInt();
+
+        if (version != MemoryDocumentBackend.VERSION) {
+            throw new IOException("Unsupported document format version " + version); //$NON-NLS-1$
+        }
+
+        final int width     = in.readInt();
+        final int height    = in.readInt();
+        final int pageCount = in.readInt();
+
+        if (width <= 0 || height <= 0 || pageCount < 0) {
+            throw new IOException("Invalid document header"); //$NON-NLS-1$
+        }
+
+        final MemoryDocumentBackend backend = new MemoryDocumentBackend(width, height);
+
+        for (int i = 0; i < pageCount; i++) {
+            final Page page = new Page(in.readUTF(), in.readInt());
+
+            page.strokes.addAll(StrokeCodec.read(in));
+
+            backend.pages.add(page);
+        }
+
+        return backend;
+    }
+
+    /**
+     * Writes the document, without its history.
+     * @param out the output to write to.
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(MemoryDocumentBackend.MAGIC);
+        out.writeInt(MemoryDocumentBackend.VERSION);
+        out.writeInt(this.width);
+        out.writeInt(this.height);
+        out.writeInt(this.pages.size());
+
+        for (final Page page : this.pages) {
+            out.writeUTF(page.id);
+            out.writeInt(page.backgroundColor);
+
+            StrokeCodec.write(page.strokes, out);
+        }
+    }
+
+    @Override
+    public void save(final String path) throws IOException {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(path));
+
+        try {
+            this.write(new DataOutputStream(out));
+        } finally {
+            out.close();
+        }
+
+        this.changed = false;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int getPageCount() {
+        return this.pages.size();
+    }
+
+    @Override
+    public String getPageId(final int page) {
+        return this.pages.get(page).id;
+    }
+
+    @Override
+    public int getPageIndex(final String pageId) {
+        for (int i = 0; i < this.pages.size(); i++) {
+            if (this.pages.get(i).id.equals(pageId)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int getBackgroundColor(final int page) {
+        return this.pages.get(page).backgroundColor;
+    }
+
+    @Override
+    public int appendPage(final int backgroundColor) {
+        this.pages.add(new Page(UUID.randomUUID().toString(), backgroundColor));
+
+        this.changed = true;
+
+        return this.pages.size() - 1;
+    }
+
+    @Override
+    public void removePage(final int page) {
+        this.pages.remove(page);
+
+        this.changed = true;
+    }
+
+    @Override
+    public void movePage(final int page, final int step) {
+        final int index = page + step;
+
+        if (index < 0 || index >= this.pages.size()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.pages.add(index, this.pages.remove(page));
+
+        this.changed = true;
+    }
+
+    @Override
+    public List<Stroke> getStrokes(final int page) {
+        return new ArrayList<Stroke>(this.pages.get(page).strokes);
+    }
+
+    @Override
+    public void addStrokes(final int page, final List<Stroke> strokes) {
+        if (!strokes.isEmpty()) {
+            final Page doc = this.pages.get(page);
+
+            doc.apply(new Edit(true, doc.strokes.size(), new ArrayList<Stroke>(strokes)));
+
+            this.changed = true;
+        }
+    }
+
+    @Override
+    public void removeStrokes(final int page, final int start, final int count) {
+        final Page doc = this.pages.get(page);
+
+        if (start < 0 || count < 0 || start + count > doc.strokes.size()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (count > 0) {
+            doc.apply(new Edit(false, start, new ArrayList<Stroke>(doc.strokes.subList(start, start + count))));
+
+            this.changed = true;
+        }
+    }
+
+    @Override
+    public boolean canUndo(final int page) {
+        return this.pages.get(page).position > 0;
+    }
+
+    @Override
+    public boolean canRedo(final int page) {
+        final Page doc = this.pages.get(page);
+
+        return doc.position < doc.edits.size();
+    }
+
+    @Override
+    public void undo(final int page) {
+        final Page doc = this.pages.get(page);
+
+        if (doc.position > 0) {
+            doc.edits.get(--doc.position).run(doc.strokes, true);
+
+            this.changed = true;
+        }
+    }
+
+    @Override
+    public void redo(final int page) {
+        final Page doc = this.pages.get(page);
+
+        if (doc.position < doc.edits.size()) {
+            doc.edits.get(doc.position++).run(doc.strokes, false);
+
+            this.changed = true;
+        }
+    }
+
+    @Override
+    public boolean isChanged() {
+        return this.changed;
+    }
+
+    /**
+     * Discards the document. Nothing else needs to be released.
+     */
+    @Override
+    public void close() {
+        this.pages.clear();
+    }
+
+    private static final class Page {
+        final String            id;
+        final int               backgroundColor;
+        final ArrayList<Stroke> strokes = new ArrayList<Stroke>();
+        final ArrayList<Edit>   edits   = new ArrayList<Edit>();
+
+        int position;
+
+        Page(final String id, final int backgroundColor) {
+            this.id              = id;
+            this.backgroundColor = backgroundColor;
+        }
+
+        /**
+         * Makes an edit as a new history step, which discards the steps that could be redone.
+         */
+        void apply(final Edit edit) {
+            while (this.edits.size() > this.position) {
+                this.edits.remove(this.edits.size() - 1);
+            }
+
+            this.edits.add(edit);
+            this.position++;
+
+            edit.run(this.strokes, false);
+        }
+    }
+
+    /**
+     * A history step, that inserts or removes consecutive strokes.
+     */
+    private static final class Edit {
+        final boolean           insert;
+        final int               index;
+        final ArrayList<Stroke> strokes;
+
+        Edit(final boolean insert, final int index, final ArrayList<Stroke> strokes) {
+            this.insert  = insert;
+            this.index   = index;
+            this.strokes = strokes;
+        }
+
+        void run(final ArrayList<Stroke> target, final boolean reverse) {
+            if (this.insert != reverse) {
+                target.addAll(this.index, this.strokes);
+            } else {
+                target.subList(this.index, this.index + this.strokes.size()).clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package android.lib.pen;
+
+/**
+ * Receives the {@link PenMetrics metrics} of a {@link PenService}, e.g. to log them, write them to a file or send them to a server.
+ * @see PenMetrics#addExporter(MetricsExporter)
+ */
+public interface MetricsExporter {
+    /**
+     * Called on the background thread of {@link PenMetrics}, or on the thread that calls {@link PenMetrics#export()}.
+     * @param snapshot the metrics recorded so far.
+     */
+    void export(PenMetrics.Snapshot snapshot);
+}
@@ -0,0 +1,134 @@
+package android.lib.pen;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the runtime handles of the objects of a page in z-order, and records the changes to the order as operations
+ * that, replayed in order, turn the previous order into the new one.
+ * <p>An operation is <code>(index &lt;&lt; 1) | 1</code> to insert the next inserted object at <code>index</code>,
+ * or <code>index &lt;&lt; 1</code> to remove the object at <code>index</code>. This class does not depend on Android.</p>
+ */
+final class ObjectOrder {
+    private final IntArray handles = new IntArray();
+
+    static int insertOf(final int index) {
+        return index << 1 | 1;
+    }
+
+    static int removeOf(final int index) {
+        return index << 1;
+    }
+
+    static boolean isInsert(final int op) {
+        return (op & 1) == 1;
+    }
+
+    /**
+     * Gets the z-order index an operation applies at.
+     */
+    static int indexOfOp(final int op) {
+        return op >>> 1;
+    }
+
+    int size() {
+        return this.handles.size();
+    }
+
+    /**
+     * Gets the z-order index of an object.
+     * @return the index, or <code>-1</code> if the object is not tracked.
+     */
+    int indexOf(final int handle) {
+        return this.handles.indexOf(handle);
+    }
+
+    void clear() {
+        this.handles.clear();
+    }
+
+    /**
+     * Tracks an object on top of the others.
+     */
+    void add(final int handle) {
+        this.handles.add(handle);
+    }
+
+    /**
+     * Tracks objects inserted into the page.
+     * @param handles the handles of the inserted objects.
+     * @param indices the z-order indices of the objects after the insertion, or <code>-1</code> if unknown, in which case the object is
+     * tracked but not recorded.
+     * @param ops the list to add the operations to, or <code>null</code> not to record them.
+     * @return the positions in <code>handles</code> of the objects recorded, in the order their insertions are recorded.
+     */
+    int[] insert(final int[] handles, final int[] indices, final IntArray ops) {
+        final int   count = handles.length;
+        final int[] order = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        // Sorts by index so that replaying the insertions in order reproduces the same z-order. Batches are small, so insertion sort will do.
+        for (int i = 1; i < count; i++) {
+            final int o = order[i];
+
+            int j = i - 1;
+
+            while (j >= 0 && indices[order[j]] > indices[o]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+
+            order[j + 1] = o;
+        }
+
+        final IntArray recorded = new IntArray(count);
+
+        for (int i = 0; i < count; i++) {
+            final int index = indices[order[i]];
+
+            this.handles.add(Math.min(Math.max(0, index), this.handles.size()), handles[order[i]]);
+
+            if (ops != null && index >= 0) {
+                ops.add(ObjectOrder.insertOf(index));
+                recorded.add(order[i]);
+            }
+        }
+
+        return recorded.toArray();
+    }
+
+    /**
+     * Stops tracking objects removed from the page.
+     * @param handles the handles of the removed objects. Objects that are not tracked are ignored.
+     * @param ops the list to add the operations to, or <code>null</code> not to record them.
+     * @return the number of objects removed.
+     */
+    int remove(final int[] handles, final IntArray ops) {
+        final int[] indices = new int[handles.length];
+
+        for (int i = indices.length; --i >= 0;) {
+            indices[i] = this.handles.indexOf(handles[i]);
+        }
+
+        // Removes from the highest index so that the lower indices stay valid when the removals are replayed in order
+        Arrays.sort(indices);
+
+        int count = 0;
+
+        for (int i = indices.length; --i >= 0;) {
+            if (indices[i] >= 0) {
+                this.handles.removeAt(indices[i]);
+
+                if (ops != null) {
+                    ops.add(ObjectOrder.removeOf(indices[i]));
+                }
+
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,21 @@
+package android.lib.pen;
+
+/**
+ * Receives the result of an {@link PenService#initAsync(int, int, int, String, int, int, int, int, String, OnReadyListener) asynchronous initialization},
+ * on the UI thread.
+ */
+public interface OnReadyListener {
+    /**
+     * Called when {@link PenService} is initialized and ready to use.
+     * @param timings the time taken by each phase of the initialization.
+     */
+    void onReady(InitTimings timings);
+
+    /**
+     * Called when {@link PenService} cannot be initialized.
+     * <p>If the Pen package is not supported on the device, a message has already been displayed.</p>
+     * @param e the cause, e.g. a {@link com.samsung.android.sdk.SsdkUnsupportedException} if the Pen package is not supported,
+     * or a {@link com.samsung.android.sdk.pen.document.SpenInvalidPasswordException} if the SPD file to load is password protected.
+     */
+    void onFailed(Exception e);
+}
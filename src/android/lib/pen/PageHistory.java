@@ -0,0 +1,268 @@
+package android.lib.pen;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import android.graphics.PointF;
+import android.graphics.RectF;
+
+import com.samsung.android.sdk.pen.document.SpenObjectBase;
+import com.samsung.android.sdk.pen.document.SpenObjectContainer;
+import com.samsung.android.sdk.pen.document.SpenObjectStroke;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+
+/**
+ * Keeps a log of the changes of a {@link SpenPageDoc page}, one {@link Delta} per history commit.
+ * <p>Version <code>0</code> is the state of the page when the log started, and version <code>n</code> is the state after the <code>n</code>-th commit.
+ * Any version can be rebuilt from the base state by applying the deltas in order.</p>
+ * <p>The runtime handles of the objects of the page are tracked in {@link ObjectOrder z-order}, so that a removed object can be recorded by its index.</p>
+ */
+final class PageHistory {
+    private static final long OBJECT_BYTES = 128;
+    private static final long POINT_BYTES  = 16;
+    private static final long TEXT_BYTES   = 1024;
+    private static final long PIXEL_BYTES  = 4;
+
+    /**
+     * The changes made by a history commit.
+     */
+    static final class Delta {
+        /**
+         * The {@link ObjectOrder operations}, in order. An insertion inserts the next object in {@link #objects} or {@link #file}.
+         */
+        final int[] ops;
+
+        /**
+         * The file that contains the inserted objects once {@link HistoryStore spilled}, or <code>null</code> if they are still in {@link #objects}
+         * or the commit inserted nothing.
+         */
+        String file;
+
+        /**
+         * Copies of the inserted objects, kept in memory until the delta is spilled to {@link #file}, or <code>null</code> if spilled or the commit inserted nothing.
+         * They are copies because the objects of the page may change after the commit.
+         */
+        ArrayList<SpenObjectBase> objects;
+
+        /**
+         * The approximate number of bytes of {@link #objects}, or <code>0</code> once spilled.
+         */
+        long copyBytes;
+
+        /**
+         * The approximate number of bytes the Pen package keeps in memory to undo the commit.
+         */
+        final long bytes;
+
+        /**
+         * The document-wide order of the commit.
+         */
+        final long sequence;
+
+        Delta(final int[] ops, final String file, final ArrayList<SpenObjectBase> objects, final long bytes, final long sequence) {
+            this.ops      = ops;
+            this.file     = file;
+            this.objects  = objects;
+            this.bytes    = bytes;
+            this.sequence = sequence;
+
+            if (objects != null) {
+                for (final SpenObjectBase object : objects) {
+                    this.copyBytes += PageHistory.estimate(object);
+                }
+            }
+        }
+    }
+
+    final File directory;
+
+    final ArrayList<Delta> deltas = new ArrayList<Delta>();
+
+    /**
+     * The deltas whose copies of objects are still to be spilled to disk, oldest first.
+     */
+    final ArrayList<Delta> spills = new ArrayList<Delta>();
+
+    /**
+     * The file that contains the objects of version <code>0</code>, or <code>null</code> if the page was empty.
+     */
+    String baseFile;
+
+    /**
+     * The checkpoints, saved about every {@link HistoryPolicy#getCheckpointInterval() checkpoint interval} versions.
+     */
+    final CheckpointList checkpoints = new CheckpointList();
+
+    /**
+     * Whether a checkpoint of the current version is to be saved when the main thread is idle.
+     */
+    boolean checkpointDue;
+
+    /**
+     * The number of leading deltas that have been merged into coarser ones by a {@link CompactionPolicy}.
+     */
+    int coarseCount;
+
+    /**
+     * The current version.
+     */
+    int position;
+
+    /**
+     * The versions after <code>floor</code> and up to {@link #position} can be undone from memory by the Pen package.
+     */
+    int floor;
+
+    /**
+     * The approximate number of bytes of the deltas that can be undone from memory.
+     */
+    long memoryBytes;
+
+    /**
+     * The approximate number of bytes of the copies of objects not spilled to disk yet.
+     */
+    long copyBytes;
+
+    /**
+     * The undo limit last set on the page.
+     */
+    int undoLimit;
+
+    private final ObjectOrder order = new ObjectOrder();
+
+    private final IntArray                  pendingOps     = new IntArray();
+    private final ArrayList<SpenObjectBase> pendingObjects = new ArrayList<SpenObjectBase>();
+    private long                            pendingBytes;
+
+    private int fileCount;
+
+    PageHistory(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a new file name in the directory of this page.
+     */
+    String newFile() {
+        return new File(this.directory, Integer.toString(this.fileCount++)).getAbsolutePath();
+    }
+
+    /**
+     * Starts tracking the objects of the page from scratch.
+     */
+    void resetHandles(final ArrayList<SpenObjectBase> objects) {
+        this.order.clear();
+
+        if (objects != null) {
+            for (final SpenObjectBase object : objects) {
+                this.order.add(object.getRuntimeHandle());
+            }
+        }
+    }
+
+    void onObjectAdded(final SpenPageDoc page, final ArrayList<SpenObjectBase> objects, final boolean record) {
+        final int   count   = objects.size();
+        final int[] handles = new int[count];
+        final int[] indices = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            handles[i] = objects.get(i).getRuntimeHandle();
+            indices[i] = page.getObjectIndex(objects.get(i));
+        }
+
+        for (final int i : this.order.insert(handles, indices, record ? this.pendingOps : null)) {
+            this.pendingObjects.add(objects.get(i));
+            this.pendingBytes += PageHistory.estimate(objects.get(i));
+        }
+    }
+
+    void onObjectRemoved(final ArrayList<SpenObjectBase> objects, final boolean record) {
+        final int[] handles = new int[objects.size()];
+
+        for (int i = handles.length; --i >= 0;) {
+            handles[i] = objects.get(i).getRuntimeHandle();
+
+            if (record && this.order.indexOf(handles[i]) >= 0) {
+                this.pendingBytes += PageHistory.estimate(objects.get(i));
+            }
+        }
+
+        this.order.remove(handles, record ? this.pendingOps : null);
+    }
+
+    void onObjectChanged(final SpenObjectBase object, final boolean record) {
+        if (record) {
+            final int index = this.order.indexOf(object.getRuntimeHandle());
+
+            if (index >= 0) {
+                this.pendingOps.add(ObjectOrder.removeOf(index));
+                this.pendingOps.add(ObjectOrder.insertOf(index));
+                this.pendingObjects.add(object);
+                this.pendingBytes += 2 * PageHistory.estimate(object);
+            }
+        }
+    }
+
+    boolean hasPendingChanges() {
+        return this.pendingOps.size() > 0;
+    }
+
+    ArrayList<SpenObjectBase> getPendingObjects() {
+        return this.pendingObjects;
+    }
+
+    /**
+     * Turns the pending changes into a {@link Delta} and clears them.
+     * @param file the file that contains the {@link #getPendingObjects() pending objects}, or <code>null</code> if they are kept in memory or there is none.
+     * @param objects the copies of the pending objects, or <code>null</code> if they are saved to <code>file</code> or there is none.
+     */
+    Delta takePendingChanges(final String file, final ArrayList<SpenObjectBase> objects, final long sequence) {
+        final Delta delta = new Delta(this.pendingOps.toArray(), file, objects, this.pendingBytes, sequence);
+
+        this.clearPendingChanges();
+
+        return delta;
+    }
+
+    /**
+     * Discards the changes that have not been committed.
+     */
+    void clearPendingChanges() {
+        this.pendingOps.clear();
+        this.pendingObjects.clear();
+        this.pendingBytes = 0;
+    }
+
+    /**
+     * Estimates the number of bytes used by an object in memory.
+     */
+    static long estimate(final SpenObjectBase object) {
+        switch (object.getType()) {
+            case SpenObjectBase.TYPE_STROKE:
+                final PointF[] points = ((SpenObjectStroke)object).getPoints();
+
+                return PageHistory.OBJECT_BYTES + (points == null ? 0 : points.length * PageHistory.POINT_BYTES);
+
+            case SpenObjectBase.TYPE_IMAGE:
+                final RectF rect = object.getRect();
+
+                return PageHistory.OBJECT_BYTES + (rect == null ? 0 : (long)(rect.width() * rect.height()) * PageHistory.PIXEL_BYTES);
+
+            case SpenObjectBase.TYPE_CONTAINER:
+                long bytes = PageHistory.OBJECT_BYTES;
+
+                final ArrayList<SpenObjectBase> children = ((SpenObjectContainer)object).getObjectList();
+
+                if (children != null) {
+                    for (final SpenObjectBase child : children) {
+                        bytes += PageHistory.estimate(child);
+                    }
+                }
+
+                return bytes;
+
+            default:
+                return PageHistory.TEXT_BYTES;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.LruCache;
+
+import com.samsung.android.sdk.pen.document.SpenNoteDoc;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+import com.samsung.android.sdk.pen.engine.SpenCapturePage;
+
+/**
+ * Renders the pages next to the current one into bitmaps, so that a page flip can show the new page before the canvas has rendered it.
+ * <p>The pages of a document shown on a canvas must be used from the main thread, so pages are rendered one at a time when the main thread is idle.
+ * The bitmaps are kept within a memory budget, least recently used first out.</p>
+ */
+final class PagePreRenderer implements MessageQueue.IdleHandler {
+    private final SpenCapturePage          capturePage;
+    private final LruCache<String, Bitmap> bitmaps;
+    private final float                    ratio;
+    private final ArrayList<SpenPageDoc>   pending = new ArrayList<SpenPageDoc>();
+
+    private boolean scheduled;
+
+    /**
+     * Creates a new pre-renderer.
+     * @param maxBytes the maximum number of bytes of the rendered bitmaps.
+     * @param ratio the ratio of the size of a rendered bitmap to the size of its page.
+     */
+    PagePreRenderer(final Context context, final int maxBytes, final float ratio) {
+        this.capturePage = new SpenCapturePage(context);
+        this.ratio       = ratio;
+        this.bitmaps     = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(final String key, final Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+    }
+
+    float getRatio() {
+        return this.ratio;
+    }
+
+    /**
+     * Renders the pages before and after the specified page, if not rendered yet.
+     */
+    void request(final SpenNoteDoc noteDoc, final int page) {
+        this.pending.clear();
+
+        for (final int index : new int[] { page + 1, page - 1 }) {
+            if (index >= 0 && index < noteDoc.getPageCount()) {
+                final SpenPageDoc pageDoc = noteDoc.getPage(index);
+
+                if (this.bitmaps.get(pageDoc.getId()) == null) {
+                    this.pending.add(pageDoc);
+                }
+            }
+        }
+
+        if (!this.pending.isEmpty() && !this.scheduled) {
+            this.scheduled = true;
+
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Gets the rendered bitmap of a page.
+     * @return the rendered bitmap, or <code>null</code> if the page is not rendered.
+     */
+    Bitmap get(final String pageId) {
+        return this.bitmaps.get(pageId);
+    }
+
+    /**
+     * Discards the rendered bitmap of a page, e.g. after the page is changed.
+     */
+    void invalidate(final String pageId) {
+        this.bitmaps.remove(pageId);
+    }
+
+    /**
+     * Discards all rendered bitmaps and pending requests, e.g. when the system is low on memory.
+     * @return the number of bytes of the bitmaps discarded.
+     */
+    int clear() {
+        final int bytes = this.bitmaps.size();
+
+        this.pending.clear();
+        this.bitmaps.evictAll();
+
+        return bytes;
+    }
+
+    void close() {
+        this.clear();
+
+        if (this.scheduled) {
+            this.scheduled = false;
+
+            Looper.myQueue().removeIdleHandler(this);
+        }
+
+        this.capturePage.close();
+    }
+
+    /**
+     * Renders the next pending page.
+     * @return <code>true</code> to render the remaining pages when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    @Override
+    public boolean queueIdle() {
+        if (!this.pending.isEmpty()) {
+            final SpenPageDoc pageDoc = this.pending.remove(0);
+            final boolean     loaded  = PenService.loadObjects(pageDoc);
+
+            this.capturePage.setPageDoc(pageDoc);
+
+            final Bitmap bitmap = this.capturePage.capturePage(this.ratio);
+
+            // Leaves a page unloaded to save memory as it was
+            if (loaded) {
+                PenService.unloadObjects(pageDoc);
+            }
+
+            if (bitmap != null) {
+                this.bitmaps.put(pageDoc.getId(), bitmap);
+            }
+        }
+
+        this.scheduled = !this.pending.isEmpty();
+
+        return this.scheduled;
+    }
+}
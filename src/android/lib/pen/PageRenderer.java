@@ -0,0 +1,196 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PointF;
+import android.graphics.RectF;
+
+import com.samsung.android.sdk.pen.document.SpenNoteDoc;
+import com.samsung.android.sdk.pen.document.SpenObjectBase;
+import com.samsung.android.sdk.pen.document.SpenObjectStroke;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+import com.samsung.android.sdk.pen.engine.SpenCapturePage;
+
+/**
+ * Renders {@link SpenPageDoc pages} into bitmaps without a {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView canvas},
+ * e.g. to generate thumbnails or exports from a {@link android.app.Service} or a background job.
+ * <p>A page can be rendered by the Pen package, on the thread that created its {@link SpenNoteDoc document}. Its strokes can also be
+ * {@link #getStrokes(SpenPageDoc) decoded} there and rendered later on any thread, without the Pen package.</p>
+ */
+public final class PageRenderer {
+    private final Context context;
+
+    private SpenCapturePage capturePage;
+
+    /**
+     * Creates a new page renderer.
+     * @param context any context, e.g. a {@link android.app.Service}. Only its application context is kept.
+     */
+    public PageRenderer(final Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Renders a page by the Pen package.
+     * @param ratio the ratio of the size of the bitmap to the size of the page.
+     * @return the rendered bitmap, or <code>null</code> if the page cannot be rendered.
+     */
+    public Bitmap render(final SpenPageDoc pageDoc, final float ratio) {
+        if (this.capturePage == null) {
+            this.capturePage = new SpenCapturePage(this.context);
+        }
+
+        this.capturePage.setPageDoc(pageDoc);
+
+        return this.capturePage.capturePage(ratio);
+    }
+
+    /**
+     * Renders a page by the Pen package into an existing bitmap, scaled to fit its width.
+     * @return <code>true</code> if the page is rendered; otherwise, <code>false</code>.
+     */
+    public boolean render(final SpenPageDoc pageDoc, final Bitmap bitmap) {
+        final Bitmap capture = this.render(pageDoc, (float)bitmap.getWidth() / pageDoc.getWidth());
+
+        if (capture == null) {
+            return false;
+        }
+
+        new Canvas(bitmap).drawBitmap(capture, null, new RectF(0, 0, bitmap.getWidth(), bitmap.getWidth() * (float)pageDoc.getHeight() / pageDoc.getWidth()), new Paint(Paint.FILTER_BITMAP_FLAG));
+
+        capture.recycle();
+
+        return true;
+    }
+
+    /**
+     * Releases the resources used to render pages by the Pen package.
+     */
+    public void close() {
+        if (this.capturePage != null) {
+            this.capturePage.close();
+            this.capturePage = null;
+        }
+    }
+
+    /**
+     * Decodes the strokes of a page, so that they can be rendered by {@link #render(List, int, int, int, float)} on any thread.
+     * <p>Objects other than strokes, such as images and text, are not decoded.</p>
+     * @return the strokes of the page, in drawing order.
+     */
+    public static ArrayList<Stroke> getStrokes(final SpenPageDoc pageDoc) {
+        final ArrayList<SpenObjectBase> objects = pageDoc.getObjectList();
+        final ArrayList<Stroke>         strokes = new ArrayList<Stroke>(objects == null ? 0 : objects.size());
+
+        if (objects != null) {
+            for (final SpenObjectBase object : objects) {
+                if (object instanceof SpenObjectStroke) {
+                    final Stroke stroke = PageRenderer.toStroke((SpenObjectStroke)object);
+
+                    if (stroke != null) {
+                        strokes.add(stroke);
+                    }
+                }
+            }
+        }
+
+        return strokes;
+    }
+
+    /**
+     * Renders strokes into a new bitmap, without the Pen package.
+     * @param width the width of the page.
+     * @param height the height of the page.
+     * @param backgroundColor the background color of the page.
+     * @param ratio the ratio of the size of the bitmap to the size of the page.
+     * @return the rendered bitmap.
+     */
+    public static Bitmap render(final List<Stroke> strokes, final int width, final int height, final int backgroundColor, final float ratio) {
+        final Bitmap bitmap = Bitmap.createBitmap(Math.max(1, (int)Math.ceil(width * ratio)), Math.max(1, (int)Math.ceil(height * ratio)), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+
+        canvas.drawColor(backgroundColor);
+        canvas.scale(ratio, ratio);
+
+        PageRenderer.draw(canvas, strokes, ratio, 0);
+
+        return bitmap;
+    }
+
+    /**
+     * Draws strokes on a canvas, in page coordinates.
+     * @param ratio the ratio of the size of a pixel of the canvas to the size of a page unit, to keep thin strokes at least a pixel wide.
+     * @param tolerance the maximum distance, in page units, by which the strokes may be {@link StrokeSimplifier simplified}, or <code>0</code> to draw every point.
+     */
+    static void draw(final Canvas canvas, final List<Stroke> strokes, final float ratio, final float tolerance) {
+        final Paint    paint   = new Paint(Paint.ANTI_ALIAS_FLAG);
+        final Path     path    = new Path();
+        final IntArray indices = new IntArray();
+
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+
+        for (final Stroke stroke : strokes) {
+            final int count = stroke.getPointCount();
+
+            if (count > 0) {
+                indices.clear();
+
+                if (tolerance > 0) {
+                    StrokeSimplifier.simplify(stroke.xs, stroke.ys, count, tolerance, indices);
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        indices.add(i);
+                    }
+                }
+
+                path.rewind();
+                path.moveTo(stroke.xs[0], stroke.ys[0]);
+
+                // A single point is drawn as a dot
+                if (indices.size() == 1) {
+                    path.lineTo(stroke.xs[0], stroke.ys[0]);
+                }
+
+                for (int i = 1; i < indices.size(); i++) {
+                    final int index = indices.get(i);
+
+                    path.lineTo(stroke.xs[index], stroke.ys[index]);
+                }
+
+                paint.setColor(stroke.getColor());
+
+                // Keeps thin strokes at least a pixel wide
+                paint.setStrokeWidth(Math.max(stroke.getSize(), 1 / ratio));
+
+                canvas.drawPath(path, paint);
+            }
+        }
+    }
+
+    static Stroke toStroke(final SpenObjectStroke object) {
+        final PointF[] points = object.getPoints();
+
+        if (points == null || points.length == 0) {
+            return null;
+        }
+
+        final float[] xs        = new float[points.length];
+        final float[] ys        = new float[points.length];
+        final float[] pressures = object.getPressures();
+
+        for (int i = 0; i < points.length; i++) {
+            xs[i] = points[i].x;
+            ys[i] = points[i].y;
+        }
+
+        return new Stroke(object.getColor(), object.getPenSize(), xs, ys, pressures == null || pressures.length != points.length ? null : pressures.clone());
+    }
+}
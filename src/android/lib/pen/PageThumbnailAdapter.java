@@ -0,0 +1,285 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+
+import com.samsung.android.sdk.pen.document.SpenNoteDoc;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+import com.samsung.android.sdk.pen.engine.SpenCapturePage;
+
+/**
+ * Shows the thumbnails of the {@link SpenPageDoc pages} of the current {@link SpenNoteDoc document} in a {@link android.widget.GridView},
+ * {@link android.widget.ListView} or any other {@link android.widget.AdapterView}.
+ * <p>Only the thumbnails of the visible items are rendered, the most recently requested ones first. The pages of a document shown on a canvas
+ * must be used from the main thread, so thumbnails are rendered there, one at a time when the main thread is idle. Rendering a thumbnail may still
+ * take longer than a frame, so a fling may drop frames while new thumbnails are rendered. A pending thumbnail is cancelled when its item scrolls out of view. Rendered thumbnails are cached within a memory budget,
+ * and the bitmaps of evicted thumbnails are reused for new ones.</p>
+ * <p>The item at a position is the {@link SpenPageDoc page} at the same page index, and its item is the page ID.</p>
+ * @see PenService#createThumbnailAdapter(int, int)
+ */
+public final class PageThumbnailAdapter extends BaseAdapter implements MessageQueue.IdleHandler {
+    private static final int MAX_POOL_SIZE = 8;
+
+    private final Context                  context;
+    private final PenService               service;
+    private final int                      thumbnailWidth;
+    private final int                      thumbnailHeight;
+    private final LruCache<String, Bitmap> thumbnails;
+    private final ArrayList<Bitmap>        pool     = new ArrayList<Bitmap>();
+    private final Map<ImageView, String>   bindings = new HashMap<ImageView, String>();
+    private final ArrayList<String>        pending  = new ArrayList<String>();
+    private final Paint                    paint    = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect                     bounds;
+
+    private SpenCapturePage capturePage;
+    private boolean         scheduled;
+
+    PageThumbnailAdapter(final Context context, final PenService service, final int thumbnailWidth, final int thumbnailHeight, final int maxBytes) {
+        this.context         = context;
+        this.service         = service;
+        this.thumbnailWidth  = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        this.bounds          = new Rect(0, 0, thumbnailWidth, thumbnailHeight);
+        this.thumbnails      = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(final String key, final Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(final boolean evicted, final String key, final Bitmap oldValue, final Bitmap newValue) {
+                PageThumbnailAdapter.this.recycle(oldValue);
+            }
+        };
+    }
+
+    @Override
+    public int getCount() {
+        final SpenNoteDoc noteDoc = this.service.getNoteDoc();
+
+        return noteDoc == null ? 0 : noteDoc.getPageCount();
+    }
+
+    @Override
+    public Object getItem(final int position) {
+        return this.service.getNoteDoc().getPageIdByIndex(position);
+    }
+
+    @Override
+    public long getItemId(final int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(final int position, final View convertView, final ViewGroup parent) {
+        final ImageView view;
+
+        if (convertView == null) {
+            view = new ImageView(this.context);
+            view.setLayoutParams(new AbsListView.LayoutParams(this.thumbnailWidth, this.thumbnailHeight));
+            view.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            view.setBackgroundColor(Color.LTGRAY);
+        } else {
+            view = (ImageView)convertView;
+        }
+
+        this.bind(view, (String)this.getItem(position));
+
+        return view;
+    }
+
+    /**
+     * Discards the thumbnail of a {@link SpenPageDoc page}, and renders it again if it is visible.
+     */
+    public void invalidate(final String pageId) {
+        this.thumbnails.remove(pageId);
+
+        if (this.bindings.containsValue(pageId)) {
+            this.request(pageId);
+        }
+    }
+
+    /**
+     * Discards all thumbnails, e.g. after another {@link SpenNoteDoc document} is loaded.
+     */
+    void reset() {
+        this.pending.clear();
+        this.thumbnails.evictAll();
+
+        this.notifyDataSetChanged();
+    }
+
+    /**
+     * Releases the cached thumbnails and the bitmaps kept for reuse, e.g. when the system is low on memory.
+     * <p>The visible thumbnails stay shown, and are rendered again when their items are bound again.</p>
+     * @return the number of bytes of the bitmaps released, including the visible thumbnails, which are only released once their views are bound again.
+     */
+    int trim() {
+        int bytes = this.thumbnails.size();
+
+        for (final Bitmap bitmap : this.pool) {
+            bytes += bitmap.getRowBytes() * bitmap.getHeight();
+        }
+
+        this.thumbnails.evictAll();
+
+        // The evicted bitmaps would otherwise be kept for reuse
+        this.pool.clear();
+
+        return bytes;
+    }
+
+    /**
+     * Cancels all pending thumbnails and releases all cached bitmaps.
+     */
+    public void close() {
+        if (this.scheduled) {
+            this.scheduled = false;
+
+            Looper.myQueue().removeIdleHandler(this);
+        }
+
+        this.pending.clear();
+        this.bindings.clear();
+        this.thumbnails.evictAll();
+        this.pool.clear();
+
+        if (this.capturePage != null) {
+            this.capturePage.close();
+            this.capturePage = null;
+        }
+    }
+
+    /**
+     * Renders the most recently requested thumbnail that is still visible.
+     * @return <code>true</code> to render the remaining thumbnails when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    @Override
+    public boolean queueIdle() {
+        if (this.pending.isEmpty()) {
+            this.scheduled = false;
+
+            return false;
+        }
+
+        final String      pageId  = this.pending.remove(this.pending.size() - 1);
+        final SpenNoteDoc noteDoc = this.service.getNoteDoc();
+        final int         index   = noteDoc == null ? -1 : noteDoc.getPageIndexById(pageId);
+
+        if (index >= 0) {
+            final Bitmap thumbnail = this.render(noteDoc, noteDoc.getPage(index));
+
+            if (thumbnail != null) {
+                this.thumbnails.put(pageId, thumbnail);
+
+                for (final Map.Entry<ImageView, String> binding : this.bindings.entrySet()) {
+                    if (pageId.equals(binding.getValue())) {
+                        binding.getKey().setImageBitmap(thumbnail);
+                    }
+                }
+            }
+        }
+
+        this.scheduled = !this.pending.isEmpty();
+
+        return this.scheduled;
+    }
+
+    private void bind(final ImageView view, final String pageId) {
+        final String previous = this.bindings.put(view, pageId);
+
+        // The item of the recycled view is no longer visible, so its thumbnail is no longer needed
+        if (previous != null && !previous.equals(pageId) && !this.bindings.containsValue(previous)) {
+            this.pending.remove(previous);
+        }
+
+        final Bitmap thumbnail = this.thumbnails.get(pageId);
+
+        view.setImageBitmap(thumbnail);
+
+        if (thumbnail == null) {
+            this.request(pageId);
+        }
+    }
+
+    private void request(final String pageId) {
+        this.pending.remove(pageId);
+        this.pending.add(pageId);
+
+        this.schedule();
+    }
+
+    private void schedule() {
+        if (!this.scheduled && !this.pending.isEmpty()) {
+            this.scheduled = true;
+
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    private Bitmap render(final SpenNoteDoc noteDoc, final SpenPageDoc pageDoc) {
+        if (this.capturePage == null) {
+            this.capturePage = new SpenCapturePage(this.context);
+        }
+
+        final boolean loaded = PenService.loadObjects(pageDoc);
+
+        this.capturePage.setPageDoc(pageDoc);
+
+        final Bitmap capture = this.capturePage.capturePage((float)this.thumbnailWidth / noteDoc.getWidth());
+
+        // Leaves a page unloaded to save memory as it was
+        if (loaded) {
+            PenService.unloadObjects(pageDoc);
+        }
+
+        if (capture == null) {
+            return null;
+        }
+
+        final Bitmap thumbnail = this.pool.isEmpty() ? Bitmap.createBitmap(this.thumbnailWidth, this.thumbnailHeight, Bitmap.Config.ARGB_8888) : this.pool.remove(this.pool.size() - 1);
+
+        thumbnail.eraseColor(Color.TRANSPARENT);
+
+        new Canvas(thumbnail).drawBitmap(capture, null, this.bounds, this.paint);
+
+        capture.recycle();
+
+        return thumbnail;
+    }
+
+    /**
+     * Keeps the bitmap of an evicted thumbnail for reuse, unless it is still shown.
+     */
+    private void recycle(final Bitmap bitmap) {
+        if (this.pool.size() < PageThumbnailAdapter.MAX_POOL_SIZE) {
+            for (final ImageView view : this.bindings.keySet()) {
+                final Drawable drawable = view.getDrawable();
+
+                if (drawable instanceof BitmapDrawable && ((BitmapDrawable)drawable).getBitmap() == bitmap) {
+                    return;
+                }
+            }
+
+            this.pool.add(bitmap);
+        }
+    }
+}
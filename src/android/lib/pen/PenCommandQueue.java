@@ -0,0 +1,174 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Lets any thread drive a {@link PenService}, e.g. a background import or sync job.
+ * <p>Commands are queued and run in order on the UI thread, in batches that fit in a frame. The {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView canvas}
+ * is updated once at the end of a batch, however many commands of the batch change it. Each command returns a {@link Future} of its result;
+ * the UI thread must not wait for one, as the command could only run after it returns.</p>
+ * @see PenService#getCommandQueue()
+ */
+public final class PenCommandQueue implements Runnable {
+    private static final long MAX_BATCH_TIME = 8;
+
+    private final PenService               service;
+    private final Handler                  handler  = new Handler(Looper.getMainLooper());
+    private final ArrayList<FutureTask<?>> commands = new ArrayList<FutureTask<?>>();
+
+    private boolean scheduled;
+
+    PenCommandQueue(final PenService service) {
+        this.service = service;
+    }
+
+    /**
+     * Queues a command. May be called from any thread.
+     * @param command the command to run on the UI thread.
+     * @return the future result of the command.
+     */
+    public <T> Future<T> submit(final Callable<T> command) {
+        final FutureTask<T> task = new FutureTask<T>(command);
+
+        synchronized (this.commands) {
+            this.commands.add(task);
+
+            if (!this.scheduled) {
+                this.scheduled = true;
+
+                this.handler.post(this);
+            }
+        }
+
+        return task;
+    }
+
+    /**
+     * Queues {@link PenService#appendPage(int, String, int)}.
+     */
+    public Future<Void> appendPage(final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
+        return this.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PenCommandQueue.this.service.appendPage(backgroundColor, backgroundImagePath, backgroundImageMode);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues {@link PenService#removePage(int)}.
+     */
+    public Future<Void> removePage(final int page) {
+        return this.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PenCommandQueue.this.service.removePage(page);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues {@link PenService#setCurrentPage(int)}.
+     */
+    public Future<Void> setCurrentPage(final int page) {
+        return this.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PenCommandQueue.this.service.setCurrentPage(page);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues {@link PenService#addStrokes(List)}.
+     */
+    public Future<Void> addStrokes(final List<Stroke> strokes) {
+        return this.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                PenCommandQueue.this.service.addStrokes(strokes);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues {@link PenService#save(String)}.
+     * <p>The future throws an {@link java.util.concurrent.ExecutionException} caused by an {@link java.io.IOException} if the document cannot be saved.</p>
+     */
+    public Future<Void> save(final String path) {
+        return this.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                PenCommandQueue.this.service.save(path);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues {@link PenService#generateThumbnail(float)}.
+     * <p>The canvas is updated with the commands queued before this one first.</p>
+     */
+    public Future<Bitmap> capture(final float scale) {
+        return this.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                PenCommandQueue.this.service.flushBatch();
+
+                return PenCommandQueue.this.service.generateThumbnail(scale);
+            }
+        });
+    }
+
+    /**
+     * Runs the queued commands on the UI thread, until they are done or the batch takes too long.
+     */
+    @Override
+    public void run() {
+        final long deadline = SystemClock.uptimeMillis() + PenCommandQueue.MAX_BATCH_TIME;
+
+        this.service.beginBatch();
+
+        try {
+            while (SystemClock.uptimeMillis() < deadline) {
+                final FutureTask<?> task;
+
+                synchronized (this.commands) {
+                    if (this.commands.isEmpty()) {
+                        this.scheduled = false;
+
+                        return;
+                    }
+
+                    task = this.commands.remove(0);
+                }
+
+                // Any exception is reported by the future
+                task.run();
+            }
+
+            // Lets the UI thread draw a frame before the next batch
+            this.handler.post(this);
+        } finally {
+            this.service.endBatch();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package android.lib.pen;
+
+/**
+ * An event of a {@link PenService}, delivered by its {@link PenEventBus event bus}.
+ * <p>Events are reused: a listener must copy the values it needs, rather than keep the event, as it is changed after the listener returns.</p>
+ */
+public final class PenEvent {
+    /**
+     * A {@link com.samsung.android.sdk.pen.document.SpenPageDoc page} is changed by the user. The {@link #getPageId() page ID} is the changed page.
+     */
+    public static final int TYPE_COMMIT = 1;
+
+    /**
+     * Actions are undone. The {@link #getValue() value} is the number of steps undone.
+     */
+    public static final int TYPE_UNDO = 1 << 1;
+
+    /**
+     * Actions are redone. The {@link #getValue() value} is the number of steps redone.
+     */
+    public static final int TYPE_REDO = 1 << 2;
+
+    /**
+     * The current page is restored to a history version. The {@link #getValue() value} is the version.
+     */
+    public static final int TYPE_HISTORY_RESTORED = 1 << 3;
+
+    /**
+     * Another page is displayed. The {@link #getValue() value} is its page index.
+     */
+    public static final int TYPE_PAGE_CHANGED = 1 << 4;
+
+    /**
+     * Pages are appended, inserted, removed or moved. The {@link #getValue() value} is the index of the current page.
+     */
+    public static final int TYPE_PAGES_CHANGED = 1 << 5;
+
+    /**
+     * A replay is playing. The {@link #getValue() value} is the progress, ranging from 0 to 100.
+     */
+    public static final int TYPE_REPLAY_PROGRESS = 1 << 6;
+
+    /**
+     * A replay is completed.
+     */
+    public static final int TYPE_REPLAY_COMPLETED = 1 << 7;
+
+    /**
+     * The canvas is zoomed or panned. The {@link #getPanX() pan} and the {@link #getZoomRatio() zoom ratio} are set.
+     */
+    public static final int TYPE_ZOOM = 1 << 8;
+
+    /**
+     * S-Pen is detached from or attached to the device. The {@link #getValue() value} is <code>1</code> if S-Pen is detached;
+     * otherwise, <code>0</code>.
+     */
+    public static final int TYPE_PEN_DETACHED = 1 << 9;
+
+    /**
+     * All types of events.
+     */
+    public static final int TYPE_ALL = (1 << 10) - 1;
+
+    static final int TYPE_COUNT = 10;
+
+    private int    type;
+    private long   time;
+    private String pageId;
+    private int    value;
+    private float  panX;
+    private float  panY;
+    private float  zoomRatio;
+
+    PenEvent() {
+    }
+
+    /**
+     * Gets the type of this event.
+     * @return one of the <code>TYPE_</code> constants, e.g. {@link #TYPE_COMMIT}.
+     */
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the time this event happened, in the {@link android.os.SystemClock#uptimeMillis() uptime} base.
+     * @return the time this event happened, in milliseconds.
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Gets the ID of the page of this event, which is the current page unless stated otherwise by the type.
+     * @return the ID of the page of this event, or <code>null</code> if there is no page.
+     */
+    public String getPageId() {
+        return this.pageId;
+    }
+
+    /**
+     * Gets the value of this event, whose meaning depends on the type.
+     * @return the value of this event.
+     */
+    public int getValue() {
+        return this.value;
+    }
+
+    public float getPanX() {
+        return this.panX;
+    }
+
+    public float getPanY() {
+        return this.panY;
+    }
+
+    public float getZoomRatio() {
+        return this.zoomRatio;
+    }
+
+    /**
+     * Gets the index of the type of this event, from <code>0</code> to <code>TYPE_COUNT - 1</code>.
+     */
+    int getTypeIndex() {
+        return Integer.numberOfTrailingZeros(this.type);
+    }
+
+    void set(final int type, final long time, final String pageId, final int value, final float panX, final float panY, final float zoomRatio) {
+        this.type      = type;
+        this.time      = time;
+        this.pageId    = pageId;
+        this.value     = value;
+        this.panX      = panX;
+        this.panY      = panY;
+        this.zoomRatio = zoomRatio;
+    }
+
+    void set(final PenEvent event) {
+        this.set(event.type, event.time, event.pageId, event.value, event.panX, event.panY, event.zoomRatio);
+    }
+
+    @Override
+    public String toString() {
+        return "PenEvent[type=" + this.type + ", pageId=" + this.pageId + ", value=" + this.value + ", pan=" + this.panX + "," + this.panY + ", zoomRatio=" + this.zoomRatio + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+    }
+}
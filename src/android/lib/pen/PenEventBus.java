@@ -0,0 +1,292 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Delivers the events of a {@link PenService} to any number of listeners, without subclassing it.
+ * <p>Events are published on the UI thread. A listener receives them on the UI thread, or on an {@link Executor} of its choice,
+ * at most once per interval of its choice for each type of events. Events are reused, so that publishing them does not allocate
+ * memory as long as every listener is called on the UI thread.</p>
+ * @see PenService#getEventBus()
+ */
+public final class PenEventBus {
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    private static final int MAX_POOL_SIZE = 16;
+
+    private final Handler             handler = new Handler(Looper.getMainLooper());
+    private final PenEvent            event   = new PenEvent();
+    private final ArrayList<PenEvent> pool    = new ArrayList<PenEvent>();
+
+    private Subscriber[] subscribers = PenEventBus.NO_SUBSCRIBERS;
+    private int          types;
+    private boolean      publishing;
+
+    PenEventBus() {
+    }
+
+    /**
+     * Subscribes a listener that receives every event on the UI thread.
+     * @see #subscribe(PenEventListener, int, Executor, long)
+     */
+    public void subscribe(final PenEventListener listener, final int types) {
+        this.subscribe(listener, types, null, 0);
+    }
+
+    /**
+     * Subscribes a listener to some types of events. May be called from any thread.
+     * <p>A throttled listener receives at most one event of each type per interval. Events published within the interval are coalesced,
+     * and the last one is delivered when the interval ends, so the listener always receives the latest state.</p>
+     * @param listener the listener to subscribe.
+     * @param types the types of events to receive, e.g. <code>{@link PenEvent#TYPE_COMMIT} | {@link PenEvent#TYPE_UNDO}</code>,
+     * or {@link PenEvent#TYPE_ALL}.
+     * @param executor the executor that calls the listener, or <code>null</code> to call it on the UI thread.
+     * @param minInterval the minimum time between two events of the same type, in milliseconds, or <code>0</code> to receive every event.
+     */
+    public void subscribe(final PenEventListener listener, final int types, final Executor executor, final long minInterval) {
+        if (listener == null || minInterval < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        synchronized (this) {
+            final Subscriber[] subscribers = new Subscriber[this.subscribers.length + 1];
+
+            System.arraycopy(this.subscribers, 0, subscribers, 0, this.subscribers.length);
+            subscribers[this.subscribers.length] = new Subscriber(this, listener, types & PenEvent.TYPE_ALL, executor, minInterval);
+
+            this.subscribers = subscribers;
+            this.types       = this.types | types & PenEvent.TYPE_ALL;
+        }
+    }
+
+    /**
+     * Unsubscribes a listener from all the types of events it subscribed to. May be called from any thread.
+     * <p>Throttled events that are not delivered yet are dropped.</p>
+     * @param listener the listener to unsubscribe.
+     */
+    public void unsubscribe(final PenEventListener listener) {
+        synchronized (this) {
+            final ArrayList<Subscriber> subscribers = new ArrayList<Subscriber>(this.subscribers.length);
+
+            int types = 0;
+
+            for (final Subscriber subscriber : this.subscribers) {
+                if (subscriber.listener == listener) {
+                    subscriber.cancel();
+                } else {
+                    subscribers.add(subscriber);
+
+                    types |= subscriber.types;
+                }
+            }
+
+            this.subscribers = subscribers.toArray(new Subscriber[subscribers.size()]);
+            this.types       = types;
+        }
+    }
+
+    /**
+     * Determines whether any listener subscribed to a type of events, so that the event need not be published otherwise.
+     * @param type the type of events.
+     * @return <code>true</code> if any listener subscribed to the type of events; otherwise, <code>false</code>.
+     */
+    boolean accepts(final int type) {
+        synchronized (this) {
+            return (this.types & type) != 0;
+        }
+    }
+
+    /**
+     * Publishes an event to the listeners subscribed to its type. Must be called from the UI thread.
+     */
+    void publish(final int type, final String pageId, final int value, final float panX, final float panY, final float zoomRatio) {
+        final Subscriber[] subscribers;
+
+        synchronized (this) {
+            if ((this.types & type) == 0) {
+                return;
+            }
+
+            subscribers = this.subscribers;
+        }
+
+        // A listener that changes the service publishes another event before this one is delivered to all listeners
+        final boolean  nested = this.publishing;
+        final PenEvent event  = nested ? this.obtain() : this.event;
+
+        event.set(type, SystemClock.uptimeMillis(), pageId, value, panX, panY, zoomRatio);
+
+        this.publishing = true;
+
+        try {
+            for (final Subscriber subscriber : subscribers) {
+                if ((subscriber.types & type) != 0) {
+                    subscriber.dispatch(event);
+                }
+            }
+        } finally {
+            this.publishing = nested;
+
+            if (nested) {
+                this.recycle(event);
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes all listeners.
+     */
+    void close() {
+        synchronized (this) {
+            for (final Subscriber subscriber : this.subscribers) {
+                subscriber.cancel();
+            }
+
+            this.subscribers = PenEventBus.NO_SUBSCRIBERS;
+            this.types       = 0;
+        }
+    }
+
+    PenEvent obtain() {
+        synchronized (this.pool) {
+            if (!this.pool.isEmpty()) {
+                return this.pool.remove(this.pool.size() - 1);
+            }
+        }
+
+        return new PenEvent();
+    }
+
+    PenEvent obtain(final PenEvent event) {
+        final PenEvent copy = this.obtain();
+
+        copy.set(event);
+
+        return copy;
+    }
+
+    void recycle(final PenEvent event) {
+        event.set(0, 0, null, 0, 0, 0, 0);
+
+        synchronized (this.pool) {
+            if (this.pool.size() < PenEventBus.MAX_POOL_SIZE) {
+                this.pool.add(event);
+            }
+        }
+    }
+
+    /**
+     * A subscription of a listener. Delivers the throttled events when their interval ends.
+     */
+    private static final class Subscriber implements Runnable {
+        final PenEventListener listener;
+        final int              types;
+
+        private final PenEventBus bus;
+        private final Executor    executor;
+        private final long        minInterval;
+        private final long[]      times;
+        private final PenEvent[]  pendings;
+
+        private volatile boolean cancelled;
+
+        Subscriber(final PenEventBus bus, final PenEventListener listener, final int types, final Executor executor, final long minInterval) {
+            this.bus         = bus;
+            this.listener    = listener;
+            this.types       = types;
+            this.executor    = executor;
+            this.minInterval = minInterval;
+            this.times       = minInterval > 0 ? new long[PenEvent.TYPE_COUNT] : null;
+            this.pendings    = minInterval > 0 ? new PenEvent[PenEvent.TYPE_COUNT] : null;
+        }
+
+        /**
+         * Delivers an event now, or when the interval of its type ends.
+         */
+        void dispatch(final PenEvent event) {
+            if (this.cancelled) {
+                return;
+            }
+
+            if (this.minInterval > 0) {
+                final int  index = event.getTypeIndex();
+                final long next  = this.times[index] + this.minInterval;
+
+                if (this.pendings[index] != null) {
+                    // Replaces the event to deliver when the interval ends
+                    this.pendings[index].set(event);
+
+                    return;
+                }
+
+                if (event.getTime() < next) {
+                    this.pendings[index] = this.bus.obtain(event);
+
+                    this.bus.handler.postAtTime(this, next);
+
+                    return;
+                }
+
+                this.times[index] = event.getTime();
+            }
+
+            this.deliver(event);
+        }
+
+        /**
+         * Delivers the throttled events whose interval ended.
+         */
+        @Override
+        public void run() {
+            if (this.cancelled) {
+                return;
+            }
+
+            final long now = SystemClock.uptimeMillis();
+
+            for (int i = 0; i < PenEvent.TYPE_COUNT; i++) {
+                final PenEvent event = this.pendings[i];
+
+                if (event != null && now >= this.times[i] + this.minInterval) {
+                    this.pendings[i] = null;
+                    this.times[i]    = now;
+
+                    this.deliver(event);
+                    this.bus.recycle(event);
+                }
+            }
+        }
+
+        void cancel() {
+            this.cancelled = true;
+
+            this.bus.handler.removeCallbacks(this);
+        }
+
+        private void deliver(final PenEvent event) {
+            if (this.executor == null) {
+                this.listener.onEvent(event);
+            } else {
+                final PenEvent copy = this.bus.obtain(event);
+
+                this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!Subscriber.this.cancelled) {
+                                Subscriber.this.listener.onEvent(copy);
+                            }
+                        } finally {
+                            Subscriber.this.bus.recycle(copy);
+                        }
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package android.lib.pen;
+
+/**
+ * Receives the events of a {@link PenService}.
+ * @see PenEventBus#subscribe(PenEventListener, int, java.util.concurrent.Executor, long)
+ */
+public interface PenEventListener {
+    /**
+     * Called when an event the listener subscribed to happens.
+     * <p>The event is reused after this method returns, and must not be kept.</p>
+     * @param event the event.
+     */
+    void onEvent(PenEvent event);
+}
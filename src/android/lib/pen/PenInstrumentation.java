@@ -0,0 +1,278 @@
+package android.lib.pen;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Collects timings of input, input to frame, history commits, {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView canvas} updates and captures
+ * into {@link LatencyHistogram histograms}.
+ * <p>All timings are in nanoseconds. Timings are recorded on the UI thread; {@link #getSnapshot()} may be called from any thread
+ * and returns a consistent-enough copy for monitoring purposes.</p>
+ * @see PenService#setInstrumentationEnabled(boolean)
+ */
+public final class PenInstrumentation implements Runnable {
+    /**
+     * The age of a touch event when it is handled, i.e. from the time the {@link android.view.MotionEvent} was generated to the time it arrives.
+     */
+    public static final int METRIC_INPUT = 0;
+
+    /**
+     * The time from the end of a stroke (the last {@link android.view.MotionEvent} of a gesture) to the history commit of the stroke.
+     */
+    public static final int METRIC_COMMIT = 1;
+
+    /**
+     * The duration of a full {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView#update() canvas update} call, which only schedules the drawing.
+     * @see #METRIC_FRAME
+     */
+    public static final int METRIC_UPDATE = 2;
+
+    /**
+     * The duration of a {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView#updateUndo(com.samsung.android.sdk.pen.document.SpenPageDoc.HistoryUpdateInfo[]) canvas update after undo}.
+     */
+    public static final int METRIC_UPDATE_UNDO = 3;
+
+    /**
+     * The duration of a {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView#updateRedo(com.samsung.android.sdk.pen.document.SpenPageDoc.HistoryUpdateInfo[]) canvas update after redo}.
+     */
+    public static final int METRIC_UPDATE_REDO = 4;
+
+    /**
+     * The duration of a {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView#capturePage(float) page capture}.
+     */
+    public static final int METRIC_CAPTURE = 5;
+
+    /**
+     * The time from a touch event to the frame that draws it, i.e. to the vsync of the first frame after the event is handled.
+     * When several events are handled before a frame, the oldest one is measured. This is what users perceive as the latency of the ink.
+     * <p>Only measured on Android 4.1 or later.</p>
+     */
+    public static final int METRIC_FRAME = 6;
+
+    private static final int METRIC_COUNT = 7;
+
+    private static final String[] METRIC_NAMES = new String[] { "input", "commit", "update", "updateUndo", "updateRedo", "capture", "frame" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PenInstrumentation.METRIC_COUNT];
+
+    private Handler       handler;
+    private long          dumpInterval;
+    private long          lastInputTime;
+    private FrameCallback frameCallback;
+
+    PenInstrumentation() {
+        for (int i = PenInstrumentation.METRIC_COUNT; --i >= 0;) {
+            this.histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Gets a copy of all timings recorded so far.
+     * @return a copy of all timings recorded so far.
+     */
+    public Snapshot getSnapshot() {
+        final LatencyHistogram[] copies = new LatencyHistogram[PenInstrumentation.METRIC_COUNT];
+
+        synchronized (this.histograms) {
+            for (int i = PenInstrumentation.METRIC_COUNT; --i >= 0;) {
+                copies[i] = this.histograms[i].copy();
+            }
+        }
+
+        return new Snapshot(copies);
+    }
+
+    /**
+     * Removes all timings recorded so far.
+     */
+    public void clear() {
+        synchronized (this.histograms) {
+            for (int i = PenInstrumentation.METRIC_COUNT; --i >= 0;) {
+                this.histograms[i].clear();
+            }
+        }
+    }
+
+    /**
+     * Logs a {@link #getSnapshot() snapshot} periodically.
+     * <p>Must be called on the UI thread.</p>
+     * @param interval the interval in milliseconds, or zero to stop logging.
+     */
+    public void setDumpInterval(final long interval) {
+        if (this.handler == null) {
+            this.handler = new Handler(Looper.getMainLooper());
+        }
+
+        this.handler.removeCallbacks(this);
+        this.dumpInterval = interval;
+
+        if (interval > 0) {
+            this.handler.postDelayed(this, interval);
+        }
+    }
+
+    /**
+     * Logs a {@link #getSnapshot() snapshot} and schedules the next one.
+     */
+    @Override
+    public void run() {
+        Log.i(this.getClass().getName(), this.getSnapshot().toString());
+
+        if (this.dumpInterval > 0) {
+            this.handler.postDelayed(this, this.dumpInterval);
+        }
+    }
+
+    void record(final int metric, final long nanos) {
+        synchronized (this.histograms) {
+            this.histograms[metric].record(nanos);
+        }
+    }
+
+    /**
+     * Records the age of a touch event, and measures the time to the frame that draws it.
+     * <p>Must be called on the UI thread.</p>
+     */
+    void onInput(final long eventTime, final boolean last) {
+        final long now = SystemClock.uptimeMillis();
+
+        this.record(PenInstrumentation.METRIC_INPUT, (now - eventTime) * PenInstrumentation.NANOS_PER_MILLI);
+
+        if (last) {
+            this.lastInputTime = eventTime;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (this.frameCallback == null) {
+                this.frameCallback = new FrameCallback();
+            }
+
+            this.frameCallback.post(eventTime);
+        }
+    }
+
+    void onCommit() {
+        if (this.lastInputTime > 0) {
+            this.record(PenInstrumentation.METRIC_COMMIT, (SystemClock.uptimeMillis() - this.lastInputTime) * PenInstrumentation.NANOS_PER_MILLI);
+
+            this.lastInputTime = 0;
+        }
+    }
+
+    void stop() {
+        if (this.handler != null) {
+            this.handler.removeCallbacks(this);
+        }
+
+        if (this.frameCallback != null) {
+            this.frameCallback.cancel();
+        }
+    }
+
+    /**
+     * Records the time from the oldest touch event not drawn yet to the next frame.
+     * <p>A separate class, so that {@link Choreographer} is not loaded before Android 4.1.</p>
+     */
+    private final class FrameCallback implements Choreographer.FrameCallback {
+        private long eventTime;
+
+        FrameCallback() {
+        }
+
+        void post(final long eventTime) {
+            if (this.eventTime == 0) {
+                this.eventTime = eventTime;
+
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        void cancel() {
+            if (this.eventTime != 0) {
+                this.eventTime = 0;
+
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        /**
+         * @param frameTimeNanos the vsync time of the frame, on the same clock as {@link SystemClock#uptimeMillis()}.
+         */
+        @Override
+        public void doFrame(final long frameTimeNanos) {
+            PenInstrumentation.this.record(PenInstrumentation.METRIC_FRAME, Math.max(0, frameTimeNanos - this.eventTime * PenInstrumentation.NANOS_PER_MILLI));
+
+            this.eventTime = 0;
+        }
+    }
+
+    /**
+     * An immutable copy of the timings recorded by {@link PenInstrumentation}.
+     */
+    public static final class Snapshot {
+        private final LatencyHistogram[] histograms;
+
+        Snapshot(final LatencyHistogram[] histograms) {
+            this.histograms = histograms;
+        }
+
+        /**
+         * Gets the number of timings recorded for the specified metric.
+         * @param metric one of {@link PenInstrumentation#METRIC_INPUT}, {@link PenInstrumentation#METRIC_COMMIT}, {@link PenInstrumentation#METRIC_UPDATE},
+         * {@link PenInstrumentation#METRIC_UPDATE_UNDO}, {@link PenInstrumentation#METRIC_UPDATE_REDO}, {@link PenInstrumentation#METRIC_CAPTURE} and {@link PenInstrumentation#METRIC_FRAME}.
+         * @return the number of timings recorded for the specified metric.
+         */
+        public long getCount(final int metric) {
+            return this.histograms[metric].getCount();
+        }
+
+        /**
+         * Gets the timing in nanoseconds at the specified percentile of the specified metric.
+         * @param metric one of {@link PenInstrumentation#METRIC_INPUT}, {@link PenInstrumentation#METRIC_COMMIT}, {@link PenInstrumentation#METRIC_UPDATE},
+         * {@link PenInstrumentation#METRIC_UPDATE_UNDO}, {@link PenInstrumentation#METRIC_UPDATE_REDO}, {@link PenInstrumentation#METRIC_CAPTURE} and {@link PenInstrumentation#METRIC_FRAME}.
+         * @param percentile the percentile ranging from 0 to 100, e.g. <code>95</code> for p95.
+         * @return the timing in nanoseconds at the specified percentile.
+         */
+        public long getPercentile(final int metric, final double percentile) {
+            return this.histograms[metric].getPercentile(percentile);
+        }
+
+        /**
+         * Gets the histogram of the specified metric.
+         * @param metric one of {@link PenInstrumentation#METRIC_INPUT}, {@link PenInstrumentation#METRIC_COMMIT}, {@link PenInstrumentation#METRIC_UPDATE},
+         * {@link PenInstrumentation#METRIC_UPDATE_UNDO}, {@link PenInstrumentation#METRIC_UPDATE_REDO}, {@link PenInstrumentation#METRIC_CAPTURE} and {@link PenInstrumentation#METRIC_FRAME}.
+         * @return a copy of the histogram of the specified metric.
+         */
+        public LatencyHistogram getHistogram(final int metric) {
+            return this.histograms[metric].copy();
+        }
+
+        /**
+         * Formats the p50, p95 and p99 of every metric in milliseconds.
+         */
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+
+            for (int i = 0; i < PenInstrumentation.METRIC_COUNT; i++) {
+                final LatencyHistogram histogram = this.histograms[i];
+
+                if (histogram.getCount() > 0) {
+                    if (builder.length() > 0) {
+                        builder.append(", "); //$NON-NLS-1$
+                    }
+
+                    builder.append(String.format("%s: n = %d, p50 = %.1f ms, p95 = %.1f ms, p99 = %.1f ms", PenInstrumentation.METRIC_NAMES[i], Long.valueOf(histogram.getCount()), Double.valueOf(histogram.getPercentile(50) / 1e6), Double.valueOf(histogram.getPercentile(95) / 1e6), Double.valueOf(histogram.getPercentile(99) / 1e6))); //$NON-NLS-1$
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+}
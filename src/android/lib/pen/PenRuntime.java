@@ -0,0 +1,170 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import com.samsung.android.sdk.SsdkUnsupportedException;
+import com.samsung.android.sdk.pen.Spen;
+import com.samsung.android.sdk.pen.engine.SpenSurfaceView;
+
+/**
+ * Initializes the Pen package once per process, and can keep canvases ready for the next drawing screen.
+ * <p>The first {@link PenService} initializes the Pen package and detects the S-Pen feature; later ones reuse the result, including the failure
+ * if the device does not support the Pen package. A failure because the Pen package is not installed or needs an update is not reused,
+ * so that initializing again succeeds once the user has installed or updated it.</p>
+ * <p>An app that opens drawing screens one after another can {@link #setPoolSize(int) keep canvases ready}: after a {@link PenService} takes
+ * a {@link SpenSurfaceView canvas}, a new one is created when the main thread is idle, so that the next drawing screen does not wait for it.</p>
+ * <p>Pooled canvases are created with the application context, and switched to the context of the {@link android.app.Activity} that takes them.
+ * The setting views are not pooled, as they are bound to the layout of their screen when created.</p>
+ */
+public final class PenRuntime implements MessageQueue.IdleHandler {
+    /**
+     * The default number of canvases kept ready: none, as a pooled canvas holds native resources for as long as the process lives.
+     */
+    public static final int DEFAULT_POOL_SIZE = 0;
+
+    private static PenRuntime instance;
+
+    private final Context                    context;
+    private final ArrayList<SpenSurfaceView> pool = new ArrayList<SpenSurfaceView>();
+
+    private boolean                  initialized;
+    private boolean                  penEnabled;
+    private SsdkUnsupportedException unsupportedException;
+    private int                      poolSize = PenRuntime.DEFAULT_POOL_SIZE;
+    private boolean                  scheduled;
+
+    private PenRuntime(final Context context) {
+        this.context = context;
+    }
+
+    public static synchronized PenRuntime getInstance(final Context context) {
+        if (PenRuntime.instance == null) {
+            PenRuntime.instance = new PenRuntime(context.getApplicationContext());
+        }
+
+        return PenRuntime.instance;
+    }
+
+    /**
+     * Initializes the Pen package, unless it is already initialized. May be called from any thread.
+     * @throws SsdkUnsupportedException thrown if the Pen package is not supported on the device.
+     */
+    public synchronized void initialize() throws SsdkUnsupportedException {
+        if (this.unsupportedException != null) {
+            throw this.unsupportedException;
+        }
+
+        if (!this.initialized) {
+            final Spen spen = new Spen();
+
+            try {
+                spen.initialize(this.context);
+            } catch (final SsdkUnsupportedException e) {
+                // The device will not support it later either, but the Pen package may be installed or updated in the meantime
+                if (e.getType() == SsdkUnsupportedException.VENDOR_NOT_SUPPORTED || e.getType() == SsdkUnsupportedException.DEVICE_NOT_SUPPORTED) {
+                    this.unsupportedException = e;
+                }
+
+                throw e;
+            }
+
+            this.penEnabled  = spen.isFeatureEnabled(Spen.DEVICE_PEN);
+            this.initialized = true;
+        }
+    }
+
+    /**
+     * Determines whether the device supports S-Pen.
+     * @return <code>true</code> if the device supports S-Pen; otherwise, <code>false</code>.
+     */
+    public synchronized boolean isPenEnabled() {
+        if (!this.initialized) {
+            throw new IllegalStateException();
+        }
+
+        return this.penEnabled;
+    }
+
+    /**
+     * Sets the number of canvases kept ready, and creates them when the main thread is idle.
+     * <p>Must be called from the main thread, after the Pen package is {@link #initialize() initialized}.</p>
+     * @param poolSize the number of canvases kept ready, or <code>0</code> to not keep any. Default is {@link #DEFAULT_POOL_SIZE}.
+     */
+    public void setPoolSize(final int poolSize) {
+        if (poolSize < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.poolSize = poolSize;
+
+        while (this.pool.size() > poolSize) {
+            this.pool.remove(this.pool.size() - 1).close();
+        }
+
+        this.schedule();
+    }
+
+    /**
+     * Takes a canvas for an activity, from the pool if possible.
+     * <p>Must be called from the main thread, after the Pen package is {@link #initialize() initialized}.</p>
+     */
+    SpenSurfaceView obtainSurfaceView(final Context context) {
+        final SpenSurfaceView surfaceView;
+
+        if (this.pool.isEmpty()) {
+            surfaceView = new SpenSurfaceView(context);
+        } else {
+            surfaceView = this.pool.remove(this.pool.size() - 1);
+
+            ((MutableContextWrapper)surfaceView.getContext()).setBaseContext(context);
+        }
+
+        this.schedule();
+
+        return surfaceView;
+    }
+
+    /**
+     * Closes the pooled canvases, e.g. when the system is low on memory.
+     * @return the number of canvases closed.
+     */
+    int clearPool() {
+        final int count = this.pool.size();
+
+        for (final SpenSurfaceView surfaceView : this.pool) {
+            surfaceView.close();
+        }
+
+        this.pool.clear();
+
+        return count;
+    }
+
+    /**
+     * Creates a pooled canvas.
+     * @return <code>true</code> to create more canvases when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    @Override
+    public boolean queueIdle() {
+        if (this.pool.size() < this.poolSize) {
+            this.pool.add(new SpenSurfaceView(new MutableContextWrapper(this.context)));
+        }
+
+        this.scheduled = this.pool.size() < this.poolSize;
+
+        return this.scheduled;
+    }
+
+    private void schedule() {
+        if (!this.scheduled && this.initialized && this.pool.size() < this.poolSize) {
+            this.scheduled = true;
+
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+}
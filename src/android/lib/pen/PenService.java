@@ -1,22 +1,40 @@
 package android.lib.pen;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import android.animation.ValueAnimator;
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.PointF;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.DecelerateInterpolator;
 import android.widget.FrameLayout;
+import android.widget.ImageView;
 import android.widget.RelativeLayout;
 import android.widget.Toast;
 import android.widget.ToggleButton;
@@ -29,6 +47,7 @@ import com.samsung.android.sdk.pen.SpenSettingViewInterface;
 import com.samsung.android.sdk.pen.document.SpenInvalidPasswordException;
 import com.samsung.android.sdk.pen.document.SpenNoteDoc;
 import com.samsung.android.sdk.pen.document.SpenNoteFile;
+import com.samsung.android.sdk.pen.document.SpenObjectBase;
 import com.samsung.android.sdk.pen.document.SpenPageDoc;
 import com.samsung.android.sdk.pen.document.SpenUnsupportedTypeException;
 import com.samsung.android.sdk.pen.document.SpenUnsupportedVersionException;
@@ -46,7 +65,7 @@ import com.samsung.android.sdk.pen.settingui.SpenSettingPenLayout;
 /**
  * Provides common operations for using Samsung S-Pen.
  */
-public class PenService implements View.OnClickListener, SpenColorPickerListener, SpenSettingEraserLayout.EventListener, SpenPageDoc.HistoryListener, SpenReplayListener, SpenZoomListener, SpenPenChangeListener, SpenEraserChangeListener, SpenPenDetachmentListener, SpenTouchListener {
+public class PenService implements View.OnClickListener, SpenColorPickerListener, SpenSettingEraserLayout.EventListener, SpenPageDoc.HistoryListener, SpenPageDoc.ObjectListener, SpenReplayListener, SpenZoomListener, SpenPenChangeListener, SpenEraserChangeListener, SpenPenDetachmentListener, SpenTouchListener, ComponentCallbacks2 {
     /**
      * The pen button for selecting the pen tool and showing the {@link SpenSettingPenLayout pen setting}.
      */
@@ -125,6 +144,24 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     public static final int SPEED_FAST = 2;
 
+    /**
+     * Never draws a predicted tail ahead of a stroke.
+     * @see #setPredictionMode(int)
+     */
+    public static final int PREDICTION_OFF = 0;
+
+    /**
+     * Always draws a predicted tail ahead of a stroke.
+     * @see #setPredictionMode(int)
+     */
+    public static final int PREDICTION_ON = 1;
+
+    /**
+     * Draws a predicted tail ahead of a stroke on low-end devices only, where the pen-to-ink latency is most noticeable.
+     * @see #setPredictionMode(int)
+     */
+    public static final int PREDICTION_AUTO = 2;
+
     private static final String NULL = new String();
 
     private static final Uri SPEN_SDK_MARKET_URI = Uri.parse("market://details?id=" + Spen.SPEN_NATIVE_PACKAGE_NAME); //$NON-NLS-1$
@@ -133,11 +170,22 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
 
     private static final float ZOOM_RATIO = 1.5f;
 
+    private static final long PREDICTION_HORIZON = 24;
+
+    private static final float SPATIAL_INDEX_CELL_SIZE = 128f;
+
+    private static final long ZOOM_DURATION = 250;
+    private static final long SETTLE_DELAY  = 200;
+
+    private static final int LOW_END_MEMORY_CLASS    = 64;
+    private static final int LOW_END_PROCESSOR_COUNT = 2;
+
     private final Activity activity;
     private final View     rootLayout;
 
-    private SpenSurfaceView surfaceView;
-    private SpenNoteDoc     noteDoc;
+    private SpenSurfaceView     surfaceView;
+    private SpenNoteDoc         noteDoc;
+    private SpenDocumentBackend backend;
 
     private SpenSettingPenLayout    penSetting;
     private SpenSettingEraserLayout eraserSetting;
@@ -154,9 +202,114 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
     private int     toolType             = SpenSettingViewInterface.TOOL_SPEN;
     private int     currentPage;
     private int     canvasWidth;
+    private int     canvasHeight;
+    private boolean backgroundCacheEnabled;
     private boolean dirty;
     private boolean isZoomed;
 
+    // Identifies the pending initAsync call, and is cleared to abandon it
+    private volatile Object initToken;
+
+    // Registered once the views exist, and unregistered by onDestroy, so that the app context does not leak this service
+    private boolean componentCallbacksRegistered;
+
+    private int               predictionMode = PenService.PREDICTION_OFF;
+    private InkPredictor      predictor;
+    private InkPredictionView predictionView;
+    private boolean           inking;
+
+    private boolean            latencyMeasured;
+    private PenInstrumentation instrumentation;
+    private PenMetrics         metrics;
+
+    private HistoryPolicy   historyPolicy;
+    private HistoryStore    history;
+    private HistoryTimeline timeline;
+    private String          markPage;
+    private int             markDepth;
+
+    private final Handler  handler            = new Handler();
+    private final Runnable historyGroupCloser = new Runnable() {
+        @Override
+        public void run() {
+            PenService.this.closeHistoryGroup();
+        }
+    };
+
+    private final MessageQueue.IdleHandler historyCompactor = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            return PenService.this.compactHistory();
+        }
+    };
+
+    private final ArrayList<String> compactionPages = new ArrayList<String>();
+
+    private CompactionPolicy compactionPolicy;
+    private SpenPageDoc      groupPage;
+    private int              groupTool;
+    private boolean          groupCommitted;
+    private int              commitCount;
+
+    private PagePreRenderer preRenderer;
+    private ImageView       pagePreview;
+    private SpenPageDoc     flipPage;
+
+    private TileCache     tileCache;
+    private TiledPageView tiledView;
+
+    private LevelOfDetailCache detailCache;
+    private ImageView          detailView;
+    private ValueAnimator      zoomAnimator;
+
+    private PageThumbnailAdapter thumbnailAdapter;
+
+    private Map<String, SpatialIndex> spatialIndices;
+
+    private VirtualCanvas virtualCanvas;
+
+    private PenCommandQueue commandQueue;
+    private int             batchDepth;
+    private boolean         updatePending;
+
+    private final PenEventBus eventBus = new PenEventBus();
+
+    private final Runnable pageFlipper = new Runnable() {
+        @Override
+        public void run() {
+            PenService.this.completePageFlip();
+        }
+    };
+
+    private final Runnable pagePreviewHider = new Runnable() {
+        @Override
+        public void run() {
+            if (PenService.this.pagePreview != null) {
+                PenService.this.pagePreview.setVisibility(View.GONE);
+                PenService.this.pagePreview.setImageBitmap(null);
+            }
+        }
+    };
+
+    private final Runnable tiledViewHider = new Runnable() {
+        @Override
+        public void run() {
+            if (PenService.this.tiledView != null) {
+                PenService.this.tiledView.setVisibility(View.GONE);
+            }
+        }
+    };
+
+    private final Runnable detailViewHider = new Runnable() {
+        @Override
+        public void run() {
+            if (PenService.this.detailView != null) {
+                PenService.this.detailView.setVisibility(View.GONE);
+                PenService.this.detailView.setImageBitmap(null);
+            }
+        }
+    };
+
     /**
      * Determines whether a SPD file is password protected.
      * @param path the absolute path of a SPD file.
@@ -217,6 +370,53 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      * Cleans up any resources used by the Pen package.
      */
     public void onDestroy() {
+        if (this.componentCallbacksRegistered) {
+            this.activity.getApplicationContext().unregisterComponentCallbacks(this);
+
+            this.componentCallbacksRegistered = false;
+        }
+
+        // Abandons a pending initAsync call, whose document is then closed by its own thread
+        this.initToken = null;
+
+        this.closeHistoryGroup();
+
+        this.eventBus.close();
+
+        if (this.preRenderer != null) {
+            this.preRenderer.close();
+        }
+
+        if (this.tileCache != null) {
+            this.tileCache.close();
+        }
+
+        if (this.detailCache != null) {
+            this.detailCache.close();
+        }
+
+        if (this.zoomAnimator != null) {
+            this.zoomAnimator.cancel();
+        }
+
+        if (this.thumbnailAdapter != null) {
+            this.thumbnailAdapter.close();
+        }
+
+        if (this.instrumentation != null) {
+            this.instrumentation.stop();
+        }
+
+        if (this.metrics != null) {
+            this.metrics.stop();
+        }
+
+        this.cancelHistoryCompaction();
+
+        if (this.history != null) {
+            this.history.close();
+        }
+
         if (this.noteDoc != null) {
             for (int i = this.noteDoc.getPageCount(); --i >= 0;) {
                 final SpenPageDoc pageDoc = this.noteDoc.getPage(i);
@@ -270,8 +470,25 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
         }
     }
 
+    /**
+     * Called when the {@link SpenSurfaceView canvas} is touched.
+     * <p>Subclasses that override this method should call <code>super.onTouch(view, event)</code>
+     * to keep {@link #setPredictionMode(int) ink prediction}, {@link #setLatencyMeasurementEnabled(boolean) latency measurement}
+     * and {@link #setCompactionPolicy(CompactionPolicy) history compaction} working.</p>
+     * @param view the {@link SpenSurfaceView canvas}.
+     * @param event the touch event.
+     * @return <code>true</code> to consume the event; otherwise, <code>false</code>.
+     */
     @Override
     public boolean onTouch(final View view, final MotionEvent event) {
+        if (this.predictor != null || this.instrumentation != null) {
+            this.trackInk(event);
+        }
+
+        if (this.compactionPolicy != null && this.compactionPolicy.getMergeWindow() > 0 && this.noteDoc != null) {
+            this.groupHistory(event);
+        }
+
         return false;
     }
 
@@ -326,7 +543,7 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
             this.noteDoc.getPage(this.currentPage).removeAllObject();
         }
 
-        this.surfaceView.update();
+        this.updateSurface();
     }
 
     /**
@@ -336,6 +553,19 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
     @Override
     public void onCommit(final SpenPageDoc doc) {
         this.dirty = true;
+
+        if (this.instrumentation != null) {
+            this.instrumentation.onCommit();
+        }
+
+        if (this.groupPage != null && this.groupPage.getId().equals(doc.getId())) {
+            // Logged as a single commit when the history group is closed
+            this.groupCommitted = true;
+        } else {
+            this.commitHistory(doc);
+        }
+
+        this.eventBus.publish(PenEvent.TYPE_COMMIT, doc.getId(), 0, 0, 0, 0);
     }
 
     /**
@@ -346,7 +576,11 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
     @Override
     public void onUndoable(final SpenPageDoc doc, final boolean undoable) {
         if (this.undoButton != null) {
-            this.undoButton.setEnabled(undoable);
+            if (this.timeline == null) {
+                this.undoButton.setEnabled(undoable || this.history != null && this.history.canUndo(doc));
+            } else {
+                this.undoButton.setEnabled(this.timeline.canUndo());
+            }
         }
     }
 
@@ -358,7 +592,76 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
     @Override
     public void onRedoable(final SpenPageDoc doc, final boolean redoable) {
         if (this.redoButton != null) {
-            this.redoButton.setEnabled(redoable);
+            if (this.timeline == null) {
+                this.redoButton.setEnabled(redoable || this.history != null && this.history.canRedo(doc));
+            } else {
+                this.redoButton.setEnabled(this.timeline.canRedo());
+            }
+        }
+    }
+
+    /**
+     * Called when objects are added to a {@link SpenPageDoc page}.
+     * @param doc the {@link SpenPageDoc page} that the objects are added to.
+     * @param objects the added objects.
+     * @param type the reason of the change, either {@link SpenPageDoc.ObjectListener#TYPE_SET}, {@link SpenPageDoc.ObjectListener#TYPE_UNDO} or {@link SpenPageDoc.ObjectListener#TYPE_REDO}.
+     */
+    @Override
+    public void onObjectAdded(final SpenPageDoc doc, final ArrayList<SpenObjectBase> objects, final int type) {
+        if (this.history != null) {
+            this.history.onObjectAdded(doc, objects, type);
+        }
+
+        if (this.spatialIndices != null) {
+            final SpatialIndex index = this.spatialIndices.get(doc.getId());
+
+            if (index != null) {
+                PenService.index(index, objects);
+            }
+        }
+    }
+
+    /**
+     * Called when objects are removed from a {@link SpenPageDoc page}.
+     * @param doc the {@link SpenPageDoc page} that the objects are removed from.
+     * @param objects the removed objects.
+     * @param type the reason of the change, either {@link SpenPageDoc.ObjectListener#TYPE_SET}, {@link SpenPageDoc.ObjectListener#TYPE_UNDO} or {@link SpenPageDoc.ObjectListener#TYPE_REDO}.
+     */
+    @Override
+    public void onObjectRemoved(final SpenPageDoc doc, final ArrayList<SpenObjectBase> objects, final int type) {
+        if (this.history != null) {
+            this.history.onObjectRemoved(doc, objects, type);
+        }
+
+        if (this.spatialIndices != null) {
+            final SpatialIndex index = this.spatialIndices.get(doc.getId());
+
+            if (index != null) {
+                for (final SpenObjectBase object : objects) {
+                    index.remove(object.getRuntimeHandle());
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when an object of a {@link SpenPageDoc page} is changed.
+     * @param doc the {@link SpenPageDoc page} that contains the object.
+     * @param object the changed object.
+     * @param type the reason of the change, either {@link SpenPageDoc.ObjectListener#TYPE_SET}, {@link SpenPageDoc.ObjectListener#TYPE_UNDO} or {@link SpenPageDoc.ObjectListener#TYPE_REDO}.
+     */
+    @Override
+    public void onObjectChanged(final SpenPageDoc doc, final SpenObjectBase object, final int type) {
+        if (this.history != null) {
+            this.history.onObjectChanged(doc, object, type);
+        }
+
+        if (this.spatialIndices != null) {
+            final SpatialIndex index = this.spatialIndices.get(doc.getId());
+
+            if (index != null) {
+                PenService.index(index, object);
+            }
         }
     }
 
@@ -367,6 +670,7 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     @Override
     public void onCompleted() {
+        this.publish(PenEvent.TYPE_REPLAY_COMPLETED, 0);
     }
 
     /**
@@ -376,6 +680,7 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     @Override
     public void onProgressChanged(final int progress, final int id) {
+        this.publish(PenEvent.TYPE_REPLAY_PROGRESS, progress);
     }
 
     /**
@@ -386,6 +691,12 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     @Override
     public void onZoom(final float panX, final float panY, final float ratio) {
+        // A zoomed-out page is shown from its low-resolution layer rather than from its tiles
+        this.updateTiles(panX, panY, ratio, !this.updateDetail(panX, panY, ratio));
+
+        if (this.eventBus.accepts(PenEvent.TYPE_ZOOM)) {
+            this.eventBus.publish(PenEvent.TYPE_ZOOM, this.getCurrentPageId(), 0, panX, panY, ratio);
+        }
     }
 
     /**
@@ -394,6 +705,29 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     @Override
     public void onDetached(final boolean detached) {
+        this.publish(PenEvent.TYPE_PEN_DETACHED, detached ? 1 : 0);
+    }
+
+    /**
+     * Called when the system wants the app to release memory.
+     * @param level the urgency of the request, e.g. {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}.
+     * @see #trimMemory(int)
+     */
+    @Override
+    public void onTrimMemory(final int level) {
+        this.trimMemory(level);
+    }
+
+    /**
+     * Called when the system is running low on memory, and releases all the memory that {@link #trimMemory(int)} can release.
+     */
+    @Override
+    public void onLowMemory() {
+        this.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(final Configuration newConfig) {
     }
 
     /**
@@ -439,142 +773,628 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
 
         if (this.noteDoc != null) {
             if (this.currentPage != page) {
+                this.closeHistoryGroup();
+
                 this.currentPage = page;
 
-                this.surfaceView.setPageDoc(this.noteDoc.getPage(this.currentPage), true);
+                final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+                if (this.virtualCanvas == null) {
+                    // The page may be unloaded to save memory
+                    PenService.loadObjects(pageDoc);
+                } else {
+                    this.virtualCanvas.visit(this.noteDoc, this.virtualCanvas.getColumn(pageDoc), this.virtualCanvas.getRow(pageDoc));
+                }
+
+                this.attachPage(pageDoc);
+
+                final Bitmap bitmap = this.preRenderer == null ? null : this.preRenderer.get(pageDoc.getId());
+
+                if (bitmap == null) {
+                    this.completePageFlip();
+
+                    this.surfaceView.setPageDoc(pageDoc, true);
+                } else {
+                    // Shows the pre-rendered page now, and lets the canvas render the live page in the next frame
+                    this.showPagePreview(bitmap);
+
+                    this.flipPage = pageDoc;
+
+                    this.handler.removeCallbacks(this.pageFlipper);
+                    this.handler.post(this.pageFlipper);
+                }
+
+                if (this.preRenderer != null) {
+                    this.preRenderer.request(this.noteDoc, this.currentPage);
+                }
+
+                if (this.tileCache != null) {
+                    final PointF pan = this.surfaceView.getPan();
+
+                    this.updateTiles(pan == null ? 0 : pan.x, pan == null ? 0 : pan.y, this.surfaceView.getZoomRatio(), false);
+                }
+
+                if (this.detailCache != null) {
+                    this.detailCache.request(pageDoc, this.surfaceView.getMinZoomRatio());
+                }
+
+                this.eventBus.publish(PenEvent.TYPE_PAGE_CHANGED, pageDoc.getId(), page, 0, 0, 0);
             }
         }
     }
 
     /**
-     * Sets the background color of a page.
-     * @param page the index of the page to set color to.
-     * @param color the color to set.
+     * Determines whether the pages next to the current one are pre-rendered.
+     * @return <code>true</code> if the pages next to the current one are pre-rendered; otherwise, <code>false</code>.
      */
-    public void setBackgroundColor(final int page, final int color) {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
-        }
-
-        if (this.noteDoc != null) {
-            this.noteDoc.getPage(page).setBackgroundColor(color);
-        }
+    public boolean isPreRenderingEnabled() {
+        return this.preRenderer != null;
     }
 
     /**
-     * Sets the background image of a page.
-     * @param page the index of the page to set color to.
-     * @param imagePath the path of an image file.
+     * Enables or disables pre-rendering of the pages next to the current one.
+     * <p>If enabled, the previous and next {@link SpenPageDoc pages} are rendered into bitmaps while the app is idle, so that
+     * {@link #setCurrentPage(int)} can show the new page instantly and swap in the live page right after.
+     * A rendered page is discarded when it is changed.</p>
+     * @param enabled <code>true</code> to pre-render the pages next to the current one; otherwise, <code>false</code>. Default is <code>false</code>.
+     * @param maxBytes the maximum number of bytes the rendered pages may use.
      */
-    public void setBackgroundImage(final int page, final String imagePath) {
+    public void setPreRenderingEnabled(final boolean enabled, final int maxBytes) {
         if (this.surfaceView == null) {
             throw new IllegalStateException();
         }
 
-        if (this.noteDoc != null) {
-            this.noteDoc.getPage(page).setBackgroundImage(imagePath);
+        this.completePageFlip();
+
+        if (this.preRenderer != null) {
+            this.preRenderer.close();
+            this.preRenderer = null;
         }
-    }
 
-    /**
-     * Sets the visibility of any one of the following buttons:
-     * {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
-     * @param button one of {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
-     * @param visibility one of {@link View#VISIBLE}, {@link View#INVISIBLE} and {@link View#GONE}.
-     */
-    public void setButtonVisibility(final int button, final int visibility) {
-        View view = null;
+        if (enabled) {
+            this.preRenderer = new PagePreRenderer(this.activity, maxBytes, Math.min(1f, (float)this.activity.getResources().getDisplayMetrics().widthPixels / this.canvasWidth));
 
-        switch (button) {
-            case BUTTON_PEN:    view = this.penButton;    break;
-            case BUTTON_ERASER: view = this.eraserButton; break;
-            case BUTTON_UNDO:   view = this.undoButton;   break;
-            case BUTTON_REDO:   view = this.redoButton;   break;
-            case BUTTON_ZOOM:   view = this.zoomButton;   break;
-        }
+            if (this.pagePreview == null) {
+                final ViewGroup parent = (ViewGroup)this.surfaceView.getParent();
 
-        if (view != null) {
-            view.setVisibility(visibility);
+                this.pagePreview = new ImageView(this.activity);
+                this.pagePreview.setScaleType(ImageView.ScaleType.MATRIX);
+                this.pagePreview.setVisibility(View.GONE);
+
+                parent.addView(this.pagePreview, parent.indexOfChild(this.surfaceView) + 1, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            }
+
+            if (this.noteDoc != null) {
+                this.preRenderer.request(this.noteDoc, this.currentPage);
+            }
+        } else if (this.pagePreview != null) {
+            ((ViewGroup)this.pagePreview.getParent()).removeView(this.pagePreview);
+
+            this.pagePreview = null;
         }
     }
 
     /**
-     * Sets a drawable resource for a button.
-     * @param button one of {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
-     * @param resource a drawable resource to set.
+     * Determines whether the {@link SpenSurfaceView canvas} is drawn from tiles while it is zoomed or panned.
+     * @return <code>true</code> if the canvas is drawn from tiles while it is zoomed or panned; otherwise, <code>false</code>.
      */
-    public void setButtonResource(final int button, final int resource) {
-        this.setButtonDrawable(button, this.activity.getResources().getDrawable(resource));
+    public boolean isTiledRenderingEnabled() {
+        return this.tileCache != null;
     }
 
     /**
-     * Sets a drawable for a button.
-     * @param button one of {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
-     * @param drawable a drawable to set.
+     * Enables or disables tiled rendering of the current page.
+     * <p>If enabled, the current {@link SpenPageDoc page} is rendered into tiles for the current zoom level while the app is idle,
+     * the tiles just outside the visible area first in the direction it is panned. While the {@link SpenSurfaceView canvas} is zoomed or panned,
+     * the visible tiles are shown over it, so that the new area appears without waiting for the canvas to render every object again.
+     * Tiles are discarded when their page is changed.</p>
+     * @param enabled <code>true</code> to draw the canvas from tiles while it is zoomed or panned; otherwise, <code>false</code>. Default is <code>false</code>.
+     * @param maxBytes the maximum number of bytes the tiles may use.
      */
-    public void setButtonDrawable(final int button, final Drawable drawable) {
-        ToggleButton view = null;
-
-        switch (button) {
-            case BUTTON_PEN:
-                if (this.penButton != null) {
-                    view = this.penButton;
-                }
-
-                break;
+    public void setTiledRenderingEnabled(final boolean enabled, final int maxBytes) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
 
-            case BUTTON_ERASER:
-                if (this.eraserButton != null) {
-                    view = this.eraserButton;
-                }
+        this.handler.removeCallbacks(this.tiledViewHider);
 
-                break;
+        if (this.tileCache != null) {
+            this.tileCache.close();
+            this.tileCache = null;
 
-            case BUTTON_UNDO:
-                if (this.undoButton != null) {
-                    view = this.undoButton;
-                }
+            ((ViewGroup)this.tiledView.getParent()).removeView(this.tiledView);
 
-                break;
+            this.tiledView = null;
+        }
 
-            case BUTTON_REDO:
-                if (this.redoButton != null) {
-                    view = this.redoButton;
-                }
+        if (enabled) {
+            final ViewGroup parent = (ViewGroup)this.surfaceView.getParent();
 
-                break;
+            this.tileCache = new TileCache(this.activity, maxBytes);
+            this.tiledView = new TiledPageView(this.activity, this.tileCache);
+            this.tiledView.setVisibility(View.GONE);
 
-            case BUTTON_ZOOM:
-                if (this.zoomButton != null) {
-                    view = this.zoomButton;
-                }
+            parent.addView(this.tiledView, parent.indexOfChild(this.surfaceView) + 1, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
 
-                break;
-        }
+            final PointF pan = this.surfaceView.getPan();
 
-        if (view != null) {
-            view.setCompoundDrawables(null, drawable, null, null);
+            this.updateTiles(pan == null ? 0 : pan.x, pan == null ? 0 : pan.y, this.surfaceView.getZoomRatio(), false);
         }
     }
 
     /**
-     * Determines whether {@link SpenSettingPenLayout pen setting} is enabled.
-     * @return <code>true</code> if {@link SpenSettingPenLayout pen setting} is enabled; otherwise, <code>false</code>.
+     * Gets the zoom ratio of the {@link SpenSurfaceView canvas}.
+     * @return the zoom ratio of the canvas.
      */
-    public boolean isPenSettingEnabled() {
-        return this.penSettingEnabled;
+    public float getZoomRatio() {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        return this.surfaceView.getZoomRatio();
     }
 
     /**
-     * Enables or disables {@link SpenSettingPenLayout pen setting} when {@link #BUTTON_PEN} is clicked.
-     * @param enabled <code>true</code> to enable {@link SpenSettingPenLayout pen setting}; otherwise, <code>false</code>.
+     * Zooms the {@link SpenSurfaceView canvas} in or out around its center.
+     * <p>The zoom ratio is limited to the range set by {@link #setZoomLimits(float, float)}.</p>
+     * @param ratio the zoom ratio to zoom to, e.g. <code>0.5</code> to show the pages at half their size.
+     * @param animated <code>true</code> to zoom smoothly; otherwise, <code>false</code>.
      */
-    public void setPenSettingEnabled(final boolean enabled) {
-        this.penSettingEnabled = enabled;
+    public void setZoomRatio(final float ratio, final boolean animated) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (this.zoomAnimator != null) {
+            this.zoomAnimator.cancel();
+            this.zoomAnimator = null;
+        }
+
+        final float target = Math.max(this.surfaceView.getMinZoomRatio(), Math.min(this.surfaceView.getMaxZoomRatio(), ratio));
+        final float x      = this.surfaceView.getWidth() / 2f;
+        final float y      = this.surfaceView.getHeight() / 2f;
+
+        if (animated) {
+            this.zoomAnimator = ValueAnimator.ofFloat(this.surfaceView.getZoomRatio(), target);
+            this.zoomAnimator.setDuration(PenService.ZOOM_DURATION);
+            this.zoomAnimator.setInterpolator(new DecelerateInterpolator());
+            this.zoomAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(final ValueAnimator animator) {
+                    PenService.this.surfaceView.setZoom(x, y, (Float)animator.getAnimatedValue());
+                }
+            });
+
+            this.zoomAnimator.start();
+        } else {
+            this.surfaceView.setZoom(x, y, target);
+        }
     }
 
     /**
-     * Determines whether {@link SpenSettingEraserLayout eraser layout} is enabled.
+     * Sets the range of the zoom ratio of the {@link SpenSurfaceView canvas}, for both {@link #setZoomRatio(float, boolean)} and zoom gestures.
+     * @param minRatio the minimum zoom ratio.
+     * @param maxRatio the maximum zoom ratio.
+     */
+    public void setZoomLimits(final float minRatio, final float maxRatio) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (minRatio <= 0 || maxRatio < minRatio) {
+            throw new IllegalArgumentException();
+        }
+
+        this.surfaceView.setMinZoomRatio(minRatio);
+        this.surfaceView.setMaxZoomRatio(maxRatio);
+    }
+
+    /**
+     * Determines whether zoomed-out pages are shown from low-resolution layers while the {@link SpenSurfaceView canvas} is zoomed or panned.
+     * @return <code>true</code> if zoomed-out pages are shown from low-resolution layers; otherwise, <code>false</code>.
+     */
+    public boolean isLevelOfDetailEnabled() {
+        return this.detailCache != null;
+    }
+
+    /**
+     * Enables or disables the level-of-detail layers of the pages.
+     * <p>If enabled, the current {@link SpenPageDoc page} is rendered into a low-resolution layer for each zoom level below <code>0.5</code>
+     * it is zoomed out to, with simplified strokes, while the app is idle. While the {@link SpenSurfaceView canvas} is zoomed or panned
+     * at such a zoom level, the layer is shown over it, so that zooming out on a page with many strokes does not wait for every stroke to be rendered.
+     * Layers are discarded when their page is changed.</p>
+     * @param enabled <code>true</code> to show zoomed-out pages from low-resolution layers; otherwise, <code>false</code>. Default is <code>false</code>.
+     * @param maxBytes the maximum number of bytes the layers may use.
+     */
+    public void setLevelOfDetailEnabled(final boolean enabled, final int maxBytes) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        this.handler.removeCallbacks(this.detailViewHider);
+
+        if (this.detailCache != null) {
+            this.detailCache.close();
+            this.detailCache = null;
+
+            ((ViewGroup)this.detailView.getParent()).removeView(this.detailView);
+
+            this.detailView = null;
+        }
+
+        if (enabled) {
+            final ViewGroup parent = (ViewGroup)this.surfaceView.getParent();
+
+            this.detailCache = new LevelOfDetailCache(this.activity, maxBytes);
+            this.detailView  = new ImageView(this.activity);
+            this.detailView.setScaleType(ImageView.ScaleType.MATRIX);
+            this.detailView.setVisibility(View.GONE);
+
+            parent.addView(this.detailView, parent.indexOfChild(this.surfaceView) + 1, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+            if (this.noteDoc != null) {
+                this.detailCache.request(this.noteDoc.getPage(this.currentPage), this.surfaceView.getMinZoomRatio());
+            }
+        }
+    }
+
+    /**
+     * Determines whether the {@link SpenPageDoc pages} are the tiles of a virtual canvas.
+     * @return <code>true</code> if the pages are the tiles of a virtual canvas; otherwise, <code>false</code>.
+     */
+    public boolean isVirtualCanvasEnabled() {
+        return this.virtualCanvas != null;
+    }
+
+    /**
+     * Enables or disables the virtual canvas.
+     * <p>If enabled, each {@link SpenPageDoc page} is a tile of a canvas that extends in every direction, and {@link #moveVirtualCanvas(int, int)}
+     * moves to a neighbouring tile, creating it if it is empty. Only the objects of the tiles around the current one, and of the most recently visited ones
+     * up to <code>maxLoadedTiles</code>, are kept in memory, so the memory used does not grow with the size of the canvas.</p>
+     * <p>Existing pages without a position on the canvas are placed in a row to the right of the tile at column <code>0</code> and row <code>0</code>.</p>
+     * @param enabled <code>true</code> to use the pages as the tiles of a virtual canvas; otherwise, <code>false</code>. Default is <code>false</code>.
+     * @param maxLoadedTiles the maximum number of tiles whose objects are kept in memory, at least <code>9</code>.
+     */
+    public void setVirtualCanvasEnabled(final boolean enabled, final int maxLoadedTiles) {
+        if (enabled) {
+            this.virtualCanvas = new VirtualCanvas(maxLoadedTiles);
+
+            if (this.noteDoc != null) {
+                this.virtualCanvas.index(this.noteDoc);
+
+                final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+                this.virtualCanvas.visit(this.noteDoc, this.virtualCanvas.getColumn(pageDoc), this.virtualCanvas.getRow(pageDoc));
+            }
+        } else {
+            this.virtualCanvas = null;
+        }
+    }
+
+    /**
+     * Gets the column of the current tile of the virtual canvas.
+     * @return the column of the current tile, which grows to the right.
+     */
+    public int getVirtualColumn() {
+        if (this.virtualCanvas == null || this.noteDoc == null) {
+            throw new IllegalStateException();
+        }
+
+        return this.virtualCanvas.getColumn(this.noteDoc.getPage(this.currentPage));
+    }
+
+    /**
+     * Gets the row of the current tile of the virtual canvas.
+     * @return the row of the current tile, which grows downwards.
+     */
+    public int getVirtualRow() {
+        if (this.virtualCanvas == null || this.noteDoc == null) {
+            throw new IllegalStateException();
+        }
+
+        return this.virtualCanvas.getRow(this.noteDoc.getPage(this.currentPage));
+    }
+
+    /**
+     * Moves the virtual canvas to another tile, e.g. when the user scrolls past the edge of the current one.
+     * <p>If the tile is empty, a new {@link SpenPageDoc page} with the background of the current one is created for it.</p>
+     * @param columns the number of columns to move right, or left if negative.
+     * @param rows the number of rows to move down, or up if negative.
+     */
+    public void moveVirtualCanvas(final int columns, final int rows) {
+        if (this.virtualCanvas == null || this.noteDoc == null) {
+            throw new IllegalStateException();
+        }
+
+        final SpenPageDoc current = this.noteDoc.getPage(this.currentPage);
+        final int         column  = this.virtualCanvas.getColumn(current) + columns;
+        final int         row     = this.virtualCanvas.getRow(current) + rows;
+        final String      pageId  = this.virtualCanvas.get(column, row);
+
+        if (pageId == null) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.backend.appendPage(current.getBackgroundColor()));
+
+            this.setUpPage(pageDoc, current.getBackgroundColor(), current.getBackgroundImagePath(), current.getBackgroundImageMode());
+            this.virtualCanvas.put(column, row, pageDoc);
+            this.notifyPagesChanged();
+
+            this.setCurrentPage(this.noteDoc.getPageCount() - 1);
+        } else {
+            this.setCurrentPage(this.noteDoc.getPageIndexById(pageId));
+        }
+    }
+
+    /**
+     * Sets the background color of a page.
+     * @param page the index of the page to set color to.
+     * @param color the color to set.
+     */
+    public void setBackgroundColor(final int page, final int color) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (this.noteDoc != null) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(page);
+
+            pageDoc.setBackgroundColor(color);
+
+            this.invalidatePage(pageDoc);
+        }
+    }
+
+    /**
+     * Sets the background image of a page.
+     * @param page the index of the page to set color to.
+     * @param imagePath the path of an image file, or <code>null</code> to remove the background image.
+     */
+    public void setBackgroundImage(final int page, final String imagePath) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (this.noteDoc != null) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(page);
+
+            pageDoc.setBackgroundImage(this.getBackgroundImagePath(imagePath, pageDoc.getBackgroundImageMode()));
+
+            this.invalidatePage(pageDoc);
+        }
+    }
+
+    /**
+     * Determines whether background images are cached.
+     * @return <code>true</code> if background images are cached; otherwise, <code>false</code>.
+     */
+    public boolean isBackgroundCacheEnabled() {
+        return this.backgroundCacheEnabled;
+    }
+
+    /**
+     * Enables or disables caching of background images.
+     * <p>If enabled, each distinct background image is decoded once, downsampled to the canvas size given to
+     * {@link #init(int, int, int, String, int, int, int, int) init}, and the small copy is shared by all {@link SpenPageDoc pages} and documents
+     * that use the same image. This greatly reduces the time to build and the memory used by notes that use a large template image.</p>
+     * <p>Only images drawn in {@link #MODE_FIT} or {@link #MODE_STRETCH} are downsampled, because the other modes draw an image at its own size.
+     * A downsampled image may still look softer than the original, so the cache is disabled by default.</p>
+     * @param enabled <code>true</code> to cache background images; otherwise, <code>false</code>. Default is <code>false</code>.
+     */
+    public void setBackgroundCacheEnabled(final boolean enabled) {
+        this.backgroundCacheEnabled = enabled;
+    }
+
+    /**
+     * Sets the visibility of any one of the following buttons:
+     * {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
+     * @param button one of {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
+     * @param visibility one of {@link View#VISIBLE}, {@link View#INVISIBLE} and {@link View#GONE}.
+     */
+    public void setButtonVisibility(final int button, final int visibility) {
+        View view = null;
+
+        switch (button) {
+            case BUTTON_PEN:    view = this.penButton;    break;
+            case BUTTON_ERASER: view = this.eraserButton; break;
+            case BUTTON_UNDO:   view = this.undoButton;   break;
+            case BUTTON_REDO:   view = this.redoButton;   break;
+            case BUTTON_ZOOM:   view = this.zoomButton;   break;
+        }
+
+        if (view != null) {
+            view.setVisibility(visibility);
+        }
+    }
+
+    /**
+     * Sets a drawable resource for a button.
+     * @param button one of {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
+     * @param resource a drawable resource to set.
+     */
+    public void setButtonResource(final int button, final int resource) {
+        this.setButtonDrawable(button, this.activity.getResources().getDrawable(resource));
+    }
+
+    /**
+     * Sets a drawable for a button.
+     * @param button one of {@link #BUTTON_PEN} {@link #BUTTON_ERASER}, {@link #BUTTON_UNDO} and {@link #BUTTON_REDO}.
+     * @param drawable a drawable to set.
+     */
+    public void setButtonDrawable(final int button, final Drawable drawable) {
+        ToggleButton view = null;
+
+        switch (button) {
+            case BUTTON_PEN:
+                if (this.penButton != null) {
+                    view = this.penButton;
+                }
+
+                break;
+
+            case BUTTON_ERASER:
+                if (this.eraserButton != null) {
+                    view = this.eraserButton;
+                }
+
+                break;
+
+            case BUTTON_UNDO:
+                if (this.undoButton != null) {
+                    view = this.undoButton;
+                }
+
+                break;
+
+            case BUTTON_REDO:
+                if (this.redoButton != null) {
+                    view = this.redoButton;
+                }
+
+                break;
+
+            case BUTTON_ZOOM:
+                if (this.zoomButton != null) {
+                    view = this.zoomButton;
+                }
+
+                break;
+        }
+
+        if (view != null) {
+            view.setCompoundDrawables(null, drawable, null, null);
+        }
+    }
+
+    /**
+     * Gets the ink prediction mode.
+     * @return one of {@link #PREDICTION_OFF}, {@link #PREDICTION_ON} and {@link #PREDICTION_AUTO}.
+     */
+    public int getPredictionMode() {
+        return this.predictionMode;
+    }
+
+    /**
+     * Sets the ink prediction mode.
+     * <p>If enabled, a short predicted tail is drawn ahead of the stroke being drawn, and replaced when real touch samples arrive.
+     * This reduces the perceived pen-to-ink latency, at the cost of an occasional wrong tail when the stroke changes direction sharply.</p>
+     * @param mode one of {@link #PREDICTION_OFF}, {@link #PREDICTION_ON} and {@link #PREDICTION_AUTO}. Default is {@link #PREDICTION_OFF}.
+     */
+    public void setPredictionMode(final int mode) {
+        this.predictionMode = mode;
+
+        if (this.surfaceView != null) {
+            this.applyPredictionMode();
+        }
+    }
+
+    /**
+     * Determines whether a predicted tail is currently drawn ahead of strokes.
+     * @return <code>true</code> if a predicted tail is drawn; otherwise, <code>false</code>.
+     */
+    public boolean isPredictionEnabled() {
+        return this.predictionView != null;
+    }
+
+    /**
+     * Determines whether latency measurement is enabled.
+     * @return <code>true</code> if latency measurement is enabled; otherwise, <code>false</code>.
+     */
+    public boolean isLatencyMeasurementEnabled() {
+        return this.latencyMeasured;
+    }
+
+    /**
+     * Enables or disables latency measurement.
+     * <p>If enabled, the ink lag of every touch event, i.e. the distance between the pen and the tip of the ink drawn for the previous event,
+     * and the error of every predicted point against the real sample at its time, are measured, and a summary since the measurement
+     * was enabled is logged at the end of every stroke. The ink lag is measured whether prediction is on or off, so comparing
+     * the summaries of both shows the improvement.</p>
+     * <p>For the time from a touch event to the frame that draws it, see {@link PenInstrumentation#METRIC_FRAME}.</p>
+     * @param enabled <code>true</code> to enable latency measurement; otherwise, <code>false</code>. Default is <code>false</code>.
+     */
+    public void setLatencyMeasurementEnabled(final boolean enabled) {
+        this.latencyMeasured = enabled;
+
+        if (enabled && this.predictor == null) {
+            this.predictor = new InkPredictor(PenService.PREDICTION_HORIZON);
+        } else if (!enabled && this.predictionView == null) {
+            this.predictor = null;
+        }
+
+        if (this.predictor != null) {
+            this.predictor.clearStatistics();
+        }
+    }
+
+    /**
+     * Gets the instrumentation that collects timings of input, history commits, {@link SpenSurfaceView canvas} updates and captures.
+     * @return the instrumentation, or <code>null</code> if instrumentation is disabled.
+     * @see #setInstrumentationEnabled(boolean)
+     */
+    public PenInstrumentation getInstrumentation() {
+        return this.instrumentation;
+    }
+
+    /**
+     * Enables or disables instrumentation.
+     * <p>If enabled, timings of input, input to frame, history commits, {@link SpenSurfaceView canvas} updates and captures are collected
+     * into histograms that can be read using {@link #getInstrumentation()}. If disabled, the cost is a <code>null</code> check per event.</p>
+     * @param enabled <code>true</code> to enable instrumentation; otherwise, <code>false</code>. Default is <code>false</code>.
+     */
+    public void setInstrumentationEnabled(final boolean enabled) {
+        if (enabled) {
+            if (this.instrumentation == null) {
+                this.instrumentation = new PenInstrumentation();
+            }
+        } else if (this.instrumentation != null) {
+            this.instrumentation.stop();
+            this.instrumentation = null;
+        }
+    }
+
+    /**
+     * Gets the metrics that record the timings, bytes and counts of loads, saves, thumbnails, page changes, undo, redo and replays.
+     * @return the metrics, or <code>null</code> if metrics are disabled.
+     * @see #setMetricsEnabled(boolean)
+     */
+    public PenMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Enables or disables metrics.
+     * <p>If enabled, the timings, bytes and counts of document operations are recorded, and can be read using {@link #getMetrics()}
+     * or handed to {@link MetricsExporter exporters}. If disabled, the cost is a <code>null</code> check per operation.</p>
+     * @param enabled <code>true</code> to enable metrics; otherwise, <code>false</code>. Default is <code>false</code>.
+     */
+    public void setMetricsEnabled(final boolean enabled) {
+        if (enabled) {
+            if (this.metrics == null) {
+                this.metrics = new PenMetrics();
+            }
+        } else if (this.metrics != null) {
+            this.metrics.stop();
+            this.metrics = null;
+        }
+    }
+
+    /**
+     * Determines whether {@link SpenSettingPenLayout pen setting} is enabled.
+     * @return <code>true</code> if {@link SpenSettingPenLayout pen setting} is enabled; otherwise, <code>false</code>.
+     */
+    public boolean isPenSettingEnabled() {
+        return this.penSettingEnabled;
+    }
+
+    /**
+     * Enables or disables {@link SpenSettingPenLayout pen setting} when {@link #BUTTON_PEN} is clicked.
+     * @param enabled <code>true</code> to enable {@link SpenSettingPenLayout pen setting}; otherwise, <code>false</code>.
+     */
+    public void setPenSettingEnabled(final boolean enabled) {
+        this.penSettingEnabled = enabled;
+    }
+
+    /**
+     * Determines whether {@link SpenSettingEraserLayout eraser layout} is enabled.
      * @return <code>true</code> if {@link SpenSettingEraserLayout eraser layout} is enabled; otherwise, <code>false</code>.
      */
     public boolean isEraserSettingEnabled() {
@@ -706,7 +1526,7 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
             return 0;
         }
 
-        return this.noteDoc.getPageCount();
+        return this.backend.getPageCount();
     }
 
     /**
@@ -719,19 +1539,41 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     public void appendPage(final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
         if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.appendPage();
-            pageDoc.setBackgroundColor(backgroundColor);
+            final long start = this.metrics == null ? 0 : System.nanoTime();
 
-            if (!TextUtils.isEmpty(backgroundImagePath)) {
-                pageDoc.setBackgroundImage(backgroundImagePath);
-            }
+            this.setUpPage(this.noteDoc.getPage(this.backend.appendPage(backgroundColor)), backgroundColor, backgroundImagePath, backgroundImageMode);
+
+            this.notifyPagesChanged();
+
+            this.recordMetric(PenMetrics.OP_APPEND_PAGE, start, 0, true);
+        }
+    }
+
+    /**
+     * Appends the specified number of new {@link SpenPageDoc pages} with the same background color/image, e.g. to build a note from a template.
+     * <p>{@link #onPagesChanged()} is called once for all pages.</p>
+     * @param count the number of pages to append.
+     * @param backgroundColor the background color of the {@link SpenPageDoc pages}.
+     * <p>The default color will be used if <code>backgroundColor</code> is negative.</p>
+     * @param backgroundImagePath the absolute path of the background image file.
+     * <p>An empty background will be used if <code>backgroundImagePath</code> is empty or <code>null</code>.</p>
+     * @param backgroundImageMode either {@link #MODE_CENTER}, {@link #MODE_FIT}, {@link #MODE_TILE} or {@link #MODE_STRETCH}.
+     */
+    public void appendPages(final int count, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
+        if (count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if (this.noteDoc != null && count > 0) {
+            final long start = this.metrics == null ? 0 : System.nanoTime();
 
-            if (backgroundImageMode == PenService.MODE_CENTER || backgroundImageMode == PenService.MODE_FIT || backgroundImageMode == PenService.MODE_TILE || backgroundImageMode == PenService.MODE_STRETCH) {
-                pageDoc.setBackgroundImageMode(backgroundImageMode);
+            for (int i = 0; i < count; i++) {
+                this.setUpPage(this.noteDoc.getPage(this.backend.appendPage(backgroundColor)), backgroundColor, backgroundImagePath, backgroundImageMode);
             }
 
-            pageDoc.clearHistory();
-            pageDoc.setHistoryListener(this);
+            this.notifyPagesChanged();
+
+            this.recordMetric(PenMetrics.OP_APPEND_PAGES, start, 0, true);
         }
     }
 
@@ -745,19 +1587,17 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     public void insertPage(final int pageIndex, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
         if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.insertPage(pageIndex);
-            pageDoc.setBackgroundColor(backgroundColor);
+            final long start = this.metrics == null ? 0 : System.nanoTime();
 
-            if (!TextUtils.isEmpty(backgroundImagePath)) {
-                pageDoc.setBackgroundImage(backgroundImagePath);
+            if (pageIndex <= this.currentPage) {
+                this.currentPage++;
             }
 
-            if (backgroundImageMode == PenService.MODE_CENTER || backgroundImageMode == PenService.MODE_FIT || backgroundImageMode == PenService.MODE_TILE || backgroundImageMode == PenService.MODE_STRETCH) {
-                pageDoc.setBackgroundImageMode(backgroundImageMode);
-            }
+            this.setUpPage(this.noteDoc.insertPage(pageIndex), backgroundColor, backgroundImagePath, backgroundImageMode);
 
-            pageDoc.clearHistory();
-            pageDoc.setHistoryListener(this);
+            this.notifyPagesChanged();
+
+            this.recordMetric(PenMetrics.OP_INSERT_PAGE, start, 0, true);
         }
     }
 
@@ -766,8 +1606,101 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      * @param the page index to remove.
      */
     public void removePage(final int pageIndex) {
-        if (this.noteDoc != null) {
-            this.noteDoc.removePage(pageIndex);
+        this.removePages(new int[] { pageIndex });
+    }
+
+    /**
+     * Removes the {@link SpenPageDoc pages} at the specified page indices.
+     * <p>If the current page is removed, the nearest remaining page becomes the current one.
+     * {@link #onPagesChanged()} is called once for all pages.</p>
+     * @param pageIndices the page indices to remove, in any order.
+     * @throws IllegalArgumentException if an index is out of range, or if no page would remain.
+     */
+    public void removePages(final int[] pageIndices) {
+        if (this.noteDoc != null && pageIndices.length > 0) {
+            final long start = this.metrics == null ? 0 : System.nanoTime();
+
+            final int   pageCount = this.noteDoc.getPageCount();
+            final int[] indices   = pageIndices.clone();
+
+            Arrays.sort(indices);
+
+            if (indices[0] < 0 || indices[indices.length - 1] >= pageCount) {
+                throw new IllegalArgumentException();
+            }
+
+            int count = 0;
+
+            for (int i = 0; i < indices.length; i++) {
+                if (i == 0 || indices[i] != indices[i - 1]) {
+                    indices[count++] = indices[i];
+                }
+            }
+
+            if (count == pageCount) {
+                throw new IllegalArgumentException();
+            }
+
+            this.closeHistoryGroup();
+            this.completePageFlip();
+
+            final String currentPageId = this.noteDoc.getPageIdByIndex(this.currentPage);
+
+            // Removes from the highest index so that the lower indices stay valid
+            for (int i = count; --i >= 0;) {
+                final String pageId = this.noteDoc.getPageIdByIndex(indices[i]);
+
+                if (this.timeline != null) {
+                    this.timeline.removePage(pageId);
+                }
+
+                if (this.timeline != null || pageId.equals(this.markPage)) {
+                    this.markPage = null;
+                }
+
+                if (this.history != null) {
+                    this.history.detach(pageId);
+                }
+
+                this.compactionPages.remove(pageId);
+                this.invalidateSpatialIndex(pageId);
+
+                this.backend.removePage(indices[i]);
+            }
+
+            final int page = this.noteDoc.getPageIndexById(currentPageId);
+
+            if (page >= 0) {
+                this.currentPage = page;
+            } else {
+                // The current page is removed, so shows the page that takes its place
+                int removed = 0;
+
+                while (removed < count && indices[removed] < this.currentPage) {
+                    removed++;
+                }
+
+                this.currentPage = Math.min(this.currentPage - removed, this.noteDoc.getPageCount() - 1);
+
+                if (this.surfaceView != null) {
+                    final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+                    this.attachPage(pageDoc);
+                    this.surfaceView.setPageDoc(pageDoc, true);
+                }
+            }
+
+            if (this.preRenderer != null) {
+                this.preRenderer.request(this.noteDoc, this.currentPage);
+            }
+
+            if (this.timeline != null) {
+                this.updateTimelineButtons();
+            }
+
+            this.notifyPagesChanged();
+
+            this.recordMetric(PenMetrics.OP_REMOVE_PAGE, start, 0, true);
         }
     }
 
@@ -779,454 +1712,2192 @@ public class PenService implements View.OnClickListener, SpenColorPickerListener
      */
     public void movePage(final int pageIndex, final int step) {
         if (this.noteDoc != null) {
-            this.noteDoc.movePageIndex(this.noteDoc.getPage(pageIndex), step);
+            final String currentPageId = this.noteDoc.getPageIdByIndex(this.currentPage);
+
+            this.backend.movePage(pageIndex, step);
+
+            this.currentPage = this.noteDoc.getPageIndexById(currentPageId);
+
+            this.notifyPagesChanged();
         }
     }
 
     /**
-     * Undo the previous action, if any.
+     * Reorders all {@link SpenPageDoc pages} at once, e.g. after the user rearranges them by drag and drop.
+     * <p>At most one move per page is made, and {@link #onPagesChanged()} is called once for all pages. The current page stays the same,
+     * although its index may change.</p>
+     * @param order the current page index of the page to place at each new index. It must contain every page index exactly once.
+     * @throws IllegalArgumentException if <code>order</code> is not a permutation of the page indices.
      */
-    public void undo() {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
-        }
-
+    public void reorderPages(final int[] order) {
         if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+            final int pageCount = this.noteDoc.getPageCount();
 
-            if (pageDoc.isUndoable()) {
-                this.surfaceView.updateUndo(pageDoc.undo());
+            if (order.length != pageCount) {
+                throw new IllegalArgumentException();
             }
-        }
-    }
 
-    /**
-     * Redo the next action, if any.
-     */
-    public void redo() {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
-        }
+            final boolean[] seen    = new boolean[pageCount];
+            final String[]  pageIds = new String[pageCount];
 
-        if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+            for (int i = 0; i < pageCount; i++) {
+                if (order[i] < 0 || order[i] >= pageCount || seen[order[i]]) {
+                    throw new IllegalArgumentException();
+                }
 
-            if (pageDoc.isRedoable()) {
-                this.surfaceView.updateRedo(pageDoc.redo());
+                seen[order[i]] = true;
+                pageIds[i]     = this.noteDoc.getPageIdByIndex(order[i]);
             }
-        }
-    }
 
-    private void zoom() {
-        this.isZoomed = !this.isZoomed;
+            final String currentPageId = this.noteDoc.getPageIdByIndex(this.currentPage);
 
-        this.setZoomEnabled(this.isZoomed, PenService.ZOOM_RATIO);
+            boolean changed = false;
 
-        this.zoomButton.setChecked(!this.zoomButton.isChecked());
-    }
+            // The pages before index i are already in place, so the page to place at i is always at i or after
+            for (int i = 0; i < pageCount; i++) {
+                final int index = this.noteDoc.getPageIndexById(pageIds[i]);
 
-    /**
-     * Starts recording changes.
-     * <p>By default, the {@link SpenPageDoc document) internally records any changes.</p>
-     */
-    public void startRecord() {
-        if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+                if (index != i) {
+                    this.backend.movePage(index, i - index);
 
-            if (!pageDoc.isRecording()) {
-                pageDoc.startRecord();
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                this.currentPage = this.noteDoc.getPageIndexById(currentPageId);
+
+                this.notifyPagesChanged();
             }
         }
     }
 
     /**
-     * Stops recording changes.
-     * <p>This is a no-op if recording is not previously started.</p>
+     * Called once after {@link SpenPageDoc pages} are appended, inserted, removed or moved, however many pages are affected.
+     * <p>Subclasses may override this method to refresh any UI that lists the pages.</p>
      */
-    public void stopRecord() {
-        if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
-
-            if (pageDoc.isRecording()) {
-                pageDoc.stopRecord();
-            }
-        }
+    public void onPagesChanged() {
     }
 
     /**
-     * Starts replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
-     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
-     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
-     * <p>It is an no-op if {@link #startRecord()} there is no object on the {@link SpenSurfaceView canvas},
-     * or {@link #startRecord()} is not called before.</p>
-     * @see #startRecord()
-     * @see #stopRecord()
-     * @see #stopReplay()
-     * @see #pauseReplay()
-     * @see #resumeReplay()
+     * Creates an adapter that shows the thumbnails of the {@link SpenPageDoc pages} of the current {@link SpenNoteDoc document},
+     * e.g. for a filmstrip or a page grid.
+     * <p>The adapter follows the changes of the pages and of any document loaded later. Only one adapter is kept up to date at a time,
+     * so creating another one closes the previous one.</p>
+     * @param thumbnailWidth the width of a thumbnail, in pixels. The height follows the aspect ratio of the pages.
+     * @param maxBytes the maximum number of bytes the cached thumbnails may use.
+     * @return the adapter.
      */
-    public void startReplay() {
-        if (this.surfaceView == null) {
+    public PageThumbnailAdapter createThumbnailAdapter(final int thumbnailWidth, final int maxBytes) {
+        if (this.noteDoc == null) {
             throw new IllegalStateException();
         }
 
-        this.surfaceView.startReplay();
+        if (this.thumbnailAdapter != null) {
+            this.thumbnailAdapter.close();
+        }
+
+        this.thumbnailAdapter = new PageThumbnailAdapter(this.activity, this, thumbnailWidth, Math.round((float)thumbnailWidth * this.noteDoc.getHeight() / this.noteDoc.getWidth()), maxBytes);
+
+        return this.thumbnailAdapter;
     }
 
     /**
-     * Stops replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
-     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
-     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
-     * <p>It is an no-op if {@link #startReplay()} is not called before.</p>
-     * @see #startRecord()
-     * @see #stopRecord()
-     * @see #startReplay()
-     * @see #pauseReplay()
-     * @see #resumeReplay()
+     * Determines whether the objects of the {@link SpenPageDoc pages} are spatially indexed.
+     * @return <code>true</code> if the objects are spatially indexed; otherwise, <code>false</code>.
      */
-    public void stopReplay() {
-        if (this.surfaceView == null) {
-            //throw new IllegalStateException();
-        } else {
-            if (this.surfaceView.getReplayState() == SpenSurfaceView.REPLAY_STATE_PLAYING) {
-                this.surfaceView.stopReplay();
-            }
-        }
+    public boolean isSpatialIndexEnabled() {
+        return this.spatialIndices != null;
     }
 
     /**
-     * Pauses replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
-     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
-     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
-     * <p>It is an no-op if {@link #startReplay()} is not called before.</p>
-     * @see #startRecord()
-     * @see #stopRecord()
-     * @see #startReplay()
-     * @see #stopReplay()
-     * @see #resumeReplay()
+     * Enables or disables the spatial index of the objects of the {@link SpenPageDoc pages}.
+     * <p>If enabled, {@link #findObjects(RectF)}, {@link #findObjects(float, float, float)} and {@link #findNearestObject(float, float, float)}
+     * look up a grid of the bounding boxes of the objects instead of scanning every object. The index of a page is built on its first query,
+     * and then kept up to date as objects are added, removed or changed.</p>
+     * @param enabled <code>true</code> to spatially index the objects; otherwise, <code>false</code>. Default is <code>false</code>.
      */
-    public void pauseReplay() {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
+    public void setSpatialIndexEnabled(final boolean enabled) {
+        if (enabled && this.spatialIndices == null) {
+            this.spatialIndices = new HashMap<String, SpatialIndex>();
+        } else if (!enabled) {
+            this.spatialIndices = null;
         }
-
-        this.surfaceView.pauseReplay();
     }
 
     /**
-     * Resumes replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
-     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
-     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
-     * <p>It is an no-op if {@link #pauseReplay()} is not called before.</p>
-     * @see #startRecord()
-     * @see #stopRecord()
-     * @see #startReplay()
-     * @see #stopReplay()
-     * @see #pauseReplay()
+     * Finds the objects of the current {@link SpenPageDoc page} whose bounding boxes intersect a rectangle, e.g. for a lasso selection.
+     * @param rect the rectangle, in page coordinates.
+     * @return the objects found, in no particular order.
      */
-    public void resumeReplay() {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
+    public ArrayList<SpenObjectBase> findObjects(final RectF rect) {
+        final IntArray handles = new IntArray();
+
+        if (this.noteDoc != null) {
+            this.getSpatialIndex().query(rect.left, rect.top, rect.right, rect.bottom, handles);
         }
 
-        this.surfaceView.resumeReplay();
+        return this.getObjects(handles);
     }
 
     /**
-     * Gets the animation replay state.
-     * @return the current replay state.
-     * <p>Could be one of these values: {@link #REPLAY_STATE_PAUSED}, {@link #REPLAY_STATE_PLAYING} or {@link #REPLAY_STATE_STOPPED}.</p>
+     * Finds the objects of the current {@link SpenPageDoc page} whose bounding boxes are within the specified distance of a point, e.g. for a tap.
+     * @param x the x coordinate of the point, in page coordinates.
+     * @param y the y coordinate of the point, in page coordinates.
+     * @param tolerance the maximum distance from the point.
+     * @return the objects found, in no particular order.
      */
-    public int getReplayState() {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
+    public ArrayList<SpenObjectBase> findObjects(final float x, final float y, final float tolerance) {
+        final IntArray handles = new IntArray();
+
+        if (this.noteDoc != null) {
+            this.getSpatialIndex().query(x, y, tolerance, handles);
         }
 
-        return this.surfaceView.getReplayState();
+        return this.getObjects(handles);
     }
 
     /**
-     * Sets the speed for replaying objects drawn on the {@link SpenSurfaceView canvas}.
-     * @param speed the replay speed.
-     * <p>The valid values are {@link #SPEED_SLOW}, {@link #SPEED_NORMAL} and {@link #SPEED_FAST}.</p>
+     * Finds the object of the current {@link SpenPageDoc page} whose bounding box is nearest to a point.
+     * @param x the x coordinate of the point, in page coordinates.
+     * @param y the y coordinate of the point, in page coordinates.
+     * @param maxDistance the maximum distance from the point.
+     * @return the object found, or <code>null</code> if no object is within <code>maxDistance</code>.
      */
-    public void setReplaySpeed(final int speed) {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
+    public SpenObjectBase findNearestObject(final float x, final float y, final float maxDistance) {
+        if (this.noteDoc == null) {
+            return null;
         }
 
-        this.surfaceView.setReplaySpeed(speed);
+        final int handle = this.getSpatialIndex().nearest(x, y, maxDistance);
+
+        return handle == SpatialIndex.NONE ? null : this.noteDoc.getPage(this.currentPage).getObjectByRuntimeHandle(handle);
     }
 
     /**
-     * Creates a {@link Bitmap} from the current {@link SpenPageDoc page}.
-     * @param scale the scale to resize the generated {@link Bitmap}.
-     * @return the {@link Bitmap} captured from the current {@link SpenPageDoc page}.
+     * Gets the command queue that lets any thread drive this service.
+     * @return the command queue of this service.
      */
-    public Bitmap generateThumbnail(final float scale) {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
+    public synchronized PenCommandQueue getCommandQueue() {
+        if (this.commandQueue == null) {
+            this.commandQueue = new PenCommandQueue(this);
         }
 
-        return this.surfaceView.capturePage(scale);
+        return this.commandQueue;
     }
 
     /**
-     * Saves the {@link SpenNoteDoc document} to a SPD file at the specified <code>path</code>.
-     * @param path the absolute path to save a SPD file to.
-     * @throws IOException if the operation fails.
+     * Gets the event bus that delivers the events of this service, e.g. commits, undo and redo, to any number of listeners.
+     * <p>Subclasses may still override the methods that handle the events instead.</p>
+     * @return the event bus of this service.
      */
-    public void save(final String path) throws IOException {
-        if (this.dirty && this.noteDoc != null) {
-            this.noteDoc.save(path);
-        }
+    public PenEventBus getEventBus() {
+        return this.eventBus;
     }
 
     /**
-     * Loads a SPD file into the current {@link SpenNoteDoc document}.
-     * @param path the absolute path of a SPD file to load.
-     * @param writable <code>true</code> if the SPD file should be writable; otherwise, <code>false</code>.
-     * @throws IOException thrown if the specified <code>path</code> is not found or a cache directory cannot be generated.
-     * @throws SpenUnsupportedTypeException thrown if the file to load is not in SPD format.
-     * @throws SpenUnsupportedVersionException thrown if the Pen package installed on the device is incompatible.
-     * @throws SpenInvalidPasswordException thrown if the file is password protected.
+     * Gets the {@link DocumentBackend} of the current {@link SpenNoteDoc document}, e.g. to run the same document logic as a batch tool.
+     * <p>This service manages the pages, imports strokes and saves the document through this backend. The strokes added or removed through it
+     * are followed by the canvas, the history features and the caches like the changes made by the user, but {@link #onPagesChanged()} is only
+     * called for the pages appended, removed or moved by the methods of this service.</p>
+     * <p>The backend must not be used after another document is loaded, and closing it does not close the document.</p>
+     * @return the backend of the current document, or <code>null</code> if there is no document.
      */
-    public void load(final String path, final boolean writable) throws SpenInvalidPasswordException, SpenUnsupportedTypeException, SpenUnsupportedVersionException, IOException {
-        if (this.surfaceView == null) {
-            throw new IllegalStateException();
+    public DocumentBackend getDocumentBackend() {
+        if (this.backend != null && this.surfaceView != null) {
+            this.backend.setPenName(this.surfaceView.getPenSettingInfo().name);
         }
 
-        final SpenNoteDoc noteDoc = new SpenNoteDoc(this.activity, path, this.canvasWidth, writable ? SpenNoteDoc.MODE_WRITABLE : SpenNoteDoc.MODE_READ_ONLY);
+        return this.backend;
+    }
 
-        if (this.noteDoc != null) {
-            this.noteDoc.close();
+    /**
+     * Releases memory by the urgency of a trim level. Called automatically when the system wants the app to release memory.
+     * <p>Memory is released in this order, what is cheapest to restore first:</p>
+     * <ol>
+     * <li>From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE}, the cached page thumbnails.</li>
+     * <li>From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}, or when the UI is hidden, the pre-rendered pages, the tiles, the low-resolution layers,
+     * the spatial indices and the {@link PenRuntime pooled canvases}.</li>
+     * <li>From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL}, or when the app is in the background, the objects of the pages other than
+     * the current one and the pages next to it, and the history that can be undone from the {@link HistoryPolicy spill directory}.</li>
+     * </ol>
+     * <p>Whatever is released is restored when needed again. Unsaved changes are kept.</p>
+     * <p>Subclasses may override this method to release their own memory too.</p>
+     * @param level the urgency of the request, e.g. {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}.
+     * @return the estimated number of bytes released. Pooled canvases and unloaded pages are not counted, as their sizes are not known.
+     */
+    public long trimMemory(final int level) {
+        long bytes = 0;
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE && this.thumbnailAdapter != null) {
+            bytes += this.thumbnailAdapter.trim();
         }
 
-        this.noteDoc = noteDoc;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            if (this.preRenderer != null) {
+                bytes += this.preRenderer.clear();
+            }
 
-        if (this.noteDoc.getPageCount() > 0) {
-            this.currentPage = 0;
+            if (this.tileCache != null) {
+                bytes += this.tileCache.clear();
+            }
 
-            final SpenPageDoc page = this.noteDoc.getPage(0);
-            page.setHistoryListener(this);
+            if (this.detailCache != null) {
+                bytes += this.detailCache.clear();
+            }
 
-            this.surfaceView.setPageDoc(page, true);
-            this.surfaceView.update();
+            if (this.spatialIndices != null) {
+                // Built again when searched
+                this.spatialIndices.clear();
+            }
+
+            PenRuntime.getInstance(this.activity).clearPool();
         }
 
-        if (this.noteDoc.getPageCount() > 1) {
-            this.noteDoc.getPage(1).setHistoryListener(this);
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            if (this.noteDoc != null) {
+                this.closeHistoryGroup();
+
+                for (int i = this.noteDoc.getPageCount(); --i >= 0;) {
+                    final SpenPageDoc pageDoc = this.noteDoc.getPage(i);
+
+                    if (Math.abs(i - this.currentPage) > 1 && pageDoc.isObjectLoaded() && !pageDoc.isRecording()) {
+                        PenService.unloadObjects(pageDoc);
+                    }
+                }
+            }
+
+            if (this.history != null) {
+                bytes += this.history.trimMemory();
+            }
         }
+
+        return bytes;
     }
 
     /**
-     * Loads a SPD file into the current {@link SpenNoteDoc document}.
-     * @param path the absolute path of a SPD file to load.
-     * @param writable <code>true</code> if the SPD file should be writable; otherwise, <code>false</code>.
-     * @throws IOException thrown if the specified <code>path</code> is not found or a cache directory cannot be generated.
-     * @throws SpenUnsupportedTypeException thrown if the file to load is not in SPD format.
-     * @throws SpenUnsupportedVersionException thrown if the Pen package installed on the device is incompatible.
-     * @throws SpenInvalidPasswordException thrown if the specified <code>password</code> is incorrect.
+     * Adds strokes to the current {@link SpenPageDoc page}, e.g. strokes imported from another app, with the current pen.
+     * <p>The strokes are added as a single history step, that is undone and logged as one.</p>
+     * @param strokes the strokes to add, in page coordinates.
      */
-    public void load(final String path, final String password, final boolean writable) throws SpenInvalidPasswordException, SpenUnsupportedTypeException, SpenUnsupportedVersionException, IOException {
+    public void addStrokes(final List<Stroke> strokes) {
         if (this.surfaceView == null) {
             throw new IllegalStateException();
         }
 
-        final SpenNoteDoc noteDoc = new SpenNoteDoc(this.activity, path, password, this.canvasWidth, writable ? SpenNoteDoc.MODE_WRITABLE : SpenNoteDoc.MODE_READ_ONLY, !writable);
+        if (this.noteDoc != null && !strokes.isEmpty()) {
+            this.closeHistoryGroup();
 
-        if (this.noteDoc != null) {
-            this.noteDoc.close();
-        }
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+            final int         count   = this.commitCount;
+
+            // The backend adds the strokes in a history group of its own, and the commits of the group are logged once as for the pen strokes
+            this.groupPage = pageDoc;
+            this.groupTool = SpenSettingViewInterface.ACTION_STROKE;
+
+            this.backend.setPenName(this.surfaceView.getPenSettingInfo().name);
+
+            try {
+                // The spatial index follows the added objects through onObjectAdded
+                this.backend.addStrokes(this.currentPage, strokes);
+            } finally {
+                final boolean committed = this.groupCommitted;
+
+                this.groupPage      = null;
+                this.groupCommitted = false;
+
+                if (committed && this.commitCount == count) {
+                    this.commitHistory(pageDoc);
+                }
+            }
+
+            this.invalidatePage(pageDoc);
+            this.updateSurface();
+        }
+    }
+
+    /**
+     * Defers {@link SpenSurfaceView canvas} updates until the matching {@link #endBatch()}, so that a batch of changes updates it once.
+     */
+    void beginBatch() {
+        this.batchDepth++;
+    }
+
+    void endBatch() {
+        if (--this.batchDepth == 0) {
+            this.flushBatch();
+        }
+    }
+
+    /**
+     * Makes the deferred {@link SpenSurfaceView canvas} update now, if any.
+     */
+    void flushBatch() {
+        if (this.updatePending) {
+            this.updatePending = false;
+
+            final int batchDepth = this.batchDepth;
+
+            this.batchDepth = 0;
+
+            try {
+                this.updateSurface();
+            } finally {
+                this.batchDepth = batchDepth;
+            }
+        }
+    }
+
+    SpenNoteDoc getNoteDoc() {
+        return this.noteDoc;
+    }
+
+    /**
+     * Gets the spatial index of the current {@link SpenPageDoc page}, building it if needed.
+     * <p>If the spatial index is not {@link #setSpatialIndexEnabled(boolean) enabled}, a temporary one is built for this query only.</p>
+     */
+    private SpatialIndex getSpatialIndex() {
+        final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+        SpatialIndex index = this.spatialIndices == null ? null : this.spatialIndices.get(pageDoc.getId());
+
+        if (index == null) {
+            index = new SpatialIndex(PenService.SPATIAL_INDEX_CELL_SIZE);
+
+            final ArrayList<SpenObjectBase> objects = pageDoc.getObjectList();
+
+            if (objects != null) {
+                PenService.index(index, objects);
+            }
+
+            if (this.spatialIndices != null) {
+                this.spatialIndices.put(pageDoc.getId(), index);
+            }
+        }
+
+        return index;
+    }
+
+    private ArrayList<SpenObjectBase> getObjects(final IntArray handles) {
+        final ArrayList<SpenObjectBase> objects = new ArrayList<SpenObjectBase>(handles.size());
+
+        if (handles.size() > 0) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+            for (int i = 0; i < handles.size(); i++) {
+                final SpenObjectBase object = pageDoc.getObjectByRuntimeHandle(handles.get(i));
+
+                if (object != null) {
+                    objects.add(object);
+                }
+            }
+        }
+
+        return objects;
+    }
+
+    private static void index(final SpatialIndex index, final ArrayList<SpenObjectBase> objects) {
+        for (final SpenObjectBase object : objects) {
+            PenService.index(index, object);
+        }
+    }
+
+    private static void index(final SpatialIndex index, final SpenObjectBase object) {
+        RectF rect = object.getDrawnRect();
+
+        if (rect == null) {
+            rect = object.getRect();
+        }
+
+        if (rect != null) {
+            index.put(object.getRuntimeHandle(), rect.left, rect.top, rect.right, rect.bottom);
+        }
+    }
+
+    /**
+     * Discards the spatial index of a {@link SpenPageDoc page} after it is changed without notifying its object listener.
+     */
+    private void invalidateSpatialIndex(final String pageId) {
+        if (this.spatialIndices != null) {
+            this.spatialIndices.remove(pageId);
+        }
+    }
+
+    /**
+     * Loads the objects of a {@link SpenPageDoc page}, if they are unloaded to save memory.
+     * @return <code>true</code> if the objects are loaded by this call; otherwise, <code>false</code>.
+     */
+    static boolean loadObjects(final SpenPageDoc pageDoc) {
+        if (pageDoc.isObjectLoaded()) {
+            return false;
+        }
+
+        try {
+            pageDoc.loadObject();
+
+            return true;
+        } catch (final IOException e) {
+            Log.e(PenService.class.getName(), e.getMessage(), e);
+        }
+
+        return false;
+    }
+
+    static void unloadObjects(final SpenPageDoc pageDoc) {
+        try {
+            pageDoc.unloadObject();
+        } catch (final IOException e) {
+            Log.w(PenService.class.getName(), e.getMessage(), e);
+        }
+    }
+
+    private void recordMetric(final int op, final long start, final long bytes, final boolean succeeded) {
+        if (this.metrics != null) {
+            this.metrics.record(op, System.nanoTime() - start, bytes, succeeded);
+        }
+    }
+
+    /**
+     * Publishes an event of the current page.
+     */
+    private void publish(final int type, final int value) {
+        if (this.eventBus.accepts(type)) {
+            this.eventBus.publish(type, this.getCurrentPageId(), value, 0, 0, 0);
+        }
+    }
+
+    private String getCurrentPageId() {
+        return this.noteDoc == null || this.noteDoc.getPageCount() == 0 ? null : this.noteDoc.getPageIdByIndex(this.currentPage);
+    }
+
+    private void notifyPagesChanged() {
+        if (this.virtualCanvas != null) {
+            this.virtualCanvas.index(this.noteDoc);
+        }
+
+        if (this.thumbnailAdapter != null) {
+            this.thumbnailAdapter.notifyDataSetChanged();
+        }
+
+        this.onPagesChanged();
+
+        this.publish(PenEvent.TYPE_PAGES_CHANGED, this.currentPage);
+    }
+
+    /**
+     * Undo the previous action, if any.
+     * <p>If {@link #setDocumentHistoryEnabled(boolean) document-wide history} is enabled, the previous action of the whole {@link SpenNoteDoc document}
+     * is undone, switching to its {@link SpenPageDoc page} if necessary; otherwise, the previous action of the current {@link SpenPageDoc page} is undone.</p>
+     */
+    public void undo() {
+        this.undo(1);
+    }
+
+    /**
+     * Undo the specified number of previous actions, or as many as possible.
+     * <p>All actions are undone in one batch, and the {@link SpenSurfaceView canvas} is refreshed only once.</p>
+     * @param steps the number of actions to undo.
+     * @see #undo()
+     */
+    public void undo(final int steps) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (steps < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if (this.noteDoc != null && steps > 0) {
+            final long start = this.metrics == null ? 0 : System.nanoTime();
+
+            this.closeHistoryGroup();
+
+            if (this.timeline == null) {
+                final SpenPageDoc  pageDoc = this.noteDoc.getPage(this.currentPage);
+                final HistoryBatch batch   = new HistoryBatch();
+
+                this.undoPage(pageDoc, steps, batch);
+                this.refreshUndo(batch);
+                this.moveHistoryPoint(pageDoc.getId(), -batch.steps);
+
+                if (batch.steps > 0) {
+                    this.eventBus.publish(PenEvent.TYPE_UNDO, pageDoc.getId(), batch.steps, 0, 0, 0);
+                }
+            } else if (this.timeline.canUndo()) {
+                final HistoryBatch batch = new HistoryBatch();
+
+                int page  = this.currentPage;
+                int count = 0;
+
+                // Undoes the consecutive actions of the same page together
+                while (count < steps && this.timeline.canUndo()) {
+                    final String pageId = this.timeline.peekUndo();
+
+                    int run = 0;
+
+                    do {
+                        this.timeline.undo();
+                        run++;
+                    } while (count + run < steps && pageId.equals(this.timeline.peekUndo()));
+
+                    count += run;
+
+                    final int index = this.noteDoc.getPageIndexById(pageId);
+
+                    if (index >= 0) {
+                        page = index;
+
+                        final SpenPageDoc pageDoc = this.noteDoc.getPage(index);
+
+                        // The page may be unloaded to save memory
+                        PenService.loadObjects(pageDoc);
+
+                        this.undoPage(pageDoc, run, index == this.currentPage ? batch : new HistoryBatch());
+                    }
+                }
+
+                if (page == this.currentPage) {
+                    this.refreshUndo(batch);
+                } else {
+                    this.setCurrentPage(page);
+                }
+
+                this.moveHistoryPoint(null, -count);
+                this.updateTimelineButtons();
+
+                this.publish(PenEvent.TYPE_UNDO, count);
+            }
+
+            this.recordMetric(PenMetrics.OP_UNDO, start, 0, true);
+        }
+    }
+
+    /**
+     * Redo the next action, if any.
+     * <p>If {@link #setDocumentHistoryEnabled(boolean) document-wide history} is enabled, the next action of the whole {@link SpenNoteDoc document}
+     * is redone, switching to its {@link SpenPageDoc page} if necessary; otherwise, the next action of the current {@link SpenPageDoc page} is redone.</p>
+     */
+    public void redo() {
+        this.redo(1);
+    }
+
+    /**
+     * Redo the specified number of next actions, or as many as possible.
+     * <p>All actions are redone in one batch, and the {@link SpenSurfaceView canvas} is refreshed only once.</p>
+     * @param steps the number of actions to redo.
+     * @see #redo()
+     */
+    public void redo(final int steps) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (steps < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if (this.noteDoc != null && steps > 0) {
+            final long start = this.metrics == null ? 0 : System.nanoTime();
+
+            this.closeHistoryGroup();
+
+            if (this.timeline == null) {
+                final SpenPageDoc  pageDoc = this.noteDoc.getPage(this.currentPage);
+                final HistoryBatch batch   = new HistoryBatch();
+
+                this.redoPage(pageDoc, steps, batch);
+                this.refreshRedo(batch);
+                this.moveHistoryPoint(pageDoc.getId(), batch.steps);
+
+                if (batch.steps > 0) {
+                    this.eventBus.publish(PenEvent.TYPE_REDO, pageDoc.getId(), batch.steps, 0, 0, 0);
+                }
+            } else if (this.timeline.canRedo()) {
+                final HistoryBatch batch = new HistoryBatch();
+
+                int page  = this.currentPage;
+                int count = 0;
+
+                // Redoes the consecutive actions of the same page together
+                while (count < steps && this.timeline.canRedo()) {
+                    final String pageId = this.timeline.peekRedo();
+
+                    int run = 0;
+
+                    do {
+                        this.timeline.redo();
+                        run++;
+                    } while (count + run < steps && pageId.equals(this.timeline.peekRedo()));
+
+                    count += run;
+
+                    final int index = this.noteDoc.getPageIndexById(pageId);
+
+                    if (index >= 0) {
+                        page = index;
+
+                        final SpenPageDoc pageDoc = this.noteDoc.getPage(index);
+
+                        // The page may be unloaded to save memory
+                        PenService.loadObjects(pageDoc);
+
+                        this.redoPage(pageDoc, run, index == this.currentPage ? batch : new HistoryBatch());
+                    }
+                }
+
+                if (page == this.currentPage) {
+                    this.refreshRedo(batch);
+                } else {
+                    this.setCurrentPage(page);
+                }
+
+                this.moveHistoryPoint(null, count);
+                this.updateTimelineButtons();
+
+                this.publish(PenEvent.TYPE_REDO, count);
+            }
+
+            this.recordMetric(PenMetrics.OP_REDO, start, 0, true);
+        }
+    }
+
+    /**
+     * Marks the current state as the history point to {@link #revertToHistoryPoint() revert} to, replacing any previous history point.
+     * <p>If {@link #setDocumentHistoryEnabled(boolean) document-wide history} is enabled, the history point covers the whole {@link SpenNoteDoc document};
+     * otherwise, it covers the current {@link SpenPageDoc page} only.</p>
+     */
+    public void markHistoryPoint() {
+        if (this.noteDoc == null) {
+            throw new IllegalStateException();
+        }
+
+        this.closeHistoryGroup();
+
+        this.markPage  = this.noteDoc.getPage(this.currentPage).getId();
+        this.markDepth = 0;
+    }
+
+    /**
+     * Determines whether there is a history point to {@link #revertToHistoryPoint() revert} to.
+     * <p>A history point is discarded when the actions after it are undone and new actions are made, because it can no longer be reached.</p>
+     * @return <code>true</code> if there is a history point; otherwise, <code>false</code>.
+     */
+    public boolean hasHistoryPoint() {
+        return this.markPage != null;
+    }
+
+    /**
+     * Undoes or redoes all actions between the current state and the {@link #markHistoryPoint() history point} in one batch,
+     * refreshing the {@link SpenSurfaceView canvas} only once.
+     * @return <code>true</code> if the history point is reached; <code>false</code> if there is no history point,
+     * or if some of the actions can no longer be undone.
+     */
+    public boolean revertToHistoryPoint() {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        if (this.noteDoc == null || this.markPage == null) {
+            return false;
+        }
+
+        if (this.timeline == null) {
+            final int page = this.noteDoc.getPageIndexById(this.markPage);
+
+            if (page < 0) {
+                this.markPage = null;
+
+                return false;
+            }
+
+            this.setCurrentPage(page);
+        }
+
+        if (this.markDepth > 0) {
+            this.undo(this.markDepth);
+        } else if (this.markDepth < 0) {
+            this.redo(-this.markDepth);
+        }
+
+        return this.markDepth == 0;
+    }
+
+    /**
+     * Determines whether document-wide history is enabled.
+     * @return <code>true</code> if document-wide history is enabled; otherwise, <code>false</code>.
+     */
+    public boolean isDocumentHistoryEnabled() {
+        return this.timeline != null;
+    }
+
+    /**
+     * Enables or disables document-wide history.
+     * <p>If enabled, {@link #undo()} and {@link #redo()} walk through the actions of all {@link SpenPageDoc pages} in chronological order,
+     * switching pages as needed, instead of the actions of the current {@link SpenPageDoc page} only.
+     * Only actions made after document-wide history is enabled are recorded.</p>
+     * @param enabled <code>true</code> to enable document-wide history; otherwise, <code>false</code>. Default is <code>false</code>.
+     */
+    public void setDocumentHistoryEnabled(final boolean enabled) {
+        this.closeHistoryGroup();
+
+        this.timeline = enabled ? new HistoryTimeline() : null;
+        this.markPage = null;
+
+        if (this.noteDoc != null && this.noteDoc.getPageCount() > 0) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+            this.onUndoable(pageDoc, pageDoc.isUndoable());
+            this.onRedoable(pageDoc, pageDoc.isRedoable());
+        }
+    }
+
+    /**
+     * Undoes up to the specified number of actions of a {@link SpenPageDoc page} without refreshing the {@link SpenSurfaceView canvas}.
+     * <p>Actions still kept by the Pen package are undone one by one. If more steps are needed, the page is rebuilt from the history log once.</p>
+     */
+    private void undoPage(final SpenPageDoc pageDoc, final int steps, final HistoryBatch batch) {
+        this.invalidatePage(pageDoc);
+
+        int count = 0;
+
+        while (count < steps && pageDoc.isUndoable()) {
+            batch.add(pageDoc.undo());
+
+            if (this.history != null) {
+                this.history.onUndo(pageDoc);
+            }
+
+            count++;
+        }
+
+        if (count < steps && this.history != null && this.history.canUndo(pageDoc)) {
+            final int position = this.history.getPosition(pageDoc);
+            final int version  = Math.max(0, position - (steps - count));
+
+            this.restoreHistory(pageDoc, version);
+
+            count         += position - version;
+            batch.restored = true;
+        }
+
+        batch.steps += count;
+    }
+
+    /**
+     * Redoes up to the specified number of actions of a {@link SpenPageDoc page} without refreshing the {@link SpenSurfaceView canvas}.
+     * <p>Actions still kept by the Pen package are redone one by one. If more steps are needed, the page is rebuilt from the history log once.</p>
+     */
+    private void redoPage(final SpenPageDoc pageDoc, final int steps, final HistoryBatch batch) {
+        this.invalidatePage(pageDoc);
+
+        int count = 0;
+
+        while (count < steps && pageDoc.isRedoable()) {
+            batch.add(pageDoc.redo());
+
+            if (this.history != null) {
+                this.history.onRedo(pageDoc);
+            }
+
+            count++;
+        }
+
+        if (count < steps && this.history != null && this.history.canRedo(pageDoc)) {
+            final int position = this.history.getPosition(pageDoc);
+            final int version  = Math.min(this.history.getVersionCount(pageDoc), position + steps - count);
+
+            this.restoreHistory(pageDoc, version);
+
+            count         += version - position;
+            batch.restored = true;
+        }
+
+        batch.steps += count;
+    }
+
+    private void refreshUndo(final HistoryBatch batch) {
+        if (batch.restored) {
+            this.updateSurface();
+        } else if (batch.steps > 0) {
+            this.updateUndo(batch.toArray());
+        }
+    }
+
+    private void refreshRedo(final HistoryBatch batch) {
+        if (batch.restored) {
+            this.updateSurface();
+        } else if (batch.steps > 0) {
+            this.updateRedo(batch.toArray());
+        }
+    }
+
+    private void updateTimelineButtons() {
+        if (this.undoButton != null) {
+            this.undoButton.setEnabled(this.timeline.canUndo());
+        }
+
+        if (this.redoButton != null) {
+            this.redoButton.setEnabled(this.timeline.canRedo());
+        }
+    }
+
+    /**
+     * Keeps the {@link #markHistoryPoint() history point} in step with the actions undone, redone or made.
+     * @param pageId the ID of the {@link SpenPageDoc page} of the actions, or <code>null</code> for the actions of the document-wide history.
+     * @param steps the number of actions made or redone, or minus the number of actions undone.
+     */
+    private void moveHistoryPoint(final String pageId, final int steps) {
+        if (this.markPage != null && (this.timeline != null || this.markPage.equals(pageId))) {
+            this.markDepth += steps;
+        }
+    }
+
+    /**
+     * Gets the history policy.
+     * @return the history policy, or <code>null</code> if the undo history is not limited.
+     */
+    public HistoryPolicy getHistoryPolicy() {
+        return this.historyPolicy;
+    }
+
+    /**
+     * Limits how much memory the undo history may use.
+     * <p>By default, the undo history of a {@link SpenPageDoc page} grows without limit while a writable {@link SpenNoteDoc document} is open.
+     * With a history policy, only the most recent history entries are kept in memory, and every history entry is also logged to the spill directory,
+     * so that undoing beyond what is kept in memory transparently rebuilds the {@link SpenPageDoc page} from disk.</p>
+     * <p>Logging starts from the current state of the {@link SpenPageDoc pages}; history entries made before the policy is set are not affected.</p>
+     * @param policy the history policy, or <code>null</code> to stop limiting the undo history.
+     */
+    public void setHistoryPolicy(final HistoryPolicy policy) {
+        this.closeHistoryGroup();
+
+        this.historyPolicy = policy;
+
+        this.resetHistory();
+
+        if (this.history != null && this.noteDoc.getPageCount() > 0) {
+            this.history.attach(this.noteDoc.getPage(this.currentPage));
+        }
+    }
+
+    /**
+     * Gets the number of logged versions of the current {@link SpenPageDoc page}.
+     * <p>Version <code>0</code> is the state of the {@link SpenPageDoc page} when logging started, and version <code>n</code> is the state after the <code>n</code>-th action.</p>
+     * @return the number of logged versions, excluding version <code>0</code>, or <code>0</code> if no {@link #setHistoryPolicy(HistoryPolicy) history policy} is set.
+     */
+    public int getHistoryVersionCount() {
+        if (this.history == null || this.noteDoc == null) {
+            return 0;
+        }
+
+        return this.history.getVersionCount(this.noteDoc.getPage(this.currentPage));
+    }
+
+    /**
+     * Gets the current version of the current {@link SpenPageDoc page}.
+     * @return the current version, or <code>-1</code> if no {@link #setHistoryPolicy(HistoryPolicy) history policy} is set.
+     * @see #getHistoryVersionCount()
+     */
+    public int getHistoryVersion() {
+        if (this.history == null || this.noteDoc == null) {
+            return -1;
+        }
+
+        return this.history.getPosition(this.noteDoc.getPage(this.currentPage));
+    }
+
+    /**
+     * Restores the current {@link SpenPageDoc page} to any of its logged versions, e.g. for a version slider.
+     * <p>The {@link SpenPageDoc page} is rebuilt from the nearest {@link HistoryPolicy#getCheckpointInterval() checkpoint} plus about
+     * that number of history entries, and the {@link SpenSurfaceView canvas} is refreshed once. The later versions can still be restored
+     * until a new action is made.</p>
+     * <p>If {@link #setDocumentHistoryEnabled(boolean) document-wide history} is enabled, the actions of this {@link SpenPageDoc page} are removed from it.</p>
+     * @param version the version to restore, from <code>0</code> to {@link #getHistoryVersionCount()}.
+     * @throws IllegalStateException if no {@link #setHistoryPolicy(HistoryPolicy) history policy} is set.
+     */
+    public void restoreHistoryVersion(final int version) {
+        if (this.surfaceView == null || this.history == null || this.noteDoc == null) {
+            throw new IllegalStateException();
+        }
+
+        this.closeHistoryGroup();
+
+        final SpenPageDoc pageDoc  = this.noteDoc.getPage(this.currentPage);
+        final int         position = this.history.getPosition(pageDoc);
+
+        if (version != position) {
+            this.restoreHistory(pageDoc, version);
+            this.updateSurface();
+
+            if (this.timeline == null) {
+                this.moveHistoryPoint(pageDoc.getId(), version - position);
+            } else {
+                // The actions of this page no longer match the document-wide order
+                this.timeline.removePage(pageDoc.getId());
+                this.updateTimelineButtons();
+
+                this.markPage = null;
+            }
+
+            this.eventBus.publish(PenEvent.TYPE_HISTORY_RESTORED, pageDoc.getId(), version, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Gets the compaction policy.
+     * @return the compaction policy, or <code>null</code> if the undo history is not compacted.
+     */
+    public CompactionPolicy getCompactionPolicy() {
+        return this.compactionPolicy;
+    }
+
+    /**
+     * Compacts the undo history of long drawing sessions.
+     * <p>Consecutive strokes or eraser passes made on the same {@link SpenPageDoc page} within the merge window of the policy are undone as one action.
+     * If a {@link #setHistoryPolicy(HistoryPolicy) history policy} is set, older actions in the history log are also merged into coarser ones,
+     * while the most recent actions stay precise.</p>
+     * @param policy the compaction policy, or <code>null</code> to stop compacting the undo history.
+     */
+    public void setCompactionPolicy(final CompactionPolicy policy) {
+        this.closeHistoryGroup();
+
+        this.compactionPolicy = policy;
+    }
+
+    private void zoom() {
+        this.isZoomed = !this.isZoomed;
+
+        this.setZoomEnabled(this.isZoomed, PenService.ZOOM_RATIO);
+
+        this.zoomButton.setChecked(!this.zoomButton.isChecked());
+    }
+
+    /**
+     * Starts recording changes.
+     * <p>By default, the {@link SpenPageDoc document) internally records any changes.</p>
+     */
+    public void startRecord() {
+        if (this.noteDoc != null) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+            if (!pageDoc.isRecording()) {
+                pageDoc.startRecord();
+            }
+        }
+    }
+
+    /**
+     * Stops recording changes.
+     * <p>This is a no-op if recording is not previously started.</p>
+     */
+    public void stopRecord() {
+        if (this.noteDoc != null) {
+            final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+            if (pageDoc.isRecording()) {
+                pageDoc.stopRecord();
+            }
+        }
+    }
+
+    /**
+     * Starts replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
+     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
+     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
+     * <p>It is an no-op if {@link #startRecord()} there is no object on the {@link SpenSurfaceView canvas},
+     * or {@link #startRecord()} is not called before.</p>
+     * @see #startRecord()
+     * @see #stopRecord()
+     * @see #stopReplay()
+     * @see #pauseReplay()
+     * @see #resumeReplay()
+     */
+    public void startReplay() {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        final long start = this.metrics == null ? 0 : System.nanoTime();
+
+        this.closeHistoryGroup();
+        this.completePageFlip();
+
+        this.surfaceView.startReplay();
+
+        this.recordMetric(PenMetrics.OP_REPLAY_START, start, 0, true);
+    }
+
+    /**
+     * Stops replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
+     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
+     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
+     * <p>It is an no-op if {@link #startReplay()} is not called before.</p>
+     * @see #startRecord()
+     * @see #stopRecord()
+     * @see #startReplay()
+     * @see #pauseReplay()
+     * @see #resumeReplay()
+     */
+    public void stopReplay() {
+        if (this.surfaceView == null) {
+            //throw new IllegalStateException();
+        } else {
+            if (this.surfaceView.getReplayState() == SpenSurfaceView.REPLAY_STATE_PLAYING) {
+                this.surfaceView.stopReplay();
+            }
+        }
+    }
+
+    /**
+     * Pauses replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
+     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
+     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
+     * <p>It is an no-op if {@link #startReplay()} is not called before.</p>
+     * @see #startRecord()
+     * @see #stopRecord()
+     * @see #startReplay()
+     * @see #stopReplay()
+     * @see #resumeReplay()
+     */
+    public void pauseReplay() {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        this.surfaceView.pauseReplay();
+    }
+
+    /**
+     * Resumes replaying the objects drawn on the {@link SpenSurfaceView canvas}, if any.
+     * <p>You can replay animation by calling {@link #startRecord()}, {@link #stopRecord()},
+     * {@link #startReplay()}, {@link #pauseReplay()}, {@link #resumeReplay()} and {@link #stopReplay()} methods.</p>
+     * <p>It is an no-op if {@link #pauseReplay()} is not called before.</p>
+     * @see #startRecord()
+     * @see #stopRecord()
+     * @see #startReplay()
+     * @see #stopReplay()
+     * @see #pauseReplay()
+     */
+    public void resumeReplay() {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        this.surfaceView.resumeReplay();
+    }
+
+    /**
+     * Gets the animation replay state.
+     * @return the current replay state.
+     * <p>Could be one of these values: {@link #REPLAY_STATE_PAUSED}, {@link #REPLAY_STATE_PLAYING} or {@link #REPLAY_STATE_STOPPED}.</p>
+     */
+    public int getReplayState() {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        return this.surfaceView.getReplayState();
+    }
+
+    /**
+     * Sets the speed for replaying objects drawn on the {@link SpenSurfaceView canvas}.
+     * @param speed the replay speed.
+     * <p>The valid values are {@link #SPEED_SLOW}, {@link #SPEED_NORMAL} and {@link #SPEED_FAST}.</p>
+     */
+    public void setReplaySpeed(final int speed) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        this.surfaceView.setReplaySpeed(speed);
+    }
+
+    /**
+     * Creates a {@link Bitmap} from the current {@link SpenPageDoc page}.
+     * @param scale the scale to resize the generated {@link Bitmap}.
+     * @return the {@link Bitmap} captured from the current {@link SpenPageDoc page}.
+     * @see PageRenderer PageRenderer to render pages without the canvas, e.g. from a background job
+     */
+    public Bitmap generateThumbnail(final float scale) {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        this.completePageFlip();
+
+        if (this.instrumentation == null && this.metrics == null) {
+            return this.surfaceView.capturePage(scale);
+        }
+
+        final long   start  = System.nanoTime();
+        final Bitmap bitmap = this.surfaceView.capturePage(scale);
+
+        if (this.instrumentation != null) {
+            this.instrumentation.record(PenInstrumentation.METRIC_CAPTURE, System.nanoTime() - start);
+        }
+
+        this.recordMetric(PenMetrics.OP_THUMBNAIL, start, bitmap == null ? 0 : bitmap.getRowBytes() * bitmap.getHeight(), bitmap != null);
+
+        return bitmap;
+    }
+
+    /**
+     * Saves the {@link SpenNoteDoc document} to a SPD file at the specified <code>path</code>.
+     * @param path the absolute path to save a SPD file to.
+     * @throws IOException if the operation fails.
+     */
+    public void save(final String path) throws IOException {
+        if (this.dirty && this.noteDoc != null) {
+            this.closeHistoryGroup();
+
+            if (this.metrics == null) {
+                this.backend.save(path);
+            } else {
+                final long start = System.nanoTime();
+
+                boolean saved = false;
+
+                try {
+                    this.backend.save(path);
+
+                    saved = true;
+                } finally {
+                    this.recordMetric(PenMetrics.OP_SAVE, start, saved ? new File(path).length() : 0, saved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a SPD file into the current {@link SpenNoteDoc document}.
+     * @param path the absolute path of a SPD file to load.
+     * @param writable <code>true</code> if the SPD file should be writable; otherwise, <code>false</code>.
+     * @throws IOException thrown if the specified <code>path</code> is not found or a cache directory cannot be generated.
+     * @throws SpenUnsupportedTypeException thrown if the file to load is not in SPD format.
+     * @throws SpenUnsupportedVersionException thrown if the Pen package installed on the device is incompatible.
+     * @throws SpenInvalidPasswordException thrown if the file is password protected.
+     */
+    public void load(final String path, final boolean writable) throws SpenInvalidPasswordException, SpenUnsupportedTypeException, SpenUnsupportedVersionException, IOException {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        final long start = this.metrics == null ? 0 : System.nanoTime();
+
+        boolean loaded = false;
+
+        try {
+            this.open(new SpenNoteDoc(this.activity, path, this.canvasWidth, writable ? SpenNoteDoc.MODE_WRITABLE : SpenNoteDoc.MODE_READ_ONLY));
+
+            loaded = true;
+        } finally {
+            this.recordMetric(PenMetrics.OP_LOAD, start, loaded ? new File(path).length() : 0, loaded);
+        }
+    }
+
+    /**
+     * Loads a SPD file into the current {@link SpenNoteDoc document}.
+     * @param path the absolute path of a SPD file to load.
+     * @param writable <code>true</code> if the SPD file should be writable; otherwise, <code>false</code>.
+     * @throws IOException thrown if the specified <code>path</code> is not found or a cache directory cannot be generated.
+     * @throws SpenUnsupportedTypeException thrown if the file to load is not in SPD format.
+     * @throws SpenUnsupportedVersionException thrown if the Pen package installed on the device is incompatible.
+     * @throws SpenInvalidPasswordException thrown if the specified <code>password</code> is incorrect.
+     */
+    public void load(final String path, final String password, final boolean writable) throws SpenInvalidPasswordException, SpenUnsupportedTypeException, SpenUnsupportedVersionException, IOException {
+        if (this.surfaceView == null) {
+            throw new IllegalStateException();
+        }
+
+        final long start = this.metrics == null ? 0 : System.nanoTime();
+
+        boolean loaded = false;
+
+        try {
+            this.open(new SpenNoteDoc(this.activity, path, password, this.canvasWidth, writable ? SpenNoteDoc.MODE_WRITABLE : SpenNoteDoc.MODE_READ_ONLY, !writable));
+
+            loaded = true;
+        } finally {
+            this.recordMetric(PenMetrics.OP_LOAD, start, loaded ? new File(path).length() : 0, loaded);
+        }
+    }
+
+    /**
+     * Shows a loaded {@link SpenNoteDoc document} in place of the current one.
+     */
+    private void open(final SpenNoteDoc noteDoc) throws IOException {
+        this.resetPreRendering();
+
+        if (this.spatialIndices != null) {
+            this.spatialIndices.clear();
+        }
+
+        if (this.noteDoc != null) {
+            this.noteDoc.close();
+        }
 
         this.noteDoc = noteDoc;
+        this.backend = new SpenDocumentBackend(noteDoc, false);
+
+        this.resetHistory();
+
+        if (this.virtualCanvas != null) {
+            this.virtualCanvas.index(this.noteDoc);
+
+            if (this.noteDoc.getPageCount() > 0) {
+                final SpenPageDoc page = this.noteDoc.getPage(0);
+
+                this.virtualCanvas.visit(this.noteDoc, this.virtualCanvas.getColumn(page), this.virtualCanvas.getRow(page));
+            }
+        }
+
+        if (this.noteDoc.getPageCount() > 0) {
+            this.currentPage = 0;
+
+            final SpenPageDoc page = this.noteDoc.getPage(0);
+            this.attachPage(page);
+
+            this.surfaceView.setPageDoc(page, true);
+            this.updateSurface();
+
+            if (this.preRenderer != null) {
+                this.preRenderer.request(this.noteDoc, this.currentPage);
+            }
+        }
+
+        if (this.noteDoc.getPageCount() > 1) {
+            this.attachPage(this.noteDoc.getPage(1));
+        }
+    }
+
+    /**
+     * Initialize S-Pen related objects.
+     * <p>This will create a {@link SpenSurfaceView canvas} and a {@link SpenNoteDoc document} objects,
+     * and append a {@link SpenPageDoc page} to it.</p>
+     * <p>If S-Pen is not supported on the device, a message will be displayed and {@link Activity#finish()} will be called.</p>
+     * @param canvasWidth the width of the {@link SpenSurfaceView canvas} to put a {@link SpenPageDoc page} in it.
+     * @param canvasHeight the height of the {@link SpenSurfaceView canvas} to put a {@link SpenPageDoc page} in it.
+     * @param backgroundColor the background color of the {@link SpenPageDoc page}.
+     * <p>The default color will be used if <code>backgroundColor</code> is negative.</p>
+     * @param backgroundImagePath the absolute path of the background image file.
+     * <p>An empty background will be used if <code>backgroundImagePath</code> is empty or <code>null</code>.</p>
+     * @param backgroundImageMode either {@link #MODE_CENTER}, {@link #MODE_FIT}, {@link #MODE_TILE} or {@link #MODE_STRETCH}.
+     * @param penColor the initial pen color to use.
+     * @param penSize the initial pen size in pixels to use.
+     * @param eraserSize the initial eraser size in pixels to use.
+     * @return <code>true</code> if Spen SDK is initialized successfully; otherwise, <code>false</code>.
+     */
+    public boolean init(final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode, final int penColor, final int penSize, final int eraserSize) {
+        if (this.initSpen()) {
+            this.initViews(null, canvasWidth, canvasHeight, backgroundColor, backgroundImagePath, backgroundImageMode, penColor, penSize, eraserSize);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Initialize S-Pen related objects asynchronously, to keep the UI thread free during the cold start of a drawing screen.
+     * <p>The Pen package is initialized, the {@link SpenNoteDoc document} is created or loaded, and the background image is decoded on a worker thread.
+     * The {@link SpenSurfaceView canvas} and the setting views are then created on the UI thread, and <code>listener</code> is called with the time
+     * taken by each phase. No other method may be called before that.</p>
+     * <p>The initialization is abandoned, and the document closed, if the activity finishes or {@link #onDestroy()} is called in the meantime.
+     * <code>listener</code> is not called then.</p>
+     * <p>If S-Pen is not supported on the device, a message will be displayed and {@link Activity#finish()} will be called.</p>
+     * @param canvasWidth the width of the {@link SpenSurfaceView canvas} to put a {@link SpenPageDoc page} in it.
+     * @param canvasHeight the height of the {@link SpenSurfaceView canvas} to put a {@link SpenPageDoc page} in it.
+     * @param backgroundColor the background color of the {@link SpenPageDoc page}.
+     * <p>The default color will be used if <code>backgroundColor</code> is negative.</p>
+     * @param backgroundImagePath the absolute path of the background image file.
+     * <p>An empty background will be used if <code>backgroundImagePath</code> is empty or <code>null</code>.</p>
+     * @param backgroundImageMode either {@link #MODE_CENTER}, {@link #MODE_FIT}, {@link #MODE_TILE} or {@link #MODE_STRETCH}.
+     * @param penColor the initial pen color to use.
+     * @param penSize the initial pen size in pixels to use.
+     * @param eraserSize the initial eraser size in pixels to use.
+     * @param path the absolute path of a SPD file to load and make writable, or <code>null</code> to create a new {@link SpenNoteDoc document}
+     * with a {@link SpenPageDoc page} of the specified background.
+     * @param listener the listener to call on the UI thread when initialized.
+     */
+    public void initAsync(final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode, final int penColor, final int penSize, final int eraserSize, final String path, final OnReadyListener listener) {
+        if (this.surfaceView != null || this.initToken != null) {
+            throw new IllegalStateException();
+        }
+
+        // The background image is decoded for the canvas size
+        this.canvasWidth  = canvasWidth;
+        this.canvasHeight = canvasHeight;
+
+        final Object token = new Object();
+
+        this.initToken = token;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PenService.this.prepare(token, canvasWidth, canvasHeight, backgroundColor, backgroundImagePath, backgroundImageMode, penColor, penSize, eraserSize, path, listener);
+            }
+        }, "PenService.initAsync").start(); //$NON-NLS-1$
+    }
+
+    /**
+     * Checks if an {@link #initAsync(int, int, int, String, int, int, int, int, String, OnReadyListener) initialization} has been abandoned,
+     * because {@link #onDestroy()} has been called, or the activity is finishing.
+     * @param token the token of the initialization.
+     * @return <code>true</code> if the initialization should stop.
+     */
+    private boolean isInitAbandoned(final Object token) {
+        return this.initToken != token || this.activity.isFinishing();
+    }
+
+    /**
+     * Closes the document of an abandoned initialization.
+     */
+    private void closeAbandoned(final SpenNoteDoc noteDoc) {
+        try {
+            noteDoc.close();
+        } catch (final IOException e) {
+            Log.w(this.getClass().getName(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Does the work of {@link #initAsync(int, int, int, String, int, int, int, int, String, OnReadyListener)} that does not involve views,
+     * on a worker thread, then initializes the views on the UI thread.
+     * <p>The work stops between two phases if the initialization has been {@link #isInitAbandoned(Object) abandoned}.</p>
+     */
+    private void prepare(final Object token, final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode, final int penColor, final int penSize, final int eraserSize, final String path, final OnReadyListener listener) {
+        final InitTimings timings = new InitTimings();
+
+        long    start      = System.nanoTime();
+        boolean penEnabled = false;
+
+        try {
+            final PenRuntime runtime = PenRuntime.getInstance(this.activity);
+
+            runtime.initialize();
+
+            penEnabled = runtime.isPenEnabled();
+        } catch (final Exception e) {
+            Log.i(this.getClass().getName(), e.getMessage(), e);
+
+            this.handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (PenService.this.isInitAbandoned(token)) {
+                        return;
+                    }
+
+                    PenService.this.initToken = null;
+
+                    if (e instanceof SsdkUnsupportedException) {
+                        PenService.this.handleUnsupportedException((SsdkUnsupportedException)e);
+                    } else {
+                        Toast.makeText(PenService.this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+
+                        PenService.this.activity.finish();
+                    }
+
+                    listener.onFailed(e);
+                }
+            });
+
+            return;
+        }
+
+        timings.setTime(InitTimings.PHASE_SDK, System.nanoTime() - start);
+
+        if (this.isInitAbandoned(token)) {
+            return;
+        }
+
+        start = System.nanoTime();
+
+        final SpenNoteDoc noteDoc;
+
+        // The Pen package is otherwise used from the main thread only. A document that is not attached to a canvas yet is an exception:
+        // it is only used by this thread until the handler hands it over to the main thread, which happens-after this point.
+        try {
+            noteDoc = path == null ? new SpenNoteDoc(this.activity, canvasWidth, canvasHeight) : new SpenNoteDoc(this.activity, path, canvasWidth, SpenNoteDoc.MODE_WRITABLE);
+        } catch (final Exception e) {
+            Log.w(this.getClass().getName(), e.getMessage(), e);
+
+            this.handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (PenService.this.isInitAbandoned(token)) {
+                        return;
+                    }
+
+                    PenService.this.initToken = null;
+
+                    listener.onFailed(e);
+                }
+            });
+
+            return;
+        }
+
+        if (this.isInitAbandoned(token)) {
+            this.closeAbandoned(noteDoc);
+
+            return;
+        }
+
+        timings.setTime(path == null ? InitTimings.PHASE_DOCUMENT : InitTimings.PHASE_LOAD, System.nanoTime() - start);
+
+        start = System.nanoTime();
+
+        // Decodes the background image now, so that the UI thread finds it in the cache
+        final String imagePath = TextUtils.isEmpty(backgroundImagePath) ? backgroundImagePath : this.getBackgroundImagePath(backgroundImagePath, backgroundImageMode);
+
+        timings.setTime(InitTimings.PHASE_BACKGROUND, System.nanoTime() - start);
+
+        final boolean isPenEnabled = penEnabled;
+
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (PenService.this.isInitAbandoned(token)) {
+                    PenService.this.closeAbandoned(noteDoc);
+
+                    return;
+                }
+
+                PenService.this.initToken = null;
+
+                final long viewsStart = System.nanoTime();
+
+                PenService.this.penEnabled = isPenEnabled;
+                PenService.this.initViews(noteDoc, canvasWidth, canvasHeight, backgroundColor, imagePath, backgroundImageMode, penColor, penSize, eraserSize);
+
+                timings.setTime(InitTimings.PHASE_VIEWS, System.nanoTime() - viewsStart);
+
+                listener.onReady(timings);
+            }
+        });
+    }
+
+    /**
+     * Creates the {@link SpenSurfaceView canvas} and the setting views after the Pen package is initialized.
+     * @param noteDoc the {@link SpenNoteDoc document} to show, or <code>null</code> to create a new one.
+     */
+    private void initViews(final SpenNoteDoc noteDoc, final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode, final int penColor, final int penSize, final int eraserSize) {
+        final RelativeLayout canvas = (RelativeLayout)this.rootLayout.findViewById(R.id.pen_canvas);
+
+        if (this.penSettingEnabled) {
+            this.penSetting = new SpenSettingPenLayout(this.activity, PenService.NULL, canvas);
+        }
+
+        if (this.eraserSettingEnabled) {
+            this.eraserSetting = new SpenSettingEraserLayout(this.activity, PenService.NULL, canvas);
+        }
+
+        this.initCanvas(noteDoc, canvasWidth, canvasHeight, backgroundColor, backgroundImagePath, backgroundImageMode);
+        this.initPenInfo(penColor, penSize);
+        this.initEraserInfo(eraserSize);
+
+        if (this.surfaceView != null) {
+            this.surfaceView.setColorPickerListener(this);
+        }
+
+        if (this.eraserSetting != null) {
+            this.eraserSetting.setEraserListener(this);
+        }
+
+        if (this.penButton != null) {
+            this.penButton.setOnClickListener(this);
+        }
+
+        if (this.eraserButton != null) {
+            this.eraserButton.setOnClickListener(this);
+        }
+
+        if (this.undoButton != null) {
+            this.undoButton.setOnClickListener(this);
+        }
+
+        if (this.redoButton != null) {
+            this.redoButton.setOnClickListener(this);
+        }
+
+        if (this.zoomButton != null) {
+            this.zoomButton.setOnClickListener(this);
+        }
+
+        final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+
+        if (this.undoButton != null) {
+            this.undoButton.setEnabled(pageDoc.isUndoable());
+        }
+
+        if (this.redoButton != null) {
+            this.redoButton.setEnabled(pageDoc.isRedoable());
+        }
+
+        this.attachPage(pageDoc);
+
+        this.selectButton(PenService.BUTTON_PEN);
+        this.onPenSettingClick();
+
+        if (!this.componentCallbacksRegistered) {
+            this.activity.getApplicationContext().registerComponentCallbacks(this);
+
+            this.componentCallbacksRegistered = true;
+        }
+    }
+
+    private boolean initSpen() {
+        final PenRuntime runtime = PenRuntime.getInstance(this.activity);
+
+        try {
+            runtime.initialize();
+
+            this.penEnabled = runtime.isPenEnabled();
+
+            return true;
+        } catch (final SsdkUnsupportedException e) {
+            Log.i(this.getClass().getName(), e.getMessage(), e);
+
+            this.handleUnsupportedException(e);
+        } catch (final Exception e) {
+            Toast.makeText(this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+
+            this.activity.finish();
+        }
+
+        return false;
+    }
+
+    private void initCanvas(final SpenNoteDoc noteDoc, final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
+        final ViewGroup canvas    = (ViewGroup)this.rootLayout.findViewById(R.id.pen_canvas);
+        final ViewGroup container = (ViewGroup)this.rootLayout.findViewById(R.id.pen_container);
+
+        this.canvasWidth  = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.surfaceView  = PenRuntime.getInstance(this.activity).obtainSurfaceView(this.activity);
+
+        canvas.addView(this.surfaceView);
+
+        this.applyPredictionMode();
+
+        if (noteDoc == null) {
+            try {
+                this.noteDoc = new SpenNoteDoc(this.activity, canvasWidth, canvasHeight);
+            } catch (final IOException e) {
+                Toast.makeText(this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+
+                this.activity.finish();
+            } catch (final Exception e) {
+                Toast.makeText(this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+
+                this.activity.finish();
+            }
+        } else {
+            this.noteDoc = noteDoc;
+        }
+
+        if (this.noteDoc != null) {
+            this.backend = new SpenDocumentBackend(this.noteDoc, false);
+
+            this.resetHistory();
+
+            if (this.backend.getPageCount() == 0) {
+                final SpenPageDoc pageDoc = this.noteDoc.getPage(this.backend.appendPage(backgroundColor));
+
+                this.setUpPage(pageDoc, backgroundColor, backgroundImagePath, backgroundImageMode);
+
+                this.surfaceView.setPageDoc(pageDoc, true);
+            } else {
+                // A loaded document shows its first page
+                this.currentPage = 0;
+
+                final SpenPageDoc pageDoc = this.noteDoc.getPage(0);
+
+                this.attachPage(pageDoc);
+
+                this.surfaceView.setPageDoc(pageDoc, true);
+
+                if (this.noteDoc.getPageCount() > 1) {
+                    this.attachPage(this.noteDoc.getPage(1));
+                }
+            }
+
+            if (this.penEnabled) {
+                this.surfaceView.setToolTypeAction(SpenSettingViewInterface.TOOL_FINGER, SpenSettingViewInterface.ACTION_NONE);
+
+                this.toolType = SpenSettingViewInterface.TOOL_SPEN;
+            } else {
+                this.surfaceView.setToolTypeAction(SpenSettingViewInterface.TOOL_FINGER, SpenSettingViewInterface.ACTION_STROKE);
+
+                this.toolType = SpenSettingViewInterface.TOOL_FINGER;
+
+                Toast.makeText(this.activity, R.string.message_finger_only, Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        if (this.penSettingEnabled) {
+            container.addView(this.penSetting);
+            this.penSetting.setCanvasView(this.surfaceView);
+        }
+
+        if (this.eraserSettingEnabled) {
+            container.addView(this.eraserSetting);
+            this.eraserSetting.setCanvasView(this.surfaceView);
+        }
+
+        this.surfaceView.setReplayListener(this);
+        this.surfaceView.setZoomListener(this);
+        this.surfaceView.setPenChangeListener(this);
+        this.surfaceView.setEraserChangeListener(this);
+        this.surfaceView.setPenDetachmentListener(this);
+        this.surfaceView.setTouchListener(this);
+    }
+
+    private void applyPredictionMode() {
+        final boolean enabled = this.predictionMode == PenService.PREDICTION_ON || this.predictionMode == PenService.PREDICTION_AUTO && this.isLowEndDevice();
+
+        if (enabled && this.predictionView == null) {
+            if (this.predictor == null) {
+                this.predictor = new InkPredictor(PenService.PREDICTION_HORIZON);
+            }
 
-        if (this.noteDoc.getPageCount() > 0) {
-            this.currentPage = 0;
+            this.predictionView = new InkPredictionView(this.activity);
 
-            final SpenPageDoc page = this.noteDoc.getPage(0);
-            page.setHistoryListener(this);
+            ((ViewGroup)this.surfaceView.getParent()).addView(this.predictionView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        } else if (!enabled && this.predictionView != null) {
+            ((ViewGroup)this.predictionView.getParent()).removeView(this.predictionView);
 
-            this.surfaceView.setPageDoc(page, true);
-            this.surfaceView.update();
-        }
+            // The predictor still measures the ink lag without prediction
+            if (!this.latencyMeasured) {
+                this.predictor = null;
+            }
 
-        if (this.noteDoc.getPageCount() > 1) {
-            this.noteDoc.getPage(1).setHistoryListener(this);
+            this.predictionView = null;
         }
     }
 
-    /**
-     * Initialize S-Pen related objects.
-     * <p>This will create a {@link SpenSurfaceView canvas} and a {@link SpenNoteDoc document} objects,
-     * and append a {@link SpenPageDoc page} to it.</p>
-     * <p>If S-Pen is not supported on the device, a message will be displayed and {@link Activity#finish()} will be called.</p>
-     * @param canvasWidth the width of the {@link SpenSurfaceView canvas} to put a {@link SpenPageDoc page} in it.
-     * @param canvasHeight the height of the {@link SpenSurfaceView canvas} to put a {@link SpenPageDoc page} in it.
-     * @param backgroundColor the background color of the {@link SpenPageDoc page}.
-     * <p>The default color will be used if <code>backgroundColor</code> is negative.</p>
-     * @param backgroundImagePath the absolute path of the background image file.
-     * <p>An empty background will be used if <code>backgroundImagePath</code> is empty or <code>null</code>.</p>
-     * @param backgroundImageMode either {@link #MODE_CENTER}, {@link #MODE_FIT}, {@link #MODE_TILE} or {@link #MODE_STRETCH}.
-     * @param penColor the initial pen color to use.
-     * @param penSize the initial pen size in pixels to use.
-     * @param eraserSize the initial eraser size in pixels to use.
-     * @return <code>true</code> if Spen SDK is initialized successfully; otherwise, <code>false</code>.
-     */
-    public boolean init(final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode, final int penColor, final int penSize, final int eraserSize) {
-        if (this.initSpen()) {
-            final RelativeLayout canvas = (RelativeLayout)this.rootLayout.findViewById(R.id.pen_canvas);
+    private boolean isLowEndDevice() {
+        return ((ActivityManager)this.activity.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass() <= PenService.LOW_END_MEMORY_CLASS || Runtime.getRuntime().availableProcessors() <= PenService.LOW_END_PROCESSOR_COUNT;
+    }
+
+    private void trackInk(final MotionEvent event) {
+        final int action = event.getActionMasked();
+
+        if (this.instrumentation != null && (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE || action == MotionEvent.ACTION_UP)) {
+            this.instrumentation.onInput(event.getEventTime(), action == MotionEvent.ACTION_UP);
+        }
+
+        if (action == MotionEvent.ACTION_DOWN) {
+            final int tool = this.toolType == SpenSettingViewInterface.TOOL_SPEN ? MotionEvent.TOOL_TYPE_STYLUS : MotionEvent.TOOL_TYPE_FINGER;
 
-            if (this.penSettingEnabled) {
-                this.penSetting = new SpenSettingPenLayout(this.activity, PenService.NULL, canvas);
+            // Only strokes are predicted. Erasing, gestures and touches by the other tool are left alone.
+            this.inking = this.surfaceView != null && event.getToolType(0) == tool && this.surfaceView.getToolTypeAction(this.toolType) == SpenSettingViewInterface.ACTION_STROKE;
+
+            if (this.inking && this.predictor != null) {
+                this.predictor.reset();
             }
 
-            if (this.eraserSettingEnabled) {
-                this.eraserSetting = new SpenSettingEraserLayout(this.activity, PenService.NULL, canvas);
+            if (this.inking && this.predictionView != null) {
+                final SpenSettingPenInfo info = this.surfaceView.getPenSettingInfo();
+
+                this.predictionView.setInk(info.color, info.size * this.surfaceView.getZoomRatio());
             }
+        }
+
+        if (!this.inking) {
+            return;
+        }
+
+        if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE) {
+            if (this.predictor != null) {
+                this.predictor.measureLag(event.getX(), event.getY());
 
-            this.initCanvas(canvasWidth, canvasHeight, backgroundColor, backgroundImagePath, backgroundImageMode);
-            this.initPenInfo(penColor, penSize);
-            this.initEraserInfo(eraserSize);
+                for (int i = 0; i < event.getHistorySize(); i++) {
+                    this.predictor.add(event.getHistoricalX(i), event.getHistoricalY(i), event.getHistoricalEventTime(i));
+                }
 
-            if (this.surfaceView != null) {
-                this.surfaceView.setColorPickerListener(this);
+                this.predictor.add(event.getX(), event.getY(), event.getEventTime());
             }
 
-            if (this.eraserSetting != null) {
-                this.eraserSetting.setEraserListener(this);
+            if (this.predictionView != null) {
+                this.predictionView.showTail(event.getX(), event.getY(), this.predictor);
             }
+        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            this.inking = false;
 
-            if (this.penButton != null) {
-                this.penButton.setOnClickListener(this);
+            if (this.predictionView != null) {
+                this.predictionView.clearTail();
             }
 
-            if (this.eraserButton != null) {
-                this.eraserButton.setOnClickListener(this);
+            if (this.predictor != null) {
+                // The predictions beyond the end of the stroke are missed
+                this.predictor.reset();
+
+                if (this.latencyMeasured) {
+                    this.logLatency();
+                }
             }
+        }
+    }
+
+    private void logLatency() {
+        if (this.predictor.getLagCount() > 0) {
+            final String lag = String.format("Ink lag: average = %.1f px, max = %.1f px, events = %d", Float.valueOf(this.predictor.getAverageLag()), Float.valueOf(this.predictor.getMaxLag()), Long.valueOf(this.predictor.getLagCount())); //$NON-NLS-1$
 
-            if (this.undoButton != null) {
-                this.undoButton.setOnClickListener(this);
+            if (this.predictionView == null) {
+                Log.i(this.getClass().getName(), lag + ", prediction off"); //$NON-NLS-1$
+            } else {
+                Log.i(this.getClass().getName(), lag + String.format(", predicted = %d ms ahead, error: average = %.1f px, max = %.1f px, verified = %d, missed = %d", Long.valueOf(this.predictor.getHorizon()), Float.valueOf(this.predictor.getAverageError()), Float.valueOf(this.predictor.getMaxError()), Long.valueOf(this.predictor.getVerifiedCount()), Long.valueOf(this.predictor.getMissedCount()))); //$NON-NLS-1$
             }
+        }
+    }
+
+    /**
+     * Gets the background image to use for an image file, which is a shared, downsampled copy if the {@link BackgroundCache background cache} is enabled
+     * and the image is scaled to the page anyway.
+     * @param backgroundImageMode the mode the image is drawn in. With {@link #MODE_CENTER} and {@link #MODE_TILE}, the image is drawn at its own size,
+     * so it is never downsampled.
+     */
+    private String getBackgroundImagePath(final String imagePath, final int backgroundImageMode) {
+        if (this.backgroundCacheEnabled && this.canvasWidth > 0 && !TextUtils.isEmpty(imagePath) && (backgroundImageMode == PenService.MODE_FIT || backgroundImageMode == PenService.MODE_STRETCH)) {
+            return BackgroundCache.getInstance(this.activity).get(imagePath, this.canvasWidth, this.canvasHeight);
+        }
+
+        return imagePath;
+    }
+
+    /**
+     * Sets the background of a new {@link SpenPageDoc page} and starts listening to its changes.
+     */
+    private void setUpPage(final SpenPageDoc pageDoc, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
+        pageDoc.setBackgroundColor(backgroundColor);
+
+        if (!TextUtils.isEmpty(backgroundImagePath)) {
+            pageDoc.setBackgroundImage(this.getBackgroundImagePath(backgroundImagePath, backgroundImageMode));
+        }
+
+        if (backgroundImageMode == PenService.MODE_CENTER || backgroundImageMode == PenService.MODE_FIT || backgroundImageMode == PenService.MODE_TILE || backgroundImageMode == PenService.MODE_STRETCH) {
+            pageDoc.setBackgroundImageMode(backgroundImageMode);
+        }
+
+        pageDoc.clearHistory();
+
+        this.attachPage(pageDoc);
+    }
+
+    /**
+     * Attaches the listeners to a {@link SpenPageDoc page}, and starts logging its history if there is a {@link HistoryPolicy}.
+     */
+    private void attachPage(final SpenPageDoc pageDoc) {
+        pageDoc.setHistoryListener(this);
+        pageDoc.setObjectListener(this);
+
+        if (this.history != null) {
+            this.history.attach(pageDoc);
+        }
+    }
+
+    /**
+     * Discards the history log, and starts a new one for the current {@link SpenNoteDoc document} if there is a {@link HistoryPolicy}.
+     */
+    private void resetHistory() {
+        if (this.timeline != null) {
+            this.timeline.clear();
+        }
+
+        this.markPage = null;
+
+        // The history group, if any, belongs to the previous document
+        this.handler.removeCallbacks(this.historyGroupCloser);
+        this.groupPage      = null;
+        this.groupCommitted = false;
+
+        this.cancelHistoryCompaction();
+
+        if (this.history != null) {
+            this.history.close();
+            this.history = null;
+        }
+
+        if (this.historyPolicy != null && this.noteDoc != null) {
+            this.history = new HistoryStore(this.historyPolicy, this.noteDoc);
+        }
+    }
+
+    /**
+     * Logs a history commit to the history log and the document-wide history, and schedules the history log of the page to be compacted if needed.
+     */
+    private void commitHistory(final SpenPageDoc doc) {
+        this.commitCount++;
+
+        this.invalidatePage(doc);
+
+        if (this.history != null) {
+            this.history.onCommit(doc);
+        }
+
+        if (this.timeline != null) {
+            this.timeline.onCommit(doc.getId());
+        }
+
+        if (this.markPage != null && this.markDepth < 0 && (this.timeline != null || this.markPage.equals(doc.getId()))) {
+            // The history point was undone and cannot be redone anymore
+            this.markPage = null;
+        } else {
+            this.moveHistoryPoint(doc.getId(), 1);
+        }
 
-            if (this.redoButton != null) {
-                this.redoButton.setOnClickListener(this);
+        if (this.history != null && this.compactionPolicy != null && !this.compactionPages.contains(doc.getId())) {
+            // Compacting reads and writes the history log, so it waits until the main thread is idle instead of delaying the commit
+            if (this.compactionPages.isEmpty()) {
+                Looper.myQueue().addIdleHandler(this.historyCompactor);
             }
 
-            if (this.zoomButton != null) {
-                this.zoomButton.setOnClickListener(this);
+            this.compactionPages.add(doc.getId());
+        }
+    }
+
+    /**
+     * Merges one run of old history entries of the next page scheduled by {@link #commitHistory(SpenPageDoc)}.
+     * @return <code>true</code> to continue when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    private boolean compactHistory() {
+        if (this.compactionPages.isEmpty()) {
+            return false;
+        }
+
+        final String pageId = this.compactionPages.get(0);
+        final int    index  = this.history == null || this.compactionPolicy == null || this.noteDoc == null ? -1 : this.noteDoc.getPageIndexById(pageId);
+        final int    version;
+
+        if (index < 0) {
+            version = -1;
+        } else {
+            final SpenPageDoc doc = this.noteDoc.getPage(index);
+
+            version = this.history.compact(doc, this.compactionPolicy);
+
+            if (version >= 0) {
+                if (this.timeline != null) {
+                    this.timeline.onCompacted(pageId, version, this.compactionPolicy.getCoarseSize(), this.history.getPosition(doc));
+                    this.updateTimelineButtons();
+                }
+
+                // Only actions older than the precise ones are merged, so a more recent history point is not affected
+                if (this.markPage != null && this.markDepth > this.compactionPolicy.getPreciseCount() && (this.timeline != null || this.markPage.equals(pageId))) {
+                    this.markPage = null;
+                }
             }
+        }
+
+        if (version < 0) {
+            this.compactionPages.remove(0);
+        }
+
+        return !this.compactionPages.isEmpty();
+    }
+
+    private void cancelHistoryCompaction() {
+        if (!this.compactionPages.isEmpty()) {
+            this.compactionPages.clear();
+
+            Looper.myQueue().removeIdleHandler(this.historyCompactor);
+        }
+    }
+
+    /**
+     * Opens a history group when a stroke or eraser pass starts, so that the consecutive ones made with the same tool become a single history entry.
+     * The group is closed when another tool is used, or when no new action starts within the merge window.
+     */
+    private void groupHistory(final MotionEvent event) {
+        final int action = event.getActionMasked();
+
+        if (action == MotionEvent.ACTION_DOWN) {
+            this.handler.removeCallbacks(this.historyGroupCloser);
 
             final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+            final int         tool    = this.surfaceView.getToolTypeAction(event.getToolType(0));
 
-            if (this.undoButton != null) {
-                this.undoButton.setEnabled(pageDoc.isUndoable());
+            if (this.groupPage != null && (tool != this.groupTool || !this.groupPage.getId().equals(pageDoc.getId()))) {
+                this.closeHistoryGroup();
             }
 
-            if (this.redoButton != null) {
-                this.redoButton.setEnabled(pageDoc.isRedoable());
+            if (this.groupPage == null && (tool == SpenSettingViewInterface.ACTION_STROKE || tool == SpenSettingViewInterface.ACTION_ERASER)) {
+                pageDoc.startHistoryGroup();
+
+                this.groupPage = pageDoc;
+                this.groupTool = tool;
             }
+        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            if (this.groupPage != null) {
+                this.handler.postDelayed(this.historyGroupCloser, this.compactionPolicy.getMergeWindow());
+            }
+        }
+    }
 
-            pageDoc.setHistoryListener(this);
+    /**
+     * Closes the history group, if any, and logs its actions as a single commit.
+     */
+    private void closeHistoryGroup() {
+        this.handler.removeCallbacks(this.historyGroupCloser);
 
-            this.selectButton(PenService.BUTTON_PEN);
-            this.onPenSettingClick();
+        if (this.groupPage != null) {
+            final SpenPageDoc pageDoc   = this.groupPage;
+            final boolean     committed = this.groupCommitted;
+            final int         count     = this.commitCount;
 
-            return true;
-        }
+            this.groupPage      = null;
+            this.groupCommitted = false;
 
-        return false;
+            pageDoc.stopHistoryGroup();
+
+            // The Pen package may or may not commit the group itself when it is closed
+            if (committed && this.commitCount == count) {
+                this.commitHistory(pageDoc);
+            }
+        }
     }
 
-    private boolean initSpen() {
-        final Spen spen = new Spen();
+    /**
+     * Rebuilds a {@link SpenPageDoc page} at the specified version from the history log. The caller refreshes the {@link SpenSurfaceView canvas}.
+     */
+    private void restoreHistory(final SpenPageDoc pageDoc, final int version) {
+        // Detaches the listeners because restoring is not a change made by the user
+        pageDoc.setHistoryListener(null);
+        pageDoc.setObjectListener(null);
 
         try {
-            spen.initialize(this.activity);
+            this.history.restore(pageDoc, version);
+        } finally {
+            pageDoc.setHistoryListener(this);
+            pageDoc.setObjectListener(this);
+        }
 
-            this.penEnabled = spen.isFeatureEnabled(Spen.DEVICE_PEN);
+        this.invalidateSpatialIndex(pageDoc.getId());
 
-            return true;
-        } catch (final SsdkUnsupportedException e) {
-            Log.i(this.getClass().getName(), e.getMessage(), e);
+        this.dirty = true;
 
-            this.handleUnsupportedException(e);
-        } catch (final Exception e) {
-            Toast.makeText(this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+        this.onUndoable(pageDoc, false);
+        this.onRedoable(pageDoc, false);
+    }
 
-            this.activity.finish();
+    /**
+     * Shows a pre-rendered page over the {@link SpenSurfaceView canvas}, at the same position and zoom ratio as the canvas shows pages.
+     */
+    private void showPagePreview(final Bitmap bitmap) {
+        final Matrix matrix = new Matrix();
+        final PointF start  = this.surfaceView.getFrameStartPosition();
+        final float  scale  = this.surfaceView.getZoomRatio() / this.preRenderer.getRatio();
+
+        matrix.setScale(scale, scale);
+
+        if (start != null) {
+            matrix.postTranslate(start.x, start.y);
         }
 
-        return false;
+        this.handler.removeCallbacks(this.pagePreviewHider);
+
+        this.pagePreview.setImageBitmap(bitmap);
+        this.pagePreview.setImageMatrix(matrix);
+        this.pagePreview.setVisibility(View.VISIBLE);
     }
 
-    private void initCanvas(final int canvasWidth, final int canvasHeight, final int backgroundColor, final String backgroundImagePath, final int backgroundImageMode) {
-        final ViewGroup canvas    = (ViewGroup)this.rootLayout.findViewById(R.id.pen_canvas);
-        final ViewGroup container = (ViewGroup)this.rootLayout.findViewById(R.id.pen_container);
+    /**
+     * Lets the {@link SpenSurfaceView canvas} render the page that a page flip is showing a pre-rendered page of, if any.
+     * <p>Called before anything else uses the canvas, so that it always works on the current page.</p>
+     */
+    private void completePageFlip() {
+        if (this.flipPage != null) {
+            final SpenPageDoc pageDoc = this.flipPage;
 
-        this.canvasWidth = canvasWidth;
-        this.surfaceView = new SpenSurfaceView(this.activity);
+            this.flipPage = null;
 
-        canvas.addView(this.surfaceView);
+            this.handler.removeCallbacks(this.pageFlipper);
 
-        try {
-            this.noteDoc = new SpenNoteDoc(this.activity, canvasWidth, canvasHeight);
-        } catch (final IOException e) {
-            Toast.makeText(this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+            this.surfaceView.setPageDoc(pageDoc, true);
 
-            this.activity.finish();
-        } catch (final Exception e) {
-            Toast.makeText(this.activity, R.string.message_spen_not_initialized, Toast.LENGTH_SHORT).show();
+            // Hides the pre-rendered page after the canvas has shown the live page
+            this.handler.post(this.pagePreviewHider);
+        }
+    }
 
-            this.activity.finish();
+    /**
+     * Renders the tiles of the visible area of the current {@link SpenPageDoc page}, and shows them over the {@link SpenSurfaceView canvas}
+     * until it settles if the canvas is moving and all of them are rendered.
+     */
+    private void updateTiles(final float panX, final float panY, final float ratio, final boolean moving) {
+        if (this.tileCache == null || this.noteDoc == null || ratio <= 0) {
+            return;
         }
 
-        if (this.noteDoc != null) {
-            final SpenPageDoc pageDoc = this.noteDoc.appendPage();
-            pageDoc.setBackgroundColor(backgroundColor);
+        final SpenPageDoc pageDoc  = this.noteDoc.getPage(this.currentPage);
+        final PointF      start    = this.surfaceView.getFrameStartPosition();
+        final float       x        = start == null ? 0 : start.x;
+        final float       y        = start == null ? 0 : start.y;
+        final RectF       viewport = new RectF(panX, panY, panX + (this.surfaceView.getWidth() - x) / ratio, panY + (this.surfaceView.getHeight() - y) / ratio);
 
-            if (!TextUtils.isEmpty(backgroundImagePath)) {
-                pageDoc.setBackgroundImage(backgroundImagePath);
-            }
+        if (viewport.intersect(0, 0, this.noteDoc.getWidth(), this.noteDoc.getHeight())) {
+            if (moving && this.flipPage == null && this.tileCache.isComplete(pageDoc.getId(), viewport, ratio)) {
+                this.tiledView.show(pageDoc.getId(), viewport, ratio, x, y);
 
-            if (backgroundImageMode == PenService.MODE_CENTER || backgroundImageMode == PenService.MODE_FIT || backgroundImageMode == PenService.MODE_TILE || backgroundImageMode == PenService.MODE_STRETCH) {
-                pageDoc.setBackgroundImageMode(backgroundImageMode);
+                this.handler.removeCallbacks(this.tiledViewHider);
+                this.handler.postDelayed(this.tiledViewHider, PenService.SETTLE_DELAY);
             }
 
-            pageDoc.clearHistory();
-            pageDoc.setHistoryListener(this);
+            this.tileCache.update(pageDoc, viewport, ratio, this.noteDoc.getWidth(), this.noteDoc.getHeight());
+        }
+    }
 
-            this.surfaceView.setPageDoc(pageDoc, true);
+    /**
+     * Shows the low-resolution layer of the current {@link SpenPageDoc page} over the {@link SpenSurfaceView canvas} until it settles,
+     * if the canvas is zoomed out enough and the layer is rendered.
+     * @return <code>true</code> if the layer is shown; otherwise, <code>false</code>.
+     */
+    private boolean updateDetail(final float panX, final float panY, final float ratio) {
+        if (this.detailCache == null || this.noteDoc == null || this.flipPage != null) {
+            return false;
+        }
 
-            if (this.penEnabled) {
-                this.surfaceView.setToolTypeAction(SpenSettingViewInterface.TOOL_FINGER, SpenSettingViewInterface.ACTION_NONE);
+        final SpenPageDoc pageDoc = this.noteDoc.getPage(this.currentPage);
+        final Bitmap      layer   = this.detailCache.get(pageDoc.getId(), ratio);
 
-                this.toolType = SpenSettingViewInterface.TOOL_SPEN;
-            } else {
-                this.surfaceView.setToolTypeAction(SpenSettingViewInterface.TOOL_FINGER, SpenSettingViewInterface.ACTION_STROKE);
+        if (layer == null) {
+            this.detailCache.request(pageDoc, ratio);
 
-                this.toolType = SpenSettingViewInterface.TOOL_FINGER;
+            return false;
+        }
 
-                Toast.makeText(this.activity, R.string.message_finger_only, Toast.LENGTH_SHORT).show();
-            }
+        final Matrix matrix = new Matrix();
+        final PointF start  = this.surfaceView.getFrameStartPosition();
+        final float  scale  = ratio / LevelOfDetailCache.ratioOf(ratio);
+
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((start == null ? 0 : start.x) - panX * ratio, (start == null ? 0 : start.y) - panY * ratio);
+
+        this.detailView.setImageBitmap(layer);
+        this.detailView.setImageMatrix(matrix);
+        this.detailView.setVisibility(View.VISIBLE);
+
+        this.handler.removeCallbacks(this.detailViewHider);
+        this.handler.postDelayed(this.detailViewHider, PenService.SETTLE_DELAY);
+
+        return true;
+    }
+
+    /**
+     * Discards the pre-rendered pages and any pending page flip, e.g. before the {@link SpenNoteDoc document} is replaced.
+     */
+    private void resetPreRendering() {
+        this.flipPage = null;
+
+        this.handler.removeCallbacks(this.pageFlipper);
+        this.handler.post(this.pagePreviewHider);
+
+        if (this.preRenderer != null) {
+            this.preRenderer.clear();
         }
 
-        if (this.penSettingEnabled) {
-            container.addView(this.penSetting);
-            this.penSetting.setCanvasView(this.surfaceView);
+        if (this.tileCache != null) {
+            this.tileCache.clear();
+
+            this.handler.removeCallbacks(this.tiledViewHider);
+            this.handler.post(this.tiledViewHider);
         }
 
-        if (this.eraserSettingEnabled) {
-            container.addView(this.eraserSetting);
-            this.eraserSetting.setCanvasView(this.surfaceView);
+        if (this.detailCache != null) {
+            this.detailCache.clear();
+
+            this.handler.removeCallbacks(this.detailViewHider);
+            this.handler.post(this.detailViewHider);
         }
 
-        this.surfaceView.setReplayListener(this);
-        this.surfaceView.setZoomListener(this);
-        this.surfaceView.setPenChangeListener(this);
-        this.surfaceView.setEraserChangeListener(this);
-        this.surfaceView.setPenDetachmentListener(this);
-        this.surfaceView.setTouchListener(this);
+        if (this.thumbnailAdapter != null) {
+            this.thumbnailAdapter.reset();
+        }
+    }
+
+    /**
+     * Discards the pre-rendered page, the tiles, the low-resolution layers and the thumbnail of a {@link SpenPageDoc page} after it is changed.
+     */
+    private void invalidatePage(final SpenPageDoc pageDoc) {
+        if (this.preRenderer != null) {
+            this.preRenderer.invalidate(pageDoc.getId());
+        }
+
+        if (this.tileCache != null) {
+            this.tileCache.invalidate(pageDoc.getId());
+        }
+
+        if (this.detailCache != null) {
+            this.detailCache.invalidate(pageDoc.getId());
+        }
+
+        if (this.thumbnailAdapter != null) {
+            this.thumbnailAdapter.invalidate(pageDoc.getId());
+        }
+    }
+
+    private void updateSurface() {
+        this.completePageFlip();
+
+        if (this.batchDepth > 0) {
+            this.updatePending = true;
+
+            return;
+        }
+
+        if (this.instrumentation == null) {
+            this.surfaceView.update();
+        } else {
+            final long start = System.nanoTime();
+
+            this.surfaceView.update();
+
+            this.instrumentation.record(PenInstrumentation.METRIC_UPDATE, System.nanoTime() - start);
+        }
+    }
+
+    private void updateUndo(final SpenPageDoc.HistoryUpdateInfo[] infos) {
+        this.completePageFlip();
+
+        // A batch ends with a full update anyway
+        if (this.batchDepth > 0) {
+            this.updatePending = true;
+
+            return;
+        }
+
+        if (this.instrumentation == null) {
+            this.surfaceView.updateUndo(infos);
+        } else {
+            final long start = System.nanoTime();
+
+            this.surfaceView.updateUndo(infos);
+
+            this.instrumentation.record(PenInstrumentation.METRIC_UPDATE_UNDO, System.nanoTime() - start);
+        }
+    }
+
+    private void updateRedo(final SpenPageDoc.HistoryUpdateInfo[] infos) {
+        this.completePageFlip();
+
+        if (this.batchDepth > 0) {
+            this.updatePending = true;
+
+            return;
+        }
+
+        if (this.instrumentation == null) {
+            this.surfaceView.updateRedo(infos);
+        } else {
+            final long start = System.nanoTime();
+
+            this.surfaceView.updateRedo(infos);
+
+            this.instrumentation.record(PenInstrumentation.METRIC_UPDATE_REDO, System.nanoTime() - start);
+        }
     }
 
     private void initPenInfo(final int penColor, final int penSize) {
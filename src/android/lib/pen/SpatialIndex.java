@@ -0,0 +1,286 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A uniform grid of the bounding boxes of the objects of a page, for fast point, rectangle and nearest-object queries.
+ * <p>An object is stored in every cell its bounding box overlaps, so a query only looks at the cells it overlaps instead of every object.
+ * Objects that would overlap too many cells, such as full-page images, are kept in a separate list that every query checks.</p>
+ * <p>Objects are identified by an <code>int</code> ID, such as the runtime handle of a Pen object. This class does not depend on Android.</p>
+ */
+final class SpatialIndex {
+    /**
+     * Returned by {@link #nearest(float, float, float)} if there is no object.
+     */
+    static final int NONE = Integer.MIN_VALUE;
+
+    private static final int MAX_CELLS_PER_OBJECT = 64;
+
+    private static final class Entry {
+        final int id;
+
+        float left;
+        float top;
+        float right;
+        float bottom;
+
+        /**
+         * The query that last visited this entry, so that an entry in several cells is reported once per query.
+         */
+        int stamp;
+
+        Entry(final int id) {
+            this.id = id;
+        }
+
+        float distanceSquared(final float x, final float y) {
+            final float dx = x < this.left ? this.left - x : x > this.right ? x - this.right : 0;
+            final float dy = y < this.top ? this.top - y : y > this.bottom ? y - this.bottom : 0;
+
+            return dx * dx + dy * dy;
+        }
+    }
+
+    private final float                       cellSize;
+    private final Map<Integer, Entry>         entries = new HashMap<Integer, Entry>();
+    private final Map<Long, ArrayList<Entry>> cells   = new HashMap<Long, ArrayList<Entry>>();
+    private final ArrayList<Entry>            large   = new ArrayList<Entry>();
+
+    private int stamp;
+
+    // The range of cells that contain any entry, to bound the queries
+    private int minColumn = Integer.MAX_VALUE;
+    private int minRow    = Integer.MAX_VALUE;
+    private int maxColumn = Integer.MIN_VALUE;
+    private int maxRow    = Integer.MIN_VALUE;
+
+    /**
+     * Creates a new spatial index.
+     * @param cellSize the width and height of a cell, in page coordinates.
+     */
+    SpatialIndex(final float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.cellSize = cellSize;
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Adds an object, or moves it if it is already in this index.
+     */
+    void put(final int id, final float left, final float top, final float right, final float bottom) {
+        Entry entry = this.entries.get(Integer.valueOf(id));
+
+        if (entry == null) {
+            entry = new Entry(id);
+
+            this.entries.put(Integer.valueOf(id), entry);
+        } else {
+            this.unlink(entry);
+        }
+
+        entry.left   = Math.min(left, right);
+        entry.top    = Math.min(top, bottom);
+        entry.right  = Math.max(left, right);
+        entry.bottom = Math.max(top, bottom);
+
+        this.link(entry);
+    }
+
+    void remove(final int id) {
+        final Entry entry = this.entries.remove(Integer.valueOf(id));
+
+        if (entry != null) {
+            this.unlink(entry);
+        }
+    }
+
+    void clear() {
+        this.entries.clear();
+        this.cells.clear();
+        this.large.clear();
+
+        this.minColumn = Integer.MAX_VALUE;
+        this.minRow    = Integer.MAX_VALUE;
+        this.maxColumn = Integer.MIN_VALUE;
+        this.maxRow    = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Finds the objects whose bounding boxes intersect a rectangle.
+     * @param result the list to add the IDs of the objects to.
+     */
+    void query(final float left, final float top, final float right, final float bottom, final IntArray result) {
+        final int stamp = ++this.stamp;
+
+        for (final Entry entry : this.large) {
+            SpatialIndex.collect(entry, left, top, right, bottom, stamp, result);
+        }
+
+        final int minColumn = Math.max(this.minColumn, this.cellOf(left));
+        final int maxColumn = Math.min(this.maxColumn, this.cellOf(right));
+        final int minRow    = Math.max(this.minRow, this.cellOf(top));
+        final int maxRow    = Math.min(this.maxRow, this.cellOf(bottom));
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                final ArrayList<Entry> cell = this.cells.get(Long.valueOf(SpatialIndex.key(column, row)));
+
+                if (cell != null) {
+                    for (int i = cell.size(); --i >= 0;) {
+                        SpatialIndex.collect(cell.get(i), left, top, right, bottom, stamp, result);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the objects whose bounding boxes are within the specified distance of a point.
+     * @param result the list to add the IDs of the objects to.
+     */
+    void query(final float x, final float y, final float tolerance, final IntArray result) {
+        this.query(x - tolerance, y - tolerance, x + tolerance, y + tolerance, result);
+    }
+
+    /**
+     * Finds the object whose bounding box is nearest to a point.
+     * <p>The cells are searched in rings of growing distance from the point, and the search stops as soon as no farther ring can hold a nearer object.</p>
+     * @param maxDistance the maximum distance from the point.
+     * @return the ID of the nearest object, or {@link #NONE} if no object is within <code>maxDistance</code>.
+     */
+    int nearest(final float x, final float y, final float maxDistance) {
+        Entry nearest      = null;
+        float bestDistance = maxDistance * maxDistance;
+
+        for (final Entry entry : this.large) {
+            final float distance = entry.distanceSquared(x, y);
+
+            if (distance <= bestDistance) {
+                nearest      = entry;
+                bestDistance = distance;
+            }
+        }
+
+        if (this.entries.size() > this.large.size()) {
+            final int column = this.cellOf(x);
+            final int row    = this.cellOf(y);
+
+            // Rings beyond the occupied cells cannot hold anything
+            final int maxRing = Math.max(Math.max(column - this.minColumn, this.maxColumn - column), Math.max(row - this.minRow, this.maxRow - row));
+
+            for (int ring = 0; ring <= maxRing; ring++) {
+                // Any object in this ring or beyond is at least this far away
+                final float ringDistance = Math.max(0, (ring - 1) * this.cellSize);
+
+                if (ringDistance * ringDistance > bestDistance) {
+                    break;
+                }
+
+                for (int r = row - ring; r <= row + ring; r++) {
+                    final int step = r == row - ring || r == row + ring ? 1 : 2 * ring;
+
+                    for (int c = column - ring; c <= column + ring; c += Math.max(1, step)) {
+                        final ArrayList<Entry> cell = this.cells.get(Long.valueOf(SpatialIndex.key(c, r)));
+
+                        if (cell != null) {
+                            for (int i = cell.size(); --i >= 0;) {
+                                final Entry entry    = cell.get(i);
+                                final float distance = entry.distanceSquared(x, y);
+
+                                if (distance <= bestDistance) {
+                                    nearest      = entry;
+                                    bestDistance = distance;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return nearest == null ? SpatialIndex.NONE : nearest.id;
+    }
+
+    private void link(final Entry entry) {
+        final int minColumn = this.cellOf(entry.left);
+        final int maxColumn = this.cellOf(entry.right);
+        final int minRow    = this.cellOf(entry.top);
+        final int maxRow    = this.cellOf(entry.bottom);
+
+        if ((long)(maxColumn - minColumn + 1) * (maxRow - minRow + 1) > SpatialIndex.MAX_CELLS_PER_OBJECT) {
+            this.large.add(entry);
+        } else {
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    final Long       key  = Long.valueOf(SpatialIndex.key(column, row));
+                    ArrayList<Entry> cell = this.cells.get(key);
+
+                    if (cell == null) {
+                        cell = new ArrayList<Entry>(4);
+
+                        this.cells.put(key, cell);
+                    }
+
+                    cell.add(entry);
+                }
+            }
+
+            this.minColumn = Math.min(this.minColumn, minColumn);
+            this.minRow    = Math.min(this.minRow, minRow);
+            this.maxColumn = Math.max(this.maxColumn, maxColumn);
+            this.maxRow    = Math.max(this.maxRow, maxRow);
+        }
+    }
+
+    private void unlink(final Entry entry) {
+        final int minColumn = this.cellOf(entry.left);
+        final int maxColumn = this.cellOf(entry.right);
+        final int minRow    = this.cellOf(entry.top);
+        final int maxRow    = this.cellOf(entry.bottom);
+
+        if ((long)(maxColumn - minColumn + 1) * (maxRow - minRow + 1) > SpatialIndex.MAX_CELLS_PER_OBJECT) {
+            this.large.remove(entry);
+        } else {
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    final Long             key  = Long.valueOf(SpatialIndex.key(column, row));
+                    final ArrayList<Entry> cell = this.cells.get(key);
+
+                    if (cell != null) {
+                        cell.remove(entry);
+
+                        if (cell.isEmpty()) {
+                            this.cells.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int cellOf(final float coordinate) {
+        return (int)Math.floor(coordinate / this.cellSize);
+    }
+
+    private static long key(final int column, final int row) {
+        return (long)column << 32 | row & 0xffffffffL;
+    }
+
+    private static void collect(final Entry entry, final float left, final float top, final float right, final float bottom, final int stamp, final IntArray result) {
+        if (entry.stamp != stamp) {
+            entry.stamp = stamp;
+
+            if (entry.left <= right && entry.right >= left && entry.top <= bottom && entry.bottom >= top) {
+                result.add(entry.id);
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package android.lib.pen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.PointF;
+
+import com.samsung.android.sdk.pen.document.SpenInvalidPasswordException;
+import com.samsung.android.sdk.pen.document.SpenNoteDoc;
+import com.samsung.android.sdk.pen.document.SpenObjectBase;
+import com.samsung.android.sdk.pen.document.SpenObjectStroke;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+import com.samsung.android.sdk.pen.document.SpenUnsupportedTypeException;
+import com.samsung.android.sdk.pen.document.SpenUnsupportedVersionException;
+
+/**
+ * A {@link DocumentBackend} that keeps its document in a {@link SpenNoteDoc Pen document}, and saves it to SPD files.
+ * <p>The strokes of a page are its {@link SpenObjectStroke stroke objects} that have points; other objects are kept but not listed.
+ * The Pen package must be {@link PenRuntime#initialize() initialized}, and be used from the main thread.</p>
+ */
+public final class SpenDocumentBackend implements DocumentBackend {
+    /**
+     * The pen of the added strokes, unless {@link #setPenName(String) set} otherwise.
+     */
+    public static final String DEFAULT_PEN_NAME = "com.samsung.android.sdk.pen.pen.preload.InkPen"; //$NON-NLS-1$
+
+    private final SpenNoteDoc noteDoc;
+    private final boolean     owned;
+
+    private String penName = SpenDocumentBackend.DEFAULT_PEN_NAME;
+
+    /**
+     * Creates a new document without any page.
+     * @param width the width of the pages, in pixels.
+     * @param height the height of the pages, in pixels.
+     * @throws IOException if the document cannot be created.
+     */
+    public SpenDocumentBackend(final Context context, final int width, final int height) throws IOException {
+        this(new SpenNoteDoc(context, width, height), true);
+    }
+
+    /**
+     * Loads a document from an SPD file.
+     * @param path the path of the SPD file.
+     * @param width the width to scale the pages to, in pixels.
+     * @throws IOException if the file cannot be read.
+     * @throws SpenUnsupportedTypeException if the file is not supported.
+     * @throws SpenInvalidPasswordException if the file is password protected.
+     * @throws SpenUnsupportedVersionException if the file is saved by a later version of the Pen package.
+     */
+    public SpenDocumentBackend(final Context context, final String path, final int width) throws IOException, SpenUnsupportedTypeException, SpenInvalidPasswordException, SpenUnsupportedVersionException {
+        this(new SpenNoteDoc(context, path, width, SpenNoteDoc.MODE_WRITABLE), true);
+    }
+
+    /**
+     * Wraps a document.
+     * @param owned <code>true</code> to close the document when this backend is closed; otherwise, <code>false</code>.
+     */
+    SpenDocumentBackend(final SpenNoteDoc noteDoc, final boolean owned) {
+        this.noteDoc = noteDoc;
+        this.owned   = owned;
+    }
+
+    public SpenNoteDoc getNoteDoc() {
+        return this.noteDoc;
+    }
+
+    /**
+     * Sets the pen of the strokes added later.
+     * @param penName the class name of the pen, e.g. {@link #DEFAULT_PEN_NAME}.
+     */
+    public void setPenName(final String penName) {
+        this.penName = penName;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.noteDoc.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.noteDoc.getHeight();
+    }
+
+    @Override
+    public int getPageCount() {
+        return this.noteDoc.getPageCount();
+    }
+
+    @Override
+    public String getPageId(final int page) {
+        return this.noteDoc.getPageIdByIndex(page);
+    }
+
+    @Override
+    public int getPageIndex(final String pageId) {
+        return this.noteDoc.getPageIndexById(pageId);
+    }
+
+    @Override
+    public int getBackgroundColor(final int page) {
+        return this.noteDoc.getPage(page).getBackgroundColor();
+    }
+
+    @Override
+    public int appendPage(final int backgroundColor) {
+        final SpenPageDoc pageDoc = this.noteDoc.appendPage();
+
+        pageDoc.setBackgroundColor(backgroundColor);
+        pageDoc.clearHistory();
+
+        return this.noteDoc.getPageCount() - 1;
+    }
+
+    @Override
+    public void removePage(final int page) {
+        this.noteDoc.removePage(page);
+    }
+
+    @Override
+    public void movePage(final int page, final int step) {
+        this.noteDoc.movePageIndex(this.noteDoc.getPage(page), step);
+    }
+
+    @Override
+    public List<Stroke> getStrokes(final int page) {
+        final ArrayList<SpenObjectStroke> objects = SpenDocumentBackend.getStrokeObjects(this.getPage(page));
+        final ArrayList<Stroke>           strokes = new ArrayList<Stroke>(objects.size());
+
+        for (final SpenObjectStroke object : objects) {
+            strokes.add(PageRenderer.toStroke(object));
+        }
+
+        return strokes;
+    }
+
+    @Override
+    public void addStrokes(final int page, final List<Stroke> strokes) {
+        if (!strokes.isEmpty()) {
+            final SpenPageDoc pageDoc = this.getPage(page);
+
+            pageDoc.startHistoryGroup();
+
+            try {
+                for (final Stroke stroke : strokes) {
+                    pageDoc.appendObject(SpenDocumentBackend.toObject(stroke, this.penName));
+                }
+            } finally {
+                pageDoc.stopHistoryGroup();
+            }
+        }
+    }
+
+    @Override
+    public void removeStrokes(final int page, final int start, final int count) {
+        final SpenPageDoc                 pageDoc = this.getPage(page);
+        final ArrayList<SpenObjectStroke> objects = SpenDocumentBackend.getStrokeObjects(pageDoc);
+
+        if (start < 0 || count < 0 || start + count > objects.size()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (count > 0) {
+            pageDoc.startHistoryGroup();
+
+            try {
+                for (int i = start; i < start + count; i++) {
+                    pageDoc.removeObject(objects.get(i));
+                }
+            } finally {
+                pageDoc.stopHistoryGroup();
+            }
+        }
+    }
+
+    @Override
+    public boolean canUndo(final int page) {
+        return this.getPage(page).isUndoable();
+    }
+
+    @Override
+    public boolean canRedo(final int page) {
+        return this.getPage(page).isRedoable();
+    }
+
+    @Override
+    public void undo(final int page) {
+        final SpenPageDoc pageDoc = this.getPage(page);
+
+        if (pageDoc.isUndoable()) {
+            pageDoc.undo();
+        }
+    }
+
+    @Override
+    public void redo(final int page) {
+        final SpenPageDoc pageDoc = this.getPage(page);
+
+        if (pageDoc.isRedoable()) {
+            pageDoc.redo();
+        }
+    }
+
+    @Override
+    public boolean isChanged() {
+        return this.noteDoc.isChanged();
+    }
+
+    @Override
+    public void save(final String path) throws IOException {
+        this.noteDoc.save(path);
+    }
+
+    /**
+     * Closes the document, unless it is owned by a {@link PenService}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.owned) {
+            this.noteDoc.close();
+        }
+    }
+
+    /**
+     * Creates a stroke object of the Pen package from a stroke.
+     * @param penName the class name of the pen of the stroke object.
+     */
+    static SpenObjectStroke toObject(final Stroke stroke, final String penName) {
+        final int      count      = stroke.getPointCount();
+        final PointF[] points     = new PointF[count];
+        final float[]  pressures  = new float[count];
+        final int[]    timestamps = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            points[i]    = new PointF(stroke.getX(i), stroke.getY(i));
+            pressures[i] = stroke.getPressure(i);
+        }
+
+        final SpenObjectStroke object = new SpenObjectStroke(penName, points, pressures, timestamps);
+
+        object.setColor(stroke.getColor());
+        object.setPenSize(stroke.getSize());
+
+        return object;
+    }
+
+    private SpenPageDoc getPage(final int page) {
+        final SpenPageDoc pageDoc = this.noteDoc.getPage(page);
+
+        // The page may be unloaded to save memory
+        PenService.loadObjects(pageDoc);
+
+        return pageDoc;
+    }
+
+    private static ArrayList<SpenObjectStroke> getStrokeObjects(final SpenPageDoc pageDoc) {
+        final ArrayList<SpenObjectBase>   objects = pageDoc.getObjectList();
+        final ArrayList<SpenObjectStroke> strokes = new ArrayList<SpenObjectStroke>(objects == null ? 0 : objects.size());
+
+        if (objects != null) {
+            for (final SpenObjectBase object : objects) {
+                if (object instanceof SpenObjectStroke) {
+                    final PointF[] points = ((SpenObjectStroke)object).getPoints();
+
+                    if (points != null && points.length > 0) {
+                        strokes.add((SpenObjectStroke)object);
+                    }
+                }
+            }
+        }
+
+        return strokes;
+    }
+}
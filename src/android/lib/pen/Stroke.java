@@ -0,0 +1,71 @@
+package android.lib.pen;
+
+/**
+ * A stroke decoded from a {@link com.samsung.android.sdk.pen.document.SpenObjectStroke Pen stroke}, that can be kept and rendered
+ * without the Pen package, e.g. by a background job.
+ * <p>This class does not depend on Android.</p>
+ * @see PageRenderer#getStrokes(com.samsung.android.sdk.pen.document.SpenPageDoc)
+ */
+public final class Stroke {
+    private final int   color;
+    private final float size;
+    private final int   count;
+
+    final float[] xs;
+    final float[] ys;
+    final float[] pressures;
+
+    /**
+     * Creates a new stroke.
+     * <p>The arrays are not copied, and must not be changed afterwards.</p>
+     * @param color the ARGB color of the stroke.
+     * @param size the pen size of the stroke.
+     * @param xs the x coordinates of the points of the stroke.
+     * @param ys the y coordinates of the points of the stroke.
+     * @param pressures the pressures of the points of the stroke, from <code>0</code> to <code>1</code>, or <code>null</code> if not known.
+     */
+    public Stroke(final int color, final float size, final float[] xs, final float[] ys, final float[] pressures) {
+        if (xs == null || ys == null || xs.length != ys.length || pressures != null && pressures.length != xs.length) {
+            throw new IllegalArgumentException();
+        }
+
+        this.color     = color;
+        this.size      = size;
+        this.count     = xs.length;
+        this.xs        = xs;
+        this.ys        = ys;
+        this.pressures = pressures;
+    }
+
+    public int getColor() {
+        return this.color;
+    }
+
+    public float getSize() {
+        return this.size;
+    }
+
+    public int getPointCount() {
+        return this.count;
+    }
+
+    public float getX(final int index) {
+        return this.xs[index];
+    }
+
+    public float getY(final int index) {
+        return this.ys[index];
+    }
+
+    /**
+     * Gets the pressure of a point of the stroke.
+     * @return the pressure, from <code>0</code> to <code>1</code>, or <code>1</code> if not known.
+     */
+    public float getPressure(final int index) {
+        return this.pressures == null ? 1 : this.pressures[index];
+    }
+
+    boolean hasPressures() {
+        return this.pressures != null;
+    }
+}
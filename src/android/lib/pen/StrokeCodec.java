@@ -0,0 +1,166 @@
+package android.lib.pen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes {@link Stroke strokes} into a compact binary form, and decodes them back without any loss.
+ * <p>A list of strokes starts with a format version and the number of strokes. Each stroke is its color, pen size, a flag byte, the number
+ * of points and then the x, y and, if known, pressure of every point.</p>
+ * <p>This class does not depend on Android.</p>
+ */
+public final class StrokeCodec {
+    /**
+     * The format version written by this codec.
+     */
+    public static final int VERSION = 1;
+
+    private static final int FLAG_PRESSURES = 1;
+
+    private StrokeCodec() {
+    }
+
+    /**
+     * Encodes a list of strokes.
+     * @param strokes the strokes to encode.
+     * @return the encoded bytes.
+     */
+    public static byte[] encode(final List<Stroke> strokes) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(StrokeCodec.getEncodedSize(strokes));
+
+        try {
+            StrokeCodec.write(strokes, new DataOutputStream(bytes));
+        } catch (final IOException e) {
+            // A byte array stream does not throw
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a list of strokes.
+     * @param bytes the bytes {@link #encode(List) encoded}.
+     * @return the decoded strokes.
+     * @throws IOException if the bytes are truncated, or are not encoded by a supported version.
+     */
+    public static ArrayList<Stroke> decode(final byte[] bytes) throws IOException {
+        return StrokeCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Writes a list of strokes.
+     * @param strokes the strokes to write.
+     * @param out the output to write to.
+     */
+    public static void write(final List<Stroke> strokes, final DataOutput out) throws IOException {
+        out.writeByte(StrokeCodec.VERSION);
+        out.writeInt(strokes.size());
+
+        for (final Stroke stroke : strokes) {
+            StrokeCodec.write(stroke, out);
+        }
+    }
+
+    /**
+     * Reads a list of strokes.
+     * @param in the input to read from.
+     * @return the strokes read.
+     * @throws IOException if the input is truncated, or is not written by a supported version.
+     */
+    public static ArrayList<Stroke> read(final DataInput in) throws IOException {
+        final int version = in.readUnsignedByte();
+
+        if (version != StrokeCodec.VERSION) {
+            throw new IOException("Unsupported stroke format version " + version); //$NON-NLS-1$
+        }
+
+        final int count = in.readInt();
+
+        if (count < 0) {
+            throw new IOException("Invalid stroke count " + count); //$NON-NLS-1$
+        }
+
+        final ArrayList<Stroke> strokes = new ArrayList<Stroke>(count);
+
+        for (int i = 0; i < count; i++) {
+            strokes.add(StrokeCodec.readStroke(in));
+        }
+
+        return strokes;
+    }
+
+    /**
+     * Writes a stroke, without the format version.
+     */
+    public static void write(final Stroke stroke, final DataOutput out) throws IOException {
+        final int count = stroke.getPointCount();
+
+        out.writeInt(stroke.getColor());
+        out.writeFloat(stroke.getSize());
+        out.writeByte(stroke.hasPressures() ? StrokeCodec.FLAG_PRESSURES : 0);
+        out.writeInt(count);
+
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(stroke.xs[i]);
+            out.writeFloat(stroke.ys[i]);
+        }
+
+        if (stroke.hasPressures()) {
+            for (int i = 0; i < count; i++) {
+                out.writeFloat(stroke.pressures[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a stroke {@link #write(Stroke, DataOutput) written} without the format version.
+     */
+    public static Stroke readStroke(final DataInput in) throws IOException {
+        final int   color = in.readInt();
+        final float size  = in.readFloat();
+        final int   flags = in.readUnsignedByte();
+        final int   count = in.readInt();
+
+        if (count < 0) {
+            throw new IOException("Invalid point count " + count); //$NON-NLS-1$
+        }
+
+        final float[] xs        = new float[count];
+        final float[] ys        = new float[count];
+        final float[] pressures = (flags & StrokeCodec.FLAG_PRESSURES) == 0 ? null : new float[count];
+
+        for (int i = 0; i < count; i++) {
+            xs[i] = in.readFloat();
+            ys[i] = in.readFloat();
+        }
+
+        if (pressures != null) {
+            for (int i = 0; i < count; i++) {
+                pressures[i] = in.readFloat();
+            }
+        }
+
+        return new Stroke(color, size, xs, ys, pressures);
+    }
+
+    /**
+     * Gets the number of bytes of a list of strokes once {@link #encode(List) encoded}.
+     */
+    public static int getEncodedSize(final List<Stroke> strokes) {
+        int size = 5;
+
+        for (final Stroke stroke : strokes) {
+            size += 13 + stroke.getPointCount() * (stroke.hasPressures() ? 12 : 8);
+        }
+
+        return size;
+    }
+}
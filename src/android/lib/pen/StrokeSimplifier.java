@@ -0,0 +1,94 @@
+package android.lib.pen;
+
+/**
+ * Reduces the number of points of a stroke with the Douglas-Peucker algorithm, for drawing it at a small zoom ratio.
+ * <p>A point is dropped if it is closer than the tolerance to the line between the points kept around it, so a simplified stroke
+ * differs from the original one by less than the tolerance. This class does not depend on Android.</p>
+ */
+final class StrokeSimplifier {
+    private StrokeSimplifier() {
+    }
+
+    /**
+     * Simplifies a stroke.
+     * @param xs the x coordinates of the points of the stroke.
+     * @param ys the y coordinates of the points of the stroke.
+     * @param count the number of points of the stroke.
+     * @param tolerance the maximum distance between the simplified stroke and the original one.
+     * @param result the list to add the indices of the points to keep to, in ascending order.
+     */
+    static void simplify(final float[] xs, final float[] ys, final int count, final float tolerance, final IntArray result) {
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) {
+                result.add(i);
+            }
+
+            return;
+        }
+
+        final boolean[] keep             = new boolean[count];
+        final IntArray  ranges           = new IntArray();
+        final float     toleranceSquared = tolerance * tolerance;
+
+        keep[0]         = true;
+        keep[count - 1] = true;
+
+        ranges.add(0);
+        ranges.add(count - 1);
+
+        // An explicit stack of ranges, as long strokes would overflow the call stack
+        while (ranges.size() > 0) {
+            final int last  = ranges.removeAt(ranges.size() - 1);
+            final int first = ranges.removeAt(ranges.size() - 1);
+
+            int   farthest    = -1;
+            float maxDistance = toleranceSquared;
+
+            for (int i = first + 1; i < last; i++) {
+                final float distance = StrokeSimplifier.distanceSquared(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+
+                if (distance > maxDistance) {
+                    farthest    = i;
+                    maxDistance = distance;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+
+                ranges.add(first);
+                ranges.add(farthest);
+                ranges.add(farthest);
+                ranges.add(last);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                result.add(i);
+            }
+        }
+    }
+
+    /**
+     * Computes the squared distance between a point and a line segment.
+     */
+    static float distanceSquared(final float x, final float y, final float x1, final float y1, final float x2, final float y2) {
+        final float dx     = x2 - x1;
+        final float dy     = y2 - y1;
+        final float length = dx * dx + dy * dy;
+
+        float t = length == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / length;
+
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+
+        final float px = x1 + t * dx - x;
+        final float py = y1 + t * dy - y;
+
+        return px * px + py * py;
+    }
+}
@@ -0,0 +1,303 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.LruCache;
+
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+import com.samsung.android.sdk.pen.engine.SpenCapturePage;
+
+/**
+ * Renders pages into square tiles, keyed by page, zoom level and tile coordinates, so that a moving viewport can be drawn from bitmaps
+ * instead of rendering every object of the page again.
+ * <p>Only the tiles that intersect the viewport are drawn. The missing visible tiles are rendered first, then the tiles just outside the viewport
+ * in the direction it is moving, one at a time when the main thread is idle. The tiles are kept within a memory budget, least recently used first out.</p>
+ * <p>The zoom ratio is rounded up to a power of two, so a tile is never drawn at more than twice its rendered size.</p>
+ */
+final class TileCache implements MessageQueue.IdleHandler {
+    /**
+     * The width and height of a tile, in pixels.
+     */
+    static final int TILE_SIZE = 256;
+
+    private static final int MIN_LEVEL = -2;
+    private static final int MAX_LEVEL = 2;
+
+    private static final class Tile {
+        final String      key;
+        final SpenPageDoc pageDoc;
+        final RectF       rect;
+
+        Tile(final String key, final SpenPageDoc pageDoc, final RectF rect) {
+            this.key     = key;
+            this.pageDoc = pageDoc;
+            this.rect    = rect;
+        }
+    }
+
+    private final SpenCapturePage          capturePage;
+    private final LruCache<String, Bitmap> tiles;
+    private final ArrayList<Tile>          pending = new ArrayList<Tile>();
+    private final Paint                    paint   = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF                    bounds  = new RectF();
+
+    private String  lastPageId;
+    private int     lastLevel;
+    private float   lastCenterX;
+    private float   lastCenterY;
+    private boolean scheduled;
+
+    /**
+     * Creates a new tile cache.
+     * @param maxBytes the maximum number of bytes of the rendered tiles.
+     */
+    TileCache(final Context context, final int maxBytes) {
+        this.capturePage = new SpenCapturePage(context);
+        this.tiles       = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(final String key, final Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Renders the tiles of a page that intersect the viewport, and the tiles just outside it in the direction it moved since the last update.
+     * @param viewport the visible area of the page, in page coordinates.
+     * @param ratio the zoom ratio of the canvas.
+     * @param width the width of the page.
+     * @param height the height of the page.
+     */
+    void update(final SpenPageDoc pageDoc, final RectF viewport, final float ratio, final int width, final int height) {
+        final String pageId  = pageDoc.getId();
+        final int    level   = TileCache.levelOf(ratio);
+        final float  span    = TileCache.spanOf(level);
+        final float  centerX = viewport.centerX();
+        final float  centerY = viewport.centerY();
+
+        // The direction the viewport is moving in, or none after a page flip or zoom
+        int dx = 0;
+        int dy = 0;
+
+        if (pageId.equals(this.lastPageId) && level == this.lastLevel) {
+            dx = (int)Math.signum(centerX - this.lastCenterX);
+            dy = (int)Math.signum(centerY - this.lastCenterY);
+        }
+
+        this.lastPageId  = pageId;
+        this.lastLevel   = level;
+        this.lastCenterX = centerX;
+        this.lastCenterY = centerY;
+
+        final int maxColumn = (int)Math.ceil(width / span) - 1;
+        final int maxRow    = (int)Math.ceil(height / span) - 1;
+        final int left      = TileCache.cellOf(viewport.left, span);
+        final int top       = TileCache.cellOf(viewport.top, span);
+        final int right     = TileCache.lastCellOf(viewport.right, span);
+        final int bottom    = TileCache.lastCellOf(viewport.bottom, span);
+
+        this.pending.clear();
+
+        this.enqueue(pageDoc, level, span, Math.max(0, left), Math.max(0, top), Math.min(maxColumn, right), Math.min(maxRow, bottom));
+
+        // Renders ahead of the movement, or all around the viewport if it is not moving
+        this.enqueue(pageDoc, level, span,
+            Math.max(0, dx > 0 ? right + 1 : left - 1),
+            Math.max(0, dy > 0 ? bottom + 1 : top - 1),
+            Math.min(maxColumn, dx < 0 ? left - 1 : right + 1),
+            Math.min(maxRow, dy < 0 ? top - 1 : bottom + 1));
+
+        if (!this.pending.isEmpty() && !this.scheduled) {
+            this.scheduled = true;
+
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Determines whether all tiles of a page that intersect the viewport are rendered.
+     */
+    boolean isComplete(final String pageId, final RectF viewport, final float ratio) {
+        return this.draw(null, pageId, viewport, ratio, 0, 0);
+    }
+
+    /**
+     * Draws the rendered tiles of a page that intersect the viewport.
+     * @param canvas the canvas to draw on, or <code>null</code> to only check if all tiles are rendered.
+     * @param viewport the visible area of the page, in page coordinates.
+     * @param ratio the zoom ratio of the canvas.
+     * @param x the x coordinate on the canvas of the top-left corner of the viewport.
+     * @param y the y coordinate on the canvas of the top-left corner of the viewport.
+     * @return <code>true</code> if all tiles that intersect the viewport are rendered; otherwise, <code>false</code>.
+     */
+    boolean draw(final Canvas canvas, final String pageId, final RectF viewport, final float ratio, final float x, final float y) {
+        final int   level    = TileCache.levelOf(ratio);
+        final float span     = TileCache.spanOf(level);
+        final int   left     = TileCache.cellOf(Math.max(0, viewport.left), span);
+        final int   top      = TileCache.cellOf(Math.max(0, viewport.top), span);
+        final int   right    = TileCache.lastCellOf(viewport.right, span);
+        final int   bottom   = TileCache.lastCellOf(viewport.bottom, span);
+        boolean     complete = true;
+
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                final Bitmap tile = this.tiles.get(TileCache.keyOf(pageId, level, column, row));
+
+                if (tile == null) {
+                    complete = false;
+                } else if (canvas != null) {
+                    this.bounds.set(column * span, row * span, (column + 1) * span, (row + 1) * span);
+                    this.bounds.offset(-viewport.left, -viewport.top);
+
+                    this.bounds.left   = x + this.bounds.left * ratio;
+                    this.bounds.top    = y + this.bounds.top * ratio;
+                    this.bounds.right  = x + this.bounds.right * ratio;
+                    this.bounds.bottom = y + this.bounds.bottom * ratio;
+
+                    canvas.drawBitmap(tile, null, this.bounds, this.paint);
+                }
+            }
+        }
+
+        return complete;
+    }
+
+    /**
+     * Discards the tiles of a page, e.g. after the page is changed.
+     */
+    void invalidate(final String pageId) {
+        final String prefix = pageId + '/';
+
+        for (final String key : this.tiles.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                this.tiles.remove(key);
+            }
+        }
+
+        for (int i = this.pending.size(); --i >= 0;) {
+            if (this.pending.get(i).key.startsWith(prefix)) {
+                this.pending.remove(i);
+            }
+        }
+
+        if (pageId.equals(this.lastPageId)) {
+            this.lastPageId = null;
+        }
+    }
+
+    /**
+     * Discards all rendered tiles and pending requests, e.g. when the system is low on memory.
+     * @return the number of bytes of the bitmaps discarded.
+     */
+    int clear() {
+        final int bytes = this.tiles.size();
+
+        this.pending.clear();
+        this.tiles.evictAll();
+
+        this.lastPageId = null;
+
+        return bytes;
+    }
+
+    void close() {
+        this.clear();
+
+        if (this.scheduled) {
+            this.scheduled = false;
+
+            Looper.myQueue().removeIdleHandler(this);
+        }
+
+        this.capturePage.close();
+    }
+
+    /**
+     * Renders the next pending tile.
+     * @return <code>true</code> to render the remaining tiles when the main thread is idle again; otherwise, <code>false</code>.
+     */
+    @Override
+    public boolean queueIdle() {
+        if (!this.pending.isEmpty()) {
+            final Tile tile = this.pending.remove(0);
+
+            this.capturePage.setPageDoc(tile.pageDoc);
+
+            final Bitmap capture = this.capturePage.captureRect(tile.rect);
+
+            if (capture != null) {
+                final Bitmap bitmap = Bitmap.createBitmap(TileCache.TILE_SIZE, TileCache.TILE_SIZE, Bitmap.Config.ARGB_8888);
+
+                this.bounds.set(0, 0, TileCache.TILE_SIZE, TileCache.TILE_SIZE);
+
+                new Canvas(bitmap).drawBitmap(capture, null, this.bounds, this.paint);
+
+                capture.recycle();
+
+                this.tiles.put(tile.key, bitmap);
+            }
+        }
+
+        this.scheduled = !this.pending.isEmpty();
+
+        return this.scheduled;
+    }
+
+    private void enqueue(final SpenPageDoc pageDoc, final int level, final float span, final int left, final int top, final int right, final int bottom) {
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                final String key = TileCache.keyOf(pageDoc.getId(), level, column, row);
+
+                if (this.tiles.get(key) == null && !this.isPending(key)) {
+                    this.pending.add(new Tile(key, pageDoc, new RectF(column * span, row * span, (column + 1) * span, (row + 1) * span)));
+                }
+            }
+        }
+    }
+
+    private boolean isPending(final String key) {
+        for (final Tile tile : this.pending) {
+            if (tile.key.equals(key)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the zoom level of a zoom ratio, which is the base-2 logarithm of the ratio rounded up.
+     */
+    private static int levelOf(final float ratio) {
+        return Math.max(TileCache.MIN_LEVEL, Math.min(TileCache.MAX_LEVEL, (int)Math.ceil(Math.log(ratio) / Math.log(2))));
+    }
+
+    /**
+     * Gets the width and height of a tile at a zoom level, in page coordinates.
+     */
+    private static float spanOf(final int level) {
+        return TileCache.TILE_SIZE / (float)Math.pow(2, level);
+    }
+
+    private static int cellOf(final float coordinate, final float span) {
+        return (int)Math.floor(coordinate / span);
+    }
+
+    /**
+     * Gets the last cell that a range ending at the coordinate overlaps, so that a range ending at a tile edge does not overlap the next tile.
+     */
+    private static int lastCellOf(final float coordinate, final float span) {
+        return (int)Math.ceil(coordinate / span) - 1;
+    }
+
+    private static String keyOf(final String pageId, final int level, final int column, final int row) {
+        return pageId + '/' + level + '/' + column + '/' + row;
+    }
+}
@@ -0,0 +1,53 @@
+package android.lib.pen;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.view.View;
+
+/**
+ * Shows the rendered tiles of the visible area of a page over the {@link com.samsung.android.sdk.pen.engine.SpenSurfaceView canvas}
+ * while it is zoomed or panned.
+ * @see TileCache
+ */
+final class TiledPageView extends View {
+    private final TileCache tileCache;
+    private final RectF     viewport = new RectF();
+
+    private String pageId;
+    private float  ratio;
+    private float  x;
+    private float  y;
+
+    TiledPageView(final Context context, final TileCache tileCache) {
+        super(context);
+
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Shows the visible area of a page.
+     * @param viewport the visible area of the page, in page coordinates.
+     * @param ratio the zoom ratio of the canvas.
+     * @param x the x coordinate on this view of the top-left corner of the viewport.
+     * @param y the y coordinate on this view of the top-left corner of the viewport.
+     */
+    void show(final String pageId, final RectF viewport, final float ratio, final float x, final float y) {
+        this.pageId = pageId;
+        this.ratio  = ratio;
+        this.x      = x;
+        this.y      = y;
+
+        this.viewport.set(viewport);
+
+        this.setVisibility(View.VISIBLE);
+        this.invalidate();
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        if (this.pageId != null) {
+            this.tileCache.draw(canvas, this.pageId, this.viewport, this.ratio, this.x, this.y);
+        }
+    }
+}
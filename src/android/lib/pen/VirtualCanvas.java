@@ -0,0 +1,163 @@
+package android.lib.pen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.samsung.android.sdk.pen.document.SpenNoteDoc;
+import com.samsung.android.sdk.pen.document.SpenPageDoc;
+
+/**
+ * Lays out the {@link SpenPageDoc pages} of a {@link SpenNoteDoc document} as the tiles of a canvas that extends in every direction.
+ * <p>The position of each tile is saved in its page, so it survives saving and loading the document. Only the objects of the tiles around
+ * the current one, and of the most recently visited ones up to a limit, are kept in memory; the others are unloaded to the document's cache
+ * and loaded again when their tile is visited.</p>
+ */
+final class VirtualCanvas {
+    private static final String EXTRA_COLUMN = "android.lib.pen.VirtualCanvas.column"; //$NON-NLS-1$
+    private static final String EXTRA_ROW    = "android.lib.pen.VirtualCanvas.row"; //$NON-NLS-1$
+
+    private final int               maxLoadedTiles;
+    private final Map<Long, String> tiles  = new HashMap<Long, String>();
+    private final ArrayList<String> loaded = new ArrayList<String>();
+
+    /**
+     * Creates a new virtual canvas.
+     * @param maxLoadedTiles the maximum number of tiles whose objects are kept in memory, at least the <code>9</code> tiles around the current one.
+     */
+    VirtualCanvas(final int maxLoadedTiles) {
+        if (maxLoadedTiles < 9) {
+            throw new IllegalArgumentException();
+        }
+
+        this.maxLoadedTiles = maxLoadedTiles;
+    }
+
+    /**
+     * Reads the positions of the tiles from the pages of a document.
+     * <p>Pages without a position, such as the pages of a document created before, are placed at the first free positions of row <code>0</code>.</p>
+     */
+    void index(final SpenNoteDoc noteDoc) {
+        this.tiles.clear();
+
+        final ArrayList<SpenPageDoc> unplaced = new ArrayList<SpenPageDoc>();
+        final ArrayList<String>      visited  = new ArrayList<String>(this.loaded);
+
+        this.loaded.clear();
+
+        for (int i = 0; i < noteDoc.getPageCount(); i++) {
+            final SpenPageDoc pageDoc = noteDoc.getPage(i);
+
+            if (pageDoc.hasExtraDataInt(VirtualCanvas.EXTRA_COLUMN) && pageDoc.hasExtraDataInt(VirtualCanvas.EXTRA_ROW)) {
+                this.tiles.put(Long.valueOf(VirtualCanvas.key(pageDoc.getExtraDataInt(VirtualCanvas.EXTRA_COLUMN), pageDoc.getExtraDataInt(VirtualCanvas.EXTRA_ROW))), pageDoc.getId());
+            } else {
+                unplaced.add(pageDoc);
+            }
+
+            if (pageDoc.isObjectLoaded()) {
+                this.loaded.add(pageDoc.getId());
+            }
+        }
+
+        // Keeps the order in which the tiles were visited, with the other loaded tiles as the least recently visited
+        for (final String pageId : visited) {
+            if (this.loaded.remove(pageId)) {
+                this.loaded.add(pageId);
+            }
+        }
+
+        int column = 0;
+
+        for (final SpenPageDoc pageDoc : unplaced) {
+            while (this.tiles.containsKey(Long.valueOf(VirtualCanvas.key(column, 0)))) {
+                column++;
+            }
+
+            this.put(column, 0, pageDoc);
+        }
+    }
+
+    /**
+     * Gets the ID of the page of a tile.
+     * @return the page ID, or <code>null</code> if the tile is empty.
+     */
+    String get(final int column, final int row) {
+        return this.tiles.get(Long.valueOf(VirtualCanvas.key(column, row)));
+    }
+
+    void put(final int column, final int row, final SpenPageDoc pageDoc) {
+        pageDoc.setExtraDataInt(VirtualCanvas.EXTRA_COLUMN, column);
+        pageDoc.setExtraDataInt(VirtualCanvas.EXTRA_ROW, row);
+
+        this.tiles.put(Long.valueOf(VirtualCanvas.key(column, row)), pageDoc.getId());
+    }
+
+    int getColumn(final SpenPageDoc pageDoc) {
+        return pageDoc.getExtraDataInt(VirtualCanvas.EXTRA_COLUMN);
+    }
+
+    int getRow(final SpenPageDoc pageDoc) {
+        return pageDoc.getExtraDataInt(VirtualCanvas.EXTRA_ROW);
+    }
+
+    /**
+     * Loads the objects of the tiles around a tile, and unloads the least recently visited tiles beyond the limit.
+     */
+    void visit(final SpenNoteDoc noteDoc, final int column, final int row) {
+        final ArrayList<String> neighbours = new ArrayList<String>(9);
+
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = column - 1; c <= column + 1; c++) {
+                final String pageId = this.get(c, r);
+
+                if (pageId != null) {
+                    neighbours.add(pageId);
+                }
+            }
+        }
+
+        for (final String pageId : neighbours) {
+            final int index = noteDoc.getPageIndexById(pageId);
+
+            if (index >= 0) {
+                final SpenPageDoc pageDoc = noteDoc.getPage(index);
+
+                if (!pageDoc.isObjectLoaded()) {
+                    try {
+                        pageDoc.loadObject();
+                    } catch (final IOException e) {
+                        Log.e(this.getClass().getName(), e.getMessage(), e);
+                    }
+                }
+
+                // Most recently visited last
+                this.loaded.remove(pageId);
+                this.loaded.add(pageId);
+            }
+        }
+
+        for (int i = 0; i < this.loaded.size() && this.loaded.size() > this.maxLoadedTiles;) {
+            final String pageId = this.loaded.get(i);
+
+            if (neighbours.contains(pageId)) {
+                i++;
+            } else {
+                this.loaded.remove(i);
+
+                final int index = noteDoc.getPageIndexById(pageId);
+
+                // The page may already be unloaded to save memory
+                if (index >= 0 && noteDoc.getPage(index).isObjectLoaded()) {
+                    PenService.unloadObjects(noteDoc.getPage(index));
+                }
+            }
+        }
+    }
+
+    private static long key(final int column, final int row) {
+        return (long)column << 32 | row & 0xffffffffL;
+    }
+}
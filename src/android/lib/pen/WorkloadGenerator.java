@@ -0,0 +1,198 @@
+package android.lib.pen;
+
+import java.util.ArrayList;
+
+/**
+ * Generates synthetic documents of realistic strokes as described by a {@link WorkloadProfile}, e.g. to reproduce performance problems
+ * of large documents, or to create a corpus for soak tests.
+ * <p>A stroke is a smooth random walk that bends a little at every point and bounces off the edges of the page. The same seed and profile
+ * always generate the same strokes, so that a document can be created again from the two numbers instead of being kept.
+ * Random numbers come from an inline xorshift generator, and a point costs a few multiplications and a square root, so millions
+ * of points are generated per second.</p>
+ * <p>This class does not depend on Android, and is not thread-safe.</p>
+ */
+public final class WorkloadGenerator {
+    private static final int[] COLORS = new int[] { 0xff000000, 0xff1a237e, 0xffb71c1c, 0xff1b5e20, 0xff4a148c, 0xffe65100, 0xff006064, 0xff3e2723 };
+
+    private static final float MIN_PEN_SIZE  = 2;
+    private static final float MAX_PEN_SIZE  = 12;
+    private static final float MAX_CURVATURE = 0.15f;
+    private static final float MAX_JITTER    = 0.1f;
+    private static final float MIN_PRESSURE  = 0.05f;
+
+    private final WorkloadProfile profile;
+    private final int             width;
+    private final int             height;
+
+    private long state;
+    private long pointCount;
+
+    /**
+     * Creates a new workload generator.
+     * @param seed the seed of the random numbers. The same seed generates the same strokes.
+     * @param profile the profile of the documents to generate, e.g. {@link WorkloadProfile#NOTES}.
+     * @param width the width of the pages, in pixels.
+     * @param height the height of the pages, in pixels.
+     */
+    public WorkloadGenerator(final long seed, final WorkloadProfile profile, final int width, final int height) {
+        if (profile == null || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.profile = profile;
+        this.width   = width;
+        this.height  = height;
+
+        // Spreads close seeds apart, and avoids the zero state that xorshift never leaves
+        final long state = (seed ^ 0x5deece66dL) * 0x9e3779b97f4a7c15L;
+
+        this.state = state == 0 ? 0x9e3779b97f4a7c15L : state;
+    }
+
+    public WorkloadProfile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Gets the number of points generated so far, e.g. to report the throughput of a soak test.
+     * @return the number of points generated so far.
+     */
+    public long getPointCount() {
+        return this.pointCount;
+    }
+
+    /**
+     * Generates a document of the {@link WorkloadProfile#getPageCount() number of pages} of the profile.
+     * <p>The pages are appended to the document, and the strokes of each page are added as one history step.</p>
+     * <p>{@link DocumentBackend} has no background image, so the pages that should have one according to the
+     * {@link WorkloadProfile#getImageRatio() image ratio} are returned instead, e.g. to call {@link PenService#setBackgroundImage(int, String)} with.</p>
+     * @param backend the document to append the pages to, e.g. a {@link MemoryDocumentBackend} or a {@link SpenDocumentBackend} to save as an SPD file.
+     * @return the indices of the pages that should have a background image.
+     */
+    public int[] generate(final DocumentBackend backend) {
+        final IntArray imagePages = new IntArray();
+
+        for (int i = 0; i < this.profile.getPageCount(); i++) {
+            final int page = backend.appendPage(0xffffffff);
+
+            if (this.nextFloat() < this.profile.getImageRatio()) {
+                imagePages.add(page);
+            }
+
+            backend.addStrokes(page, this.nextPage());
+        }
+
+        return imagePages.toArray();
+    }
+
+    /**
+     * Generates the strokes of a page.
+     * @return the strokes, as many as the profile allows for a page.
+     */
+    public ArrayList<Stroke> nextPage() {
+        final int               count   = this.nextInt(this.profile.getMinStrokes(), this.profile.getMaxStrokes());
+        final ArrayList<Stroke> strokes = new ArrayList<Stroke>(count);
+
+        for (int i = 0; i < count; i++) {
+            strokes.add(this.nextStroke());
+        }
+
+        return strokes;
+    }
+
+    /**
+     * Generates a stroke.
+     * @return a stroke of as many points as the profile allows, within the page.
+     */
+    public Stroke nextStroke() {
+        final int     count         = this.nextInt(this.profile.getMinPoints(), this.profile.getMaxPoints());
+        final int     pressureCurve = this.profile.getPressureCurve();
+        final float   spacing       = this.profile.getPointSpacing();
+        final float[] xs            = new float[count];
+        final float[] ys            = new float[count];
+        final float[] pressures     = pressureCurve == WorkloadProfile.PRESSURE_NONE ? null : new float[count];
+        final float   curvature     = (this.nextFloat() * 2 - 1) * WorkloadGenerator.MAX_CURVATURE;
+        final float   basePressure  = 0.5f + this.nextFloat() * 0.5f;
+        final int     color         = WorkloadGenerator.COLORS[this.nextInt(0, WorkloadGenerator.COLORS.length - 1)];
+        final float   size          = WorkloadGenerator.MIN_PEN_SIZE + this.nextFloat() * (WorkloadGenerator.MAX_PEN_SIZE - WorkloadGenerator.MIN_PEN_SIZE);
+
+        float x        = this.nextFloat() * this.width;
+        float y        = this.nextFloat() * this.height;
+        float dx       = this.nextFloat() * 2 - 1;
+        float dy       = this.nextFloat() * 2 - 1;
+        float pressure = basePressure;
+
+        for (int i = 0; i < count; i++) {
+            xs[i] = x;
+            ys[i] = y;
+
+            if (pressures != null) {
+                if (pressureCurve == WorkloadProfile.PRESSURE_TAPERED) {
+                    // Rises over the first fifth of the stroke and falls over the last fifth
+                    final float t = count == 1 ? 0.5f : (float)i / (count - 1);
+
+                    pressure = basePressure * (0.2f + 0.8f * Math.min(1, Math.min(t, 1 - t) * 5));
+                } else if (pressureCurve == WorkloadProfile.PRESSURE_NOISY) {
+                    pressure = Math.max(WorkloadGenerator.MIN_PRESSURE, Math.min(1, pressure + (this.nextFloat() - 0.5f) * 0.2f));
+                }
+
+                pressures[i] = pressure;
+            }
+
+            // Turns the direction by a small angle, without trigonometry, and keeps the spacing
+            final float angle = curvature + (this.nextFloat() * 2 - 1) * WorkloadGenerator.MAX_JITTER;
+            final float nx    = dx - dy * angle;
+            final float ny    = dy + dx * angle;
+            final float scale = spacing / (float)Math.sqrt(nx * nx + ny * ny + 1e-12f);
+
+            dx = nx * scale;
+            dy = ny * scale;
+
+            x += dx;
+            y += dy;
+
+            if (x < 0 || x > this.width) {
+                dx = -dx;
+                x  = Math.max(0, Math.min(this.width, x));
+            }
+
+            if (y < 0 || y > this.height) {
+                dy = -dy;
+                y  = Math.max(0, Math.min(this.height, y));
+            }
+        }
+
+        this.pointCount += count;
+
+        return new Stroke(color, size, xs, ys, pressures);
+    }
+
+    /**
+     * Gets the next random number of the xorshift* generator.
+     */
+    private long next() {
+        long s = this.state;
+
+        s ^= s >>> 12;
+        s ^= s << 25;
+        s ^= s >>> 27;
+
+        this.state = s;
+
+        return s * 0x2545f4914f6cdd1dL;
+    }
+
+    /**
+     * Gets a random number from <code>0</code> inclusive to <code>1</code> exclusive.
+     */
+    private float nextFloat() {
+        return (this.next() >>> 40) / (float)(1 << 24);
+    }
+
+    /**
+     * Gets a random number from <code>min</code> to <code>max</code>, both inclusive.
+     */
+    private int nextInt(final int min, final int max) {
+        return min + (int)(((this.next() >>> 32) * (max - min + 1L)) >>> 32);
+    }
+}
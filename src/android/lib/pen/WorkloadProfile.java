@@ -0,0 +1,141 @@
+package android.lib.pen;
+
+/**
+ * Describes the synthetic documents made by a {@link WorkloadGenerator}: how many pages, how many strokes per page,
+ * how many points per stroke, how the pen pressure changes along a stroke and how many pages have a background image.
+ * <p>This class does not depend on Android.</p>
+ */
+public final class WorkloadProfile {
+    /**
+     * The strokes have no pressure, as if drawn with a finger.
+     */
+    public static final int PRESSURE_NONE = 0;
+
+    /**
+     * The pressure of a stroke does not change along the stroke, but differs from stroke to stroke.
+     */
+    public static final int PRESSURE_CONSTANT = 1;
+
+    /**
+     * The pressure rises at the start of a stroke and falls at its end, as in handwriting.
+     */
+    public static final int PRESSURE_TAPERED = 2;
+
+    /**
+     * The pressure changes randomly along a stroke, as in shading.
+     */
+    public static final int PRESSURE_NOISY = 3;
+
+    /**
+     * The default distance between two consecutive points of a stroke, in pixels.
+     */
+    public static final float DEFAULT_POINT_SPACING = 3;
+
+    /**
+     * Handwritten notes: a few pages of many short strokes, with a background image now and then.
+     */
+    public static final WorkloadProfile NOTES = new WorkloadProfile(10, 200, 600, 20, 120, WorkloadProfile.PRESSURE_TAPERED, 0.1f);
+
+    /**
+     * Sketches: a few pages of fewer but much longer strokes, half of them over a photo.
+     */
+    public static final WorkloadProfile SKETCHES = new WorkloadProfile(5, 50, 200, 100, 1000, WorkloadProfile.PRESSURE_NOISY, 0.5f);
+
+    /**
+     * The heaviest documents seen in the field: many pages crowded with strokes.
+     */
+    public static final WorkloadProfile HEAVY = new WorkloadProfile(100, 2000, 4000, 50, 200, WorkloadProfile.PRESSURE_TAPERED, 0.2f);
+
+    private final int   pageCount;
+    private final int   minStrokes;
+    private final int   maxStrokes;
+    private final int   minPoints;
+    private final int   maxPoints;
+    private final int   pressureCurve;
+    private final float imageRatio;
+    private final float pointSpacing;
+
+    /**
+     * Creates a new workload profile with the {@link #DEFAULT_POINT_SPACING default point spacing}.
+     * @param pageCount the number of pages of a document.
+     * @param minStrokes the minimum number of strokes of a page.
+     * @param maxStrokes the maximum number of strokes of a page.
+     * @param minPoints the minimum number of points of a stroke.
+     * @param maxPoints the maximum number of points of a stroke.
+     * @param pressureCurve one of the <code>PRESSURE_</code> constants.
+     * @param imageRatio the ratio of the pages that have a background image, from <code>0</code> to <code>1</code>.
+     */
+    public WorkloadProfile(final int pageCount, final int minStrokes, final int maxStrokes, final int minPoints, final int maxPoints, final int pressureCurve, final float imageRatio) {
+        this(pageCount, minStrokes, maxStrokes, minPoints, maxPoints, pressureCurve, imageRatio, WorkloadProfile.DEFAULT_POINT_SPACING);
+    }
+
+    /**
+     * Creates a new workload profile.
+     * @param pageCount the number of pages of a document.
+     * @param minStrokes the minimum number of strokes of a page.
+     * @param maxStrokes the maximum number of strokes of a page.
+     * @param minPoints the minimum number of points of a stroke.
+     * @param maxPoints the maximum number of points of a stroke.
+     * @param pressureCurve one of the <code>PRESSURE_</code> constants.
+     * @param imageRatio the ratio of the pages that have a background image, from <code>0</code> to <code>1</code>.
+     * @param pointSpacing the distance between two consecutive points of a stroke, in pixels. A denser stroke has more points for the same length.
+     */
+    public WorkloadProfile(final int pageCount, final int minStrokes, final int maxStrokes, final int minPoints, final int maxPoints, final int pressureCurve, final float imageRatio, final float pointSpacing) {
+        if (pageCount < 0 || minStrokes < 0 || maxStrokes < minStrokes || minPoints < 1 || maxPoints < minPoints || pressureCurve < WorkloadProfile.PRESSURE_NONE || pressureCurve > WorkloadProfile.PRESSURE_NOISY || !(imageRatio >= 0 && imageRatio <= 1) || !(pointSpacing > 0)) {
+            throw new IllegalArgumentException();
+        }
+
+        this.pageCount     = pageCount;
+        this.minStrokes    = minStrokes;
+        this.maxStrokes    = maxStrokes;
+        this.minPoints     = minPoints;
+        this.maxPoints     = maxPoints;
+        this.pressureCurve = pressureCurve;
+        this.imageRatio    = imageRatio;
+        this.pointSpacing  = pointSpacing;
+    }
+
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    public int getMinStrokes() {
+        return this.minStrokes;
+    }
+
+    public int getMaxStrokes() {
+        return this.maxStrokes;
+    }
+
+    public int getMinPoints() {
+        return this.minPoints;
+    }
+
+    public int getMaxPoints() {
+        return this.maxPoints;
+    }
+
+    /**
+     * Gets how the pen pressure changes along a stroke.
+     * @return one of the <code>PRESSURE_</code> constants.
+     */
+    public int getPressureCurve() {
+        return this.pressureCurve;
+    }
+
+    /**
+     * Gets the ratio of the pages that have a background image.
+     * @return the ratio, from <code>0</code> to <code>1</code>.
+     */
+    public float getImageRatio() {
+        return this.imageRatio;
+    }
+
+    /**
+     * Gets the distance between two consecutive points of a stroke.
+     * @return the distance, in pixels.
+     */
+    public float getPointSpacing() {
+        return this.pointSpacing;
+    }
+}